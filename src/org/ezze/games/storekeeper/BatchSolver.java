@@ -0,0 +1,372 @@
+package org.ezze.games.storekeeper;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.ezze.games.storekeeper.Level.LevelState;
+import org.ezze.games.storekeeper.Level.MoveInformation;
+import org.ezze.games.storekeeper.Level.MoveType;
+
+/**
+ * This class solves all playable levels of a set without user interface.
+ *
+ * Levels are searched concurrently, each one by a single-threaded {@link Solver},
+ * so a count of levels searched at once is a count of used processors.
+ * Each level has a time budget and a memory budget shared by its open nodes
+ * and its transposition table which takes {@link #TABLE_MEMORY_DIVISOR}-th part
+ * of the budget and replaces positions when it's full. A watchdog cancels searches
+ * which have run out of time or whose estimated memory (see {@link Solver#getMemorySize()})
+ * exceeds the budget, such searches are reported as {@link SolverResult.Status#OUT_OF_TIME}
+ * or {@link SolverResult.Status#OUT_OF_MEMORY}. Levels are retrieved from the set by
+ * searches' tasks, so a set loaded in mapped mode decodes only levels being searched.
+ * Results are passed to a listener in the order searches finish.
+ *
+ * The class can be run from a command line:
+ * <pre>
+ * java -cp storekeeper.jar org.ezze.games.storekeeper.BatchSolver set.sok [seconds] [megabytes] [threads]
+ * </pre>
+ *
+ * @author Dmitriy Pushkov
+ * @version 0.0.1
+ * @see BatchSolverListener
+ */
+public class BatchSolver {
+
+    /**
+     * Default time budget of a level in milliseconds.
+     */
+    public static final long DEFAULT_TIME_BUDGET = 60000L;
+
+    /**
+     * Default memory budget of a level in bytes.
+     */
+    public static final long DEFAULT_MEMORY_BUDGET = 256L << 20;
+
+    /**
+     * Divides level's memory budget to get a memory size of its transposition table.
+     */
+    protected static final int TABLE_MEMORY_DIVISOR = 4;
+
+    /**
+     * Interval of watchdog's budget checks in milliseconds.
+     */
+    protected static final long WATCHDOG_INTERVAL = 50L;
+
+    /**
+     * Worker's moves by directions' indexes in LURD notation.
+     */
+    protected static final String LURD_CHARACTERS = "urdl";
+
+    /**
+     * Solved set.
+     */
+    protected LevelsSet levelsSet = null;
+
+    /**
+     * Count of levels searched at once.
+     */
+    protected int parallelism = 1;
+
+    /**
+     * Time budget of a level in milliseconds.
+     */
+    protected long timeBudget = DEFAULT_TIME_BUDGET;
+
+    /**
+     * Memory budget of a level in bytes.
+     */
+    protected long memoryBudget = DEFAULT_MEMORY_BUDGET;
+
+    /**
+     * Running searches with their start times.
+     */
+    protected final Map<Solver, Long> runningSolvers = new ConcurrentHashMap<Solver, Long>();
+
+    /**
+     * Statuses of searches cancelled by the watchdog showing which budget they have exceeded.
+     */
+    protected final Map<Solver, SolverResult.Status> cancellationStatuses =
+            new ConcurrentHashMap<Solver, SolverResult.Status>();
+
+    /**
+     * Creates a batch solver using all available processors and default budgets.
+     *
+     * @param levelsSet
+     *      Set to solve.
+     */
+    public BatchSolver(LevelsSet levelsSet) {
+
+        this(levelsSet, Runtime.getRuntime().availableProcessors(), DEFAULT_TIME_BUDGET, DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * Creates a batch solver.
+     *
+     * @param levelsSet
+     *      Set to solve.
+     * @param parallelism
+     *      Count of levels searched at once.
+     * @param timeBudget
+     *      Time budget of a level in milliseconds.
+     * @param memoryBudget
+     *      Memory budget of a level in bytes.
+     */
+    public BatchSolver(LevelsSet levelsSet, int parallelism, long timeBudget, long memoryBudget) {
+
+        this.levelsSet = levelsSet;
+        this.parallelism = Math.max(1, parallelism);
+        this.timeBudget = timeBudget;
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Searches all playable levels of the set.
+     *
+     * The listener is invoked in the calling thread.
+     *
+     * @param listener
+     *      Listener of finished searches or {@code null}.
+     * @return
+     *      Results by levels' indexes, {@code null} for levels which are not playable.
+     * @throws InterruptedException
+     *      If the calling thread has been interrupted, running searches are cancelled.
+     */
+    public SolverResult[] solve(BatchSolverListener listener) throws InterruptedException {
+
+        int levelsCount = levelsSet == null ? 0 : levelsSet.getLevelsCount();
+        SolverResult[] results = new SolverResult[levelsCount];
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, createThreadFactory());
+        ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(createThreadFactory());
+        watchdog.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+
+                cancelExceedingSolvers();
+            }
+        }, WATCHDOG_INTERVAL, WATCHDOG_INTERVAL, TimeUnit.MILLISECONDS);
+
+        try {
+
+            ExecutorCompletionService<Integer> completionService = new ExecutorCompletionService<Integer>(executor);
+            int submittedCount = 0;
+            for (int levelIndex = 0; levelIndex < levelsCount; levelIndex++) {
+
+                if (levelsSet.getLevelStateByIndex(levelIndex) != LevelState.PLAYABLE)
+                    continue;
+
+                completionService.submit(createLevelTask(levelIndex, results));
+                submittedCount++;
+            }
+
+            // Streaming results in completion order
+            while (submittedCount > 0) {
+
+                int levelIndex;
+                try {
+
+                    levelIndex = completionService.take().get();
+                }
+                catch (ExecutionException ex) {
+
+                    throw new IllegalStateException(ex.getCause());
+                }
+
+                submittedCount--;
+                if (listener != null)
+                    listener.levelSolved(levelIndex, levelsSet.getLevelByIndex(levelIndex), results[levelIndex]);
+            }
+        }
+        finally {
+
+            for (Solver solver : runningSolvers.keySet())
+                solver.cancel();
+
+            executor.shutdownNow();
+            watchdog.shutdownNow();
+        }
+
+        return results;
+    }
+
+    /**
+     * Creates a task searching one level.
+     *
+     * @param levelIndex
+     *      Index of level to search.
+     * @param results
+     *      Results to store level's result into.
+     * @return
+     *      Task returning level's index.
+     */
+    protected Callable<Integer> createLevelTask(final int levelIndex, final SolverResult[] results) {
+
+        return new Callable<Integer>() {
+
+            @Override
+            public Integer call() {
+
+                Level level = levelsSet.getLevelByIndex(levelIndex);
+                Solver solver = new Solver(level, 1, memoryBudget / TABLE_MEMORY_DIVISOR);
+                runningSolvers.put(solver, System.currentTimeMillis());
+                SolverResult result;
+                SolverResult.Status cancellationStatus;
+                try {
+
+                    result = solver.solve();
+                }
+                finally {
+
+                    runningSolvers.remove(solver);
+                    cancellationStatus = cancellationStatuses.remove(solver);
+                }
+
+                // The search may finish before noticing watchdog's cancellation
+                if (cancellationStatus != null && result.getStatus() == SolverResult.Status.CANCELLED) {
+
+                    result = new SolverResult(cancellationStatus, result.getMoves(), result.getPushesCount(),
+                            result.getExpandedStatesCount(), result.getStoredStatesCount(), result.getElapsedTime());
+                }
+
+                results[levelIndex] = result;
+
+                // Releasing level's items until the level is played
+                level.evict();
+                return levelIndex;
+            }
+        };
+    }
+
+    /**
+     * Cancels searches which have exceeded their time or memory budget.
+     */
+    protected void cancelExceedingSolvers() {
+
+        long currentTime = System.currentTimeMillis();
+        Iterator<Map.Entry<Solver, Long>> iterator = runningSolvers.entrySet().iterator();
+        while (iterator.hasNext()) {
+
+            Map.Entry<Solver, Long> entry = iterator.next();
+            Solver solver = entry.getKey();
+            SolverResult.Status cancellationStatus = null;
+            if (currentTime - entry.getValue() > timeBudget)
+                cancellationStatus = SolverResult.Status.OUT_OF_TIME;
+            else if (solver.getMemorySize() > memoryBudget)
+                cancellationStatus = SolverResult.Status.OUT_OF_MEMORY;
+
+            if (cancellationStatus != null) {
+
+                cancellationStatuses.putIfAbsent(solver, cancellationStatus);
+                solver.cancel();
+            }
+        }
+    }
+
+    /**
+     * Formats moves in LURD notation where pushes are written in upper case.
+     *
+     * @param moves
+     *      Moves.
+     * @return
+     *      Moves' string.
+     */
+    public static String formatMoves(List<MoveInformation> moves) {
+
+        StringBuilder movesString = new StringBuilder(moves.size());
+        for (MoveInformation moveInformation : moves) {
+
+            if (moveInformation.getType() == MoveType.NOTHING)
+                continue;
+
+            char moveCharacter = LURD_CHARACTERS.charAt(moveInformation.getDirection().ordinal() - 1);
+            movesString.append(moveInformation.getType() == MoveType.WORKER_AND_BOX ?
+                    Character.toUpperCase(moveCharacter) : moveCharacter);
+        }
+
+        return movesString.toString();
+    }
+
+    /**
+     * Creates a factory of daemon threads, so unfinished searches never keep the application running.
+     *
+     * @return
+     *      Thread factory.
+     */
+    protected static ThreadFactory createThreadFactory() {
+
+        return new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+
+                Thread thread = new Thread(runnable);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Solves a set from a command line printing a line per level.
+     *
+     * Arguments are set's XML or SOK file, level's time budget in seconds,
+     * level's memory budget in megabytes and a count of levels searched at once.
+     *
+     * @param args
+     *      Command line arguments.
+     * @throws InterruptedException
+     *      If the search has been interrupted.
+     */
+    public static void main(String[] args) throws InterruptedException {
+
+        if (args.length < 1) {
+
+            System.err.println("Usage: BatchSolver <set.xml|set.sok> [seconds] [megabytes] [threads]");
+            System.exit(1);
+        }
+
+        LevelsSet levelsSet = new LevelsSet();
+        if (!levelsSet.load(args[0])) {
+
+            System.err.println(String.format("Unable to load levels' set from \"%s\"", args[0]));
+            System.exit(1);
+        }
+
+        long timeBudget = args.length > 1 ? Long.parseLong(args[1]) * 1000L : DEFAULT_TIME_BUDGET;
+        long memoryBudget = args.length > 2 ? Long.parseLong(args[2]) << 20 : DEFAULT_MEMORY_BUDGET;
+        int parallelism = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        final int[] statusesCounts = new int[SolverResult.Status.values().length];
+        long startTime = System.currentTimeMillis();
+        new BatchSolver(levelsSet, parallelism, timeBudget, memoryBudget).solve(new BatchSolverListener() {
+
+            @Override
+            public void levelSolved(int levelIndex, Level level, SolverResult result) {
+
+                statusesCounts[result.getStatus().ordinal()]++;
+                StringBuilder line = new StringBuilder(String.format("%d\t%s\t%s", levelIndex + 1,
+                        level.getName() == null ? "" : level.getName(), result));
+                if (result.isSolved())
+                    line.append('\t').append(formatMoves(result.getMoves()));
+
+                System.out.println(line);
+            }
+        });
+
+        StringBuilder summary = new StringBuilder();
+        for (SolverResult.Status status : SolverResult.Status.values())
+            summary.append(String.format("%s: %d, ", status, statusesCounts[status.ordinal()]));
+        summary.append(String.format("%d ms", System.currentTimeMillis() - startTime));
+        System.out.println(summary);
+    }
+}
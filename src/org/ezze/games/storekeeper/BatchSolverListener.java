@@ -0,0 +1,27 @@
+package org.ezze.games.storekeeper;
+
+/**
+ * This interface has a method to implement to
+ * be invoked each time a level of solved set will have been searched.
+ *
+ * A class implementing this interface must be passed to
+ * {@link BatchSolver#solve(org.ezze.games.storekeeper.BatchSolverListener)}.
+ *
+ * @author Dmitriy Pushkov
+ * @version 0.0.1
+ * @see BatchSolver#solve(org.ezze.games.storekeeper.BatchSolverListener)
+ */
+public interface BatchSolverListener {
+
+    /**
+     * Describes actions to do after level's search will have been finished.
+     *
+     * @param levelIndex
+     *      Level's index in the set.
+     * @param level
+     *      An instance of searched level {@link Level}.
+     * @param result
+     *      Search's result.
+     */
+    public void levelSolved(int levelIndex, Level level, SolverResult result);
+}
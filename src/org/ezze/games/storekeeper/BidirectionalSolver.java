@@ -0,0 +1,495 @@
+package org.ezze.games.storekeeper;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import org.ezze.games.storekeeper.Level.MoveInformation;
+
+/**
+ * This class implements a solver searching from both ends at the same time.
+ *
+ * Forward search pushes boxes from level's position as {@link Solver} does,
+ * reverse search runs on a separate thread and pulls boxes from goals
+ * starting with every area the worker may finish the level in.
+ * Reverse search records its positions in a bounded {@link TranspositionTable}
+ * of its own which keeps indexes of reverse nodes instead of pulls' counts.
+ * Forward search looks its positions up there, a found one makes the meeting
+ * point and its reverse node is taken by the index, then pulls are turned
+ * into pushes following forward ones.
+ *
+ * Reverse nodes are kept until the search finishes, so reverse search stops
+ * when its nodes would exceed the memory size of the tables and forward search
+ * goes on alone meeting positions reverse search has already found.
+ *
+ * Reverse search is breadth-first, so it helps with levels whose goals are
+ * packed in rooms where forward search gets lost among boxes' orders.
+ *
+ * @author Dmitriy Pushkov
+ * @version 0.0.1
+ * @see Solver
+ */
+public class BidirectionalSolver extends Solver {
+
+    /**
+     * Node of reverse search.
+     *
+     * Node's box cell and direction describe the push turning node's
+     * position into its parent's one.
+     */
+    protected static class PullNode extends SolverNode {
+
+        /**
+         * Creates reverse search's node.
+         *
+         * @param state
+         *      Node's position.
+         * @param parent
+         *      Parent node or {@code null} for a solved position.
+         * @param boxCell
+         *      Cell of the box pushed to reach parent's position.
+         * @param directionIndex
+         *      Direction's index of the push.
+         * @param pullsCount
+         *      Count of pulls from the solved position.
+         */
+        protected PullNode(SolverState state, SolverNode parent, int boxCell, int directionIndex, int pullsCount) {
+
+            super(state, parent, boxCell, directionIndex, pullsCount, 0);
+        }
+    }
+
+    /**
+     * Count of reverse nodes in a chunk of {@link #pullNodes}.
+     */
+    protected static final int PULL_NODES_CHUNK_SIZE = 4096;
+
+    /**
+     * Positions found by reverse search, records keep nodes' indexes within {@link #pullNodes}.
+     *
+     * Breadth-first search indexes nodes in order of their pulls' counts,
+     * so the least kept index of a position belongs to its shallowest node.
+     */
+    protected TranspositionTable backwardTable = null;
+
+    /**
+     * Reverse nodes by chunks of {@link #PULL_NODES_CHUNK_SIZE} nodes.
+     *
+     * A node is stored before its index is put into {@link #backwardTable},
+     * so forward search taking the index from the table sees the node.
+     */
+    protected SolverNode[][] pullNodes = null;
+
+    /**
+     * Count of stored reverse nodes.
+     */
+    protected int pullNodesCount = 0;
+
+    /**
+     * Maximal count of reverse nodes fitting into reverse search's memory.
+     */
+    protected int maximalPullNodesCount = 0;
+
+    /**
+     * Forward and reverse nodes of the meeting point,
+     * reverse node is {@code null} if forward search has solved the level alone.
+     */
+    protected final AtomicReference<SolverNode[]> meetingNodes = new AtomicReference<SolverNode[]>();
+
+    /**
+     * Shows whether one of the searches has explored all its positions.
+     */
+    protected volatile boolean isExhausted = false;
+
+    /**
+     * Shows whether the searches must finish.
+     */
+    protected volatile boolean isStopped = false;
+
+    /**
+     * Creates a bidirectional solver of level's current position.
+     *
+     * @param level
+     *      Level to solve.
+     */
+    public BidirectionalSolver(Level level) {
+
+        this(level, TranspositionTable.DEFAULT_MEMORY_SIZE);
+    }
+
+    /**
+     * Creates a bidirectional solver of level's current position.
+     *
+     * @param level
+     *      Level to solve.
+     * @param tableMemorySize
+     *      Memory size of each search's transposition table in bytes,
+     *      reverse search's nodes are limited by the same size.
+     */
+    public BidirectionalSolver(Level level, long tableMemorySize) {
+
+        super(level, 2, tableMemorySize);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public SolverResult solve() {
+
+        long startTime = System.currentTimeMillis();
+        if (board == null)
+            return new SolverResult(SolverResult.Status.INVALID, null, 0, 0, 0, 0);
+
+        SearchBuffers buffers = searchBuffers.get();
+        SolverState initialState = board.createInitialState(buffers.reachable, buffers.area);
+        int[] initialMatching = heuristic.createMatching(initialState.getBoxes());
+        if (initialMatching == null)
+            return createResult(SolverResult.Status.UNSOLVABLE, null, 0, startTime);
+
+        SolverNode root = new SolverNode(initialState, null, -1, -1, 0, initialMatching);
+        if (board.isSolved(initialState.getBoxes()))
+            return createResult(SolverResult.Status.SOLVED, root, 1, startTime);
+
+        meetingNodes.set(null);
+        isExhausted = false;
+        isStopped = false;
+        transpositionTable = new TranspositionTable(board.getWordsCount(), tableMemorySize);
+        backwardTable = new TranspositionTable(board.getWordsCount(), tableMemorySize);
+        maximalPullNodesCount = (int)Math.min(Integer.MAX_VALUE - PULL_NODES_CHUNK_SIZE,
+                tableMemorySize / SolverNode.getMemorySize(board.getWordsCount(), 0));
+        pullNodes = new SolverNode[maximalPullNodesCount / PULL_NODES_CHUNK_SIZE + 1][];
+        pullNodesCount = 0;
+
+        final SolverNode pullRoot = root;
+        Thread pullThread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+
+                searchBackward(pullRoot);
+            }
+        });
+        pullThread.setDaemon(true);
+        pullThread.start();
+
+        try {
+
+            searchForward(root);
+        }
+        finally {
+
+            isStopped = true;
+            try {
+
+                pullThread.join();
+            }
+            catch (InterruptedException ex) {
+
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        SolverNode[] nodes = meetingNodes.get();
+        if (nodes != null)
+            return createResult(nodes[0], nodes[1], startTime);
+
+        return createResult(isExhausted ? SolverResult.Status.UNSOLVABLE : SolverResult.Status.CANCELLED,
+                null, getStoredStatesCount(), startTime);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Reverse search's table and nodes are added to forward search's memory.
+     */
+    @Override
+    public long getMemorySize() {
+
+        long memorySize = super.getMemorySize();
+        TranspositionTable table = backwardTable;
+        if (table != null)
+            memorySize += table.getMemorySize() + pullNodesCount * SolverNode.getMemorySize(board.getWordsCount(), 0);
+
+        return memorySize;
+    }
+
+    /**
+     * Retrieves a count of positions kept by both searches.
+     *
+     * @return
+     *      Positions' count.
+     */
+    protected long getStoredStatesCount() {
+
+        return transpositionTable.getSize() + backwardTable.getSize();
+    }
+
+    /**
+     * Finds reverse search's node of a position.
+     *
+     * @param state
+     *      Position.
+     * @return
+     *      Reverse node or {@code null} if reverse search hasn't kept the position.
+     */
+    protected SolverNode findPullNode(SolverState state) {
+
+        int pullNodeIndex = backwardTable.getPushesCount(state);
+        if (pullNodeIndex == TranspositionTable.PUSHES_COUNT_UNKNOWN)
+            return null;
+
+        return pullNodes[pullNodeIndex / PULL_NODES_CHUNK_SIZE][pullNodeIndex % PULL_NODES_CHUNK_SIZE];
+    }
+
+    /**
+     * Keeps reverse search's node if its position is new for the search.
+     *
+     * Only reverse search's thread calls the method.
+     *
+     * @param node
+     *      Reverse node.
+     * @return
+     *      {@code true} if the node has been kept and must be explored, {@code false} otherwise.
+     */
+    protected boolean keepPullNode(SolverNode node) {
+
+        int chunkIndex = pullNodesCount / PULL_NODES_CHUNK_SIZE;
+        if (pullNodes[chunkIndex] == null)
+            pullNodes[chunkIndex] = new SolverNode[PULL_NODES_CHUNK_SIZE];
+
+        pullNodes[chunkIndex][pullNodesCount % PULL_NODES_CHUNK_SIZE] = node;
+        if (!backwardTable.offer(node.getState(), pullNodesCount))
+            return false;
+
+        pullNodesCount++;
+        return true;
+    }
+
+    /**
+     * Checks whether the searches must finish.
+     *
+     * @return
+     *      {@code true} if the searches have met, one of them is exhausted
+     *      or the solver is cancelled, {@code false} otherwise.
+     */
+    protected boolean isFinished() {
+
+        return isStopped || isCancelled || isExhausted || meetingNodes.get() != null;
+    }
+
+    /**
+     * Records the meeting point if it's the first one.
+     *
+     * @param forwardNode
+     *      Forward search's node.
+     * @param backwardNode
+     *      Reverse search's node or {@code null} if the forward node is solved.
+     */
+    protected void meet(SolverNode forwardNode, SolverNode backwardNode) {
+
+        meetingNodes.compareAndSet(null, new SolverNode[] { forwardNode, backwardNode });
+    }
+
+    /**
+     * Runs forward A* search until the searches meet.
+     *
+     * @param root
+     *      Node of level's position.
+     */
+    protected void searchForward(SolverNode root) {
+
+        PriorityQueue<SolverNode> openNodes = createOpenNodes();
+        ArrayList<SolverNode> children = new ArrayList<SolverNode>();
+        openNodes.add(root);
+        transpositionTable.offer(root.getState(), 0);
+        while (!openNodes.isEmpty()) {
+
+            if (isFinished())
+                return;
+
+            SolverNode node = openNodes.poll();
+            int bestPushesCount = transpositionTable.getPushesCount(node.getState());
+            if (bestPushesCount != TranspositionTable.PUSHES_COUNT_UNKNOWN && bestPushesCount < node.getPushesCount())
+                continue;
+
+            // Reverse search may have reached the position after it has been put to open nodes
+            SolverNode pullNode = findPullNode(node.getState());
+            if (pullNode != null) {
+
+                meet(node, pullNode);
+                return;
+            }
+
+            children.clear();
+            expand(node, children);
+            expandedStatesCount.incrementAndGet();
+            for (SolverNode child : children) {
+
+                if (child.getEstimation() == 0 && board.isSolved(child.getState().getBoxes())) {
+
+                    meet(child, null);
+                    return;
+                }
+
+                pullNode = findPullNode(child.getState());
+                if (pullNode != null) {
+
+                    meet(child, pullNode);
+                    return;
+                }
+
+                openNodes.add(child);
+            }
+
+            openNodesCount = openNodes.size();
+        }
+
+        isExhausted = true;
+    }
+
+    /**
+     * Runs reverse breadth-first search pulling boxes from goals until the searches meet.
+     *
+     * Meetings are found by forward search except for level's position itself,
+     * so exhausted reverse search which hasn't reached it proves the level unsolvable.
+     *
+     * @param root
+     *      Forward search's node of level's position.
+     */
+    protected void searchBackward(SolverNode root) {
+
+        SearchBuffers buffers = searchBuffers.get();
+        ArrayDeque<SolverNode> pendingNodes = new ArrayDeque<SolverNode>();
+
+        // Solved positions differ by worker's areas separated by boxes on goals
+        long[] goalBoxes = new long[board.getWordsCount()];
+        for (int cell = 0; cell < board.getCellsCount(); cell++) {
+
+            if (board.isGoal(cell))
+                goalBoxes[cell >>> 6] |= 1L << cell;
+        }
+
+        long goalBoxesHash = board.getBoxesHash(goalBoxes);
+        long[] coveredCells = goalBoxes.clone();
+        for (int cell = 0; cell < board.getCellsCount(); cell++) {
+
+            if (SolverBoard.hasBox(coveredCells, cell))
+                continue;
+
+            int workerCell = board.findReachableCells(goalBoxes, cell, buffers.reachable, buffers.area);
+            for (int wordIndex = 0; wordIndex < coveredCells.length; wordIndex++)
+                coveredCells[wordIndex] |= buffers.reachable[wordIndex];
+
+            SolverState state = new SolverState(goalBoxes, workerCell, goalBoxesHash,
+                    goalBoxesHash ^ board.getWorkerKey(workerCell));
+            SolverNode node = new PullNode(state, null, -1, -1, 0);
+            if (pullNodesCount >= maximalPullNodesCount)
+                return;
+
+            if (keepPullNode(node))
+                pendingNodes.add(node);
+        }
+
+        while (!pendingNodes.isEmpty()) {
+
+            if (isFinished())
+                return;
+
+            SolverNode node = pendingNodes.poll();
+            SolverState state = node.getState();
+            long[] boxes = state.getBoxes();
+            long[] reachable = buffers.reachable;
+            board.findReachableCells(boxes, state.getWorkerCell(), reachable, buffers.area);
+            for (int wordIndex = 0; wordIndex < reachable.length; wordIndex++) {
+
+                long word = reachable[wordIndex];
+                while (word != 0) {
+
+                    int workerCell = (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                    for (int directionIndex = 0; directionIndex < 4; directionIndex++) {
+
+                        // The box follows the worker stepping back
+                        int boxCell = board.getNeighbour(workerCell, directionIndex);
+                        if (boxCell < 0 || !SolverBoard.hasBox(boxes, boxCell))
+                            continue;
+
+                        int pullerCell = board.getNeighbour(workerCell, directionIndex ^ 2);
+                        if (pullerCell < 0 || SolverBoard.hasBox(boxes, pullerCell))
+                            continue;
+
+                        long[] childBoxes = boxes.clone();
+                        childBoxes[boxCell >>> 6] &= ~(1L << boxCell);
+                        childBoxes[workerCell >>> 6] |= 1L << workerCell;
+                        long childBoxesHash = state.getBoxesHash() ^ board.getBoxKey(boxCell) ^ board.getBoxKey(workerCell);
+                        int childWorkerCell = board.findReachableCells(childBoxes, pullerCell, buffers.childReachable, buffers.area);
+
+                        SolverState childState = new SolverState(childBoxes, childWorkerCell, childBoxesHash,
+                                childBoxesHash ^ board.getWorkerKey(childWorkerCell));
+                        SolverNode child = new PullNode(childState, node, workerCell, directionIndex,
+                                node.getPushesCount() + 1);
+                        if (childState.equals(root.getState())) {
+
+                            meet(root, child);
+                            return;
+                        }
+
+                        // Forward search goes on alone when reverse nodes fill their memory
+                        if (pullNodesCount >= maximalPullNodesCount)
+                            return;
+
+                        if (keepPullNode(child))
+                            pendingNodes.add(child);
+                    }
+                }
+            }
+
+            expandedStatesCount.incrementAndGet();
+        }
+
+        isExhausted = true;
+    }
+
+    /**
+     * Creates search's result joining pushes of both searches.
+     *
+     * @param forwardNode
+     *      Forward node of the meeting point.
+     * @param backwardNode
+     *      Reverse node of the meeting point or {@code null}.
+     * @param startTime
+     *      Search's start time in milliseconds.
+     * @return
+     *      Search's result.
+     */
+    protected SolverResult createResult(SolverNode forwardNode, SolverNode backwardNode, long startTime) {
+
+        int forwardPushesCount = forwardNode.getPushesCount();
+        int pushesCount = forwardPushesCount + (backwardNode == null ? 0 : backwardNode.getPushesCount());
+        int[] pushBoxCells = new int[pushesCount];
+        int[] pushDirections = new int[pushesCount];
+
+        SolverNode node = forwardNode;
+        while (node.getParent() != null) {
+
+            pushBoxCells[node.getPushesCount() - 1] = node.boxCell;
+            pushDirections[node.getPushesCount() - 1] = node.directionIndex;
+            node = node.getParent();
+        }
+
+        // Reverse nodes keep pushes leading towards the solved position
+        int pushIndex = forwardPushesCount;
+        node = backwardNode;
+        while (node != null && node.getParent() != null) {
+
+            pushBoxCells[pushIndex] = node.boxCell;
+            pushDirections[pushIndex] = node.directionIndex;
+            pushIndex++;
+            node = node.getParent();
+        }
+
+        ArrayList<MoveInformation> moves = board.convertPushesToMoves(pushBoxCells, pushDirections, pushesCount);
+        return new SolverResult(moves == null ? SolverResult.Status.INVALID : SolverResult.Status.SOLVED,
+                moves, pushesCount, expandedStatesCount.get(), getStoredStatesCount(),
+                System.currentTimeMillis() - startTime);
+    }
+}
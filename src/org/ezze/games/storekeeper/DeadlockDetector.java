@@ -0,0 +1,811 @@
+package org.ezze.games.storekeeper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * This class detects positions which cannot be solved after a push of a box.
+ *
+ * Besides dead cells (see {@link SolverBoard#isDead(int)}) two kinds of deadlocks
+ * are recognized, both are checked locally around the pushed box:
+ * <ul>
+ * <li>freeze deadlock - the pushed box belongs to a cluster of boxes which can be
+ * moved neither horizontally nor vertically while some box of the cluster is not
+ * on a goal;</li>
+ * <li>PI-corral deadlock - the pushed box borders an area the worker cannot enter
+ * (a corral) and all pushes of corral's boxes available to the worker lead into the corral,
+ * then a small search over corral's boxes alone (other boxes are removed) proves that
+ * the boxes can neither leave the corral nor be placed on goals.</li>
+ * </ul>
+ * Both checks never report a deadlock for a solvable position,
+ * a corral whose search exceeds {@link #CORRAL_SEARCH_LIMIT} positions is supposed to be solvable.
+ *
+ * The detector keeps search buffers, so each thread must use its own instance.
+ *
+ * @author Dmitriy Pushkov
+ * @version 0.0.1
+ * @see Solver
+ * @see Game#isDeadlocked()
+ */
+public class DeadlockDetector {
+
+    /**
+     * Maximal count of positions explored by corral's search.
+     */
+    public static final int CORRAL_SEARCH_LIMIT = 256;
+
+    /**
+     * Maximal count of empty cells of a checked corral.
+     */
+    public static final int CORRAL_MAXIMAL_SIZE = 64;
+
+    /**
+     * Board the detector checks positions of.
+     */
+    protected SolverBoard board = null;
+
+    /**
+     * Boxes of the checked position.
+     */
+    protected long[] boxes = null;
+
+    /**
+     * Cells reachable by the worker in the checked position.
+     */
+    protected long[] reachable = null;
+
+    /**
+     * Marks of cells visited by freeze check, a cell is marked if it's equal to {@link #visitMark}.
+     */
+    protected int[] visitMarks = null;
+
+    /**
+     * Current visit mark.
+     */
+    protected int visitMark = 0;
+
+    /**
+     * Empty cells of the checked corral.
+     */
+    protected long[] corralCells = null;
+
+    /**
+     * Boxes bordering the checked corral.
+     */
+    protected long[] corralBoxes = null;
+
+    /**
+     * Reachable cells of corral's search.
+     */
+    protected long[] searchReachable = null;
+
+    /**
+     * Queue's buffer.
+     */
+    protected int[] queue = null;
+
+    /**
+     * Left bound of the checked corral's frame, see {@link #findCorralFrame()}.
+     */
+    protected int frameMinimalX = 0;
+
+    /**
+     * Top bound of the checked corral's frame.
+     */
+    protected int frameMinimalY = 0;
+
+    /**
+     * Right bound of the checked corral's frame.
+     */
+    protected int frameMaximalX = 0;
+
+    /**
+     * Bottom bound of the checked corral's frame.
+     */
+    protected int frameMaximalY = 0;
+
+    /**
+     * Indexes of connected areas out of corral's frame by cells or {@code -1} for frame's cells.
+     */
+    protected int[] outerAreas = null;
+
+    /**
+     * Frame's cells bordering outer areas grouped by areas, a cell may border several areas.
+     */
+    protected int[] exitCells = null;
+
+    /**
+     * Starts of outer areas' groups in {@link #exitCells}, the last one is the end of the groups.
+     */
+    protected int[] exitCellsStarts = null;
+
+    /**
+     * Marks of outer areas entered by the worker, an area is marked if it's equal to {@link #visitMark}.
+     */
+    protected int[] outerAreaMarks = null;
+
+    /**
+     * Row bitmasks' buffers of reachable cells' search.
+     */
+    protected SolverBoard.AreaBuffers area = null;
+
+    /**
+     * Boxes of level's position kept current by level's changed items.
+     *
+     * @see #readPosition(org.ezze.games.storekeeper.Level)
+     */
+    protected long[] levelBoxes = null;
+
+    /**
+     * Cells reachable by the worker in level's position.
+     */
+    protected long[] levelReachable = null;
+
+    /**
+     * Level {@link #levelBoxes} have been read from.
+     */
+    protected Level readLevel = null;
+
+    /**
+     * Count of level's logged changed items applied to {@link #levelBoxes}.
+     */
+    protected long changedItemsMark = -1;
+
+    /**
+     * Count of level's items' replacements {@link #levelBoxes} have been read after.
+     */
+    protected long itemsReplacementsMark = -1;
+
+    /**
+     * Creates a detector of level's current position.
+     *
+     * @param level
+     *      Playable level.
+     * @return
+     *      Detector or {@code null} if the level cannot be checked.
+     * @see SolverBoard#create(org.ezze.games.storekeeper.Level)
+     */
+    public static DeadlockDetector create(Level level) {
+
+        SolverBoard board = SolverBoard.create(level);
+        return board == null ? null : new DeadlockDetector(board);
+    }
+
+    /**
+     * Creates a detector of board's positions.
+     *
+     * @param board
+     *      Solver's board.
+     */
+    public DeadlockDetector(SolverBoard board) {
+
+        this.board = board;
+        visitMarks = new int[board.getCellsCount()];
+        corralCells = new long[board.getWordsCount()];
+        corralBoxes = new long[board.getWordsCount()];
+        searchReachable = new long[board.getWordsCount()];
+        queue = new int[board.getCellsCount()];
+        outerAreas = new int[board.getCellsCount()];
+        exitCells = new int[4 * board.getCellsCount()];
+        exitCellsStarts = new int[board.getCellsCount() + 1];
+        outerAreaMarks = new int[board.getCellsCount()];
+        area = new SolverBoard.AreaBuffers(board);
+        levelBoxes = new long[board.getWordsCount()];
+        levelReachable = new long[board.getWordsCount()];
+    }
+
+    /**
+     * Retrieves detector's board.
+     *
+     * @return
+     *      Board.
+     */
+    public SolverBoard getBoard() {
+
+        return board;
+    }
+
+    /**
+     * Checks whether a position is deadlocked after a push.
+     *
+     * @param boxes
+     *      Boxes' bit set after the push.
+     * @param reachable
+     *      Cells reachable by the worker after the push.
+     * @param boxCell
+     *      Cell of the pushed box after the push.
+     * @return
+     *      {@code true} if the position cannot be solved, {@code false} if it's unknown.
+     */
+    public boolean isDeadlocked(long[] boxes, long[] reachable, int boxCell) {
+
+        if (board.isDead(boxCell))
+            return true;
+
+        this.boxes = boxes;
+        this.reachable = reachable;
+        nextVisitMark();
+        return findFrozenBoxesCount(boxCell) > 0 || isCorralDeadlocked(boxCell);
+    }
+
+    /**
+     * Checks whether level's current position is deadlocked after a push of the box at specified square.
+     *
+     * @param level
+     *      Level the detector has been created for.
+     * @param boxX
+     *      Horizontal position of the pushed box.
+     * @param boxY
+     *      Vertical position of the pushed box.
+     * @return
+     *      {@code true} if the position cannot be solved, {@code false} if it's unknown.
+     */
+    public boolean isDeadlocked(Level level, int boxX, int boxY) {
+
+        synchronized (level) {
+
+            if (!readPosition(level))
+                return false;
+
+            int boxCell = board.getCell(boxX, boxY);
+            return boxCell >= 0 && SolverBoard.hasBox(boxes, boxCell) && isDeadlocked(boxes, reachable, boxCell);
+        }
+    }
+
+    /**
+     * Checks whether level's current position is deadlocked around any of its boxes.
+     *
+     * This method is intended for positions reached without a push
+     * such as ones restored from moves' history.
+     *
+     * @param level
+     *      Level the detector has been created for.
+     * @return
+     *      {@code true} if the position cannot be solved, {@code false} if it's unknown.
+     */
+    public boolean isDeadlocked(Level level) {
+
+        synchronized (level) {
+
+            if (!readPosition(level))
+                return false;
+
+            long[] positionBoxes = boxes;
+            for (int wordIndex = 0; wordIndex < positionBoxes.length; wordIndex++) {
+
+                long word = positionBoxes[wordIndex];
+                while (word != 0) {
+
+                    if (isDeadlocked(positionBoxes, reachable, (wordIndex << 6) + Long.numberOfTrailingZeros(word)))
+                        return true;
+
+                    word &= word - 1;
+                }
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * Reads boxes and worker's reachable area of level's current position.
+     *
+     * Boxes are updated by items logged by level's pushes since the previous read,
+     * all level's items are scanned only if the log has been overrun or items
+     * have been replaced. Worker's area is level's own one which is kept
+     * between plain moves.
+     *
+     * @param level
+     *      Level which is locked by the caller.
+     * @return
+     *      {@code true} if the position has been read, {@code false} if it doesn't fit the board.
+     */
+    protected boolean readPosition(Level level) {
+
+        if (!level.materialize())
+            return false;
+
+        int workerCell = board.getCell(level.getWorkerX(), level.getWorkerY());
+        if (workerCell < 0 || level.level.length != board.width * board.height)
+            return false;
+
+        long changedItemsCount = level.changedItemsCount;
+        if (level != readLevel || level.itemsReplacementsCount != itemsReplacementsMark ||
+                changedItemsCount - changedItemsMark > level.changedItems.length) {
+
+            Arrays.fill(levelBoxes, 0);
+            for (int cell = 0; cell < board.getCellsCount(); cell++) {
+
+                if ((level.level[board.getSquare(cell)] & Level.ITEM_CODE_BOX) != 0)
+                    levelBoxes[cell >>> 6] |= 1L << cell;
+            }
+
+            readLevel = level;
+            itemsReplacementsMark = level.itemsReplacementsCount;
+        }
+        else {
+
+            for (long changeIndex = changedItemsMark; changeIndex < changedItemsCount; changeIndex++) {
+
+                int square = level.changedItems[(int)(changeIndex % level.changedItems.length)];
+                int cell = board.cellIndexes[square];
+                if (cell < 0)
+                    continue;
+
+                if ((level.level[square] & Level.ITEM_CODE_BOX) != 0)
+                    levelBoxes[cell >>> 6] |= 1L << cell;
+                else
+                    levelBoxes[cell >>> 6] &= ~(1L << cell);
+            }
+        }
+
+        changedItemsMark = changedItemsCount;
+        boxes = levelBoxes;
+        reachable = levelReachable;
+        level.updateReachableArea();
+        board.convertReachableRows(level.reachableRows, reachable);
+        return true;
+    }
+
+    /**
+     * Starts a new freeze check.
+     */
+    protected void nextVisitMark() {
+
+        visitMark++;
+        if (visitMark == 0) {
+
+            Arrays.fill(visitMarks, 0);
+            Arrays.fill(outerAreaMarks, 0);
+            visitMark = 1;
+        }
+    }
+
+    /**
+     * Checks whether the box is frozen.
+     *
+     * A box is frozen if it's blocked along both axes. An axis is blocked if
+     * there is a wall or a box on the current check's path at either side, if
+     * both sides are dead cells or if a box at either side is frozen itself
+     * supposing the checked box to be a wall.
+     *
+     * @param cell
+     *      Box' cell.
+     * @return
+     *      {@code -1} if the box is not frozen, otherwise a count of boxes
+     *      which are not on goals among the box and boxes it's frozen by.
+     */
+    protected int findFrozenBoxesCount(int cell) {
+
+        visitMarks[cell] = visitMark;
+        int frozenBoxesCount = board.isGoal(cell) ? 0 : 1;
+        for (int directionIndex = 0; directionIndex < 2; directionIndex++) {
+
+            int firstCell = board.getNeighbour(cell, directionIndex);
+            int secondCell = board.getNeighbour(cell, directionIndex ^ 2);
+            boolean isBlocked = isWall(firstCell) || isWall(secondCell) ||
+                    (board.isDead(firstCell) && board.isDead(secondCell));
+            if (!isBlocked && SolverBoard.hasBox(boxes, firstCell)) {
+
+                int count = findFrozenBoxesCount(firstCell);
+                if (count >= 0) {
+
+                    isBlocked = true;
+                    frozenBoxesCount += count;
+                }
+            }
+
+            if (!isBlocked && SolverBoard.hasBox(boxes, secondCell)) {
+
+                int count = findFrozenBoxesCount(secondCell);
+                if (count >= 0) {
+
+                    isBlocked = true;
+                    frozenBoxesCount += count;
+                }
+            }
+
+            if (!isBlocked) {
+
+                visitMarks[cell] = 0;
+                return -1;
+            }
+        }
+
+        return frozenBoxesCount;
+    }
+
+    /**
+     * Checks whether the cell acts as a wall for freeze check.
+     *
+     * @param cell
+     *      Cell's index or {@code -1}.
+     * @return
+     *      {@code true} for a brick or a box on the current check's path.
+     */
+    protected boolean isWall(int cell) {
+
+        return cell < 0 || visitMarks[cell] == visitMark;
+    }
+
+    /**
+     * Checks whether the box borders a PI-corral which cannot be solved.
+     *
+     * @param boxCell
+     *      Cell of the pushed box.
+     * @return
+     *      {@code true} if corral's boxes cannot be solved, {@code false} otherwise.
+     */
+    protected boolean isCorralDeadlocked(int boxCell) {
+
+        Arrays.fill(corralCells, 0);
+        Arrays.fill(corralBoxes, 0);
+        int corralCellsCount = 0;
+        for (int directionIndex = 0; directionIndex < 4; directionIndex++) {
+
+            int startCell = board.getNeighbour(boxCell, directionIndex);
+            if (startCell < 0 || SolverBoard.hasBox(boxes, startCell) || SolverBoard.hasBox(reachable, startCell) ||
+                    SolverBoard.hasBox(corralCells, startCell)) {
+
+                continue;
+            }
+
+            // Collecting corral's empty cells and its boxes
+            int queueHead = 0;
+            int queueTail = 0;
+            corralCells[startCell >>> 6] |= 1L << startCell;
+            queue[queueTail++] = startCell;
+            while (queueHead < queueTail) {
+
+                int cell = queue[queueHead++];
+                if (++corralCellsCount > CORRAL_MAXIMAL_SIZE)
+                    return false;
+
+                for (int neighbourDirectionIndex = 0; neighbourDirectionIndex < 4; neighbourDirectionIndex++) {
+
+                    int neighbour = board.getNeighbour(cell, neighbourDirectionIndex);
+                    if (neighbour < 0 || SolverBoard.hasBox(corralCells, neighbour))
+                        continue;
+
+                    if (SolverBoard.hasBox(boxes, neighbour)) {
+
+                        corralBoxes[neighbour >>> 6] |= 1L << neighbour;
+                        continue;
+                    }
+
+                    if (SolverBoard.hasBox(reachable, neighbour))
+                        continue;
+
+                    corralCells[neighbour >>> 6] |= 1L << neighbour;
+                    queue[queueTail++] = neighbour;
+                }
+            }
+        }
+
+        if (corralCellsCount == 0 || !isCorralPushedInside())
+            return false;
+
+        return !isCorralSolvable();
+    }
+
+    /**
+     * Checks whether all pushes of corral's boxes available to the worker lead into the corral.
+     *
+     * @return
+     *      {@code true} if the corral is a PI-corral, {@code false} otherwise.
+     */
+    protected boolean isCorralPushedInside() {
+
+        for (int wordIndex = 0; wordIndex < corralBoxes.length; wordIndex++) {
+
+            long word = corralBoxes[wordIndex];
+            while (word != 0) {
+
+                int boxCell = (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                for (int directionIndex = 0; directionIndex < 4; directionIndex++) {
+
+                    int workerCell = board.getNeighbour(boxCell, directionIndex ^ 2);
+                    int boxDestinationCell = board.getNeighbour(boxCell, directionIndex);
+                    if (workerCell < 0 || !SolverBoard.hasBox(reachable, workerCell) || boxDestinationCell < 0 ||
+                            SolverBoard.hasBox(boxes, boxDestinationCell) || board.isDead(boxDestinationCell)) {
+
+                        continue;
+                    }
+
+                    if (!SolverBoard.hasBox(corralCells, boxDestinationCell))
+                        return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Searches pushes of corral's boxes with all other boxes removed.
+     *
+     * The corral is solvable if a box leaves corral's cells or all its boxes are placed on goals.
+     * Worker's moves are searched within corral's frame only, the worker entering
+     * an area out of the frame reaches all frame's cells bordering it.
+     *
+     * @return
+     *      {@code true} if the corral may be solved, {@code false} if it's proved to be unsolvable.
+     */
+    protected boolean isCorralSolvable() {
+
+        long[] startBoxes = corralBoxes.clone();
+        if (isOnGoals(startBoxes))
+            return true;
+
+        int startWorkerCell = -1;
+        for (int wordIndex = 0; wordIndex < reachable.length && startWorkerCell < 0; wordIndex++) {
+
+            if (reachable[wordIndex] != 0)
+                startWorkerCell = (wordIndex << 6) + Long.numberOfTrailingZeros(reachable[wordIndex]);
+        }
+
+        findCorralFrame();
+        startWorkerCell = fillCorralFrame(startBoxes, startWorkerCell, searchReachable);
+        long startHash = board.getBoxesHash(startBoxes) ^ board.getWorkerKey(startWorkerCell);
+        SolverState startState = new SolverState(startBoxes, startWorkerCell, startHash, startHash);
+        HashSet<SolverState> visitedStates = new HashSet<SolverState>();
+        ArrayList<SolverState> pendingStates = new ArrayList<SolverState>();
+        visitedStates.add(startState);
+        pendingStates.add(startState);
+        int pendingIndex = 0;
+        while (pendingIndex < pendingStates.size()) {
+
+            if (visitedStates.size() > CORRAL_SEARCH_LIMIT)
+                return true;
+
+            SolverState state = pendingStates.get(pendingIndex++);
+            long[] stateBoxes = state.getBoxes();
+            fillCorralFrame(stateBoxes, state.getWorkerCell(), searchReachable);
+            long[] stateReachable = searchReachable.clone();
+            for (int wordIndex = 0; wordIndex < stateReachable.length; wordIndex++) {
+
+                long word = stateReachable[wordIndex];
+                while (word != 0) {
+
+                    int workerCell = (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                    for (int directionIndex = 0; directionIndex < 4; directionIndex++) {
+
+                        int boxCell = board.getNeighbour(workerCell, directionIndex);
+                        if (boxCell < 0 || !SolverBoard.hasBox(stateBoxes, boxCell))
+                            continue;
+
+                        int boxDestinationCell = board.getNeighbour(boxCell, directionIndex);
+                        if (boxDestinationCell < 0 || SolverBoard.hasBox(stateBoxes, boxDestinationCell) ||
+                                board.isDead(boxDestinationCell)) {
+
+                            continue;
+                        }
+
+                        if (!SolverBoard.hasBox(corralCells, boxDestinationCell) &&
+                                !SolverBoard.hasBox(corralBoxes, boxDestinationCell)) {
+
+                            return true;
+                        }
+
+                        long[] childBoxes = stateBoxes.clone();
+                        childBoxes[boxCell >>> 6] &= ~(1L << boxCell);
+                        childBoxes[boxDestinationCell >>> 6] |= 1L << boxDestinationCell;
+                        if (isOnGoals(childBoxes))
+                            return true;
+
+                        int childWorkerCell = fillCorralFrame(childBoxes, boxCell, searchReachable);
+                        long childHash = board.getBoxesHash(childBoxes) ^ board.getWorkerKey(childWorkerCell);
+                        SolverState childState = new SolverState(childBoxes, childWorkerCell, childHash, childHash);
+                        if (visitedStates.add(childState))
+                            pendingStates.add(childState);
+                    }
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Finds the frame of corral's cells and boxes extended by one square
+     * and connected areas out of the frame.
+     *
+     * Each push of corral's boxes starts and ends within the frame
+     * unless a box leaves the corral which ends the search. Other boxes
+     * are not placed during the search, so outer areas stay the same.
+     */
+    protected void findCorralFrame() {
+
+        frameMinimalX = Integer.MAX_VALUE;
+        frameMinimalY = Integer.MAX_VALUE;
+        frameMaximalX = Integer.MIN_VALUE;
+        frameMaximalY = Integer.MIN_VALUE;
+        for (int wordIndex = 0; wordIndex < corralCells.length; wordIndex++) {
+
+            long word = corralCells[wordIndex] | corralBoxes[wordIndex];
+            while (word != 0) {
+
+                int square = board.getSquare((wordIndex << 6) + Long.numberOfTrailingZeros(word));
+                frameMinimalX = Math.min(frameMinimalX, square % board.width);
+                frameMinimalY = Math.min(frameMinimalY, square / board.width);
+                frameMaximalX = Math.max(frameMaximalX, square % board.width);
+                frameMaximalY = Math.max(frameMaximalY, square / board.width);
+                word &= word - 1;
+            }
+        }
+
+        frameMinimalX = Math.max(frameMinimalX - 1, 0);
+        frameMinimalY = Math.max(frameMinimalY - 1, 0);
+        frameMaximalX = Math.min(frameMaximalX + 1, board.width - 1);
+        frameMaximalY = Math.min(frameMaximalY + 1, board.height - 1);
+
+        int cellsCount = board.getCellsCount();
+        for (int cell = 0; cell < cellsCount; cell++)
+            outerAreas[cell] = isInCorralFrame(cell) ? -1 : Integer.MAX_VALUE;
+
+        int outerAreasCount = 0;
+        int exitCellsCount = 0;
+        for (int areaCell = 0; areaCell < cellsCount; areaCell++) {
+
+            if (outerAreas[areaCell] != Integer.MAX_VALUE)
+                continue;
+
+            exitCellsStarts[outerAreasCount] = exitCellsCount;
+            outerAreas[areaCell] = outerAreasCount;
+            queue[0] = areaCell;
+            int queueTail = 1;
+            for (int queueHead = 0; queueHead < queueTail; queueHead++) {
+
+                int cell = queue[queueHead];
+                for (int directionIndex = 0; directionIndex < 4; directionIndex++) {
+
+                    int neighbour = board.getNeighbour(cell, directionIndex);
+                    if (neighbour < 0)
+                        continue;
+
+                    if (outerAreas[neighbour] < 0)
+                        exitCells[exitCellsCount++] = neighbour;
+                    else if (outerAreas[neighbour] == Integer.MAX_VALUE) {
+
+                        outerAreas[neighbour] = outerAreasCount;
+                        queue[queueTail++] = neighbour;
+                    }
+                }
+            }
+
+            outerAreasCount++;
+        }
+
+        exitCellsStarts[outerAreasCount] = exitCellsCount;
+    }
+
+    /**
+     * Checks whether the cell lies within corral's frame.
+     *
+     * @param cell
+     *      Cell's index.
+     * @return
+     *      {@code true} if the cell is within the frame, {@code false} otherwise.
+     */
+    protected boolean isInCorralFrame(int cell) {
+
+        int square = board.getSquare(cell);
+        int x = square % board.width;
+        int y = square / board.width;
+        return x >= frameMinimalX && x <= frameMaximalX && y >= frameMinimalY && y <= frameMaximalY;
+    }
+
+    /**
+     * Finds frame's cells reachable by the worker.
+     *
+     * Cells out of the frame are never visited, the worker entering an outer area
+     * reaches all frame's cells bordering the area which are not occupied by boxes.
+     *
+     * @param stateBoxes
+     *      Boxes of corral's search position.
+     * @param workerCell
+     *      Worker's cell which may lie out of the frame.
+     * @param frameReachable
+     *      Bit set to mark reachable frame's cells in, it's cleared by the method.
+     * @return
+     *      The least reachable frame's cell which normalizes worker's position
+     *      or {@code workerCell} if no frame's cell is reachable.
+     */
+    protected int fillCorralFrame(long[] stateBoxes, int workerCell, long[] frameReachable) {
+
+        Arrays.fill(frameReachable, 0);
+        nextVisitMark();
+        int queueTail = 0;
+        if (outerAreas[workerCell] >= 0)
+            queueTail = queueExitCells(stateBoxes, outerAreas[workerCell], queueTail);
+        else {
+
+            visitMarks[workerCell] = visitMark;
+            queue[queueTail++] = workerCell;
+        }
+
+        int normalizedWorkerCell = Integer.MAX_VALUE;
+        for (int queueHead = 0; queueHead < queueTail; queueHead++) {
+
+            int cell = queue[queueHead];
+            frameReachable[cell >>> 6] |= 1L << cell;
+            normalizedWorkerCell = Math.min(normalizedWorkerCell, cell);
+            for (int directionIndex = 0; directionIndex < 4; directionIndex++) {
+
+                int neighbour = board.getNeighbour(cell, directionIndex);
+                if (neighbour < 0 || visitMarks[neighbour] == visitMark || SolverBoard.hasBox(stateBoxes, neighbour))
+                    continue;
+
+                if (outerAreas[neighbour] >= 0) {
+
+                    queueTail = queueExitCells(stateBoxes, outerAreas[neighbour], queueTail);
+                    continue;
+                }
+
+                visitMarks[neighbour] = visitMark;
+                queue[queueTail++] = neighbour;
+            }
+        }
+
+        return normalizedWorkerCell == Integer.MAX_VALUE ? workerCell : normalizedWorkerCell;
+    }
+
+    /**
+     * Queues frame's cells bordering the outer area unless the area has been entered already.
+     *
+     * @param stateBoxes
+     *      Boxes of corral's search position.
+     * @param outerArea
+     *      Index of the outer area.
+     * @param queueTail
+     *      Queue's tail.
+     * @return
+     *      New queue's tail.
+     */
+    protected int queueExitCells(long[] stateBoxes, int outerArea, int queueTail) {
+
+        if (outerAreaMarks[outerArea] == visitMark)
+            return queueTail;
+
+        outerAreaMarks[outerArea] = visitMark;
+        for (int exitIndex = exitCellsStarts[outerArea]; exitIndex < exitCellsStarts[outerArea + 1]; exitIndex++) {
+
+            int cell = exitCells[exitIndex];
+            if (visitMarks[cell] != visitMark && !SolverBoard.hasBox(stateBoxes, cell)) {
+
+                visitMarks[cell] = visitMark;
+                queue[queueTail++] = cell;
+            }
+        }
+
+        return queueTail;
+    }
+
+    /**
+     * Checks whether all boxes of the bit set are placed on goals.
+     *
+     * @param boxesSubset
+     *      Boxes' bit set.
+     * @return
+     *      {@code true} if all boxes are on goals, {@code false} otherwise.
+     */
+    protected boolean isOnGoals(long[] boxesSubset) {
+
+        for (int wordIndex = 0; wordIndex < boxesSubset.length; wordIndex++) {
+
+            long word = boxesSubset[wordIndex];
+            while (word != 0) {
+
+                if (!board.isGoal((wordIndex << 6) + Long.numberOfTrailingZeros(word)))
+                    return false;
+
+                word &= word - 1;
+            }
+        }
+
+        return true;
+    }
+}
@@ -2,15 +2,12 @@ package org.ezze.games.storekeeper;
 
 import java.awt.*;
 import java.awt.font.TextAttribute;
+import java.io.BufferedInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.text.AttributedString;
 import javax.swing.JPanel;
-import org.ezze.games.storekeeper.Level.LevelSize;
-import org.ezze.games.storekeeper.Level.MoveInformation;
-import org.ezze.games.storekeeper.Level.MoveType;
 import org.ezze.games.storekeeper.Level.WorkerDirection;
-import org.ezze.utils.io.XMLHelper;
-import org.w3c.dom.Document;
 
 /**
  * This class is the main part of the game implementing graphics,
@@ -46,6 +43,11 @@ public class Game extends JPanel implements Runnable {
      */
     public static final String TIME = "time";
     
+    /**
+     * Deadlock property, it's changed when level's position becomes unsolvable or solvable again.
+     */
+    public static final String DEADLOCK = "deadlock";
+    
     /**
      * Game's state, can be equal to one of the following values:
      * <ul>
@@ -279,6 +281,16 @@ public class Game extends JPanel implements Runnable {
      */
     protected boolean displayLevelInfo = true;
     
+    /**
+     * Detects deadlocks of current level's position.
+     */
+    protected DeadlockDetector deadlockDetector = null;
+    
+    /**
+     * Shows whether current level's position is known to be unsolvable.
+     */
+    protected volatile boolean isDeadlocked = false;
+    
     /**
      * Game's simple constructor.
      * 
@@ -425,15 +437,27 @@ public class Game extends JPanel implements Runnable {
         if (levelsSetInputStream == null)
             return false;
         
-        Document xmlLevelsSetDocument = XMLHelper.readXMLDocument(levelsSetInputStream);
-        return loadLevelsSet(xmlLevelsSetDocument, true);
+        try {
+            
+            return loadLevelsSet(new BufferedInputStream(levelsSetInputStream), true);
+        }
+        finally {
+            
+            try {
+                
+                levelsSetInputStream.close();
+            }
+            catch (IOException ex) {
+                
+            }
+        }
     }
     
     /**
      * Loads levels' set from specified source.
      * 
      * @param source
-     *      Source of levels' set. This one can be a file name or DOM document's instance.
+     *      Source of levels' set. This one can be a file name, DOM document's instance or XML stream.
      * @return 
      *      {@code true} if levels' set has been loaded, {@code false} otherwise.
      */
@@ -449,7 +473,7 @@ public class Game extends JPanel implements Runnable {
      * will be fired.
      * 
      * @param source
-     *      Source file's name or DOM document.
+     *      Source file's name, DOM document or XML stream.
      * @param isDefaultLevelsSet
      *      Shows whether levels' set specified by {@code source} is the default one.
      * @return 
@@ -531,6 +555,9 @@ public class Game extends JPanel implements Runnable {
             return false;
         }
         
+        deadlockDetector = DeadlockDetector.create(gameLevel);
+        updateDeadlock(gameLevel, -1, -1);
+        
         workerDeltaX = 0;
         workerDeltaY = 0;
         isWorkerIdle = true;
@@ -742,8 +769,11 @@ public class Game extends JPanel implements Runnable {
         
         int oldMovesCount = getLevelsSet().getCurrentLevel().getMovesCount();
         int newMovesCount = gameLevel.takeBack(takeBackMovesCount);
-        if (oldMovesCount != newMovesCount)
+        if (oldMovesCount != newMovesCount) {
+            
+            updateDeadlock(gameLevel, -1, -1);
             firePropertyChange(MOVES_COUNT, oldMovesCount, newMovesCount);
+        }
         repaint();
         return newMovesCount;
     }
@@ -796,12 +826,95 @@ public class Game extends JPanel implements Runnable {
         
         int oldMovesCount = getLevelsSet().getCurrentLevel().getMovesCount();
         int newMovesCount = gameLevel.repeatMoves(repeatMovesCount);
-        if (oldMovesCount != newMovesCount)
+        if (oldMovesCount != newMovesCount) {
+            
+            updateDeadlock(gameLevel, -1, -1);
             firePropertyChange(MOVES_COUNT, oldMovesCount, newMovesCount);
+        }
         repaint();
         return newMovesCount;
     }
     
+    /**
+     * Moves current game level's position to specified moves' count of the history.
+     * 
+     * @param targetMovesCount
+     *      Desired count of performed moves.
+     * @return 
+     *      Overall count of performed moves after the jump or {@code -1}
+     *      if the jump cannot be performed for some reasons.
+     * @see #takeBack(int)
+     * @see #repeatMoves(int)
+     * @see Level#seekToMove(int)
+     */
+    public int seekToMove(int targetMovesCount) {
+        
+        // Checking whether game is in play state
+        if (!gameState.equals(GameState.PLAY))
+            return -1;
+        
+        // Retrieving a reference to current game level
+        Level gameLevel = levelsSet.getCurrentLevel();
+        if (gameLevel == null)
+            return -1;
+        
+        // Preventing from the jump when the worker is moving
+        if (!isWorkerIdle)
+            return -1;
+        
+        int oldMovesCount = gameLevel.getMovesCount();
+        int newMovesCount = gameLevel.seekToMove(targetMovesCount);
+        if (newMovesCount >= 0 && oldMovesCount != newMovesCount) {
+            
+            updateDeadlock(gameLevel, -1, -1);
+            firePropertyChange(MOVES_COUNT, oldMovesCount, newMovesCount);
+        }
+        repaint();
+        return newMovesCount;
+    }
+    
+    /**
+     * Checks whether current level's position is known to be unsolvable.
+     * 
+     * @return 
+     *      {@code true} if the position is deadlocked, {@code false} if it's unknown.
+     * @see DeadlockDetector
+     */
+    public boolean isDeadlocked() {
+        
+        return isDeadlocked;
+    }
+    
+    /**
+     * Checks current level's position for a deadlock and fires {@link #DEADLOCK} property's change.
+     * 
+     * @param gameLevel
+     *      Current game level.
+     * @param boxX
+     *      Horizontal position of recently pushed box or {@code -1} to check around all boxes.
+     * @param boxY
+     *      Vertical position of recently pushed box or {@code -1} to check around all boxes.
+     */
+    protected void updateDeadlock(Level gameLevel, int boxX, int boxY) {
+        
+        boolean wasDeadlocked = isDeadlocked;
+        DeadlockDetector detector = deadlockDetector;
+        if (detector != null) {
+            
+            // Detector's buffers are shared by game loop and event dispatch threads
+            synchronized (detector) {
+                
+                isDeadlocked = boxX < 0 || boxY < 0 ? detector.isDeadlocked(gameLevel) :
+                        detector.isDeadlocked(gameLevel, boxX, boxY);
+            }
+        }
+        else
+            isDeadlocked = false;
+        
+        if (wasDeadlocked != isDeadlocked)
+            firePropertyChange(DEADLOCK, wasDeadlocked, isDeadlocked);
+    }
+    
     /**
      * Sets worker's horizontal shift to the left.
      * 
@@ -984,6 +1097,11 @@ public class Game extends JPanel implements Runnable {
         // Retrieving a reference to current game level
         Level gameLevel = levelsSet == null ? null : levelsSet.getCurrentLevel();
         
+        // Retrieving game level's consistent state without locking the level
+        LevelSnapshot levelSnapshot = gameLevel == null || (gameState != GameState.PLAY &&
+                gameState != GameState.COMPLETED) ? null : gameLevel.getSnapshot();
+        long levelSnapshotVersion = levelSnapshot == null ? -1 : levelSnapshot.getVersion();
+        
         if (gameState == GameState.INTRODUCTION) {
 
             // Displaying introduction image
@@ -999,41 +1117,38 @@ public class Game extends JPanel implements Runnable {
             
             setBackground(gameGraphics.getBackground());
         }
-        else if ((gameState == GameState.PLAY || gameState == GameState.COMPLETED) && gameLevel != null) {
-            
-            // Retrieving level's maximal size
-            LevelSize maximalLevelSize = gameLevel.getMaximalSize();
+        else if ((gameState == GameState.PLAY || gameState == GameState.COMPLETED) && levelSnapshot != null) {
             
             // Retrieving sprites' dimension
             Dimension spriteDimension = gameGraphics.getSpriteDimension();
             
             // Drawing game level's current state
-            for (int lineIndex = 0; lineIndex < maximalLevelSize.getHeight(); lineIndex++) {
+            for (int lineIndex = 0; lineIndex < levelSnapshot.getMaximalHeight(); lineIndex++) {
 
-                for (int columnIndex = 0; columnIndex < maximalLevelSize.getWidth(); columnIndex++) {
+                for (int columnIndex = 0; columnIndex < levelSnapshot.getMaximalWidth(); columnIndex++) {
 
-                    Character levelItem = gameLevel.getItemAt(lineIndex, columnIndex);
+                    byte levelItem = levelSnapshot.getItemCodeAt(lineIndex, columnIndex);
                     Image levelItemSprite = null;
 
-                    if (levelItem.equals(Level.LEVEL_ITEM_GOAL)) {
+                    if (levelItem == Level.ITEM_CODE_GOAL) {
 
                         levelItemSprite = gameGraphics.getGoalSprite();
                     }
-                    else if (levelItem.equals(Level.LEVEL_ITEM_BOX)) {
+                    else if (levelItem == Level.ITEM_CODE_BOX) {
 
                         if (!isWorkerIdle && boxAnimDestX == columnIndex && boxAnimDestY == lineIndex)
                             levelItemSprite = null;
                         else
                             levelItemSprite = gameGraphics.getBoxSprite();
                     }
-                    else if (levelItem.equals(Level.LEVEL_ITEM_BOX_ON_GOAL)) {
+                    else if (levelItem == (Level.ITEM_CODE_BOX | Level.ITEM_CODE_GOAL)) {
 
                         if (!isWorkerIdle && boxAnimDestX == columnIndex && boxAnimDestY == lineIndex)
                             levelItemSprite = gameGraphics.getGoalSprite();
                         else
                             levelItemSprite = gameGraphics.getBoxOnGoalSprite();
                     }
-                    else if(levelItem.equals(Level.LEVEL_ITEM_BRICK)) {
+                    else if (levelItem == Level.ITEM_CODE_BRICK) {
 
                         levelItemSprite = gameGraphics.getBrickSprite();
                     }
@@ -1049,18 +1164,17 @@ public class Game extends JPanel implements Runnable {
             if (isWorkerIdle) {
 
                 // Idle worker
-                Point workerLocation = gameLevel.getWorkerLocation();
-                Image workerSprite = gameGraphics.getActionSprite(gameLevel.getWorkerDirection(), 0);
+                Image workerSprite = gameGraphics.getActionSprite(levelSnapshot.getWorkerDirection(), 0);
                 if (workerSprite != null) {
                     
-                    g2d.drawImage(workerSprite, workerLocation.x * spriteDimension.width,
-                            workerLocation.y * spriteDimension.height, this);
+                    g2d.drawImage(workerSprite, levelSnapshot.getWorkerX() * spriteDimension.width,
+                            levelSnapshot.getWorkerY() * spriteDimension.height, this);
                 }
             }
             else {
 
                 // Moving worker
-                WorkerDirection workerDirection = gameLevel.getWorkerDirection();
+                WorkerDirection workerDirection = levelSnapshot.getWorkerDirection();
                 Image workerSprite = gameGraphics.getActionSprite(workerDirection,
                         gameGraphics.getActionSpritesCount(workerDirection) > 1 ? workerAnimPhase : 0);
                 if (workerSprite != null) {
@@ -1109,16 +1223,16 @@ public class Game extends JPanel implements Runnable {
             levelNameString.addAttribute(TextAttribute.BACKGROUND, gameGraphics.getBackground());
             g2d.drawString(levelNameString.getIterator(), infoLineHorizontalOffset, bottomInfoLineOffset);
             
-            if ((gameState == GameState.PLAY || gameState == GameState.COMPLETED) && gameLevel != null) {
+            if ((gameState == GameState.PLAY || gameState == GameState.COMPLETED) && levelSnapshot != null) {
                 
                 // Retrieving level's maximal width
-                int maximalLevelWidth = gameLevel.getMaximalWidth();
+                int maximalLevelWidth = levelSnapshot.getMaximalWidth();
                 
                 // Printing worker's moves count and pushes count
                 String movesCountTitle = "Moves:";
                 String pushesCountTitle = "Pushes:";
-                String movesCountText = String.format("%05d", gameLevel.getMovesCount());
-                String pushesCountText = String.format("%05d", gameLevel.getPushesCount());
+                String movesCountText = String.format("%05d", levelSnapshot.getMovesCount());
+                String pushesCountText = String.format("%05d", levelSnapshot.getPushesCount());
                 String countLabel = String.format(" %s %s %s %s",
                         movesCountTitle, movesCountText, pushesCountTitle, pushesCountText);
                 AttributedString countString = new AttributedString(countLabel);
@@ -1149,6 +1263,10 @@ public class Game extends JPanel implements Runnable {
             }
         }
 
+        // The snapshot rewritten while it was being drawn is drawn once again
+        if (levelSnapshot != null && !levelSnapshot.isValid(levelSnapshotVersion))
+            repaint();
+
         Toolkit.getDefaultToolkit().sync();
     }
     
@@ -1202,11 +1320,10 @@ public class Game extends JPanel implements Runnable {
                     int workerY = gameLevel.getWorkerY();
                     
                     // Attempting to move the worker by desired shift
-                    MoveInformation moveInformation = gameLevel.move(workerDeltaX, workerDeltaY);
+                    int moveCode = gameLevel.performMove(workerDeltaX, workerDeltaY);
                     
                     // Checking whether move attempt was successful
-                    if (moveInformation.getType().equals(MoveType.WORKER) ||
-                            moveInformation.getType().equals(MoveType.WORKER_AND_BOX)) {
+                    if (moveCode != Level.MOVE_CODE_NOTHING) {
 
                         // Firing level position property change
                         int movesCount = gameLevel.getMovesCount();
@@ -1235,7 +1352,7 @@ public class Game extends JPanel implements Runnable {
                         workerAnimDeltaY = Math.signum(workerAnimDestY - workerAnimCurrY) * gameGraphics.getAnimationStepShift();
 
                         // Checking whether a box is also to be animated
-                        if (moveInformation.getType().equals(MoveType.WORKER_AND_BOX)) {
+                        if ((moveCode & Level.MOVE_CODE_PUSH) != 0) {
 
                             // Box' initial position is equal to worker's destination one
                             boxAnimCurrX = workerAnimDestX;
@@ -1248,6 +1365,10 @@ public class Game extends JPanel implements Runnable {
                             // Box' animation shift is equal to worker's one
                             boxAnimDeltaX = workerAnimDeltaX;
                             boxAnimDeltaY = workerAnimDeltaY;
+                            
+                            // Warning about the deadlock immediately, further pushes cannot resolve it
+                            if (!isDeadlocked)
+                                updateDeadlock(gameLevel, boxAnimDestX, boxAnimDestY);
                         }
                         else {
 
@@ -1309,18 +1430,14 @@ public class Game extends JPanel implements Runnable {
             int repaintRectangleHeight = Math.abs(workerAnimDeltaY) > 0 ? spriteSize.height * 5 : spriteSize.height * 3;
             int repaintX = spriteSize.width * (gameLevel.getWorkerX() - (Math.abs(workerAnimDeltaX) > 0 ? 2 : 1));
             int repaintY = spriteSize.height * (gameLevel.getWorkerY() - (Math.abs(workerAnimDeltaY) > 0 ? 2 : 1));
-            Rectangle rectangle = new Rectangle(repaintX, repaintY, repaintRectangleWidth, repaintRectangleHeight);
-            repaint(rectangle);
+            repaint(repaintX, repaintY, repaintRectangleWidth, repaintRectangleHeight);
             
             // Repainting level information
             if (displayLevelInfo) {
                 
-                Rectangle topRectangle = new Rectangle(0, 0,
-                        spriteSize.width * gameLevel.getMaximalWidth(), spriteSize.height);
-                repaint(topRectangle);
-                Rectangle bottomRectangle = new Rectangle(0, spriteSize.height * (gameLevel.getSize().getHeight() - 1),
+                repaint(0, 0, spriteSize.width * gameLevel.getMaximalWidth(), spriteSize.height);
+                repaint(0, spriteSize.height * (gameLevel.getHeight() - 1),
                         spriteSize.width * gameLevel.getMaximalWidth(), spriteSize.height);
-                repaint(bottomRectangle);
             }
                     
             if (isAnimationInProgress) {
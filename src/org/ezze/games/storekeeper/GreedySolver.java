@@ -0,0 +1,58 @@
+package org.ezze.games.storekeeper;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * This class implements a greedy best-first solver.
+ *
+ * Positions are expanded in the order of estimated remaining pushes ignoring
+ * performed ones, so solutions are found quickly on open levels but
+ * usually take much more pushes than {@link Solver}'s ones.
+ *
+ * @author Dmitriy Pushkov
+ * @version 0.0.1
+ * @see SolverPortfolio
+ */
+public class GreedySolver extends Solver {
+
+    /**
+     * Orders nodes by remaining pushes' estimation, then by performed pushes.
+     */
+    protected static final Comparator<SolverNode> ESTIMATION_COMPARATOR = new Comparator<SolverNode>() {
+
+        @Override
+        public int compare(SolverNode firstNode, SolverNode secondNode) {
+
+            if (firstNode.getEstimation() != secondNode.getEstimation())
+                return firstNode.getEstimation() < secondNode.getEstimation() ? -1 : 1;
+
+            if (firstNode.getPushesCount() != secondNode.getPushesCount())
+                return firstNode.getPushesCount() < secondNode.getPushesCount() ? -1 : 1;
+
+            return 0;
+        }
+    };
+
+    /**
+     * Creates a greedy solver of level's current position.
+     *
+     * @param level
+     *      Level to solve.
+     * @param parallelism
+     *      Count of threads expanding positions.
+     * @param tableMemorySize
+     *      Memory size of the transposition table in bytes.
+     */
+    public GreedySolver(Level level, int parallelism, long tableMemorySize) {
+
+        super(level, parallelism, tableMemorySize);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected PriorityQueue<SolverNode> createOpenNodes() {
+
+        return new PriorityQueue<SolverNode>(11, ESTIMATION_COMPARATOR);
+    }
+}
@@ -0,0 +1,127 @@
+package org.ezze.games.storekeeper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * This class implements an IDA* solver.
+ *
+ * Depth-first searches are repeated with a growing bound of total estimation,
+ * so only the current path is kept in memory. The transposition table is
+ * allocated once and cleared before each iteration, it cuts positions already
+ * reached within the iteration with the same or fewer pushes. Solutions are
+ * optimal by pushes unless the table forgets positions.
+ *
+ * @author Dmitriy Pushkov
+ * @version 0.0.1
+ * @see SolverPortfolio
+ */
+public class IterativeDeepeningSolver extends Solver {
+
+    /**
+     * The least total estimation exceeding the bound of the running iteration.
+     */
+    protected int nextBound = Integer.MAX_VALUE;
+
+    /**
+     * Creates an IDA* solver of level's current position.
+     *
+     * @param level
+     *      Level to solve.
+     * @param tableMemorySize
+     *      Memory size of the transposition table in bytes.
+     */
+    public IterativeDeepeningSolver(Level level, long tableMemorySize) {
+
+        super(level, 1, tableMemorySize);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public SolverResult solve() {
+
+        long startTime = System.currentTimeMillis();
+        if (board == null)
+            return new SolverResult(SolverResult.Status.INVALID, null, 0, 0, 0, 0);
+
+        SearchBuffers buffers = searchBuffers.get();
+        SolverState initialState = board.createInitialState(buffers.reachable, buffers.area);
+        int[] initialMatching = heuristic.createMatching(initialState.getBoxes());
+        if (initialMatching == null)
+            return createResult(SolverResult.Status.UNSOLVABLE, null, 0, startTime);
+
+        SolverNode root = new SolverNode(initialState, null, -1, -1, 0, initialMatching);
+        if (board.isSolved(initialState.getBoxes()))
+            return createResult(SolverResult.Status.SOLVED, root, 1, startTime);
+
+        int bound = root.getTotalEstimation();
+        transpositionTable = new TranspositionTable(board.getWordsCount(), tableMemorySize);
+        while (!isCancelled) {
+
+            transpositionTable.clear();
+            transpositionTable.offer(initialState, 0);
+            nextBound = Integer.MAX_VALUE;
+            SolverNode solution = search(root, bound);
+            if (solution != null)
+                return createResult(SolverResult.Status.SOLVED, solution, transpositionTable.getSize(), startTime);
+
+            if (nextBound == Integer.MAX_VALUE && !isCancelled)
+                return createResult(SolverResult.Status.UNSOLVABLE, null, transpositionTable.getSize(), startTime);
+
+            bound = nextBound;
+        }
+
+        return createResult(SolverResult.Status.CANCELLED, null, transpositionTable.getSize(), startTime);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Only the current path is kept besides the transposition table.
+     */
+    @Override
+    public long getMemorySize() {
+
+        TranspositionTable table = transpositionTable;
+        return table == null ? 0 : table.getMemorySize();
+    }
+
+    /**
+     * Searches depth-first below a node within the bound.
+     *
+     * @param node
+     *      Node to expand.
+     * @param bound
+     *      Iteration's bound of total estimation.
+     * @return
+     *      Solution's node or {@code null} if the solution is not found within the bound.
+     */
+    protected SolverNode search(SolverNode node, int bound) {
+
+        if (isCancelled)
+            return null;
+
+        ArrayList<SolverNode> children = new ArrayList<SolverNode>();
+        expand(node, children);
+        expandedStatesCount.incrementAndGet();
+        Collections.sort(children);
+        for (SolverNode child : children) {
+
+            // Children are sorted, so the rest ones exceed the bound too
+            if (child.getTotalEstimation() > bound) {
+
+                nextBound = Math.min(nextBound, child.getTotalEstimation());
+                break;
+            }
+
+            if (child.getEstimation() == 0 && board.isSolved(child.getState().getBoxes()))
+                return child;
+
+            SolverNode solution = search(child, bound);
+            if (solution != null)
+                return solution;
+        }
+
+        return null;
+    }
+}
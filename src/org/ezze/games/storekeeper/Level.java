@@ -1,8 +1,13 @@
 package org.ezze.games.storekeeper;
 
 import java.awt.Point;
+import java.lang.ref.SoftReference;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
 
 /**
  * This class stores an inner representation of storekeeper's level.
@@ -126,7 +131,156 @@ public class Level {
         allowedLevelItems.add(LEVEL_ITEM_BOX_ON_GOAL);
         allowedLevelItems.add(LEVEL_ITEM_SPACE);
     }
+
+    /**
+     * Code of empty space's item.
+     *
+     * Level's items are stored as bit sets of {@link #ITEM_CODE_BRICK}, {@link #ITEM_CODE_GOAL},
+     * {@link #ITEM_CODE_BOX} and {@link #ITEM_CODE_WORKER} flags, so a box on goal
+     * is represented by {@code ITEM_CODE_BOX | ITEM_CODE_GOAL} code.
+     */
+    public static final byte ITEM_CODE_SPACE = 0x00;
+
+    /**
+     * Code's bit of brick's item.
+     */
+    public static final byte ITEM_CODE_BRICK = 0x01;
+
+    /**
+     * Code's bit of goal's item.
+     */
+    public static final byte ITEM_CODE_GOAL = 0x02;
+
+    /**
+     * Code's bit of box' item.
+     */
+    public static final byte ITEM_CODE_BOX = 0x04;
+
+    /**
+     * Code's bit of worker's item.
+     *
+     * This one is used by level's initial state only while current worker's
+     * location is kept by {@link #workerX} and {@link #workerY}.
+     */
+    public static final byte ITEM_CODE_WORKER = 0x08;
+
+    /**
+     * Maps item codes to item characters, {@code null} stands for an invalid code.
+     */
+    protected static final Character[] itemCharacters = new Character[16];
+    static {
+
+        itemCharacters[ITEM_CODE_SPACE] = LEVEL_ITEM_SPACE;
+        itemCharacters[ITEM_CODE_BRICK] = LEVEL_ITEM_BRICK;
+        itemCharacters[ITEM_CODE_GOAL] = LEVEL_ITEM_GOAL;
+        itemCharacters[ITEM_CODE_BOX] = LEVEL_ITEM_BOX;
+        itemCharacters[ITEM_CODE_BOX | ITEM_CODE_GOAL] = LEVEL_ITEM_BOX_ON_GOAL;
+        itemCharacters[ITEM_CODE_WORKER] = LEVEL_ITEM_WORKER;
+        itemCharacters[ITEM_CODE_WORKER | ITEM_CODE_GOAL] = LEVEL_ITEM_WORKER_ON_GOAL;
+    }
+
+    /**
+     * Retrieves a code of specified item character.
+     *
+     * @param levelItem
+     *      Item character.
+     * @return
+     *      Item's code or {@code -1} if character is not allowed.
+     * @see #getItemCharacter(byte)
+     */
+    public static byte getItemCode(char levelItem) {
+
+        switch (levelItem) {
+
+            case ' ':
+                return ITEM_CODE_SPACE;
+            case '#':
+                return ITEM_CODE_BRICK;
+            case '.':
+                return ITEM_CODE_GOAL;
+            case '$':
+                return ITEM_CODE_BOX;
+            case '*':
+                return ITEM_CODE_BOX | ITEM_CODE_GOAL;
+            case '@':
+                return ITEM_CODE_WORKER;
+            case '+':
+                return ITEM_CODE_WORKER | ITEM_CODE_GOAL;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Retrieves item character of specified item code.
+     *
+     * @param itemCode
+     *      Item's code.
+     * @return
+     *      Item character or {@code null} if code is invalid.
+     * @see #getItemCode(char)
+     */
+    public static Character getItemCharacter(byte itemCode) {
+
+        if (itemCode < 0 || itemCode >= itemCharacters.length)
+            return null;
+
+        return itemCharacters[itemCode];
+    }
+
+    /**
+     * Count of moves between two adjacent checkpoints of moves' history.
+     * 
+     * This one limits a count of moves to replay by {@link #seekToMove(int)}.
+     */
+    public static final int CHECKPOINT_INTERVAL = 256;
+    
+    /**
+     * Count of snapshots rewritten in turn by published level's changes.
+     * 
+     * A reader of a snapshot is not disturbed until this count minus one
+     * further changes have been published.
+     */
+    protected static final int SNAPSHOTS_COUNT = 3;
     
+    /**
+     * Size of the log of changed items.
+     * 
+     * A snapshot missing more logged changes copies all level's items.
+     */
+    protected static final int CHANGED_ITEMS_LOG_SIZE = 64;
+
+    /**
+     * Seed of random numbers' generator producing Zobrist keys.
+     *
+     * The seed is fixed to keep state hashes comparable between sessions.
+     */
+    protected static final long ZOBRIST_SEED = 0x5EED50C0BA11L;
+
+    /**
+     * Zobrist keys of a box placed at level's cells.
+     *
+     * A key of line {@code y} and column {@code x} of the level's real (not centered)
+     * representation is located at {@code y * MAXIMAL_LEVEL_WIDTH + x} index.
+     *
+     * @see #getStateHash()
+     */
+    protected static final long[] zobristBoxKeys = new long[MAXIMAL_LEVEL_WIDTH * MAXIMAL_LEVEL_HEIGHT];
+
+    /**
+     * Zobrist keys of the worker placed at level's cells indexed as {@link #zobristBoxKeys}.
+     */
+    protected static final long[] zobristWorkerKeys = new long[MAXIMAL_LEVEL_WIDTH * MAXIMAL_LEVEL_HEIGHT];
+    static {
+
+        Random random = new Random(ZOBRIST_SEED);
+        for (int cellIndex = 0; cellIndex < zobristBoxKeys.length; cellIndex++) {
+
+            zobristBoxKeys[cellIndex] = random.nextLong();
+            zobristWorkerKeys[cellIndex] = random.nextLong();
+        }
+    }
+
     /**
      * Enumerates level's possible states.
      */
@@ -158,6 +312,61 @@ public class Level {
         PLAYABLE
     }
     
+    /**
+     * Code of a move meaning that nothing has been changed after the attempt to move.
+     *
+     * Other move codes are built as an index of move's direction in {@link #moveDirections}
+     * combined with {@link #MOVE_CODE_PUSH} flag if the worker has moved with a box.
+     *
+     * @see #performMove(int, int)
+     * @see MoveInformation#valueOf(int)
+     */
+    public static final int MOVE_CODE_NOTHING = -1;
+
+    /**
+     * Move code's flag showing that the worker has moved with a box.
+     */
+    public static final int MOVE_CODE_PUSH = 0x04;
+
+    /**
+     * Mask extracting direction's index from a move code.
+     */
+    public static final int MOVE_CODE_DIRECTION_MASK = 0x03;
+
+    /**
+     * Move code's flag showing that the box has been pushed onto a dead square.
+     *
+     * This flag is returned by {@link #performMove(int, int, boolean)} in
+     * {@link DeadSquarePushPolicy#FLAG} mode only and it's never stored in moves' history.
+     *
+     * @see #isDeadSquare(int, int)
+     */
+    public static final int MOVE_CODE_DEAD_PUSH = 0x08;
+
+    /**
+     * Describes how pushes of boxes onto dead squares are treated.
+     *
+     * @see #setDeadSquarePushPolicy(org.ezze.games.storekeeper.Level.DeadSquarePushPolicy)
+     * @see #isDeadSquare(int, int)
+     */
+    public static enum DeadSquarePushPolicy {
+
+        /**
+         * Pushes onto dead squares are allowed as any other pushes.
+         */
+        ALLOW,
+
+        /**
+         * Pushes onto dead squares are allowed but marked by {@link #MOVE_CODE_DEAD_PUSH} flag.
+         */
+        FLAG,
+
+        /**
+         * Pushes onto dead squares are refused.
+         */
+        REFUSE
+    }
+
     /**
      * Represents a direction of a move attempted by {@link #move(int, int)} method.
      */
@@ -190,6 +399,45 @@ public class Level {
          */
         LEFT
     }
+
+    /**
+     * Move directions indexed as they are encoded in move codes.
+     *
+     * @see #MOVE_CODE_DIRECTION_MASK
+     */
+    protected static final Direction[] moveDirections = new Direction[] {
+
+        Direction.UP,
+        Direction.RIGHT,
+        Direction.DOWN,
+        Direction.LEFT
+    };
+
+    /**
+     * Worker's horizontal shifts indexed as {@link #moveDirections}.
+     */
+    protected static final int[] moveDeltasX = new int[] { 0, 1, 0, -1 };
+
+    /**
+     * Worker's vertical shifts indexed as {@link #moveDirections}.
+     */
+    protected static final int[] moveDeltasY = new int[] { -1, 0, 1, 0 };
+
+    /**
+     * Retrieves an index of specified direction within {@link #moveDirections}.
+     *
+     * @param direction
+     *      Move's direction.
+     * @return
+     *      Direction's index or {@code -1} for {@link Direction#NONE}.
+     */
+    protected static int getDirectionIndex(Direction direction) {
+
+        if (direction == null || direction == Direction.NONE)
+            return -1;
+
+        return direction.ordinal() - Direction.UP.ordinal();
+    }
     
     /**
      * Represents a type of a move attempted by {@link #move(int, int)} method.
@@ -255,6 +503,91 @@ public class Level {
             this.moveType = moveType;
             this.moveDirection = moveDirection;
         }
+
+        /**
+         * Shared information of an empty move.
+         */
+        private static final MoveInformation NOTHING = new MoveInformation();
+
+        /**
+         * Shared informations of performed moves indexed by their move codes.
+         */
+        private static final MoveInformation[] interned = new MoveInformation[MOVE_CODE_PUSH << 1];
+        static {
+
+            for (int moveCode = 0; moveCode < interned.length; moveCode++) {
+
+                interned[moveCode] = new MoveInformation((moveCode & MOVE_CODE_PUSH) != 0 ? MoveType.WORKER_AND_BOX : MoveType.WORKER,
+                        moveDirections[moveCode & MOVE_CODE_DIRECTION_MASK]);
+            }
+        }
+
+        /**
+         * Retrieves shared information of a move with specified code.
+         *
+         * Returned instances must not be modified since they are reused
+         * by all levels.
+         *
+         * @param moveCode
+         *      Move's code.
+         * @return
+         *      Move's information.
+         * @see #getCode()
+         */
+        public static MoveInformation valueOf(int moveCode) {
+
+            if (moveCode < 0 || moveCode >= interned.length)
+                return NOTHING;
+
+            return interned[moveCode];
+        }
+
+        /**
+         * Retrieves shared information of a move with specified type and direction.
+         *
+         * @param moveType
+         *      Performed move's type.
+         * @param moveDirection
+         *      Performed move's direction.
+         * @return
+         *      Move's information.
+         * @see #valueOf(int)
+         */
+        public static MoveInformation valueOf(MoveType moveType, Direction moveDirection) {
+
+            return valueOf(getCode(moveType, moveDirection));
+        }
+
+        /**
+         * Retrieves a code of a move with specified type and direction.
+         *
+         * @param moveType
+         *      Performed move's type.
+         * @param moveDirection
+         *      Performed move's direction.
+         * @return
+         *      Move's code or {@link #MOVE_CODE_NOTHING}.
+         */
+        public static int getCode(MoveType moveType, Direction moveDirection) {
+
+            int directionIndex = getDirectionIndex(moveDirection);
+            if (moveType == null || moveType == MoveType.NOTHING || directionIndex < 0)
+                return MOVE_CODE_NOTHING;
+
+            return moveType == MoveType.WORKER_AND_BOX ? directionIndex | MOVE_CODE_PUSH : directionIndex;
+        }
+
+        /**
+         * Retrieves performed move's code.
+         *
+         * @return
+         *      Move's code.
+         * @see #valueOf(int)
+         */
+        public int getCode() {
+
+            return getCode(moveType, moveDirection);
+        }
         
         /**
          * Retrieves performed move's type.
@@ -287,10 +620,15 @@ public class Level {
      */
     public static class WorkerDirection {
         
+        /**
+         * Worker's real direction when no moves have been performed yet.
+         */
+        public static final Direction DEFAULT_DIRECTION = Direction.LEFT;
+
         /**
          * Describes worker's horizontal direction.
          */
-        protected Direction horizontal = Direction.LEFT;
+        protected Direction horizontal = DEFAULT_DIRECTION;
         
         /**
          * Describes worker's vertical direction.
@@ -398,6 +736,45 @@ public class Level {
         }
     }
     
+    /**
+     * This class keeps level's position after a number of moves
+     * to be able to jump over moves' history quickly.
+     * 
+     * @see #seekToMove(int)
+     */
+    protected static class Checkpoint {
+        
+        /**
+         * Level's items.
+         */
+        protected byte[] items = null;
+        
+        /**
+         * Worker's horizontal position.
+         */
+        protected int workerX = 0;
+        
+        /**
+         * Worker's vertical position.
+         */
+        protected int workerY = 0;
+        
+        /**
+         * Pushes count.
+         */
+        protected int pushesCount = 0;
+        
+        /**
+         * Boxes count placed on the goals.
+         */
+        protected int boxesOnGoalsCount = 0;
+        
+        /**
+         * Zobrist hash of boxes' positions.
+         */
+        protected long boxesHash = 0;
+    }
+    
     /**
      * A instance to represent level's size (actual or maximal).
      */
@@ -463,16 +840,51 @@ public class Level {
     protected LevelState levelState = LevelState.EMPTY;
     
     /**
-     * Stores level's initial state characters.
+     * Stores level's initial state item codes row by row.
+     *
+     * An item of line {@code y} and column {@code x} is located
+     * at {@code y * size.getWidth() + x} index.
      */
-    protected ArrayList<ArrayList<Character>> levelInitial = null;
-    
+    protected byte[] levelInitial = null;
+
     /**
-     * Stores level's current state with empty lines and columns appended
+     * Stores level's current state item codes with empty lines and columns appended
      * to make level's size equal to {@link #maximalSize}.
+     *
+     * An item of line {@code y} and column {@code x} is located
+     * at {@code y * maximalSize.getWidth() + x} index.
      */
-    protected ArrayList<ArrayList<Character>> level = null;
-    
+    protected byte[] level = null;
+
+    /**
+     * Stores level's initial state item codes laid out as {@link #level}
+     * without the worker.
+     *
+     * This one is built once for current maximal level's size and copied
+     * to {@link #level} on each restart, it's never modified.
+     */
+    protected byte[] levelTemplate = null;
+
+    /**
+     * Keeps a width of maximal level's size {@link #levelTemplate} has been built for.
+     */
+    protected int levelTemplateWidth = 0;
+
+    /**
+     * Keeps released {@link #level} instance to be reused by the next materialization.
+     */
+    protected byte[] levelBuffer = null;
+
+    /**
+     * Keeps a count of empty columns prepended to center the level horizontally.
+     */
+    protected int levelOffsetX = 0;
+
+    /**
+     * Keeps a count of empty lines prepended to center the level vertically.
+     */
+    protected int levelOffsetY = 0;
+
     /**
      * Keeps level's information.
      */
@@ -503,6 +915,13 @@ public class Level {
      */
     protected int boxesOnGoalsCount = 0;
     
+    /**
+     * Keeps Zobrist hash of current boxes' positions.
+     * 
+     * @see #getStateHash()
+     */
+    protected long boxesHash = 0;
+    
     /**
      * Keeps current worker position's horizontal index within the range [0; {@link #getMaximalWidth()} - 1].
      */
@@ -531,66 +950,211 @@ public class Level {
     /**
      * Keeps an information about performed moves.
      */
-    protected ArrayList<MoveInformation> movesHistory = new ArrayList<MoveInformation>();
+    protected MovesHistory movesHistory = new MovesHistory();
     
     /**
-     * Level's default constructor.
-     * 
-     * @param levelLines
-     *      Lines to initialize a level from.
-     * @param levelInfo 
-     *      Level's information.
-     * @see #Level(java.util.ArrayList, java.util.HashMap)
+     * Keeps level's positions after every {@link #CHECKPOINT_INTERVAL} moves of history,
+     * a checkpoint with index {@code i} corresponds to {@code i * CHECKPOINT_INTERVAL} moves.
      */
-    public Level(ArrayList<String> levelLines, HashMap<String, Object> levelInfo) {
-        
-        // Checking whether level lines are specified
-        if (levelLines == null || levelLines.size() < 1)
-            return;
-        
-        levelInitial = new ArrayList<ArrayList<Character>>();
-        int levelLineIndex = 0;
-        
-        int levelWidth = 0;
-        int levelHeight = levelLines.size();
-        
-        while (levelLineIndex < levelLines.size()) {
-            
-            String levelLine = levelLines.get(levelLineIndex);
-            
-            if (levelWidth < levelLine.length())
-                levelWidth = levelLine.length();
-                
-            ArrayList<Character> levelRow = new ArrayList<Character>();
-            for (int levelLineCharacterIndex = 0; levelLineCharacterIndex < levelLine.length(); levelLineCharacterIndex++) {
-                
-                Character levelLineCharacter = levelLine.charAt(levelLineCharacterIndex);
-                if (allowedLevelItems.contains(levelLineCharacter))
-                    levelRow.add(levelLineCharacter);
-                else
-                    levelRow.add(LEVEL_ITEM_SPACE);
-            }
-            levelInitial.add(levelRow);
-            
-            levelLineIndex++;
-        }
-        
-        this.levelInfo = levelInfo;
-        
-        // Defining level's size
-        size = new LevelSize(levelWidth, levelHeight);
-    }
+    protected ArrayList<Checkpoint> checkpoints = new ArrayList<Checkpoint>();
     
     /**
-     * Retrieves level's size.
-     * 
-     * @return
-     *      Level's size.
+     * Keeps checkpoints followed by level's position released by {@link #evict()}.
      */
-    public LevelSize getSize() {
-        
-        return new LevelSize(size.getWidth(), size.getHeight());
-    }
+    protected SoftReference<ArrayList<Checkpoint>> evictedCheckpoints = null;
+    
+    /**
+     * Keeps discarded checkpoints whose items are reused by {@link #addCheckpoint()}.
+     */
+    protected ArrayList<Checkpoint> spareCheckpoints = new ArrayList<Checkpoint>();
+    
+    /**
+     * Marks level's dead squares, i.e. squares a box can never be pushed from to any goal.
+     * 
+     * A bit of line {@code y} and column {@code x} of the level's real (not centered)
+     * representation has {@code y * size.getWidth() + x} index. This one depends
+     * on level's bricks and goals only, so it's computed once.
+     * 
+     * @see #isDeadSquare(int, int)
+     */
+    protected BitSet deadSquares = null;
+    
+    /**
+     * Keeps push distances from level's squares to each goal.
+     * 
+     * They depend on level's bricks and goals only, so they survive level's eviction,
+     * but they're softly referenced to be dropped when memory is required:
+     * they're found again on demand, reading them from disk cache if it's enabled.
+     * 
+     * @see #getPushDistances()
+     * @see PushDistances#setCacheDirectory(java.io.File)
+     */
+    protected volatile SoftReference<PushDistances> pushDistances = null;
+    
+    /**
+     * Defines how pushes of boxes onto dead squares are treated.
+     */
+    protected DeadSquarePushPolicy deadSquarePushPolicy = DeadSquarePushPolicy.ALLOW;
+    
+    /**
+     * Keeps a count of {@code long} words representing one line of level's bitmasks.
+     * 
+     * @see #obstacleRows
+     * @see #reachableRows
+     */
+    protected int rowWordsCount = 0;
+    
+    /**
+     * Marks bricks and boxes of the level line by line, bit {@code x % 64} of word
+     * {@code y * rowWordsCount + x / 64} corresponds to line {@code y} and column {@code x}.
+     * 
+     * This one is updated by pushes and it's {@code null} if it must be rebuilt
+     * from level's items.
+     */
+    protected long[] obstacleRows = null;
+    
+    /**
+     * Marks squares reachable by the worker without pushing boxes
+     * laid out as {@link #obstacleRows}.
+     */
+    protected long[] reachableRows = null;
+    
+    /**
+     * Shows whether {@link #reachableRows} represents current worker's reachable area.
+     * 
+     * Plain worker's moves keep the area while pushes invalidate it.
+     */
+    protected boolean isReachableAreaValid = false;
+    
+    /**
+     * Keeps horizontal position of the top left square of worker's reachable area.
+     */
+    protected int normalizedWorkerX = 0;
+    
+    /**
+     * Keeps vertical position of the top left square of worker's reachable area.
+     */
+    protected int normalizedWorkerY = 0;
+    
+    /**
+     * Keeps recently published level's snapshot.
+     * 
+     * @see #getSnapshot()
+     * @see #publishSnapshot()
+     */
+    protected volatile LevelSnapshot snapshot = null;
+    
+    /**
+     * Traces a version of recently published snapshot.
+     */
+    protected long snapshotVersion = 0;
+    
+    /**
+     * Keeps snapshots rewritten in turn by {@link #publishSnapshot()}
+     * or {@code null} if they are not allocated yet.
+     */
+    protected LevelSnapshot[] snapshots = null;
+    
+    /**
+     * Keeps an index of recently published snapshot within {@link #snapshots}.
+     */
+    protected int snapshotIndex = 0;
+    
+    /**
+     * Circular log of indexes of level's items changed by moves
+     * which are copied to snapshots being rewritten and to deadlock detector's boxes.
+     * 
+     * @see DeadlockDetector#readPosition(org.ezze.games.storekeeper.Level)
+     */
+    protected final int[] changedItems = new int[CHANGED_ITEMS_LOG_SIZE];
+    
+    /**
+     * Traces a count of items logged to {@link #changedItems}.
+     */
+    protected long changedItemsCount = 0;
+    
+    /**
+     * Traces a count of replacements of level's items without logging the changes.
+     * 
+     * A reader following {@link #changedItems} must rescan all items after it changes.
+     */
+    protected long itemsReplacementsCount = 0;
+    
+    /**
+     * Level's default constructor.
+     * 
+     * @param levelLines
+     *      Lines to initialize a level from.
+     * @param levelInfo 
+     *      Level's information.
+     * @see #Level(java.util.ArrayList, java.util.HashMap)
+     */
+    public Level(ArrayList<String> levelLines, HashMap<String, Object> levelInfo) {
+        
+        // Checking whether level lines are specified
+        if (levelLines == null || levelLines.size() < 1)
+            return;
+        
+        int levelWidth = 0;
+        int levelHeight = levelLines.size();
+        for (String levelLine : levelLines) {
+
+            if (levelWidth < levelLine.length())
+                levelWidth = levelLine.length();
+        }
+
+        // Missing items of short lines are left as empty space
+        levelInitial = new byte[levelWidth * levelHeight];
+        int levelLineIndex = 0;
+        while (levelLineIndex < levelHeight) {
+
+            String levelLine = levelLines.get(levelLineIndex);
+            int levelRowOffset = levelLineIndex * levelWidth;
+            for (int levelLineCharacterIndex = 0; levelLineCharacterIndex < levelLine.length(); levelLineCharacterIndex++) {
+
+                byte itemCode = getItemCode(levelLine.charAt(levelLineCharacterIndex));
+                levelInitial[levelRowOffset + levelLineCharacterIndex] = itemCode < 0 ? ITEM_CODE_SPACE : itemCode;
+            }
+
+            levelLineIndex++;
+        }
+
+        this.levelInfo = levelInfo;
+        
+        // Defining level's size
+        size = new LevelSize(levelWidth, levelHeight);
+    }
+
+    /**
+     * Creates a level from its item codes.
+     *
+     * @param levelInitial
+     *      Item codes of level's rows, {@code levelWidth * levelHeight} codes.
+     * @param levelWidth
+     *      Level's width.
+     * @param levelHeight
+     *      Level's height.
+     * @param levelInfo
+     *      Level's information.
+     * @see #Level(java.util.ArrayList, java.util.HashMap)
+     */
+    public Level(byte[] levelInitial, int levelWidth, int levelHeight, HashMap<String, Object> levelInfo) {
+
+        this.levelInitial = levelInitial;
+        this.levelInfo = levelInfo;
+        size = new LevelSize(levelWidth, levelHeight);
+    }
+
+    /**
+     * Retrieves level's size.
+     * 
+     * @return
+     *      Level's size.
+     */
+    public LevelSize getSize() {
+        
+        return new LevelSize(size.getWidth(), size.getHeight());
+    }
     
     /**
      * Retrieves level's width.
@@ -688,238 +1252,497 @@ public class Level {
     /**
      * Completes level's initialization.
      * 
-     * This method checks whether level's initial source {@link #levelInitial}
-     * is valid, consists of only one worker and equal count of goals and boxes.
-     * After that it adds additional empty horizontal and vertical lines to
-     * center the level in a box of {@link #getMaximalSize()} size.
+     * This method validates the level by {@link #prepare(org.ezze.games.storekeeper.Level.LevelSize)}
+     * and materializes its playable representation centered in a box
+     * of {@link #getMaximalSize()} size.
      * 
      * @param maximalSize
      *      Specifies level's bounds.
      * @return
      *      {@code true} if level has been initialized successfully, {@code false otherwise}.
      * @see #initialize()
+     * @see #prepare(org.ezze.games.storekeeper.Level.LevelSize)
      */
     synchronized public final boolean initialize(LevelSize maximalSize) {
 
+        if (!prepare(maximalSize))
+            return false;
+
+        return materialize();
+    }
+
+    /**
+     * Validates the level without materializing its playable representation.
+     * 
+     * This method checks whether level's initial source {@link #levelInitial}
+     * is valid, consists of only one worker and equal count of goals and boxes,
+     * and fits the box of {@code maximalSize} size. Level's state, counters
+     * and worker's location are defined by a single pass over level's items
+     * while level's items to play are allocated by {@link #materialize()}
+     * when they are accessed first time.
+     * 
+     * @param maximalSize
+     *      Specifies level's bounds.
+     * @return
+     *      {@code true} if level is playable, {@code false otherwise}.
+     * @see #initialize(org.ezze.games.storekeeper.Level.LevelSize)
+     * @see #materialize()
+     */
+    synchronized public final boolean prepare(LevelSize maximalSize) {
+
         levelState = LevelState.EMPTY;
         
-        goalsCount = 0;
-        boxesCount = 0;
-        boxesOnGoalsCount = 0;
-        int workersCount = 0;
-        workerX = 0;
-        workerY = 0;
+        if (level != null)
+            levelBuffer = level;
+        level = null;
+        evictedCheckpoints = null;
         movesCount = 0;
-        pushesCount = 0;
-        movesHistory = new ArrayList<MoveInformation>();
+        movesHistory.clear();
+        checkpoints.clear();
+        spareCheckpoints.clear();
+        snapshot = null;
+        snapshots = null;
+        obstacleRows = null;
+        isReachableAreaValid = false;
         
         this.maximalSize = maximalSize == null ? new LevelSize(DEFAULT_LEVEL_WIDTH, DEFAULT_LEVEL_HEIGHT) : maximalSize;
         
-        if (levelInitial == null || levelInitial.isEmpty())
-            return false;        
-        
-        int maxLineWidth = 0;
-        int lineIndex = 0;
-        while (lineIndex < levelInitial.size()) {
-
-            ArrayList<Character> line = levelInitial.get(lineIndex);
-            if (line.size() > maxLineWidth)
-                maxLineWidth = line.size();
-            for (int lineCharacterIndex = 0; lineCharacterIndex < line.size(); lineCharacterIndex++) {
-
-                Character lineCharacter = line.get(lineCharacterIndex);
-                if (lineCharacter.equals(LEVEL_ITEM_WORKER)) {
-
-                    workersCount++;
-                    workerX = lineCharacterIndex;
-                    workerY = lineIndex;
-                }
-                else if (lineCharacter.equals(LEVEL_ITEM_WORKER_ON_GOAL)) {
-
-                    workersCount++;
-                    goalsCount++;
-                    workerX = lineCharacterIndex;
-                    workerY = lineIndex;
-                }
-                else if (lineCharacter.equals(LEVEL_ITEM_GOAL)) {
-
-                    goalsCount++;
-                }
-                else if(lineCharacter.equals(LEVEL_ITEM_BOX)) {
-
-                    boxesCount++;
-                }
-                else if (lineCharacter.equals(LEVEL_ITEM_BOX_ON_GOAL)) {
-
-                    boxesCount++;
-                    goalsCount++;
-                    boxesOnGoalsCount++;
-                }
-            }
+        if (levelInitial == null || levelInitial.length == 0)
+            return false;
 
-            lineIndex++;
-        }        
+        // Centering the level in a box of maximal level's size
+        int levelWidth = size.getWidth();
+        int levelHeight = size.getHeight();
+        levelOffsetX = (this.maximalSize.getWidth() - levelWidth) / 2;
+        levelOffsetY = (this.maximalSize.getHeight() - levelHeight) / 2;
         
+        int workersCount = scanLevelInitial(null);
+
         // Checking whether level is valid
         if (boxesCount != goalsCount || workersCount != 1) {
-         
+
             levelState = LevelState.CORRUPTED;
             return false;
         }
-        
+
         // Checking whether level fits maximal level's size
-        if (maxLineWidth > this.maximalSize.getWidth() || levelInitial.size() > this.maximalSize.getHeight()) {
-            
+        if (levelWidth > this.maximalSize.getWidth() || levelHeight > this.maximalSize.getHeight()) {
+
             levelState = LevelState.OUT_OF_BOUNDS;
             return false;
         }
-        
-        // Cloning level's instance for playing
-        level = new ArrayList<ArrayList<Character>>();
-        for (ArrayList<Character> levelInitialRow : levelInitial) {
-            
-            ArrayList<Character> levelRow = new ArrayList<Character>();
-            for (Character levelInitialRowCharacter : levelInitialRow) {
-         
-                if (levelInitialRowCharacter.equals(LEVEL_ITEM_WORKER_ON_GOAL))
-                    levelRow.add(new Character(LEVEL_ITEM_GOAL));
-                else if (levelInitialRowCharacter.equals(LEVEL_ITEM_WORKER))
-                    levelRow.add(new Character(LEVEL_ITEM_SPACE));
-                else
-                    levelRow.add(new Character(levelInitialRowCharacter));
-            }
-            level.add(levelRow);
-        }        
-
-        // Level's vertical normalization
-        int leadingEmptyLinesCount = (int)(Math.floor((double)this.maximalSize.getHeight() - (double)level.size()) / 2);
-        int trailingEmptyLinesCount = this.maximalSize.getHeight() - level.size() - leadingEmptyLinesCount;
-
-        // Shifting worker's vertical location
-        workerY += leadingEmptyLinesCount;
-
-        // Adding leading empty rows
-        int leadingEmptyLineIndex = 0;
-        while (leadingEmptyLineIndex < leadingEmptyLinesCount) {
-
-            ArrayList<Character> emptyLine = new ArrayList<Character>();
-            for (int emptyLineCharacterIndex = 0; emptyLineCharacterIndex < this.maximalSize.getWidth(); emptyLineCharacterIndex++)
-                emptyLine.add(LEVEL_ITEM_SPACE);
-            level.add(0, emptyLine);
-            leadingEmptyLineIndex++;
-        }
 
-        // Adding trailing empty rows
-        int trailingEmptyLineIndex = 0;
-        while (trailingEmptyLineIndex < trailingEmptyLinesCount) {
-
-            ArrayList<Character> emptyLine = new ArrayList<Character>();
-            for (int emptyLineCharacterIndex = 0; emptyLineCharacterIndex < this.maximalSize.getWidth(); emptyLineCharacterIndex++)
-                emptyLine.add(LEVEL_ITEM_SPACE);
-            level.add(emptyLine);
-            trailingEmptyLineIndex++;
-        }
+        levelState = LevelState.PLAYABLE;
+        return true;
+    }
+    
+    /**
+     * Scans level's initial items defining level's counters and worker's initial location.
+     * 
+     * @param destination
+     *      Level's items to copy centered initial items to (the worker is traced separately),
+     *      can be {@code null} if copying is not required.
+     * @return 
+     *      Count of workers found.
+     */
+    protected int scanLevelInitial(byte[] destination) {
+        
+        goalsCount = 0;
+        boxesCount = 0;
+        boxesOnGoalsCount = 0;
+        boxesHash = 0;
+        pushesCount = 0;
+        workerX = 0;
+        workerY = 0;
+        int workersCount = 0;
+        
+        int levelWidth = size.getWidth();
+        int maximalWidth = maximalSize.getWidth();
+        int itemIndex = 0;
+        while (itemIndex < levelInitial.length) {
 
-        // Level's horizontal normalization
-        int leadingEmptyCharactersCount = (int)(Math.floor((double)this.maximalSize.getWidth() - (double)maxLineWidth) / 2);
+            byte itemCode = levelInitial[itemIndex];
+            int x = itemIndex % levelWidth;
+            int y = itemIndex / levelWidth;
+            if ((itemCode & ITEM_CODE_WORKER) != 0) {
 
-        // Shifting worker's horizontal location
-        workerX += leadingEmptyCharactersCount;
+                workersCount++;
+                workerX = x + levelOffsetX;
+                workerY = y + levelOffsetY;
+            }
 
-        lineIndex = leadingEmptyLinesCount;
-        while (lineIndex < this.maximalSize.getHeight() - trailingEmptyLinesCount) {
+            if ((itemCode & ITEM_CODE_GOAL) != 0)
+                goalsCount++;
 
-            ArrayList<Character> line = level.get(lineIndex);
-            int emptyCharacterIndex = 0;
-            while (emptyCharacterIndex < leadingEmptyCharactersCount) {
+            if ((itemCode & ITEM_CODE_BOX) != 0) {
 
-                line.add(0, LEVEL_ITEM_SPACE);
-                emptyCharacterIndex++;
+                boxesCount++;
+                if ((itemCode & ITEM_CODE_GOAL) != 0)
+                    boxesOnGoalsCount++;
+                boxesHash ^= zobristBoxKeys[getZobristIndex(x + levelOffsetX, y + levelOffsetY)];
             }
 
-            while (line.size() < this.maximalSize.getWidth())
-                line.add(LEVEL_ITEM_SPACE);
+            if (destination != null)
+                destination[(y + levelOffsetY) * maximalWidth + x + levelOffsetX] = (byte)(itemCode & ~ITEM_CODE_WORKER);
 
-            lineIndex++;
+            itemIndex++;
         }
         
-        levelState = LevelState.PLAYABLE;
-        return true;
+        return workersCount;
     }
     
     /**
-     * Retrieves level's state.
+     * Materializes level's items to play if they are not materialized yet.
      * 
-     * @return
-     *      Level's state
+     * Evicted items are restored if they are still available, otherwise
+     * level's position is rebuilt from initial items by repeating performed moves.
+     * 
+     * @return 
+     *      {@code true} if level's items are available, {@code false} if level is not playable.
+     * @see #prepare(org.ezze.games.storekeeper.Level.LevelSize)
+     * @see #evict()
      */
-    public LevelState getState() {
-
-        return levelState;
+    synchronized protected boolean materialize() {
+        
+        if (levelState != LevelState.PLAYABLE)
+            return false;
+        
+        if (level != null)
+            return true;
+        
+        if (deadSquares == null)
+            deadSquares = findDeadSquares();
+        
+        // Restoring evicted position with its checkpoints
+        boolean isEvicted = evictedCheckpoints != null;
+        ArrayList<Checkpoint> evicted = isEvicted ? evictedCheckpoints.get() : null;
+        evictedCheckpoints = null;
+        if (evicted != null) {
+            
+            Checkpoint position = evicted.remove(evicted.size() - 1);
+            checkpoints = evicted;
+            level = position.items;
+            workerX = position.workerX;
+            workerY = position.workerY;
+            pushesCount = position.pushesCount;
+            boxesOnGoalsCount = position.boxesOnGoalsCount;
+            boxesHash = position.boxesHash;
+            obstacleRows = null;
+            isReachableAreaValid = false;
+            invalidateSnapshots();
+            publishSnapshot();
+            return true;
+        }
+        
+        // Building the template of initial position for current maximal level's size
+        int maximalWidth = maximalSize.getWidth();
+        int levelLength = maximalWidth * maximalSize.getHeight();
+        if (levelTemplate == null || levelTemplate.length != levelLength || levelTemplateWidth != maximalWidth) {
+            
+            levelTemplate = new byte[levelLength];
+            levelTemplateWidth = maximalWidth;
+            scanLevelInitial(levelTemplate);
+        }
+        else if (isEvicted) {
+            
+            // Counters are not initial ones after eviction
+            scanLevelInitial(null);
+        }
+        
+        // Copying initial position to released instance if it's possible
+        level = levelBuffer != null && levelBuffer.length == levelLength ? levelBuffer : new byte[levelLength];
+        levelBuffer = null;
+        System.arraycopy(levelTemplate, 0, level, 0, levelLength);
+        obstacleRows = null;
+        isReachableAreaValid = false;
+        invalidateSnapshots();
+        
+        // Initial position's checkpoint shares the template since both are never modified
+        int performedMovesCount = movesCount;
+        movesCount = 0;
+        checkpoints.clear();
+        checkpoints.add(createCheckpoint(levelTemplate));
+        if (performedMovesCount > 0)
+            repeatMoves(performedMovesCount);
+        else
+            publishSnapshot();
+        
+        return true;
     }
     
     /**
-     * Checks whether level is playable.
+     * Releases level's items to play leaving them available until memory is required.
      * 
-     * @return 
-     *      {@code true} is level is playable, {@code false} otherwise.
+     * Moves' history is kept, so level's position will be rebuilt by {@link #materialize()}
+     * if the items will be collected.
+     * 
+     * @see #materialize()
      */
-    public boolean isPlayable() {
+    synchronized public void evict() {
         
-        return levelState == LevelState.PLAYABLE;
+        if (level == null)
+            return;
+        
+        // Current position is kept as the last evicted checkpoint
+        ArrayList<Checkpoint> evicted = checkpoints;
+        evicted.add(createCheckpoint(level));
+        evictedCheckpoints = new SoftReference<ArrayList<Checkpoint>>(evicted);
+        checkpoints = new ArrayList<Checkpoint>();
+        spareCheckpoints.clear();
+        level = null;
+        levelTemplate = null;
+        levelBuffer = null;
+        snapshot = null;
+        snapshots = null;
     }
     
     /**
-     * Retrieves level's name.
+     * Finds level's dead squares.
+     * 
+     * Squares a box can be pushed to a goal from are found by pulling a box
+     * from each goal backwards, all other squares which are not bricks are dead.
+     * Squares beyond level's real bounds are supposed to be bricks.
      * 
      * @return 
-     *      Level's name or empty string if it's not determined.
+     *      Dead squares indexed as {@link #deadSquares}.
      */
-    public String getName() {
+    protected BitSet findDeadSquares() {
         
-        try {
+        int levelWidth = size.getWidth();
+        int levelHeight = size.getHeight();
+        BitSet liveSquares = new BitSet(levelInitial.length);
+        int[] queue = new int[levelInitial.length];
+        int queueHead = 0;
+        int queueTail = 0;
+        
+        for (int itemIndex = 0; itemIndex < levelInitial.length; itemIndex++) {
             
-            return (String)levelInfo.get("name");
+            if ((levelInitial[itemIndex] & ITEM_CODE_GOAL) != 0) {
+                
+                liveSquares.set(itemIndex);
+                queue[queueTail++] = itemIndex;
+            }
         }
-        catch (NullPointerException ex) {
+        
+        // A box can be pulled to a square if both the square and the one behind it are not bricks
+        while (queueHead < queueTail) {
             
+            int itemIndex = queue[queueHead++];
+            int x = itemIndex % levelWidth;
+            int y = itemIndex / levelWidth;
+            for (int directionIndex = 0; directionIndex < moveDirections.length; directionIndex++) {
+                
+                int boxX = x + moveDeltasX[directionIndex];
+                int boxY = y + moveDeltasY[directionIndex];
+                int pullerX = boxX + moveDeltasX[directionIndex];
+                int pullerY = boxY + moveDeltasY[directionIndex];
+                if (pullerX < 0 || pullerX >= levelWidth || pullerY < 0 || pullerY >= levelHeight)
+                    continue;
+                
+                int boxIndex = boxY * levelWidth + boxX;
+                if (liveSquares.get(boxIndex) || (levelInitial[boxIndex] & ITEM_CODE_BRICK) != 0 ||
+                        (levelInitial[pullerY * levelWidth + pullerX] & ITEM_CODE_BRICK) != 0) {
+                    
+                    continue;
+                }
+                
+                liveSquares.set(boxIndex);
+                queue[queueTail++] = boxIndex;
+            }
         }
-        catch (ClassCastException ex) {
+        
+        BitSet foundDeadSquares = new BitSet(levelInitial.length);
+        for (int itemIndex = 0; itemIndex < levelInitial.length; itemIndex++) {
             
+            if (!liveSquares.get(itemIndex) && (levelInitial[itemIndex] & ITEM_CODE_BRICK) == 0)
+                foundDeadSquares.set(itemIndex);
         }
         
-        return "";
+        return foundDeadSquares;
     }
     
     /**
-     * Retrieves current item character at specified position.
+     * Checks whether specified square is a dead one.
      * 
-     * Look at {@link #allowedLevelItems} for possible character values.
+     * A box pushed onto a dead square can never reach any goal.
      * 
-     * @param line
-     *      Level's line index within the range [0; {@link #getMaximalHeight()} - 1].
-     * @param column
-     *      Level's column index within the range [0; {@link #getMaximalWidth()} - 1].
+     * @param x
+     *      Horizontal position within the range [0; {@link #getMaximalWidth()} - 1].
+     * @param y
+     *      Vertical position within the range [0; {@link #getMaximalHeight()} - 1].
      * @return 
-     *      Character of the item.
+     *      {@code true} if the square is dead, {@code false} if it's not, if it's a brick,
+     *      if it's beyond level's real bounds or if level is not playable.
+     */
+    synchronized public boolean isDeadSquare(int x, int y) {
+        
+        if (!materialize())
+            return false;
+        
+        int realX = x - levelOffsetX;
+        int realY = y - levelOffsetY;
+        if (realX < 0 || realX >= size.getWidth() || realY < 0 || realY >= size.getHeight())
+            return false;
+        
+        return deadSquares.get(realY * size.getWidth() + realX);
+    }
+    
+    /**
+     * Retrieves push distances from level's squares to each goal.
+     * 
+     * Distances are indexed by level's real (not centered) coordinates.
+     * They are found on the first call if they have not been found
+     * in background yet (see {@link LevelsSet#setCurrentLevelByIndex(int)})
+     * and again after they have been dropped to free memory.
+     * 
+     * @return 
+     *      Distances or {@code null} if level has no items.
+     */
+    public PushDistances getPushDistances() {
+        
+        SoftReference<PushDistances> distancesReference = pushDistances;
+        PushDistances distances = distancesReference != null ? distancesReference.get() : null;
+        if (distances == null && levelInitial != null && levelInitial.length > 0) {
+            
+            // Concurrent callers may find equal distances twice, either one is kept
+            distances = PushDistances.create(levelInitial, size.getWidth(), size.getHeight());
+            pushDistances = new SoftReference<PushDistances>(distances);
+        }
+        
+        return distances;
+    }
+    
+    /**
+     * Sets a policy of boxes' pushes onto dead squares.
+     * 
+     * The policy is applied to moves performed by the worker, moves repeated
+     * from moves' history are never refused.
+     * 
+     * @param deadSquarePushPolicy
+     *      Desired policy.
+     * @see #getDeadSquarePushPolicy()
+     * @see #isDeadSquare(int, int)
+     */
+    synchronized public void setDeadSquarePushPolicy(DeadSquarePushPolicy deadSquarePushPolicy) {
+        
+        this.deadSquarePushPolicy = deadSquarePushPolicy == null ? DeadSquarePushPolicy.ALLOW : deadSquarePushPolicy;
+    }
+    
+    /**
+     * Retrieves a policy of boxes' pushes onto dead squares.
+     * 
+     * @return 
+     *      Current policy.
+     * @see #setDeadSquarePushPolicy(org.ezze.games.storekeeper.Level.DeadSquarePushPolicy)
+     */
+    public DeadSquarePushPolicy getDeadSquarePushPolicy() {
+        
+        return deadSquarePushPolicy;
+    }
+    
+    /**
+     * Checks whether level's items to play are materialized.
+     * 
+     * @return 
+     *      {@code true} if level's items are materialized, {@code false} otherwise.
+     */
+    synchronized public boolean isMaterialized() {
+        
+        return level != null;
+    }
+    
+    /**
+     * Retrieves level's state.
+     * 
+     * @return
+     *      Level's state
+     */
+    public LevelState getState() {
+
+        return levelState;
+    }
+    
+    /**
+     * Checks whether level is playable.
+     * 
+     * @return 
+     *      {@code true} is level is playable, {@code false} otherwise.
+     */
+    public boolean isPlayable() {
+        
+        return levelState == LevelState.PLAYABLE;
+    }
+    
+    /**
+     * Retrieves level's name.
+     * 
+     * @return 
+     *      Level's name or empty string if it's not determined.
+     */
+    public String getName() {
+        
+        try {
+            
+            return (String)levelInfo.get("name");
+        }
+        catch (NullPointerException ex) {
+            
+        }
+        catch (ClassCastException ex) {
+            
+        }
+        
+        return "";
+    }
+    
+    /**
+     * Retrieves current item character at specified position.
+     * 
+     * Look at {@link #allowedLevelItems} for possible character values.
+     * 
+     * @param line
+     *      Level's line index within the range [0; {@link #getMaximalHeight()} - 1].
+     * @param column
+     *      Level's column index within the range [0; {@link #getMaximalWidth()} - 1].
+     * @return 
+     *      Character of the item.
      * @see #setItemAt(java.lang.Character, int, int)
      * @see #allowedLevelItems
      */
     synchronized public Character getItemAt(int line, int column) {
 
-        if (levelState == LevelState.EMPTY || levelState == LevelState.OUT_OF_BOUNDS)
+        if (levelState == LevelState.EMPTY || levelState == LevelState.OUT_OF_BOUNDS || !materialize())
             return null;
 
-        if (line < 0 || line >= level.size())
-            return LEVEL_ITEM_BRICK;
-        
-        ArrayList<Character> levelLine = level.get(line);
-        if (column < 0 || column >= levelLine.size())
-            return LEVEL_ITEM_BRICK;
-        
-        return levelLine.get(column);
+        return itemCharacters[getItemCodeAt(line, column)];
     }
-    
+
+    /**
+     * Retrieves current item code at specified position.
+     *
+     * This is a primitive counterpart of {@link #getItemAt(int, int)}
+     * which doesn't box item characters.
+     *
+     * @param line
+     *      Level's line index within the range [0; {@link #getMaximalHeight()} - 1].
+     * @param column
+     *      Level's column index within the range [0; {@link #getMaximalWidth()} - 1].
+     * @return
+     *      Code of the item, {@link #ITEM_CODE_BRICK} for a position out of level's bounds
+     *      or {@link #ITEM_CODE_SPACE} if level is not initialized.
+     * @see #getItemAt(int, int)
+     */
+    synchronized public byte getItemCodeAt(int line, int column) {
+
+        if (level == null && !materialize())
+            return ITEM_CODE_SPACE;
+
+        if (line < 0 || line >= maximalSize.getHeight() || column < 0 || column >= maximalSize.getWidth())
+            return ITEM_CODE_BRICK;
+
+        return level[line * maximalSize.getWidth() + column];
+    }
+
     /**
      * Sets specified item character at specified position.
      * 
@@ -941,10 +1764,21 @@ public class Level {
         if (levelState == LevelState.EMPTY || levelState == LevelState.OUT_OF_BOUNDS)
             return false;
         
-        if (!allowedLevelItems.contains(levelItem))
+        if (levelItem == null || !materialize())
+            return false;
+
+        byte itemCode = getItemCode(levelItem);
+        if (itemCode < 0)
             return false;
 
-        level.get(line).set(column, levelItem);
+        if (line < 0 || line >= maximalSize.getHeight() || column < 0 || column >= maximalSize.getWidth())
+            return false;
+
+        level[line * maximalSize.getWidth() + column] = itemCode;
+        logChangedItem(line * maximalSize.getWidth() + column);
+        obstacleRows = null;
+        isReachableAreaValid = false;
+        publishSnapshot();
         return true;
     }
 
@@ -1030,6 +1864,60 @@ public class Level {
         
         return movesHistory.size();
     }
+
+    /**
+     * Retrieves a code of the move stored in history.
+     * 
+     * @param moveIndex
+     *      Move's index within the range [0; {@link #getMovesHistoryCount()} - 1].
+     * @return 
+     *      Move's code, see {@link MoveInformation#valueOf(int)}.
+     */
+    synchronized public int getHistoryMoveCode(int moveIndex) {
+        
+        return movesHistory.get(moveIndex);
+    }
+    
+    /**
+     * Exports moves' history in a packed form.
+     * 
+     * @return 
+     *      Exported history, see {@link MovesHistory#toByteArray()}.
+     */
+    synchronized public byte[] exportMovesHistory() {
+        
+        return movesHistory.toByteArray();
+    }
+    
+    /**
+     * Replaces moves to repeat with specified ones.
+     * 
+     * Taken back moves are discarded and specified moves are stored in history
+     * after the current position, so they can be replayed by {@link #repeatMoves(int)}.
+     * Moves must be possible from the current position, e.g. found by {@link Solver}.
+     * 
+     * @param moves
+     *      Moves to store.
+     * @return 
+     *      Count of moves available to repeat or {@code -1} if level is not playable.
+     * @see SolverResult#getMoves()
+     */
+    synchronized public int setMovesToRepeat(List<MoveInformation> moves) {
+        
+        if (levelState != LevelState.PLAYABLE || moves == null)
+            return -1;
+        
+        movesHistory.truncate(movesCount);
+        discardCheckpoints();
+        
+        for (MoveInformation moveInformation : moves) {
+            
+            if (moveInformation != null && moveInformation.getType() != MoveType.NOTHING)
+                movesHistory.add(moveInformation.getCode());
+        }
+        
+        return movesHistory.size() - movesCount;
+    }
     
     /**
      * Adds a move to history and increments {@link #movesCount} and {@link #pushesCount}
@@ -1049,24 +1937,43 @@ public class Level {
      */
     synchronized protected void addMoveToHistory(MoveInformation moveInformation, boolean repeatMove) {
         
-        if (moveInformation == null || moveInformation.getType().equals(MoveType.NOTHING) ||
-                moveInformation.getDirection().equals(Direction.NONE)) {
+        if (moveInformation == null)
+            return;
+
+        addMoveToHistory(moveInformation.getCode(), repeatMove);
+    }
 
+    /**
+     * Adds a move to history and increments {@link #movesCount} and {@link #pushesCount}
+     * if it's necessary.
+     * 
+     * @param moveCode
+     *      Code of recently performed move.
+     * @param repeatMove
+     *      Shows whether method's call was produced during move's repeat.
+     * @see #addMoveToHistory(org.ezze.games.storekeeper.Level.MoveInformation, boolean)
+     */
+    synchronized protected void addMoveToHistory(int moveCode, boolean repeatMove) {
+        
+        if (moveCode < 0)
             return;
-        }
 
+        // Discarding taken back moves and their checkpoints
         if (!repeatMove) {
             
-            while (movesHistory.size() > movesCount)
-                movesHistory.remove(movesHistory.size() - 1);
+            movesHistory.truncate(movesCount);
+            discardCheckpoints();
         }
 
         movesCount++;
-        if (moveInformation.getType().equals(MoveType.WORKER_AND_BOX))
+        if ((moveCode & MOVE_CODE_PUSH) != 0)
             pushesCount++;
 
         if (!repeatMove)
-            movesHistory.add(moveInformation);
+            movesHistory.add(moveCode);
+        
+        if (movesCount % CHECKPOINT_INTERVAL == 0 && checkpoints.size() == movesCount / CHECKPOINT_INTERVAL)
+            addCheckpoint();
     }
     
     /**
@@ -1103,88 +2010,68 @@ public class Level {
         
         if (levelState != LevelState.PLAYABLE || takeBackMovesCount <= 0 || takeBackMovesCount > getMovesCount())
             return -1;
+        
+        if (!materialize())
+            return -1;
 
+        int maximalWidth = maximalSize.getWidth();
         int lastRemovingMoveIndex = getMovesCount() - 1;
         int firstRemovingMoveIndex = lastRemovingMoveIndex - takeBackMovesCount + 1;
         int removingMoveIndex = lastRemovingMoveIndex;
         while (removingMoveIndex >= firstRemovingMoveIndex) {
 
-            // Retrieving information of a move to be removed
-            MoveInformation moveInformation = movesHistory.get(removingMoveIndex);
-            if (!moveInformation.getType().equals(MoveType.NOTHING)) {
-
-                Direction moveDirection = moveInformation.getDirection();                                
-
-                if (moveInformation.getType().equals(MoveType.WORKER_AND_BOX)) {
-
-                    // Retrieving box' current coordinates
-                    int boxX = workerX;
-                    int boxY = workerY;
-                    if (moveDirection == Direction.LEFT)
-                        boxX -= 1;
-                    else if (moveDirection == Direction.RIGHT)
-                        boxX += 1;
-                    else if (moveDirection == Direction.UP)
-                        boxY -= 1;
-                    else if (moveDirection == Direction.DOWN)
-                        boxY += 1;
-
-                    // Restoring previous item at box' current position
-                    Character levelItem = getItemAt(boxY, boxX);
-                    if (levelItem.equals(LEVEL_ITEM_BOX_ON_GOAL)) {
-                        
-                        setItemAt(LEVEL_ITEM_GOAL, boxY, boxX);
+            // Retrieving a code of a move to be removed
+            int moveCode = movesHistory.get(removingMoveIndex);
+            int directionIndex = moveCode & MOVE_CODE_DIRECTION_MASK;
+
+            if ((moveCode & MOVE_CODE_PUSH) != 0) {
+
+                // Restoring previous item at box' current position
+                int boxItemIndex = (workerY + moveDeltasY[directionIndex]) * maximalWidth + workerX + moveDeltasX[directionIndex];
+                byte levelItem = level[boxItemIndex];
+                if ((levelItem & ITEM_CODE_BOX) != 0) {
+
+                    level[boxItemIndex] = (byte)(levelItem & ~ITEM_CODE_BOX);
+                    if ((levelItem & ITEM_CODE_GOAL) != 0)
                         boxesOnGoalsCount--;
-                    }
-                    else if (levelItem.equals(LEVEL_ITEM_BOX)) {
-                        
-                        setItemAt(LEVEL_ITEM_SPACE, boxY, boxX);
-                    }
-
-                    // Retrieving box' previous coordinates (it's where the worker right now)
-                    boxX = workerX;
-                    boxY = workerY;
-
-                    // Retrieving box' destination item
-                    levelItem = getItemAt(boxY, boxX);
-                    if (levelItem.equals(LEVEL_ITEM_GOAL)) {
-                        
-                        setItemAt(LEVEL_ITEM_BOX_ON_GOAL, boxY, boxX);
+                    logChangedItem(boxItemIndex);
+                }
+
+                // Retrieving box' previous location (it's where the worker right now)
+                boxItemIndex = workerY * maximalWidth + workerX;
+                boxesHash ^= zobristBoxKeys[getZobristIndex(workerX + moveDeltasX[directionIndex], workerY + moveDeltasY[directionIndex])] ^
+                        zobristBoxKeys[getZobristIndex(workerX, workerY)];
+                moveObstacle(workerX + moveDeltasX[directionIndex], workerY + moveDeltasY[directionIndex], workerX, workerY);
+
+                // Retrieving box' destination item
+                levelItem = level[boxItemIndex];
+                if ((levelItem & (ITEM_CODE_BRICK | ITEM_CODE_BOX)) == 0) {
+
+                    level[boxItemIndex] = (byte)(levelItem | ITEM_CODE_BOX);
+                    if ((levelItem & ITEM_CODE_GOAL) != 0)
                         boxesOnGoalsCount++;
-                    }
-                    else if (levelItem.equals(LEVEL_ITEM_SPACE)) {
-                        
-                        setItemAt(LEVEL_ITEM_BOX, boxY, boxX);
-                    }
-
-                    // Decreasing pushes count
-                    pushesCount--;
+                    logChangedItem(boxItemIndex);
                 }
 
-                // Moving worker back
-                if (moveDirection == Direction.LEFT)
-                    workerX += 1;
-                else if (moveDirection == Direction.RIGHT)
-                    workerX -= 1;
-                else if (moveDirection == Direction.UP)
-                    workerY += 1;
-                else if (moveDirection == Direction.DOWN)
-                    workerY -= 1;
-                
-                // Restoring worker's direction
-                MoveInformation previousMoveInformation = null;
-                if (removingMoveIndex >= 1)
-                    previousMoveInformation = movesHistory.get(removingMoveIndex - 1);
-                Direction previousDirection = previousMoveInformation != null ?
-                        previousMoveInformation.getDirection() : new WorkerDirection().get();
-                workerDirection.update(previousDirection);
-                
-                movesCount--;
+                // Decreasing pushes count
+                pushesCount--;
             }
 
+            // Moving worker back
+            workerX -= moveDeltasX[directionIndex];
+            workerY -= moveDeltasY[directionIndex];
+
+            // Restoring worker's direction
+            Direction previousDirection = removingMoveIndex >= 1 ?
+                    moveDirections[movesHistory.get(removingMoveIndex - 1) & MOVE_CODE_DIRECTION_MASK] :
+                    WorkerDirection.DEFAULT_DIRECTION;
+            workerDirection.update(previousDirection);
+
+            movesCount--;
             removingMoveIndex--;
         }
 
+        publishSnapshot();
         return movesCount;
     }
     
@@ -1225,37 +2112,575 @@ public class Level {
 
             return -1;
         }
+        
+        if (!materialize())
+            return -1;
 
         int firstRepeatingMoveIndex = getMovesCount();
         int lastRepeatingMoveIndex = firstRepeatingMoveIndex + repeatMovesCount - 1;
         int repeatingMoveIndex = firstRepeatingMoveIndex;
         while (repeatingMoveIndex <= lastRepeatingMoveIndex) {
 
-            // Retrieving information of a move to be repeated
-            MoveInformation moveInformation = movesHistory.get(repeatingMoveIndex);
-            if (!moveInformation.getType().equals(MoveType.NOTHING)) {
-
-                int workerDeltaX = 0;
-                int workerDeltaY = 0;
-                Direction moveDirection = moveInformation.getDirection();
-                if (moveDirection == Direction.LEFT)
-                    workerDeltaX = -1;
-                else if (moveDirection == Direction.RIGHT)
-                    workerDeltaX = 1;
-                else if (moveDirection == Direction.UP)
-                    workerDeltaY = -1;
-                else if (moveDirection == Direction.DOWN)
-                    workerDeltaY = 1;
-
-                move(workerDeltaX, workerDeltaY, true);
-            }
+            // Retrieving a code of a move to be repeated
+            int directionIndex = movesHistory.get(repeatingMoveIndex) & MOVE_CODE_DIRECTION_MASK;
+            performMove(moveDeltasX[directionIndex], moveDeltasY[directionIndex], true);
 
             repeatingMoveIndex++;
         }
 
+        publishSnapshot();
         return movesCount;
     }
 
+    /**
+     * Moves game level's position to specified moves' count of the history.
+     * 
+     * The position is restored from the nearest checkpoint if it's cheaper than
+     * taking moves back or repeating them one by one, so no more than
+     * {@link #CHECKPOINT_INTERVAL} moves are replayed in the worst case.
+     * 
+     * @param targetMovesCount
+     *      Desired count of performed moves within the range
+     *      [0; {@link #getMovesHistoryCount()}].
+     * @return
+     *      A number of performed moves after the jump or {@code -1}
+     *      if level is not initialized or {@code targetMovesCount} is out of the history.
+     * @see #takeBack(int)
+     * @see #repeatMoves(int)
+     */
+    synchronized public int seekToMove(int targetMovesCount) {
+        
+        if (levelState != LevelState.PLAYABLE || targetMovesCount < 0 || targetMovesCount > getMovesHistoryCount())
+            return -1;
+        
+        if (!materialize())
+            return -1;
+        
+        if (targetMovesCount == movesCount)
+            return movesCount;
+        
+        int checkpointIndex = Math.min(targetMovesCount / CHECKPOINT_INTERVAL, checkpoints.size() - 1);
+        if (checkpointIndex >= 0 && targetMovesCount - checkpointIndex * CHECKPOINT_INTERVAL < Math.abs(targetMovesCount - movesCount))
+            restoreCheckpoint(checkpointIndex);
+        
+        // Both take-back and repeat publish level's snapshot by their own
+        if (targetMovesCount < movesCount)
+            takeBack(movesCount - targetMovesCount);
+        else if (targetMovesCount > movesCount)
+            repeatMoves(targetMovesCount - movesCount);
+        else
+            publishSnapshot();
+        
+        return movesCount;
+    }
+    
+    /**
+     * Stores level's current position as the next checkpoint.
+     * 
+     * @see #restoreCheckpoint(int)
+     */
+    protected void addCheckpoint() {
+        
+        // Items of a discarded checkpoint are overwritten instead of cloning level's items
+        Checkpoint checkpoint = spareCheckpoints.isEmpty() ? null : spareCheckpoints.remove(spareCheckpoints.size() - 1);
+        if (checkpoint == null || checkpoint.items.length != level.length) {
+            
+            checkpoints.add(createCheckpoint(level.clone()));
+            return;
+        }
+        
+        System.arraycopy(level, 0, checkpoint.items, 0, level.length);
+        checkpoints.add(updateCheckpoint(checkpoint, checkpoint.items));
+    }
+    
+    /**
+     * Discards checkpoints following the current position of moves' history.
+     * 
+     * Discarded checkpoints are kept as spare ones to be reused by {@link #addCheckpoint()}.
+     */
+    protected void discardCheckpoints() {
+        
+        // The initial checkpoint sharing level's template is never discarded
+        while (checkpoints.size() > movesCount / CHECKPOINT_INTERVAL + 1)
+            spareCheckpoints.add(checkpoints.remove(checkpoints.size() - 1));
+    }
+    
+    /**
+     * Creates a checkpoint of level's current position.
+     * 
+     * @param items
+     *      Level's items to keep by the checkpoint.
+     * @return 
+     *      Created checkpoint.
+     */
+    protected Checkpoint createCheckpoint(byte[] items) {
+        
+        return updateCheckpoint(new Checkpoint(), items);
+    }
+    
+    /**
+     * Stores level's current position in a checkpoint.
+     * 
+     * @param checkpoint
+     *      Checkpoint to update.
+     * @param items
+     *      Level's items to keep by the checkpoint.
+     * @return 
+     *      Updated checkpoint.
+     */
+    protected Checkpoint updateCheckpoint(Checkpoint checkpoint, byte[] items) {
+        
+        checkpoint.items = items;
+        checkpoint.workerX = workerX;
+        checkpoint.workerY = workerY;
+        checkpoint.pushesCount = pushesCount;
+        checkpoint.boxesOnGoalsCount = boxesOnGoalsCount;
+        checkpoint.boxesHash = boxesHash;
+        return checkpoint;
+    }
+    
+    /**
+     * Restores level's position from specified checkpoint.
+     * 
+     * @param checkpointIndex
+     *      Checkpoint's index.
+     * @see #addCheckpoint()
+     */
+    protected void restoreCheckpoint(int checkpointIndex) {
+        
+        Checkpoint checkpoint = checkpoints.get(checkpointIndex);
+        System.arraycopy(checkpoint.items, 0, level, 0, level.length);
+        workerX = checkpoint.workerX;
+        workerY = checkpoint.workerY;
+        pushesCount = checkpoint.pushesCount;
+        boxesOnGoalsCount = checkpoint.boxesOnGoalsCount;
+        boxesHash = checkpoint.boxesHash;
+        invalidateSnapshots();
+        obstacleRows = null;
+        isReachableAreaValid = false;
+        movesCount = checkpointIndex * CHECKPOINT_INTERVAL;
+        
+        workerDirection.update(movesCount > 0 ?
+                moveDirections[movesHistory.get(movesCount - 1) & MOVE_CODE_DIRECTION_MASK] :
+                WorkerDirection.DEFAULT_DIRECTION);
+    }
+
+    /**
+     * Retrieves 64-bit hash of level's current state.
+     * 
+     * The hash is a Zobrist hash of boxes' positions and normalized worker's position
+     * (see {@link #getNormalizedWorkerLocation()}) within level's real (not centered)
+     * representation, so it doesn't depend on level's maximal size and doesn't change
+     * between sessions. Boxes' part is updated incrementally by moves, take-backs
+     * and repeats without rescanning the level, and worker's part is updated after pushes only.
+     * 
+     * @return 
+     *      State's hash or {@code 0} if level is not playable.
+     */
+    synchronized public long getStateHash() {
+        
+        if (!materialize())
+            return 0;
+        
+        updateReachableArea();
+        return boxesHash ^ zobristWorkerKeys[getZobristIndex(normalizedWorkerX, normalizedWorkerY)];
+    }
+    
+    /**
+     * Checks whether specified square can be reached by the worker without pushing boxes.
+     * 
+     * @param x
+     *      Horizontal position within the range [0; {@link #getMaximalWidth()} - 1].
+     * @param y
+     *      Vertical position within the range [0; {@link #getMaximalHeight()} - 1].
+     * @return 
+     *      {@code true} if the square is reachable, {@code false} otherwise
+     *      or if level is not playable.
+     */
+    synchronized public boolean isReachable(int x, int y) {
+        
+        if (!materialize())
+            return false;
+        
+        if (x < 0 || x >= maximalSize.getWidth() || y < 0 || y >= maximalSize.getHeight())
+            return false;
+        
+        updateReachableArea();
+        return (reachableRows[y * rowWordsCount + (x >>> 6)] & (1L << x)) != 0;
+    }
+    
+    /**
+     * Retrieves normalized worker's location.
+     * 
+     * This one is the top left square of worker's reachable area (the least line's
+     * index and the least column's index within this line), so all positions
+     * differing by worker's location within the same area have equal normalized location.
+     * 
+     * @return 
+     *      Normalized worker's location or {@code null} if level is not playable.
+     * @see #isReachable(int, int)
+     */
+    synchronized public Point getNormalizedWorkerLocation() {
+        
+        if (!materialize())
+            return null;
+        
+        updateReachableArea();
+        return new Point(normalizedWorkerX, normalizedWorkerY);
+    }
+    
+    /**
+     * Moves box' obstacle bit and invalidates worker's reachable area.
+     * 
+     * @param fromX
+     *      Box' previous horizontal position.
+     * @param fromY
+     *      Box' previous vertical position.
+     * @param toX
+     *      Box' new horizontal position.
+     * @param toY
+     *      Box' new vertical position.
+     */
+    protected void moveObstacle(int fromX, int fromY, int toX, int toY) {
+        
+        isReachableAreaValid = false;
+        if (obstacleRows == null)
+            return;
+        
+        obstacleRows[fromY * rowWordsCount + (fromX >>> 6)] &= ~(1L << fromX);
+        obstacleRows[toY * rowWordsCount + (toX >>> 6)] |= 1L << toX;
+    }
+    
+    /**
+     * Recomputes worker's reachable area if it has been invalidated.
+     * 
+     * @see #fillReachableArea(long[], long[], int, int, int, int, int)
+     */
+    protected void updateReachableArea() {
+        
+        if (isReachableAreaValid)
+            return;
+        
+        int maximalWidth = maximalSize.getWidth();
+        int maximalHeight = maximalSize.getHeight();
+        
+        // Rebuilding bricks' and boxes' bitmasks if it's required
+        if (obstacleRows == null) {
+            
+            rowWordsCount = (maximalWidth + 63) >>> 6;
+            obstacleRows = new long[rowWordsCount * maximalHeight];
+            for (int itemIndex = 0; itemIndex < level.length; itemIndex++) {
+                
+                if ((level[itemIndex] & (ITEM_CODE_BRICK | ITEM_CODE_BOX)) != 0) {
+                    
+                    int x = itemIndex % maximalWidth;
+                    obstacleRows[(itemIndex / maximalWidth) * rowWordsCount + (x >>> 6)] |= 1L << x;
+                }
+            }
+        }
+        
+        if (reachableRows == null || reachableRows.length != obstacleRows.length)
+            reachableRows = new long[obstacleRows.length];
+        
+        int normalizedWorkerSquare = fillReachableArea(obstacleRows, reachableRows, rowWordsCount,
+                maximalWidth, maximalHeight, workerX, workerY);
+        normalizedWorkerX = normalizedWorkerSquare % maximalWidth;
+        normalizedWorkerY = normalizedWorkerSquare / maximalWidth;
+        isReachableAreaValid = true;
+    }
+    
+    /**
+     * Fills worker's reachable area of row bitmasks.
+     * 
+     * The area is filled line by line: each line's reachable bits are spread
+     * horizontally by word shifts until they stop changing and then propagated
+     * to adjacent lines, so one step processes 64 squares at once.
+     * The method keeps no state, so the solver fills areas of its positions by it too.
+     * 
+     * @param obstacleRows
+     *      Bitmasks of squares the worker cannot enter laid out as {@link #obstacleRows}.
+     * @param reachableRows
+     *      Bitmasks to fill reachable squares in, at least {@code rowWordsCount * maximalHeight} words
+     *      are cleared by the method.
+     * @param rowWordsCount
+     *      Count of {@code long} words representing one line.
+     * @param maximalWidth
+     *      Count of line's squares.
+     * @param maximalHeight
+     *      Count of lines.
+     * @param x
+     *      Worker's horizontal position.
+     * @param y
+     *      Worker's vertical position.
+     * @return 
+     *      Index {@code y * maximalWidth + x} of the top left reachable square.
+     */
+    protected static int fillReachableArea(long[] obstacleRows, long[] reachableRows, int rowWordsCount,
+            int maximalWidth, int maximalHeight, int x, int y) {
+        
+        int wordsCount = rowWordsCount * maximalHeight;
+        Arrays.fill(reachableRows, 0, wordsCount, 0);
+        
+        // Bits beyond the last column are never reachable
+        long lastWordMask = (maximalWidth & 63) == 0 ? -1L : (1L << (maximalWidth & 63)) - 1;
+        reachableRows[y * rowWordsCount + (x >>> 6)] = 1L << x;
+        spreadReachableLineHorizontally(obstacleRows, reachableRows, rowWordsCount, y, lastWordMask);
+        
+        // Sweeping lines downwards and upwards until the area stops growing
+        int firstLineIndex = y;
+        int lastLineIndex = y;
+        boolean isChanged = true;
+        while (isChanged) {
+            
+            isChanged = false;
+            for (int lineIndex = Math.max(firstLineIndex - 1, 0); lineIndex < maximalHeight; lineIndex++) {
+                
+                if (spreadReachableLine(obstacleRows, reachableRows, rowWordsCount, lineIndex, maximalHeight, lastWordMask)) {
+                    
+                    isChanged = true;
+                    firstLineIndex = Math.min(firstLineIndex, lineIndex);
+                    lastLineIndex = Math.max(lastLineIndex, lineIndex);
+                }
+                else if (lineIndex > lastLineIndex)
+                    break;
+            }
+            
+            for (int lineIndex = Math.min(lastLineIndex + 1, maximalHeight - 1); lineIndex >= 0; lineIndex--) {
+                
+                if (spreadReachableLine(obstacleRows, reachableRows, rowWordsCount, lineIndex, maximalHeight, lastWordMask)) {
+                    
+                    isChanged = true;
+                    firstLineIndex = Math.min(firstLineIndex, lineIndex);
+                    lastLineIndex = Math.max(lastLineIndex, lineIndex);
+                }
+                else if (lineIndex < firstLineIndex)
+                    break;
+            }
+        }
+        
+        // Looking for the top left reachable square
+        for (int wordIndex = firstLineIndex * rowWordsCount; wordIndex < wordsCount; wordIndex++) {
+            
+            if (reachableRows[wordIndex] != 0)
+                return (wordIndex / rowWordsCount) * maximalWidth + (wordIndex % rowWordsCount) * 64 +
+                        Long.numberOfTrailingZeros(reachableRows[wordIndex]);
+        }
+        
+        return y * maximalWidth + x;
+    }
+    
+    /**
+     * Extends reachable squares of specified line by adjacent lines' reachable squares
+     * and spreads them horizontally.
+     * 
+     * @param obstacleRows
+     *      Bitmasks of squares the worker cannot enter.
+     * @param reachableRows
+     *      Bitmasks of reachable squares.
+     * @param rowWordsCount
+     *      Count of {@code long} words representing one line.
+     * @param lineIndex
+     *      Line's index.
+     * @param maximalHeight
+     *      Count of level's lines.
+     * @param lastWordMask
+     *      Mask of valid bits of line's last word.
+     * @return 
+     *      {@code true} if line's reachable squares have been changed, {@code false} otherwise.
+     */
+    protected static boolean spreadReachableLine(long[] obstacleRows, long[] reachableRows, int rowWordsCount,
+            int lineIndex, int maximalHeight, long lastWordMask) {
+        
+        int lineOffset = lineIndex * rowWordsCount;
+        boolean isLineChanged = false;
+        
+        // Taking reachable squares of adjacent lines
+        for (int wordIndex = 0; wordIndex < rowWordsCount; wordIndex++) {
+            
+            int index = lineOffset + wordIndex;
+            long reachable = reachableRows[index];
+            if (lineIndex > 0)
+                reachable |= reachableRows[index - rowWordsCount];
+            if (lineIndex < maximalHeight - 1)
+                reachable |= reachableRows[index + rowWordsCount];
+            reachable &= ~obstacleRows[index];
+            if (wordIndex == rowWordsCount - 1)
+                reachable &= lastWordMask;
+            
+            if (reachable != reachableRows[index]) {
+                
+                reachableRows[index] = reachable;
+                isLineChanged = true;
+            }
+        }
+        
+        if (!isLineChanged)
+            return false;
+        
+        spreadReachableLineHorizontally(obstacleRows, reachableRows, rowWordsCount, lineIndex, lastWordMask);
+        return true;
+    }
+    
+    /**
+     * Spreads reachable squares of specified line horizontally until they stop changing.
+     * 
+     * @param obstacleRows
+     *      Bitmasks of squares the worker cannot enter.
+     * @param reachableRows
+     *      Bitmasks of reachable squares.
+     * @param rowWordsCount
+     *      Count of {@code long} words representing one line.
+     * @param lineIndex
+     *      Line's index.
+     * @param lastWordMask
+     *      Mask of valid bits of line's last word.
+     */
+    protected static void spreadReachableLineHorizontally(long[] obstacleRows, long[] reachableRows, int rowWordsCount,
+            int lineIndex, long lastWordMask) {
+        
+        int lineOffset = lineIndex * rowWordsCount;
+        boolean isSpread = true;
+        while (isSpread) {
+            
+            isSpread = false;
+            for (int wordIndex = 0; wordIndex < rowWordsCount; wordIndex++) {
+                
+                int index = lineOffset + wordIndex;
+                long word = reachableRows[index];
+                long reachable = word | (word << 1) | (word >>> 1);
+                if (wordIndex > 0)
+                    reachable |= reachableRows[index - 1] >>> 63;
+                if (wordIndex < rowWordsCount - 1)
+                    reachable |= reachableRows[index + 1] << 63;
+                reachable &= ~obstacleRows[index];
+                if (wordIndex == rowWordsCount - 1)
+                    reachable &= lastWordMask;
+                
+                if (reachable != word) {
+                    
+                    reachableRows[index] = reachable;
+                    isSpread = true;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Retrieves an index of Zobrist keys for specified position.
+     * 
+     * @param x
+     *      Horizontal position within the range [0; {@link #getMaximalWidth()} - 1].
+     * @param y
+     *      Vertical position within the range [0; {@link #getMaximalHeight()} - 1].
+     * @return 
+     *      Index within {@link #zobristBoxKeys} and {@link #zobristWorkerKeys}.
+     */
+    protected int getZobristIndex(int x, int y) {
+        
+        return getZobristIndex(x, y, levelOffsetX, levelOffsetY);
+    }
+    
+    /**
+     * Retrieves an index of Zobrist keys for specified position of a level.
+     * 
+     * @param x
+     *      Horizontal position within the range [0; {@link #getMaximalWidth()} - 1].
+     * @param y
+     *      Vertical position within the range [0; {@link #getMaximalHeight()} - 1].
+     * @param levelOffsetX
+     *      Horizontal offset of level's real representation.
+     * @param levelOffsetY
+     *      Vertical offset of level's real representation.
+     * @return 
+     *      Index within {@link #zobristBoxKeys} and {@link #zobristWorkerKeys}.
+     */
+    protected static int getZobristIndex(int x, int y, int levelOffsetX, int levelOffsetY) {
+        
+        // Positions of margins around not closed levels are wrapped
+        int realX = ((x - levelOffsetX) % MAXIMAL_LEVEL_WIDTH + MAXIMAL_LEVEL_WIDTH) % MAXIMAL_LEVEL_WIDTH;
+        int realY = ((y - levelOffsetY) % MAXIMAL_LEVEL_HEIGHT + MAXIMAL_LEVEL_HEIGHT) % MAXIMAL_LEVEL_HEIGHT;
+        return realY * MAXIMAL_LEVEL_WIDTH + realX;
+    }
+
+    /**
+     * Retrieves recently published snapshot of level's state.
+     * 
+     * The method doesn't acquire level's monitor, so it's intended for rendering
+     * threads which must not contend with the thread changing the level.
+     * The monitor is acquired only once to materialize a playable level
+     * that hasn't been materialized yet.
+     * 
+     * @return 
+     *      Level's snapshot or {@code null} if level is not playable.
+     * @see LevelSnapshot
+     */
+    public LevelSnapshot getSnapshot() {
+        
+        LevelSnapshot levelSnapshot = snapshot;
+        if (levelSnapshot == null && levelState == LevelState.PLAYABLE && materialize())
+            levelSnapshot = snapshot;
+        
+        return levelSnapshot;
+    }
+    
+    /**
+     * Publishes a snapshot of level's current state.
+     * 
+     * The next of {@link #snapshots} is rewritten copying level's items changed
+     * since its previous version only, so no objects are allocated after the first
+     * publication. Level's state hash isn't computed here, a snapshot's reader
+     * computes it on demand.
+     * 
+     * @see #getSnapshot()
+     */
+    protected void publishSnapshot() {
+        
+        if (levelState != LevelState.PLAYABLE)
+            return;
+        
+        if (snapshots == null) {
+            
+            snapshots = new LevelSnapshot[SNAPSHOTS_COUNT];
+            for (int index = 0; index < SNAPSHOTS_COUNT; index++)
+                snapshots[index] = new LevelSnapshot(maximalSize.getWidth(), maximalSize.getHeight());
+        }
+        
+        snapshotIndex = (snapshotIndex + 1) % SNAPSHOTS_COUNT;
+        LevelSnapshot levelSnapshot = snapshots[snapshotIndex];
+        levelSnapshot.write(++snapshotVersion, level, changedItems, changedItemsCount,
+                workerX, workerY, workerDirection, movesCount, pushesCount, isCompleted(),
+                boxesHash, levelOffsetX, levelOffsetY);
+        snapshot = levelSnapshot;
+    }
+    
+    /**
+     * Logs a change of level's item to be copied to snapshots.
+     * 
+     * @param itemIndex
+     *      Item's index within {@link #level}.
+     */
+    protected void logChangedItem(int itemIndex) {
+        
+        changedItems[(int)(changedItemsCount % CHANGED_ITEMS_LOG_SIZE)] = itemIndex;
+        changedItemsCount++;
+    }
+    
+    /**
+     * Makes snapshots to copy all level's items when they are rewritten next time.
+     * 
+     * It's required if level's items have been replaced without logging the changes,
+     * other readers of the log are notified by {@link #itemsReplacementsCount}.
+     */
+    protected void invalidateSnapshots() {
+        
+        itemsReplacementsCount++;
+        if (snapshots == null)
+            return;
+        
+        for (LevelSnapshot levelSnapshot : snapshots)
+            levelSnapshot.changedItemsMark = -1;
+    }
+
     /**
      * Checks whether level is completed.
      *
@@ -1286,6 +2711,9 @@ public class Level {
     /**
      * Completes worker's move with specified shifts if it's possible.
      * 
+     * Returned information is shared (see {@link MoveInformation#valueOf(int)}),
+     * so the method doesn't allocate any objects.
+     * 
      * @param workerDeltaX
      *      Worker's horizontal shift.
      * @param workerDeltaY
@@ -1296,84 +2724,130 @@ public class Level {
      * @return
      *      Completed move's information.
      * @see #move(int, int)
+     * @see #performMove(int, int, boolean)
      */
     synchronized protected MoveInformation move(int workerDeltaX, int workerDeltaY, boolean repeatMove) {
 
+        return MoveInformation.valueOf(performMove(workerDeltaX, workerDeltaY, repeatMove) & ~MOVE_CODE_DEAD_PUSH);
+    }
+
+    /**
+     * Completes worker's move with specified shifts if it's possible.
+     * 
+     * @param workerDeltaX
+     *      Worker's horizontal shift.
+     * @param workerDeltaY
+     *      Worker's vertical shift.
+     * @return 
+     *      Completed move's code.
+     * @see #performMove(int, int, boolean)
+     */
+    protected int performMove(int workerDeltaX, int workerDeltaY) {
+        
+        return performMove(workerDeltaX, workerDeltaY, false);
+    }
+
+    /**
+     * Completes worker's move with specified shifts if it's possible.
+     * 
+     * This is a primitive counterpart of {@link #move(int, int, boolean)}
+     * intended for game's loop.
+     * 
+     * @param workerDeltaX
+     *      Worker's horizontal shift.
+     * @param workerDeltaY
+     *      Worker's vertical shift.
+     * @param repeatMove
+     *      Shows whether move is being repeated from moves history and the result information
+     *      is not to be added to moves history.
+     * @return
+     *      Completed move's code (possibly combined with {@link #MOVE_CODE_DEAD_PUSH} flag)
+     *      or {@link #MOVE_CODE_NOTHING} if the worker didn't move.
+     * @see #performMove(int, int)
+     * @see MoveInformation#valueOf(int)
+     */
+    synchronized protected int performMove(int workerDeltaX, int workerDeltaY, boolean repeatMove) {
+
         if (workerDeltaX == 0 && workerDeltaY == 0)
-            return new MoveInformation(MoveType.NOTHING, Direction.NONE);
+            return MOVE_CODE_NOTHING;
+        
+        if (level == null && !materialize())
+            return MOVE_CODE_NOTHING;
 
         // Calculating worker's destination location
         int workerDestinationX = workerX + workerDeltaX;
         int workerDestinationY = workerY + workerDeltaY;
 
         // Checking that worker's destination position is not a wall
-        Character workerDestinationLevelItem = getItemAt(workerDestinationY, workerDestinationX);
-        if (workerDestinationLevelItem.equals(LEVEL_ITEM_BRICK))
-            return new MoveInformation(MoveType.NOTHING, Direction.NONE);
+        byte workerDestinationLevelItem = getItemCodeAt(workerDestinationY, workerDestinationX);
+        if ((workerDestinationLevelItem & ITEM_CODE_BRICK) != 0)
+            return MOVE_CODE_NOTHING;
         
         // Defining worker's move direction
-        Direction moveDirection = Direction.NONE;
+        int moveCode = MOVE_CODE_NOTHING;
+        int deadPushFlag = 0;
         if (workerDeltaX > 0)
-            moveDirection = Direction.RIGHT;
+            moveCode = getDirectionIndex(Direction.RIGHT);
         else if (workerDeltaX < 0)
-            moveDirection = Direction.LEFT;
+            moveCode = getDirectionIndex(Direction.LEFT);
         else if (workerDeltaY > 0)
-            moveDirection = Direction.DOWN;
+            moveCode = getDirectionIndex(Direction.DOWN);
         else if (workerDeltaY < 0)
-            moveDirection = Direction.UP;
+            moveCode = getDirectionIndex(Direction.UP);
 
         // Checking whether worker's destination position is a box
-        if (workerDestinationLevelItem.equals(LEVEL_ITEM_BOX) || workerDestinationLevelItem.equals(LEVEL_ITEM_BOX_ON_GOAL)) {
+        if ((workerDestinationLevelItem & ITEM_CODE_BOX) != 0) {
 
             // Looking for possibility to move the box
             int boxDestinationX = workerDestinationX + workerDeltaX;
             int boxDestinationY = workerDestinationY + workerDeltaY;
 
             // Checking whether the box' destination position is not a wall or another box
-            Character boxDestinationLevelItem = getItemAt(boxDestinationY, boxDestinationX);
-            if (!boxDestinationLevelItem.equals(LEVEL_ITEM_SPACE) && !boxDestinationLevelItem.equals(LEVEL_ITEM_GOAL))
-                return new MoveInformation(MoveType.NOTHING, Direction.NONE);
+            byte boxDestinationLevelItem = getItemCodeAt(boxDestinationY, boxDestinationX);
+            if ((boxDestinationLevelItem & (ITEM_CODE_BRICK | ITEM_CODE_BOX)) != 0)
+                return MOVE_CODE_NOTHING;
 
-            // Removing the box from old location
-            if (workerDestinationLevelItem.equals(LEVEL_ITEM_BOX))
-                setItemAt(LEVEL_ITEM_SPACE, workerDestinationY, workerDestinationX);
-            else if (workerDestinationLevelItem.equals(LEVEL_ITEM_BOX_ON_GOAL)) {
+            // Applying dead squares' policy to the worker's own pushes
+            if (!repeatMove && deadSquarePushPolicy != DeadSquarePushPolicy.ALLOW &&
+                    isDeadSquare(boxDestinationX, boxDestinationY)) {
 
-                setItemAt(LEVEL_ITEM_GOAL, workerDestinationY, workerDestinationX);
-                boxesOnGoalsCount--;
+                if (deadSquarePushPolicy == DeadSquarePushPolicy.REFUSE)
+                    return MOVE_CODE_NOTHING;
+                deadPushFlag = MOVE_CODE_DEAD_PUSH;
             }
 
-            // Placing the box in new location
-            if (boxDestinationLevelItem.equals(LEVEL_ITEM_SPACE))
-                setItemAt(LEVEL_ITEM_BOX, boxDestinationY, boxDestinationX);
-            else if (boxDestinationLevelItem.equals(LEVEL_ITEM_GOAL)) {
+            // Removing the box from old location
+            int maximalWidth = maximalSize.getWidth();
+            level[workerDestinationY * maximalWidth + workerDestinationX] = (byte)(workerDestinationLevelItem & ~ITEM_CODE_BOX);
+            if ((workerDestinationLevelItem & ITEM_CODE_GOAL) != 0)
+                boxesOnGoalsCount--;
 
-                setItemAt(LEVEL_ITEM_BOX_ON_GOAL, boxDestinationY, boxDestinationX);
+            // Placing the box in new location
+            level[boxDestinationY * maximalWidth + boxDestinationX] = (byte)(boxDestinationLevelItem | ITEM_CODE_BOX);
+            if ((boxDestinationLevelItem & ITEM_CODE_GOAL) != 0)
                 boxesOnGoalsCount++;
-            }
-
-            workerX = workerDestinationX;
-            workerY = workerDestinationY;
-            
-            workerDirection.update(moveDirection);
 
-            // Adding the move to moves' history
-            MoveInformation moveInformation = new MoveInformation(MoveType.WORKER_AND_BOX, moveDirection);
-            addMoveToHistory(moveInformation, repeatMove);
-            
+            boxesHash ^= zobristBoxKeys[getZobristIndex(workerDestinationX, workerDestinationY)] ^
+                    zobristBoxKeys[getZobristIndex(boxDestinationX, boxDestinationY)];
+            moveObstacle(workerDestinationX, workerDestinationY, boxDestinationX, boxDestinationY);
+            logChangedItem(workerDestinationY * maximalWidth + workerDestinationX);
+            logChangedItem(boxDestinationY * maximalWidth + boxDestinationX);
 
-            return moveInformation;
+            moveCode |= MOVE_CODE_PUSH;
         }
 
         workerX = workerDestinationX;
         workerY = workerDestinationY;
         
-        workerDirection.update(moveDirection);
+        workerDirection.update(moveDirections[moveCode & MOVE_CODE_DIRECTION_MASK]);
         
         // Adding the move to moves' history
-        MoveInformation moveInformation = new MoveInformation(MoveType.WORKER, moveDirection);
-        addMoveToHistory(moveInformation, repeatMove);
+        addMoveToHistory(moveCode, repeatMove);
+        
+        // Repeated moves are published once by the method repeating them
+        if (!repeatMove)
+            publishSnapshot();
         
-        return moveInformation;
+        return moveCode | deadPushFlag;
     }
 }
\ No newline at end of file
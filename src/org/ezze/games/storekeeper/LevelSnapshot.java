@@ -0,0 +1,392 @@
+package org.ezze.games.storekeeper;
+
+import java.lang.invoke.VarHandle;
+import org.ezze.games.storekeeper.Level.Direction;
+import org.ezze.games.storekeeper.Level.WorkerDirection;
+
+/**
+ * This class represents a published view of level's state.
+ *
+ * Snapshots are published by {@link Level} after each committed change
+ * and can be read by any thread without synchronization. The level rewrites
+ * a few preallocated snapshots in turn copying only items changed since
+ * snapshot's previous version, so publishing doesn't allocate objects.
+ * A reader retrieves snapshot's version before reading and checks it
+ * by {@link #isValid(long)} afterwards: read values are consistent
+ * if the snapshot hasn't been rewritten meanwhile.
+ *
+ * @author Dmitriy Pushkov
+ * @version 0.0.1
+ * @see Level#getSnapshot()
+ */
+public final class LevelSnapshot {
+
+    /**
+     * Shared workers' directions indexed by {@link #getWorkerDirectionIndex(org.ezze.games.storekeeper.Level.WorkerDirection)}.
+     */
+    private static final WorkerDirection[] workerDirections = new WorkerDirection[8];
+    static {
+
+        for (int directionIndex = 0; directionIndex < workerDirections.length; directionIndex++) {
+
+            workerDirections[directionIndex] = new WorkerDirection(
+                    (directionIndex & 1) != 0 ? Direction.RIGHT : Direction.LEFT,
+                    (directionIndex & 2) != 0 ? Direction.UP : Direction.DOWN,
+                    (directionIndex & 4) != 0);
+        }
+    }
+
+    /**
+     * Snapshot's stamp which is twice snapshot's version or odd while the snapshot is being rewritten.
+     */
+    private volatile long stamp = 0;
+
+    /**
+     * Level's maximal width.
+     */
+    private final int maximalWidth;
+
+    /**
+     * Level's maximal height.
+     */
+    private final int maximalHeight;
+
+    /**
+     * Level's item codes laid out as {@link Level#level}.
+     */
+    private final byte[] items;
+
+    /**
+     * Count of level's changed items logged when items were copied
+     * or {@code -1} if all items must be copied.
+     */
+    long changedItemsMark = -1;
+
+    /**
+     * Worker's horizontal position.
+     */
+    private int workerX = 0;
+
+    /**
+     * Worker's vertical position.
+     */
+    private int workerY = 0;
+
+    /**
+     * Worker's compound look direction shared between snapshots.
+     */
+    private WorkerDirection workerDirection = workerDirections[0];
+
+    /**
+     * Moves count.
+     */
+    private int movesCount = 0;
+
+    /**
+     * Pushes count.
+     */
+    private int pushesCount = 0;
+
+    /**
+     * Shows whether level is completed.
+     */
+    private boolean isCompleted = false;
+
+    /**
+     * Zobrist hash of boxes' positions.
+     */
+    private long boxesHash = 0;
+
+    /**
+     * Horizontal offset of level's real representation.
+     */
+    private int levelOffsetX = 0;
+
+    /**
+     * Vertical offset of level's real representation.
+     */
+    private int levelOffsetY = 0;
+
+    /**
+     * Creates an empty snapshot to be written by {@link #write(long, byte[], int[], long, int, int, org.ezze.games.storekeeper.Level.WorkerDirection, int, int, boolean, long, int, int)}.
+     *
+     * @param maximalWidth
+     *      Level's maximal width.
+     * @param maximalHeight
+     *      Level's maximal height.
+     */
+    LevelSnapshot(int maximalWidth, int maximalHeight) {
+
+        this.maximalWidth = maximalWidth;
+        this.maximalHeight = maximalHeight;
+        this.items = new byte[maximalWidth * maximalHeight];
+    }
+
+    /**
+     * Rewrites the snapshot by level's current state.
+     *
+     * Only the level's thread holding level's monitor calls the method.
+     *
+     * @param version
+     *      Snapshot's new version.
+     * @param levelItems
+     *      Level's item codes.
+     * @param changedItems
+     *      Circular log of indexes of level's changed items.
+     * @param changedItemsCount
+     *      Count of logged changed items.
+     * @param workerX
+     *      Worker's horizontal position.
+     * @param workerY
+     *      Worker's vertical position.
+     * @param workerDirection
+     *      Worker's compound look direction.
+     * @param movesCount
+     *      Moves count.
+     * @param pushesCount
+     *      Pushes count.
+     * @param isCompleted
+     *      Shows whether level is completed.
+     * @param boxesHash
+     *      Zobrist hash of boxes' positions.
+     * @param levelOffsetX
+     *      Horizontal offset of level's real representation.
+     * @param levelOffsetY
+     *      Vertical offset of level's real representation.
+     */
+    void write(long version, byte[] levelItems, int[] changedItems, long changedItemsCount,
+            int workerX, int workerY, WorkerDirection workerDirection, int movesCount, int pushesCount,
+            boolean isCompleted, long boxesHash, int levelOffsetX, int levelOffsetY) {
+
+        // Readers must see the odd stamp before any of rewritten values
+        stamp = version * 2 - 1;
+        VarHandle.storeStoreFence();
+
+        if (changedItemsMark < 0 || changedItemsCount - changedItemsMark > changedItems.length)
+            System.arraycopy(levelItems, 0, items, 0, items.length);
+        else {
+
+            for (long changeIndex = changedItemsMark; changeIndex < changedItemsCount; changeIndex++) {
+
+                int itemIndex = changedItems[(int)(changeIndex % changedItems.length)];
+                items[itemIndex] = levelItems[itemIndex];
+            }
+        }
+
+        changedItemsMark = changedItemsCount;
+        this.workerX = workerX;
+        this.workerY = workerY;
+        this.workerDirection = workerDirections[getWorkerDirectionIndex(workerDirection)];
+        this.movesCount = movesCount;
+        this.pushesCount = pushesCount;
+        this.isCompleted = isCompleted;
+        this.boxesHash = boxesHash;
+        this.levelOffsetX = levelOffsetX;
+        this.levelOffsetY = levelOffsetY;
+
+        stamp = version * 2;
+    }
+
+    /**
+     * Retrieves an index of shared worker's direction.
+     *
+     * @param workerDirection
+     *      Worker's compound look direction.
+     * @return
+     *      Index within {@link #workerDirections}.
+     */
+    private static int getWorkerDirectionIndex(WorkerDirection workerDirection) {
+
+        return (workerDirection.getHorizontal() == Direction.RIGHT ? 1 : 0) |
+                (workerDirection.getVertical() == Direction.UP ? 2 : 0) |
+                (workerDirection.isVerticalReal() ? 4 : 0);
+    }
+
+    /**
+     * Retrieves snapshot's version.
+     *
+     * The version must be retrieved before reading snapshot's values
+     * and passed to {@link #isValid(long)} after that.
+     *
+     * @return
+     *      Snapshot's version increasing with each published snapshot of the level
+     *      or {@code -1} if the snapshot is being rewritten.
+     */
+    public long getVersion() {
+
+        long currentStamp = stamp;
+        return (currentStamp & 1) == 0 ? currentStamp >>> 1 : -1;
+    }
+
+    /**
+     * Checks whether values read from the snapshot are consistent.
+     *
+     * @param version
+     *      Snapshot's version retrieved by {@link #getVersion()} before reading.
+     * @return
+     *      {@code true} if the snapshot hasn't been rewritten since {@code version}
+     *      has been retrieved, {@code false} otherwise and values must be read again.
+     */
+    public boolean isValid(long version) {
+
+        // Values' reads must not be reordered after stamp's validating read
+        VarHandle.acquireFence();
+        return version >= 0 && stamp == version * 2;
+    }
+
+    /**
+     * Retrieves level's maximal width in items.
+     *
+     * @return
+     *      Level's maximal width.
+     */
+    public int getMaximalWidth() {
+
+        return maximalWidth;
+    }
+
+    /**
+     * Retrieves level's maximal height in items.
+     *
+     * @return
+     *      Level's maximal height.
+     */
+    public int getMaximalHeight() {
+
+        return maximalHeight;
+    }
+
+    /**
+     * Retrieves item code at specified position.
+     *
+     * @param line
+     *      Level's line index within the range [0; {@link #getMaximalHeight()} - 1].
+     * @param column
+     *      Level's column index within the range [0; {@link #getMaximalWidth()} - 1].
+     * @return
+     *      Code of the item or {@link Level#ITEM_CODE_BRICK} for a position out of level's bounds.
+     * @see Level#getItemCodeAt(int, int)
+     */
+    public byte getItemCodeAt(int line, int column) {
+
+        if (line < 0 || line >= maximalHeight || column < 0 || column >= maximalWidth)
+            return Level.ITEM_CODE_BRICK;
+
+        return items[line * maximalWidth + column];
+    }
+
+    /**
+     * Retrieves worker's horizontal position.
+     *
+     * @return
+     *      Worker's horizontal position.
+     */
+    public int getWorkerX() {
+
+        return workerX;
+    }
+
+    /**
+     * Retrieves worker's vertical position.
+     *
+     * @return
+     *      Worker's vertical position.
+     */
+    public int getWorkerY() {
+
+        return workerY;
+    }
+
+    /**
+     * Retrieves worker's compound look direction.
+     *
+     * @return
+     *      Worker's look direction which is shared and must not be updated.
+     */
+    public WorkerDirection getWorkerDirection() {
+
+        return workerDirection;
+    }
+
+    /**
+     * Retrieves moves count.
+     *
+     * @return
+     *      Moves count.
+     */
+    public int getMovesCount() {
+
+        return movesCount;
+    }
+
+    /**
+     * Retrieves pushes count.
+     *
+     * @return
+     *      Pushes count.
+     */
+    public int getPushesCount() {
+
+        return pushesCount;
+    }
+
+    /**
+     * Checks whether level is completed.
+     *
+     * @return
+     *      {@code true} if level is completed, {@code false} otherwise.
+     */
+    public boolean isCompleted() {
+
+        return isCompleted;
+    }
+
+    /**
+     * Retrieves level's state hash.
+     *
+     * Worker's reachable area is filled by the calling thread on demand,
+     * so publishing the snapshot doesn't pay for it.
+     *
+     * @return
+     *      State's hash, see {@link Level#getStateHash()}.
+     */
+    public long getStateHash() {
+
+        // The top left reachable square has the least index of row-major layout
+        boolean[] isVisited = new boolean[items.length];
+        int[] cells = new int[items.length];
+        int workerCell = workerY * maximalWidth + workerX;
+        int normalizedWorkerCell = workerCell;
+        int cellsCount = 1;
+        cells[0] = workerCell;
+        isVisited[workerCell] = true;
+        for (int cellIndex = 0; cellIndex < cellsCount; cellIndex++) {
+
+            int cell = cells[cellIndex];
+            normalizedWorkerCell = Math.min(normalizedWorkerCell, cell);
+            int x = cell % maximalWidth;
+            for (int neighbourIndex = 0; neighbourIndex < 4; neighbourIndex++) {
+
+                int neighbour;
+                if (neighbourIndex == 0)
+                    neighbour = x > 0 ? cell - 1 : -1;
+                else if (neighbourIndex == 1)
+                    neighbour = x < maximalWidth - 1 ? cell + 1 : -1;
+                else if (neighbourIndex == 2)
+                    neighbour = cell - maximalWidth;
+                else
+                    neighbour = cell + maximalWidth < items.length ? cell + maximalWidth : -1;
+
+                if (neighbour >= 0 && !isVisited[neighbour] &&
+                        (items[neighbour] & (Level.ITEM_CODE_BRICK | Level.ITEM_CODE_BOX)) == 0) {
+
+                    isVisited[neighbour] = true;
+                    cells[cellsCount++] = neighbour;
+                }
+            }
+        }
+
+        return boxesHash ^ Level.zobristWorkerKeys[Level.getZobristIndex(normalizedWorkerCell % maximalWidth,
+                normalizedWorkerCell / maximalWidth, levelOffsetX, levelOffsetY)];
+    }
+}
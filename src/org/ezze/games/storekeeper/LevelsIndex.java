@@ -0,0 +1,59 @@
+package org.ezze.games.storekeeper;
+
+import org.ezze.games.storekeeper.Level.LevelSize;
+import org.ezze.games.storekeeper.Level.LevelState;
+
+/**
+ * This interface has methods to implement to provide levels of a set
+ * decoding them from a file on demand.
+ *
+ * An instance of a class implementing this interface is used by
+ * a levels' set loaded in mapped mode, so set's counters are found
+ * without decoding levels.
+ *
+ * @author Dmitriy Pushkov
+ * @version 0.0.1
+ * @see LevelsSet#getLevelByIndex(int)
+ */
+public interface LevelsIndex {
+
+    /**
+     * Retrieves a count of indexed levels.
+     *
+     * @return
+     *      Levels' count.
+     */
+    public int getLevelsCount();
+
+    /**
+     * Retrieves level's size.
+     *
+     * @param levelIndex
+     *      Level's index.
+     * @return
+     *      Level's size.
+     */
+    public LevelSize getLevelSize(int levelIndex);
+
+    /**
+     * Retrieves level's state without decoding the level.
+     *
+     * @param levelIndex
+     *      Level's index.
+     * @param maximalSize
+     *      Level's maximal size describing game's accessable play field.
+     * @return
+     *      Level's state which is set by {@link Level#prepare(org.ezze.games.storekeeper.Level.LevelSize)}.
+     */
+    public LevelState getLevelState(int levelIndex, LevelSize maximalSize);
+
+    /**
+     * Decodes a level.
+     *
+     * @param levelIndex
+     *      Level's index.
+     * @return
+     *      Level's instance which is not prepared yet or {@code null} if {@code levelIndex} is invalid.
+     */
+    public Level decodeLevel(int levelIndex);
+}
@@ -0,0 +1,543 @@
+package org.ezze.games.storekeeper;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import org.ezze.games.storekeeper.Level.LevelSize;
+import org.ezze.games.storekeeper.Level.LevelState;
+
+/**
+ * This class reads and writes levels' packs, a compiled binary format of levels' sets.
+ *
+ * A pack starts with a header followed by a directory of fixed size entries, one per level.
+ * An entry keeps level's size, counts of goals, boxes and workers, level's state
+ * and references to level's cells and information. Cells are packed by 3 bits
+ * in rows' order, information is a list of pairs of strings' indexes
+ * in a string table shared by all levels, so repeated authors are kept once.
+ *
+ * The pack is read through a memory-mapped buffer without copying it to the heap,
+ * a level is decoded only when it's retrieved by {@link #decodeLevel(int)}.
+ *
+ * @author Dmitriy Pushkov
+ * @version 0.0.1
+ * @see LevelsSet#loadFromLevelsPack(java.lang.String)
+ */
+public class LevelsPack implements LevelsIndex {
+
+    /**
+     * Pack's magic number, "SKLP" in ASCII.
+     */
+    protected static final int MAGIC = 0x534B4C50;
+
+    /**
+     * Pack's format version.
+     */
+    protected static final int VERSION = 1;
+
+    /**
+     * Size of pack's header in bytes.
+     */
+    protected static final int HEADER_SIZE = 32;
+
+    /**
+     * Size of level's directory entry in bytes.
+     */
+    protected static final int ENTRY_SIZE = 24;
+
+    /**
+     * Count of bits of a packed cell.
+     */
+    protected static final int CELL_BITS = 3;
+
+    /**
+     * Item codes by packed cells' values.
+     */
+    protected static final byte[] CELL_ITEM_CODES = new byte[] {
+
+        Level.ITEM_CODE_SPACE,
+        Level.ITEM_CODE_BRICK,
+        Level.ITEM_CODE_GOAL,
+        Level.ITEM_CODE_BOX,
+        Level.ITEM_CODE_BOX | Level.ITEM_CODE_GOAL,
+        Level.ITEM_CODE_WORKER,
+        Level.ITEM_CODE_WORKER | Level.ITEM_CODE_GOAL
+    };
+
+    /**
+     * Charset of table's strings.
+     */
+    protected static final Charset STRING_CHARSET = Charset.forName("UTF-8");
+
+    /**
+     * Mapped pack.
+     */
+    protected MappedByteBuffer buffer = null;
+
+    /**
+     * Count of pack's levels.
+     */
+    protected int levelsCount = 0;
+
+    /**
+     * Opens a pack.
+     *
+     * @param file
+     *      Pack's file.
+     * @throws IOException
+     *      If the file cannot be mapped or is not a pack.
+     */
+    public LevelsPack(File file) throws IOException {
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+
+            FileChannel channel = randomAccessFile.getChannel();
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE)
+                throw new IOException("File is not a levels' pack");
+
+            // The mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        finally {
+
+            randomAccessFile.close();
+        }
+
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+            throw new IOException("File is not a levels' pack");
+
+        levelsCount = buffer.getInt(8);
+        if (!isLayoutValid())
+            throw new IOException("Levels' pack is damaged");
+    }
+
+    /**
+     * Checks that pack's regions and references fit into the file, so a truncated pack is rejected.
+     *
+     * @return
+     *      {@code true} if the layout is valid, {@code false} otherwise.
+     */
+    protected boolean isLayoutValid() {
+
+        int size = buffer.capacity();
+        long cellsStart = HEADER_SIZE + (long)levelsCount * ENTRY_SIZE;
+        int infoStart = buffer.getInt(16);
+        int stringsStart = buffer.getInt(20);
+        int stringsCount = buffer.getInt(24);
+        if (levelsCount < 0 || cellsStart > infoStart || infoStart > stringsStart || stringsCount < 0 ||
+                stringsStart + (stringsCount + 1L) * 4 > size)
+            return false;
+
+        // Strings' bytes follow their offsets and end the pack
+        long stringOffset = stringsStart + (stringsCount + 1L) * 4;
+        for (int stringIndex = 0; stringIndex <= stringsCount; stringIndex++) {
+
+            int nextStringOffset = buffer.getInt(stringsStart + stringIndex * 4);
+            if (nextStringOffset < stringOffset)
+                return false;
+
+            stringOffset = nextStringOffset;
+        }
+
+        if (stringOffset != size)
+            return false;
+
+        long infoPairsCount = (stringsStart - infoStart) / 8;
+        for (int levelIndex = 0; levelIndex < levelsCount; levelIndex++) {
+
+            int entryOffset = getEntryOffset(levelIndex);
+            int cellsOffset = buffer.getInt(entryOffset);
+            long cellsSize = ((long)buffer.getShort(entryOffset + 4) * buffer.getShort(entryOffset + 6) * CELL_BITS + 7) / 8;
+            int levelInfoIndex = buffer.getInt(entryOffset + 16);
+            int levelInfoCount = buffer.getInt(entryOffset + 20);
+            if (cellsSize < 0 || cellsOffset < cellsStart || cellsOffset + cellsSize > infoStart ||
+                    buffer.get(entryOffset + 14) < 0 || buffer.get(entryOffset + 14) >= LevelState.values().length ||
+                    levelInfoIndex < 0 || levelInfoCount < 0 || (long)levelInfoIndex + levelInfoCount > infoPairsCount)
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks whether a file is a pack by its magic number.
+     *
+     * @param file
+     *      File to check.
+     * @return
+     *      {@code true} if the file starts with pack's magic number, {@code false} otherwise.
+     */
+    public static boolean isLevelsPack(File file) {
+
+        try {
+
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+            try {
+
+                return randomAccessFile.length() >= HEADER_SIZE && randomAccessFile.readInt() == MAGIC;
+            }
+            finally {
+
+                randomAccessFile.close();
+            }
+        }
+        catch (IOException ex) {
+
+            return false;
+        }
+    }
+
+    /**
+     * Retrieves set's name.
+     *
+     * @return
+     *      Set's name or an empty string if it's not specified.
+     */
+    public String getName() {
+
+        String name = getString(buffer.getInt(12));
+        return name == null ? "" : name;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getLevelsCount() {
+
+        return levelsCount;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public LevelSize getLevelSize(int levelIndex) {
+
+        int entryOffset = getEntryOffset(levelIndex);
+        return new LevelSize(buffer.getShort(entryOffset + 4), buffer.getShort(entryOffset + 6));
+    }
+
+    /**
+     * Retrieves a count of level's goals.
+     *
+     * @param levelIndex
+     *      Level's index.
+     * @return
+     *      Goals' count.
+     */
+    public int getGoalsCount(int levelIndex) {
+
+        return buffer.getShort(getEntryOffset(levelIndex) + 8);
+    }
+
+    /**
+     * Retrieves a count of level's boxes.
+     *
+     * @param levelIndex
+     *      Level's index.
+     * @return
+     *      Boxes' count.
+     */
+    public int getBoxesCount(int levelIndex) {
+
+        return buffer.getShort(getEntryOffset(levelIndex) + 10);
+    }
+
+    /**
+     * Retrieves a count of level's workers.
+     *
+     * @param levelIndex
+     *      Level's index.
+     * @return
+     *      Workers' count.
+     */
+    public int getWorkersCount(int levelIndex) {
+
+        return buffer.getShort(getEntryOffset(levelIndex) + 12);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The state written to the pack is kept for empty and corrupted levels,
+     * other levels are checked against specified maximal size.
+     */
+    @Override
+    public LevelState getLevelState(int levelIndex, LevelSize maximalSize) {
+
+        int entryOffset = getEntryOffset(levelIndex);
+        LevelState levelState = LevelState.values()[buffer.get(entryOffset + 14)];
+        if (levelState == LevelState.EMPTY || levelState == LevelState.CORRUPTED)
+            return levelState;
+
+        if (buffer.getShort(entryOffset + 4) > maximalSize.getWidth() || buffer.getShort(entryOffset + 6) > maximalSize.getHeight())
+            return LevelState.OUT_OF_BOUNDS;
+
+        return LevelState.PLAYABLE;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Level decodeLevel(int levelIndex) {
+
+        if (levelIndex < 0 || levelIndex >= levelsCount)
+            return null;
+
+        int entryOffset = getEntryOffset(levelIndex);
+        int cellsOffset = buffer.getInt(entryOffset);
+        int width = buffer.getShort(entryOffset + 4);
+        int height = buffer.getShort(entryOffset + 6);
+
+        HashMap<String, Object> levelInfo = new HashMap<String, Object>();
+        int infoOffset = buffer.getInt(16) + buffer.getInt(entryOffset + 16) * 8;
+        int infoCount = buffer.getInt(entryOffset + 20);
+        for (int infoIndex = 0; infoIndex < infoCount; infoIndex++) {
+
+            String infoName = getString(buffer.getInt(infoOffset + infoIndex * 8));
+            String infoValue = getString(buffer.getInt(infoOffset + infoIndex * 8 + 4));
+            if (infoName != null && infoValue != null)
+                levelInfo.put(infoName, infoValue);
+        }
+
+        byte[] levelInitial = new byte[width * height];
+        for (int cellIndex = 0; cellIndex < levelInitial.length; cellIndex++) {
+
+            int bitIndex = cellIndex * CELL_BITS;
+            int bits = buffer.get(cellsOffset + (bitIndex >> 3)) & 0xFF;
+            if ((bitIndex & 7) > 8 - CELL_BITS)
+                bits |= (buffer.get(cellsOffset + (bitIndex >> 3) + 1) & 0xFF) << 8;
+
+            int cell = (bits >> (bitIndex & 7)) & ((1 << CELL_BITS) - 1);
+            levelInitial[cellIndex] = cell < CELL_ITEM_CODES.length ? CELL_ITEM_CODES[cell] : Level.ITEM_CODE_SPACE;
+        }
+
+        return new Level(levelInitial, width, height, levelInfo);
+    }
+
+    /**
+     * Writes levels of a set to a pack.
+     *
+     * Levels are retrieved from the set one by one, string values of levels' information are kept.
+     *
+     * @param levelsSet
+     *      Set to write.
+     * @param file
+     *      Pack's file.
+     * @throws IOException
+     *      If the file cannot be written.
+     */
+    public static void write(LevelsSet levelsSet, File file) throws IOException {
+
+        int levelsCount = levelsSet.getLevelsCount();
+        ArrayList<String> strings = new ArrayList<String>();
+        HashMap<String, Integer> stringsIndexes = new HashMap<String, Integer>();
+        ByteBuffer directory = ByteBuffer.allocate(levelsCount * ENTRY_SIZE);
+        ByteArrayOutputStream cells = new ByteArrayOutputStream();
+        ByteArrayOutputStream info = new ByteArrayOutputStream();
+        DataOutputStream infoOutputStream = new DataOutputStream(info);
+        int cellsStart = HEADER_SIZE + levelsCount * ENTRY_SIZE;
+        int infoPairsCount = 0;
+        for (int levelIndex = 0; levelIndex < levelsCount; levelIndex++) {
+
+            Level level = levelsSet.getLevelByIndex(levelIndex);
+            byte[] levelInitial = level.levelInitial;
+            int width = levelInitial == null ? 0 : level.getSize().getWidth();
+            int height = levelInitial == null ? 0 : level.getSize().getHeight();
+            int goalsCount = 0;
+            int boxesCount = 0;
+            int workersCount = 0;
+            byte[] packedCells = new byte[(width * height * CELL_BITS + 7) / 8];
+            for (int cellIndex = 0; cellIndex < width * height; cellIndex++) {
+
+                byte itemCode = levelInitial[cellIndex];
+                if ((itemCode & Level.ITEM_CODE_GOAL) != 0)
+                    goalsCount++;
+                if ((itemCode & Level.ITEM_CODE_BOX) != 0)
+                    boxesCount++;
+                if ((itemCode & Level.ITEM_CODE_WORKER) != 0)
+                    workersCount++;
+
+                int cell = 0;
+                while (cell < CELL_ITEM_CODES.length && CELL_ITEM_CODES[cell] != itemCode)
+                    cell++;
+                if (cell == CELL_ITEM_CODES.length)
+                    cell = 0;
+
+                int bitIndex = cellIndex * CELL_BITS;
+                packedCells[bitIndex >> 3] |= (byte)(cell << (bitIndex & 7));
+                if ((bitIndex & 7) > 8 - CELL_BITS)
+                    packedCells[(bitIndex >> 3) + 1] |= (byte)(cell >> (8 - (bitIndex & 7)));
+            }
+
+            int levelInfoIndex = infoPairsCount;
+            if (level.levelInfo != null) {
+
+                for (Map.Entry<String, Object> infoEntry : level.levelInfo.entrySet()) {
+
+                    if (!(infoEntry.getValue() instanceof String))
+                        continue;
+
+                    infoOutputStream.writeInt(getStringIndex(infoEntry.getKey(), strings, stringsIndexes));
+                    infoOutputStream.writeInt(getStringIndex((String)infoEntry.getValue(), strings, stringsIndexes));
+                    infoPairsCount++;
+                }
+            }
+
+            // Levels which have not been prepared yet are validated by their counts
+            LevelState levelState = LevelState.PLAYABLE;
+            if (width * height == 0)
+                levelState = LevelState.EMPTY;
+            else if (workersCount != 1 || boxesCount != goalsCount)
+                levelState = LevelState.CORRUPTED;
+            else if (level.getState() == LevelState.OUT_OF_BOUNDS)
+                levelState = LevelState.OUT_OF_BOUNDS;
+
+            directory.putInt(cellsStart + cells.size());
+            directory.putShort((short)width);
+            directory.putShort((short)height);
+            directory.putShort((short)goalsCount);
+            directory.putShort((short)boxesCount);
+            directory.putShort((short)workersCount);
+            directory.put((byte)levelState.ordinal());
+            directory.put((byte)0);
+            directory.putInt(levelInfoIndex);
+            directory.putInt(infoPairsCount - levelInfoIndex);
+            cells.write(packedCells);
+        }
+
+        int nameIndex = levelsSet.getName().isEmpty() ? -1 : getStringIndex(levelsSet.getName(), strings, stringsIndexes);
+        int infoStart = cellsStart + cells.size();
+        int stringsStart = infoStart + info.size();
+
+        DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+
+            outputStream.writeInt(MAGIC);
+            outputStream.writeInt(VERSION);
+            outputStream.writeInt(levelsCount);
+            outputStream.writeInt(nameIndex);
+            outputStream.writeInt(infoStart);
+            outputStream.writeInt(stringsStart);
+            outputStream.writeInt(strings.size());
+            outputStream.writeInt(0);
+            outputStream.write(directory.array());
+            cells.writeTo(outputStream);
+            info.writeTo(outputStream);
+
+            // String table is a list of strings' offsets followed by strings' bytes
+            ArrayList<byte[]> stringsBytes = new ArrayList<byte[]>();
+            int stringOffset = stringsStart + (strings.size() + 1) * 4;
+            for (String string : strings) {
+
+                byte[] stringBytes = string.getBytes(STRING_CHARSET);
+                stringsBytes.add(stringBytes);
+                outputStream.writeInt(stringOffset);
+                stringOffset += stringBytes.length;
+            }
+
+            outputStream.writeInt(stringOffset);
+            for (byte[] stringBytes : stringsBytes)
+                outputStream.write(stringBytes);
+        }
+        finally {
+
+            outputStream.close();
+        }
+    }
+
+    /**
+     * Retrieves a string from the table.
+     *
+     * @param stringIndex
+     *      String's index.
+     * @return
+     *      String or {@code null} if {@code stringIndex} is invalid.
+     */
+    protected String getString(int stringIndex) {
+
+        if (stringIndex < 0 || stringIndex >= buffer.getInt(24))
+            return null;
+
+        int offsetsStart = buffer.getInt(20);
+        int stringStart = buffer.getInt(offsetsStart + stringIndex * 4);
+        byte[] stringBytes = new byte[buffer.getInt(offsetsStart + stringIndex * 4 + 4) - stringStart];
+        ByteBuffer stringBuffer = buffer.duplicate();
+        stringBuffer.position(stringStart);
+        stringBuffer.get(stringBytes);
+        return new String(stringBytes, STRING_CHARSET);
+    }
+
+    /**
+     * Retrieves level's directory entry's offset.
+     *
+     * @param levelIndex
+     *      Level's index.
+     * @return
+     *      Entry's offset in bytes.
+     */
+    protected static int getEntryOffset(int levelIndex) {
+
+        return HEADER_SIZE + levelIndex * ENTRY_SIZE;
+    }
+
+    /**
+     * Retrieves string's index adding the string to the table if it's not there yet.
+     *
+     * @param string
+     *      String.
+     * @param strings
+     *      Table's strings.
+     * @param stringsIndexes
+     *      Indexes of table's strings.
+     * @return
+     *      String's index.
+     */
+    protected static int getStringIndex(String string, ArrayList<String> strings, HashMap<String, Integer> stringsIndexes) {
+
+        Integer stringIndex = stringsIndexes.get(string);
+        if (stringIndex == null) {
+
+            stringIndex = strings.size();
+            strings.add(string);
+            stringsIndexes.put(string, stringIndex);
+        }
+
+        return stringIndex;
+    }
+
+    /**
+     * Converts a set from a command line.
+     *
+     * Arguments are set's XML or SOK file and pack's file.
+     *
+     * @param args
+     *      Command line arguments.
+     * @throws IOException
+     *      If the pack cannot be written.
+     */
+    public static void main(String[] args) throws IOException {
+
+        if (args.length < 2) {
+
+            System.err.println("Usage: LevelsPack <set.xml|set.sok> <set.skp>");
+            System.exit(1);
+        }
+
+        LevelsSet levelsSet = new LevelsSet();
+        if (!levelsSet.load(args[0])) {
+
+            System.err.println(String.format("Unable to load levels' set from \"%s\"", args[0]));
+            System.exit(1);
+        }
+
+        write(levelsSet, new File(args[1]));
+    }
+}
@@ -3,8 +3,12 @@ package org.ezze.games.storekeeper;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import org.ezze.games.storekeeper.Level.LevelSize;
 import org.ezze.games.storekeeper.Level.LevelState;
 import org.ezze.utils.io.XMLHelper;
@@ -22,6 +26,23 @@ import org.w3c.dom.Element;
  */
 public class LevelsSet {
     
+    /**
+     * Minimal size of SOK file in bytes which is loaded in mapped mode.
+     * 
+     * Smaller files of several {@link ParallelSOKParser#CHUNK_SIZE} chunks
+     * are parsed in parallel, so multi-megabyte archives are loaded eagerly
+     * and only the ones whose levels would crowd the heap are decoded on demand.
+     * 
+     * @see #loadFromMappedSOKFile(java.lang.String)
+     * @see #loadFromSOKFile(java.lang.String)
+     */
+    public static final long MAPPED_SOK_FILE_MINIMAL_SIZE = 16L << 20;
+    
+    /**
+     * Maximal count of decoded levels kept by a set loaded in mapped mode.
+     */
+    public static final int DECODED_LEVELS_CACHE_SIZE = 16;
+    
     /**
      * Shows whether levels' set is initialized.
      * 
@@ -47,6 +68,21 @@ public class LevelsSet {
      */
     protected int currentLevelIndex = -1;
     
+    /**
+     * Index of levels' mapped file or {@code null} if levels are kept in {@link #levels}.
+     */
+    protected LevelsIndex levelsIndex = null;
+    
+    /**
+     * Levels decoded from mapped SOK file by their indexes in access order.
+     */
+    protected LinkedHashMap<Integer, Level> decodedLevels = null;
+    
+    /**
+     * Maximal level's size decoded levels are prepared with.
+     */
+    protected LevelSize decodedLevelsMaximalSize = null;
+    
     /**
      * Constructs empty levels' set.
      */ 
@@ -59,7 +95,8 @@ public class LevelsSet {
      * Constructs levels' set from specified source file or DOM document.
      * 
      * @param source 
-     *      Set's source file's name.
+     *      Set's source file's name, DOM document or XML stream.
+     * @see #load(java.lang.Object)
      */
     public LevelsSet(Object source) {
         
@@ -74,8 +111,11 @@ public class LevelsSet {
     /**
      * Loads levels' set from source file pointed by a name.
      * 
+     * A file is read as a levels' pack if it starts with pack's magic number
+     * (see {@link LevelsPack}), otherwise its format is defined by its extension.
+     * 
      * @param source
-     *      Set's source file's name.
+     *      Set's source file's name, DOM document or XML stream.
      * @return
      *      Set's load result.
      */
@@ -92,33 +132,58 @@ public class LevelsSet {
             if (!levelsSetFile.exists() || !levelsSetFile.isFile())
                 return false;
 
-            // Analyzing source's extension
-            if (levelsSetFile.getAbsolutePath().endsWith(".xml")) {
+            // Analyzing source's magic number and extension
+            if (LevelsPack.isLevelsPack(levelsSetFile)) {
+                
+                // Compiled levels' pack
+                loadFromLevelsPack((String)source);
+            }
+            else if (levelsSetFile.getAbsolutePath().endsWith(".xml")) {
 
                 // XML source
-                Document xmlLevelsSetDocument = XMLHelper.readXMLDocument((String)source);
-                loadFromDOM(xmlLevelsSetDocument);
+                try {
+                    
+                    InputStream xmlInputStream = new BufferedInputStream(new FileInputStream(levelsSetFile));
+                    try {
+                        
+                        loadFromXMLStream(xmlInputStream);
+                    }
+                    finally {
+                        
+                        xmlInputStream.close();
+                    }
+                }
+                catch (IOException ex) {
+                    
+                }
             }
             else if (levelsSetFile.getAbsolutePath().endsWith(".sok")) {
 
-                // SOK source
-                loadFromSOKFile((String)source);
+                // SOK source, large files are decoded by levels on demand
+                if (levelsSetFile.length() >= MAPPED_SOK_FILE_MINIMAL_SIZE)
+                    loadFromMappedSOKFile((String)source);
+                else
+                    loadFromSOKFile((String)source);
             }
         }
         else if (source instanceof Document) {
             
             loadFromDOM((Document)source);
         }
+        else if (source instanceof InputStream) {
+            
+            loadFromXMLStream((InputStream)source);
+        }
         
         // Determining maximal possible size of set's level
         LevelSize maximalLevelSize = getMaximalLevelSize();
         
-        // Initializing levels
+        // Validating levels, they will be materialized when they are played or rendered
+        // and their push distances will be found when they are selected
         int levelIndex = 0;
-        while (levelIndex < getLevelsCount()) {
+        while (levelIndex < levels.size()) {
             
-            Level level = levels.get(levelIndex);
-            level.initialize(maximalLevelSize);
+            levels.get(levelIndex).prepare(maximalLevelSize);
             levelIndex++;
         }
         
@@ -177,177 +242,130 @@ public class LevelsSet {
     }
     
     /**
-     * Loads levels from specified SOK file.
+     * Reads levels from provided XML stream in one forward pass.
      * 
-     * @param fileName
-     *      SOK-file's name.
+     * Unlike {@link #loadFromDOM(org.w3c.dom.Document)} the document's tree
+     * is never built, level's rows are collected while the stream is read
+     * and the level is created as soon as its element is closed.
+     * The stream is not closed by the method.
+     * 
+     * @param xmlInputStream
+     *      XML stream of levels' set.
+     * @see #load(java.lang.Object)
      */
-    public void loadFromSOKFile(String fileName) {
+    public void loadFromXMLStream(InputStream xmlInputStream) {
         
         try {
             
-            FileInputStream fileInputStream = new FileInputStream(fileName);
-            BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(fileInputStream));
-        
-            Pattern levelLinePattern = Pattern.compile(String.format("^[%s%s%s%s%s%s%s]+$",
-                    Level.LEVEL_ITEM_WORKER_REG, Level.LEVEL_ITEM_WORKER_ON_GOAL_REG,
-                    Level.LEVEL_ITEM_BRICK_REG, Level.LEVEL_ITEM_GOAL_REG,
-                    Level.LEVEL_ITEM_BOX_REG, Level.LEVEL_ITEM_BOX_ON_GOAL_REG,
-                    Level.LEVEL_ITEM_SPACE_REG));
-            
-            String fileLine = null;
-            ArrayList<String> fileLines = new ArrayList<String>();
-            ArrayList<int[]> levelsBoundingIndexes = new ArrayList<int[]>();
-            boolean doesLastLineDescribesLevel = false;
-            int levelStartIndex = -1;
-            int lineIndex = -1;
-            while ((fileLine = bufferedReader.readLine()) != null) {
+            XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+            xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            XMLStreamReader xmlStreamReader = xmlInputFactory.createXMLStreamReader(xmlInputStream);
+            try {
                 
-                // Trimming the line from the right
-                while (fileLine.endsWith(" "))
-                    fileLine = fileLine.substring(0, fileLine.length() - 1);
-                
-                lineIndex++;
-                
-                // Checking whether the line describes level's row
-                Matcher levelLineMatcher = levelLinePattern.matcher(fileLine);
-                if (!fileLine.isEmpty() && levelLineMatcher.matches()) {
-                    
-                    // We have level's row here
-                    if (!doesLastLineDescribesLevel) {
-                        
-                        levelStartIndex = lineIndex;
-                    }
-                    
-                    doesLastLineDescribesLevel = true;
-                }
-                else {
+                // Set's elements are at depth 2 and level's elements are at depth 3
+                int depth = 0;
+                ArrayList<String> levelLines = null;
+                String levelName = null;
+                StringBuilder elementText = new StringBuilder();
+                boolean isTextCollected = false;
+                while (xmlStreamReader.hasNext()) {
                     
-                    if (doesLastLineDescribesLevel) {
+                    switch (xmlStreamReader.next()) {
                         
-                        int[] levelIndexes = new int[] {
+                        case XMLStreamConstants.START_ELEMENT:
                             
-                            levelStartIndex,
-                            lineIndex - 1
-                        };
-                        
-                        levelsBoundingIndexes.add(levelIndexes);
-                    }
-                    
-                    doesLastLineDescribesLevel = false;
-                }
-                
-                fileLines.add(fileLine);
-            }
-            
-            if (doesLastLineDescribesLevel) {
-                
-                int[] levelIndexes = new int[] {
-                    
-                    levelStartIndex,
-                    lineIndex - 1
-                };
-                
-                levelsBoundingIndexes.add(levelIndexes);
-            }
-            
-            Pattern infoPattern = Pattern.compile("^([A-Za-z ]+):(.+)$");
-            
-            // Checking whether at least one level was found
-            if (levelsBoundingIndexes.size() > 0) {
-                
-                // Creating levels
-                int levelIndex = 0;
-                while (levelIndex < levelsBoundingIndexes.size()) {
-
-                    int[] levelBoundingIndexes = levelsBoundingIndexes.get(levelIndex);
-                    int currentLevelStartIndex = levelBoundingIndexes[0];
-                    int currentLevelEndIndex = levelBoundingIndexes[1];
-                    
-                    ArrayList<String> levelLines = new ArrayList<String>();
-                    for (int levelLineIndex = currentLevelStartIndex; levelLineIndex <= currentLevelEndIndex; levelLineIndex++) {
-                        
-                        String levelLine = fileLines.get(levelLineIndex);
-                        levelLines.add(levelLine);
-                    }
-                    
-                    int levelInfoLastLineIndex = -1;
-                    if (levelIndex + 1 < levelsBoundingIndexes.size()) {
-                        
-                        levelInfoLastLineIndex = levelsBoundingIndexes.get(levelIndex + 1)[0] - 1;
-                    }
-                    else {
-                        
-                        levelInfoLastLineIndex = fileLines.size() - 1;
-                    }
-
-                    // Gathering level's information
-                    HashMap<String, Object> levelInfo = new HashMap<String, Object>();
-                    
-                    int levelInfoIndex = levelInfoLastLineIndex;
-                    boolean ignoreFirstNonEmptyLine = true;
-                    while (levelInfoIndex > currentLevelEndIndex) {
-
-                        String levelInfoLine = fileLines.get(levelInfoIndex);
-                        if (!levelInfoLine.isEmpty()) {
-
-                            if (ignoreFirstNonEmptyLine) {
-
-                                ignoreFirstNonEmptyLine = false;
+                            depth++;
+                            String startElementName = xmlStreamReader.getLocalName();
+                            if (depth == 2 && startElementName.equals("level")) {
+                                
+                                levelLines = new ArrayList<String>();
+                                levelName = "";
                             }
-                            else {
-
-                                // Analyzing information line
-                                Matcher infoMatcher = infoPattern.matcher(levelInfoLine);
-                                if (infoMatcher.matches()) {
-
-                                    String infoName = infoMatcher.group(1).trim().toLowerCase();
-                                    String infoValue = infoMatcher.group(2).trim();
-
-                                    if (infoName.equals("title"))
-                                        levelInfo.put("name", infoValue);
-                                    else if (infoName.equals("author"))
-                                        levelInfo.put("author", infoValue);
-                                }
+                            else if ((depth == 2 && startElementName.equals("name")) || (depth == 3 && levelLines != null
+                                    && (startElementName.equals("l") || startElementName.equals("name")))) {
+                                
+                                elementText.setLength(0);
+                                isTextCollected = true;
                             }
-                        }
-
-                        levelInfoIndex--;
-                    }
-                    
-                    // Checking whether level's name is found
-                    if (!levelInfo.containsKey("name")) {
-                        
-                        // Trying to find level's name just before level lines
-                        int levelInfoFirstLineIndex = 0;
-                        if (levelIndex - 1 >= 0) {
+                            break;
                             
-                            levelInfoFirstLineIndex = levelsBoundingIndexes.get(levelIndex - 1)[1] + 1;
-                        }
-                        
-                        levelInfoIndex = currentLevelStartIndex - 1;
-                        while (levelInfoIndex >= levelInfoFirstLineIndex) {
+                        case XMLStreamConstants.CHARACTERS:
+                        case XMLStreamConstants.CDATA:
+                        case XMLStreamConstants.SPACE:
                             
-                            String levelInfoLine = fileLines.get(levelInfoIndex);
-                            if (!levelInfoLine.isEmpty() && !infoPattern.matcher(levelInfoLine).matches()) {
+                            if (isTextCollected) {
                                 
-                                levelInfo.put("name", levelInfoLine.trim());
-                                break;
+                                elementText.append(xmlStreamReader.getTextCharacters(),
+                                        xmlStreamReader.getTextStart(), xmlStreamReader.getTextLength());
                             }
+                            break;
                             
-                            levelInfoIndex--;
-                        }
+                        case XMLStreamConstants.END_ELEMENT:
+                            
+                            String endElementName = xmlStreamReader.getLocalName();
+                            if (isTextCollected && depth == 2)
+                                setName(elementText.toString());
+                            else if (isTextCollected && endElementName.equals("l"))
+                                levelLines.add(elementText.toString());
+                            else if (isTextCollected)
+                                levelName = elementText.toString();
+                            else if (depth == 2 && levelLines != null) {
+                                
+                                if (!levelLines.isEmpty())
+                                    addLevel(createLevelFromLines(levelLines, levelName));
+                                levelLines = null;
+                            }
+                            
+                            isTextCollected = false;
+                            depth--;
+                            break;
                     }
+                }
+            }
+            finally {
+                
+                xmlStreamReader.close();
+            }
+        }
+        catch (XMLStreamException ex) {
+            
+        }
+    }
+    
+    /**
+     * Loads levels from specified SOK file.
+     * 
+     * The file is streamed through {@link SOKParser}, so it is never kept in memory as a whole.
+     * Files of several chunks are parsed by {@link ParallelSOKParser} chunk by chunk in parallel,
+     * {@link #load(java.lang.Object)} passes files up to {@link #MAPPED_SOK_FILE_MINIMAL_SIZE} bytes here.
+     * 
+     * @param fileName
+     *      SOK-file's name.
+     */
+    public void loadFromSOKFile(String fileName) {
+        
+        try {
+            
+            File sokFile = new File(fileName);
+            ArrayList<Level> parsedLevels;
+            if (sokFile.length() >= 2L * ParallelSOKParser.CHUNK_SIZE)
+                parsedLevels = ParallelSOKParser.parse(sokFile);
+            else {
+                
+                parsedLevels = new ArrayList<Level>();
+                InputStream sokInputStream = new FileInputStream(sokFile);
+                try {
                     
-                    Level level = new Level(levelLines, levelInfo);
-                    addLevel(level);
+                    new SOKParser(parsedLevels).parse(sokInputStream);
+                }
+                finally {
                     
-                    levelIndex++;
+                    sokInputStream.close();
                 }
             }
             
-            bufferedReader.close();
-            fileInputStream.close();
+            for (Level level : parsedLevels)
+                addLevel(level);
         }
         catch (FileNotFoundException ex) {
             
@@ -357,6 +375,80 @@ public class LevelsSet {
         }
     }
     
+    /**
+     * Loads levels from specified SOK file in mapped mode.
+     * 
+     * The file is memory-mapped and indexed by {@link SOKIndex}, a level is decoded
+     * when it's retrieved by {@link #getLevelByIndex(int)} and is kept in a cache of
+     * {@link #DECODED_LEVELS_CACHE_SIZE} recently retrieved levels, so neither loading time
+     * nor memory grow with levels' count. The selected level is never dropped from the cache.
+     * 
+     * @param fileName
+     *      SOK-file's name.
+     * @see #load(java.lang.Object)
+     */
+    public void loadFromMappedSOKFile(String fileName) {
+        
+        try {
+            
+            setLevelsIndex(new SOKIndex(new File(fileName)));
+        }
+        catch (IOException ex) {
+            
+        }
+    }
+    
+    /**
+     * Loads levels from specified levels' pack in mapped mode.
+     * 
+     * Pack's directory and cells are read straight from the mapped file,
+     * levels are decoded and cached the same way {@link #loadFromMappedSOKFile(java.lang.String)} does.
+     * 
+     * @param fileName
+     *      Pack's file name.
+     * @see LevelsPack#write(org.ezze.games.storekeeper.LevelsSet, java.io.File)
+     */
+    public void loadFromLevelsPack(String fileName) {
+        
+        try {
+            
+            LevelsPack levelsPack = new LevelsPack(new File(fileName));
+            if (setLevelsIndex(levelsPack))
+                setName(levelsPack.getName());
+        }
+        catch (IOException ex) {
+            
+        }
+    }
+    
+    /**
+     * Switches the set to mapped mode.
+     * 
+     * @param index
+     *      Index of set's levels.
+     * @return
+     *      {@code true} if the index has levels, {@code false} otherwise.
+     */
+    protected boolean setLevelsIndex(LevelsIndex index) {
+        
+        if (index.getLevelsCount() == 0)
+            return false;
+        
+        levelsIndex = index;
+        decodedLevels = new LinkedHashMap<Integer, Level>(DECODED_LEVELS_CACHE_SIZE, 0.75f, true) {
+            
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Level> eldestEntry) {
+                
+                return size() > DECODED_LEVELS_CACHE_SIZE;
+            }
+        };
+        decodedLevelsMaximalSize = getMaximalLevelSize();
+        if (currentLevelIndex < 0)
+            currentLevelIndex = 0;
+        return true;
+    }
+    
     /**
      * Creates level's instance from provided lines (rows).
      * 
@@ -396,16 +488,30 @@ public class LevelsSet {
      * Reinitializes all currently loaded levels.
      * 
      * This method must be used every time level's maximal size (width and height)
-     * has been changed.
+     * has been changed. Levels are only validated here and will be materialized
+     * when they are played or rendered.
      * 
      * @param maximalLevelSize
      *      Level's maximal size describing game's accessable play field.
      * @see #reinitialize()
-     * @see Level#initialize()
-     * @see Level#initialize(org.ezze.games.storekeeper.Level.LevelSize)
+     * @see Level#prepare(org.ezze.games.storekeeper.Level.LevelSize)
      */
     public void reinitialize(LevelSize maximalLevelSize) {
         
+        if (levelsIndex != null) {
+            
+            // Levels of mapped file will be prepared when they are decoded
+            synchronized (decodedLevels) {
+                
+                decodedLevelsMaximalSize = maximalLevelSize == null ?
+                        new LevelSize(Level.DEFAULT_LEVEL_WIDTH, Level.DEFAULT_LEVEL_HEIGHT) : maximalLevelSize;
+                for (Level decodedLevel : decodedLevels.values())
+                    decodedLevel.prepare(decodedLevelsMaximalSize);
+            }
+            
+            return;
+        }
+        
         int gameLevelIndex = 0;
         while (gameLevelIndex < getLevelsCount()) {
             
@@ -413,7 +519,7 @@ public class LevelsSet {
             Level gameLevel = getLevelByIndex(gameLevelIndex);
             
             // Attempting to reinitialize the level
-            gameLevel.initialize(maximalLevelSize == null ?
+            gameLevel.prepare(maximalLevelSize == null ?
                     new LevelSize(Level.DEFAULT_LEVEL_WIDTH, Level.DEFAULT_LEVEL_HEIGHT) : maximalLevelSize);
             gameLevelIndex++;
         }
@@ -466,6 +572,9 @@ public class LevelsSet {
      */
     public int getLevelsCount() {
         
+        if (levelsIndex != null)
+            return levelsIndex.getLevelsCount();
+        
         return levels == null ? 0 : levels.size();
     }
     
@@ -481,10 +590,23 @@ public class LevelsSet {
      */
     public int getLevelsCountByState(LevelState levelState) {
         
-        if (levels == null || levels.isEmpty() || levelState == null)
+        if (levels == null || isEmpty() || levelState == null)
             return 0;
         
         int levelsCount = 0;
+        if (levelsIndex != null) {
+            
+            // States of mapped file's levels are known without decoding
+            for (int levelIndex = 0; levelIndex < levelsIndex.getLevelsCount(); levelIndex++) {
+                
+                if (levelsIndex.getLevelState(levelIndex, decodedLevelsMaximalSize) == levelState)
+                    levelsCount++;
+            }
+            
+            return levelsCount;
+        }
+        
+
         for (Level level : levels) {
             
             if (level.getState() == levelState)
@@ -544,19 +666,25 @@ public class LevelsSet {
      */
     public boolean setCurrentLevelByIndex(int levelIndex, boolean playable) {
         
-        if (levels == null || levelIndex < 0 || levelIndex >= levels.size()) {
+        int previousLevelIndex = currentLevelIndex;
+        
+        if (levels == null || levelIndex < 0 || levelIndex >= getLevelsCount()) {
             
             currentLevelIndex = -1;
+            evictLevel(previousLevelIndex);
             return false;
         }
         
         if (playable && getPlayableLevelsCount() == 0) {
             
             currentLevelIndex = -1;
+            evictLevel(previousLevelIndex);
             return false;
         }
         
         currentLevelIndex = levelIndex;
+        evictLevel(previousLevelIndex);
+        findPushDistances();
         return true;
     }
     
@@ -568,19 +696,23 @@ public class LevelsSet {
      */
     public boolean setCurrentLevelByFirstPlayable() {
         
-        if (levels == null || levels.isEmpty()) {
+        int previousLevelIndex = currentLevelIndex;
+        
+        if (levels == null || isEmpty()) {
             
             currentLevelIndex = -1;
             return false;
         }
         
         int levelIndex = 0;
-        while (levelIndex < levels.size()) {
+        while (levelIndex < getLevelsCount()) {
             
-            Level level = levels.get(levelIndex);
+            Level level = getLevelByIndex(levelIndex);
             if (level.isPlayable()) {
                 
                 currentLevelIndex = levelIndex;
+                evictLevel(previousLevelIndex);
+                findPushDistances();
                 return true;
             }
             
@@ -588,6 +720,7 @@ public class LevelsSet {
         }
         
         currentLevelIndex = -1;
+        evictLevel(previousLevelIndex);
         return false;
     }
     
@@ -612,7 +745,7 @@ public class LevelsSet {
      */
     public boolean goToPreviousLevel(boolean playable) {
         
-        if (levels == null || currentLevelIndex < 0 || currentLevelIndex >= levels.size()) {
+        if (levels == null || currentLevelIndex < 0 || currentLevelIndex >= getLevelsCount()) {
             
             currentLevelIndex = -1;
             return false;
@@ -624,14 +757,17 @@ public class LevelsSet {
             return false;
         }
         
+        int previousLevelIndex = currentLevelIndex;
         do {
             
             currentLevelIndex--;
             if (currentLevelIndex < 0)
-                currentLevelIndex = levels.size() - 1;
+                currentLevelIndex = getLevelsCount() - 1;
         }
         while (playable && !getCurrentLevel().isPlayable());
         
+        evictLevel(previousLevelIndex);
+        findPushDistances();
         return true;
     }
     
@@ -656,7 +792,7 @@ public class LevelsSet {
      */
     public boolean goToNextLevel(boolean playable) {
         
-        if (levels == null || currentLevelIndex < 0 || currentLevelIndex >= levels.size()) {
+        if (levels == null || currentLevelIndex < 0 || currentLevelIndex >= getLevelsCount()) {
             
             currentLevelIndex = -1;
             return false;
@@ -668,17 +804,74 @@ public class LevelsSet {
             return false;
         }
         
+        int previousLevelIndex = currentLevelIndex;
         do {
             
             currentLevelIndex++;
-            if (currentLevelIndex >= levels.size())
+            if (currentLevelIndex >= getLevelsCount())
                 currentLevelIndex = 0;
         }
         while (playable && !getCurrentLevel().isPlayable());
             
+        evictLevel(previousLevelIndex);
+        findPushDistances();
         return true;
     }
     
+    /**
+     * Evicts materialized items of the level if it's not selected anymore.
+     * 
+     * Evicted items are kept until memory is required (see {@link Level#evict()}).
+     * 
+     * @param levelIndex
+     *      Level's index.
+     */
+    protected void evictLevel(int levelIndex) {
+        
+        if (levelIndex == currentLevelIndex)
+            return;
+        
+        // Levels of mapped file which are not decoded have nothing to evict
+        Level level;
+        if (levelsIndex != null) {
+            
+            synchronized (decodedLevels) {
+                
+                level = decodedLevels.get(levelIndex);
+            }
+        }
+        else
+            level = getLevelByIndex(levelIndex);
+        
+        if (level != null)
+            level.evict();
+    }
+    
+    /**
+     * Finds push distances of the selected level and of the next one in background.
+     * 
+     * Distances are found only for levels which are about to be played,
+     * distances of levels played before are read from disk cache
+     * (see {@link PushDistances#create(byte[], int, int)}).
+     */
+    protected void findPushDistances() {
+        
+        if (currentLevelIndex < 0)
+            return;
+        
+        ArrayList<Level> pendingLevels = new ArrayList<Level>(2);
+        int levelIndex = currentLevelIndex;
+        while (levelIndex <= currentLevelIndex + 1 && levelIndex < getLevelsCount()) {
+            
+            if (getLevelStateByIndex(levelIndex) == LevelState.PLAYABLE)
+                pendingLevels.add(getLevelByIndex(levelIndex));
+            levelIndex++;
+        }
+        
+        if (!pendingLevels.isEmpty())
+            PushDistances.createInBackground(pendingLevels);
+    }
+    
     /**
      * Retrieves a reference to currently selected level's instance.
      * 
@@ -703,21 +896,86 @@ public class LevelsSet {
      */
     public Level getLevelByIndex(int levelIndex) {
     
+        if (levelsIndex != null)
+            return getDecodedLevel(levelIndex);
+        
         if (levels == null || levelIndex < 0 || levelIndex >= levels.size())
             return null;
         
         return levels.get(levelIndex);
     }
     
+    /**
+     * Retrieves a state of level specified by its index.
+     * 
+     * A level of mapped file isn't decoded to get its state.
+     * 
+     * @param levelIndex
+     *      Level's index.
+     * @return
+     *      Level's state or {@code null} if {@code levelIndex} is invalid.
+     * @see #getLevelByIndex(int)
+     */
+    public LevelState getLevelStateByIndex(int levelIndex) {
+        
+        if (levelsIndex != null) {
+            
+            if (levelIndex < 0 || levelIndex >= levelsIndex.getLevelsCount())
+                return null;
+            
+            return levelsIndex.getLevelState(levelIndex, decodedLevelsMaximalSize);
+        }
+        
+        Level level = getLevelByIndex(levelIndex);
+        return level == null ? null : level.getState();
+    }
+    
+    /**
+     * Decodes a level of mapped SOK file if it's not decoded yet.
+     * 
+     * @param levelIndex
+     *      Level's index.
+     * @return
+     *      Level's instance or {@code null} if {@code levelIndex} is invalid.
+     * @see #loadFromMappedSOKFile(java.lang.String)
+     */
+    protected Level getDecodedLevel(int levelIndex) {
+        
+        if (levelIndex < 0 || levelIndex >= levelsIndex.getLevelsCount())
+            return null;
+        
+        synchronized (decodedLevels) {
+            
+            Level level = decodedLevels.get(levelIndex);
+            if (level == null) {
+                
+                level = levelsIndex.decodeLevel(levelIndex);
+                if (level == null)
+                    return null;
+                
+                level.prepare(decodedLevelsMaximalSize);
+                decodedLevels.put(levelIndex, level);
+            }
+            
+            // Touching the selected level keeps it away from the eldest entries
+            if (levelIndex != currentLevelIndex)
+                decodedLevels.get(currentLevelIndex);
+            
+            return level;
+        }
+    }
+    
     /**
      * Adds new level to the set.
      * 
+     * Levels can't be added to a set loaded in mapped mode.
+     * 
      * @param level 
      *      New level's instance.
      */
     public void addLevel(Level level) {
         
-        if (level == null)
+        if (level == null || levelsIndex != null)
             return;
         
         levels.add(level);
@@ -740,6 +998,18 @@ public class LevelsSet {
         int maximalWidth = Level.MINIMAL_LEVEL_WIDTH;
         int maximalHeight = Level.MINIMAL_LEVEL_HEIGHT;
         
+        if (levelsIndex != null) {
+            
+            for (int levelIndex = 0; levelIndex < levelsIndex.getLevelsCount(); levelIndex++) {
+                
+                LevelSize levelSize = levelsIndex.getLevelSize(levelIndex);
+                maximalWidth = Math.max(maximalWidth, levelSize.getWidth());
+                maximalHeight = Math.max(maximalHeight, levelSize.getHeight());
+            }
+            
+            return new LevelSize(maximalWidth, maximalHeight);
+        }
+        
         int levelIndex = 0;
         while (levelIndex < levels.size()) {
             
@@ -0,0 +1,334 @@
+package org.ezze.games.storekeeper;
+
+/**
+ * This class estimates remaining pushes by minimum-cost matching of boxes to goals.
+ *
+ * A cost of moving a box to a goal is the push distance ignoring other boxes
+ * (see {@link SolverBoard#getGoalPushDistance(int, int)}), the estimation is the
+ * least total cost among all assignments of boxes to distinct goals found
+ * by Hungarian algorithm.
+ *
+ * A matching is kept in a plain array with boxes' cells and algorithm's
+ * potentials and assignment, so after a push only the row of the pushed box
+ * is reassigned by a single augmenting path instead of solving from scratch.
+ * Matching's layout for {@code n} boxes where rows and columns are 1-based:
+ * <ul>
+ * <li>{@code [0]} - total cost;</li>
+ * <li>{@code [1..n]} - boxes' cells by rows;</li>
+ * <li>{@code [n + 1..2n + 1]} - rows' potentials;</li>
+ * <li>{@code [2n + 2..3n + 2]} - columns' (goals') potentials;</li>
+ * <li>{@code [3n + 3..4n + 3]} - rows assigned to columns.</li>
+ * </ul>
+ *
+ * @author Dmitriy Pushkov
+ * @version 0.0.1
+ * @see Solver
+ */
+public class MatchingHeuristic {
+
+    /**
+     * Cost of assigning a box to a goal it cannot be pushed to,
+     * it exceeds a total cost of any assignment using reachable goals only.
+     */
+    protected static final int INFINITE_COST = 1 << 20;
+
+    /**
+     * Solver's board.
+     */
+    protected SolverBoard board = null;
+
+    /**
+     * Count of boxes which is equal to a count of goals.
+     */
+    protected int boxesCount = 0;
+
+    /**
+     * Offset of rows' potentials in a matching.
+     */
+    protected int rowsPotentialsOffset = 0;
+
+    /**
+     * Offset of columns' potentials in a matching.
+     */
+    protected int columnsPotentialsOffset = 0;
+
+    /**
+     * Offset of assigned rows in a matching.
+     */
+    protected int assignedRowsOffset = 0;
+
+    /**
+     * Keeps augmenting path search's buffers of each thread.
+     */
+    protected final ThreadLocal<SearchBuffers> searchBuffers = new ThreadLocal<SearchBuffers>() {
+
+        @Override
+        protected SearchBuffers initialValue() {
+
+            return new SearchBuffers(boxesCount);
+        }
+    };
+
+    /**
+     * This class keeps thread's buffers used to find augmenting paths.
+     */
+    protected static class SearchBuffers {
+
+        /**
+         * Minimal reduced costs of columns.
+         */
+        protected final int[] minimalCosts;
+
+        /**
+         * Previous columns of augmenting path.
+         */
+        protected final int[] previousColumns;
+
+        /**
+         * Marks columns visited by augmenting path.
+         */
+        protected final boolean[] isUsed;
+
+        /**
+         * Creates buffers for specified count of boxes.
+         *
+         * @param boxesCount
+         *      Count of boxes.
+         */
+        protected SearchBuffers(int boxesCount) {
+
+            minimalCosts = new int[boxesCount + 1];
+            previousColumns = new int[boxesCount + 1];
+            isUsed = new boolean[boxesCount + 1];
+        }
+    }
+
+    /**
+     * Creates the heuristic for specified board.
+     *
+     * @param board
+     *      Solver's board.
+     */
+    public MatchingHeuristic(SolverBoard board) {
+
+        this.board = board;
+        boxesCount = board.getBoxesCount();
+        rowsPotentialsOffset = boxesCount + 1;
+        columnsPotentialsOffset = rowsPotentialsOffset + boxesCount + 1;
+        assignedRowsOffset = columnsPotentialsOffset + boxesCount + 1;
+    }
+
+    /**
+     * Retrieves a length of matchings' arrays.
+     *
+     * @return
+     *      Matching's length.
+     */
+    public int getMatchingLength() {
+
+        return assignedRowsOffset + boxesCount + 1;
+    }
+
+    /**
+     * Retrieves matching's estimation.
+     *
+     * @param matching
+     *      Matching.
+     * @return
+     *      Estimated count of remaining pushes.
+     */
+    public static int getEstimation(int[] matching) {
+
+        return matching[0];
+    }
+
+    /**
+     * Finds a matching of boxes' position from scratch.
+     *
+     * @param boxes
+     *      Boxes' bit set.
+     * @return
+     *      Matching or {@code null} if some box cannot be assigned to a goal.
+     */
+    public int[] createMatching(long[] boxes) {
+
+        int[] matching = new int[assignedRowsOffset + boxesCount + 1];
+        int row = 0;
+        for (int wordIndex = 0; wordIndex < boxes.length; wordIndex++) {
+
+            long word = boxes[wordIndex];
+            while (word != 0) {
+
+                matching[++row] = (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+
+        for (row = 1; row <= boxesCount; row++)
+            assignRow(matching, row);
+
+        return completeMatching(matching);
+    }
+
+    /**
+     * Updates a matching after a push of a box.
+     *
+     * Pushed box' row is unassigned and its potential is lowered to keep
+     * potentials feasible for new costs, then the row is assigned back
+     * by one augmenting path in {@code O(n^2)} time.
+     *
+     * @param matching
+     *      Matching of the position before the push which is not modified.
+     * @param boxCell
+     *      Cell of the pushed box.
+     * @param boxDestinationCell
+     *      Box' destination cell.
+     * @return
+     *      Matching of the position after the push or {@code null} if some box
+     *      cannot be assigned to a goal.
+     */
+    public int[] updateMatching(int[] matching, int boxCell, int boxDestinationCell) {
+
+        int[] updatedMatching = matching.clone();
+        int row = 1;
+        while (updatedMatching[row] != boxCell)
+            row++;
+
+        updatedMatching[row] = boxDestinationCell;
+        for (int column = 1; column <= boxesCount; column++) {
+
+            if (updatedMatching[assignedRowsOffset + column] == row) {
+
+                updatedMatching[assignedRowsOffset + column] = 0;
+                break;
+            }
+        }
+
+        int rowPotential = Integer.MAX_VALUE;
+        for (int column = 1; column <= boxesCount; column++) {
+
+            rowPotential = Math.min(rowPotential, getCost(boxDestinationCell, column) -
+                    updatedMatching[columnsPotentialsOffset + column]);
+        }
+
+        updatedMatching[rowsPotentialsOffset + row] = rowPotential;
+        assignRow(updatedMatching, row);
+        return completeMatching(updatedMatching);
+    }
+
+    /**
+     * Retrieves a cost of assigning a box to a goal.
+     *
+     * @param boxCell
+     *      Box' cell.
+     * @param column
+     *      Goal's 1-based index.
+     * @return
+     *      Cost.
+     */
+    protected int getCost(int boxCell, int column) {
+
+        int distance = board.getGoalPushDistance(column - 1, boxCell);
+        return distance == SolverBoard.DISTANCE_INFINITE ? INFINITE_COST : distance;
+    }
+
+    /**
+     * Assigns an unassigned row by the shortest augmenting path keeping potentials feasible.
+     *
+     * @param matching
+     *      Matching to modify.
+     * @param row
+     *      Row to assign.
+     */
+    protected void assignRow(int[] matching, int row) {
+
+        SearchBuffers buffers = searchBuffers.get();
+        int[] minimalCosts = buffers.minimalCosts;
+        int[] previousColumns = buffers.previousColumns;
+        boolean[] isUsed = buffers.isUsed;
+        for (int column = 0; column <= boxesCount; column++) {
+
+            minimalCosts[column] = Integer.MAX_VALUE;
+            isUsed[column] = false;
+        }
+
+        // Column 0 is a fictive column assigned to the row
+        matching[assignedRowsOffset] = row;
+        int currentColumn = 0;
+        do {
+
+            isUsed[currentColumn] = true;
+            int currentRow = matching[assignedRowsOffset + currentColumn];
+            int currentRowCell = matching[currentRow];
+            int currentRowPotential = matching[rowsPotentialsOffset + currentRow];
+            int delta = Integer.MAX_VALUE;
+            int nextColumn = 0;
+            for (int column = 1; column <= boxesCount; column++) {
+
+                if (isUsed[column])
+                    continue;
+
+                int reducedCost = getCost(currentRowCell, column) - currentRowPotential -
+                        matching[columnsPotentialsOffset + column];
+                if (reducedCost < minimalCosts[column]) {
+
+                    minimalCosts[column] = reducedCost;
+                    previousColumns[column] = currentColumn;
+                }
+
+                if (minimalCosts[column] < delta) {
+
+                    delta = minimalCosts[column];
+                    nextColumn = column;
+                }
+            }
+
+            for (int column = 0; column <= boxesCount; column++) {
+
+                if (isUsed[column]) {
+
+                    matching[rowsPotentialsOffset + matching[assignedRowsOffset + column]] += delta;
+                    matching[columnsPotentialsOffset + column] -= delta;
+                }
+                else
+                    minimalCosts[column] -= delta;
+            }
+
+            currentColumn = nextColumn;
+        }
+        while (matching[assignedRowsOffset + currentColumn] != 0);
+
+        // Flipping assignments along the path
+        do {
+
+            int previousColumn = previousColumns[currentColumn];
+            matching[assignedRowsOffset + currentColumn] = matching[assignedRowsOffset + previousColumn];
+            currentColumn = previousColumn;
+        }
+        while (currentColumn != 0);
+    }
+
+    /**
+     * Computes matching's total cost.
+     *
+     * @param matching
+     *      Complete matching.
+     * @return
+     *      The matching or {@code null} if some box is assigned to an unreachable goal.
+     */
+    protected int[] completeMatching(int[] matching) {
+
+        int totalCost = 0;
+        for (int column = 1; column <= boxesCount; column++) {
+
+            int cost = getCost(matching[matching[assignedRowsOffset + column]], column);
+            if (cost == INFINITE_COST)
+                return null;
+
+            totalCost += cost;
+        }
+
+        matching[0] = totalCost;
+        return matching;
+    }
+}
@@ -0,0 +1,184 @@
+package org.ezze.games.storekeeper;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * This class keeps a compact history of moves performed by the worker.
+ *
+ * Each move is represented by its code (see {@link Level#MOVE_CODE_PUSH}
+ * and {@link Level#MOVE_CODE_DIRECTION_MASK}) packed into {@link #MOVE_BITS} bits,
+ * so one {@code long} word holds {@link #MOVES_PER_WORD} moves.
+ *
+ * @author Dmitriy Pushkov
+ * @version 0.0.1
+ */
+public class MovesHistory {
+
+    /**
+     * Count of bits used to store a move.
+     */
+    public static final int MOVE_BITS = 3;
+
+    /**
+     * Count of moves stored by one word of {@link #words}.
+     */
+    public static final int MOVES_PER_WORD = Long.SIZE / MOVE_BITS;
+
+    /**
+     * Mask extracting a move from shifted word.
+     */
+    protected static final long MOVE_MASK = (1L << MOVE_BITS) - 1;
+
+    /**
+     * Initial count of words allocated for the history.
+     */
+    protected static final int INITIAL_WORDS_COUNT = 16;
+
+    /**
+     * Stores packed moves' codes.
+     */
+    protected long[] words = null;
+
+    /**
+     * Keeps count of moves stored in the history.
+     */
+    protected int size = 0;
+
+    /**
+     * Creates empty moves' history.
+     */
+    public MovesHistory() {
+
+        words = new long[INITIAL_WORDS_COUNT];
+    }
+
+    /**
+     * Retrieves count of moves stored in the history.
+     *
+     * @return
+     *      Count of moves.
+     */
+    public int size() {
+
+        return size;
+    }
+
+    /**
+     * Checks whether the history is empty.
+     *
+     * @return
+     *      {@code true} if history has no moves, {@code false} otherwise.
+     */
+    public boolean isEmpty() {
+
+        return size == 0;
+    }
+
+    /**
+     * Retrieves a code of the move with specified index.
+     *
+     * @param moveIndex
+     *      Move's index within the range [0; {@link #size()} - 1].
+     * @return
+     *      Move's code.
+     * @throws IndexOutOfBoundsException
+     *      If {@code moveIndex} is out of the history.
+     */
+    public int get(int moveIndex) {
+
+        if (moveIndex < 0 || moveIndex >= size)
+            throw new IndexOutOfBoundsException(String.format("Move %d is out of history of %d move(s).", moveIndex, size));
+
+        int shift = (moveIndex % MOVES_PER_WORD) * MOVE_BITS;
+        return (int)((words[moveIndex / MOVES_PER_WORD] >>> shift) & MOVE_MASK);
+    }
+
+    /**
+     * Appends a move to the end of the history.
+     *
+     * @param moveCode
+     *      Code of the move, must not be {@link Level#MOVE_CODE_NOTHING}.
+     */
+    public void add(int moveCode) {
+
+        int wordIndex = size / MOVES_PER_WORD;
+        if (wordIndex >= words.length)
+            words = Arrays.copyOf(words, words.length * 2);
+
+        // Slot's bits can keep a move that has been truncated before
+        int shift = (size % MOVES_PER_WORD) * MOVE_BITS;
+        words[wordIndex] = (words[wordIndex] & ~(MOVE_MASK << shift)) | (((long)moveCode & MOVE_MASK) << shift);
+        size++;
+    }
+
+    /**
+     * Removes all moves following specified count of moves.
+     *
+     * Nothing happens if history's size is already no more than {@code movesCount}.
+     *
+     * @param movesCount
+     *      Count of moves to keep.
+     */
+    public void truncate(int movesCount) {
+
+        if (movesCount >= 0 && movesCount < size)
+            size = movesCount;
+    }
+
+    /**
+     * Removes all moves from the history.
+     */
+    public void clear() {
+
+        size = 0;
+    }
+
+    /**
+     * Exports the history as a byte array.
+     *
+     * The array starts with moves' count as 4-byte integer followed
+     * by packed words in big-endian byte order.
+     *
+     * @return
+     *      Exported history.
+     * @see #fromByteArray(byte[])
+     */
+    public byte[] toByteArray() {
+
+        int wordsCount = (size + MOVES_PER_WORD - 1) / MOVES_PER_WORD;
+        ByteBuffer buffer = ByteBuffer.allocate(4 + wordsCount * 8);
+        buffer.putInt(size);
+        for (int wordIndex = 0; wordIndex < wordsCount; wordIndex++)
+            buffer.putLong(words[wordIndex]);
+        return buffer.array();
+    }
+
+    /**
+     * Imports the history previously exported by {@link #toByteArray()}.
+     *
+     * @param bytes
+     *      Exported history.
+     * @return
+     *      Imported history or {@code null} if {@code bytes} is not a valid history.
+     * @see #toByteArray()
+     */
+    public static MovesHistory fromByteArray(byte[] bytes) {
+
+        if (bytes == null || bytes.length < 4)
+            return null;
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int movesCount = buffer.getInt();
+        int wordsCount = (movesCount + MOVES_PER_WORD - 1) / MOVES_PER_WORD;
+        if (movesCount < 0 || buffer.remaining() < wordsCount * 8)
+            return null;
+
+        MovesHistory movesHistory = new MovesHistory();
+        movesHistory.words = new long[Math.max(wordsCount, INITIAL_WORDS_COUNT)];
+        for (int wordIndex = 0; wordIndex < wordsCount; wordIndex++)
+            movesHistory.words[wordIndex] = buffer.getLong();
+        movesHistory.size = movesCount;
+        return movesHistory;
+    }
+}
@@ -0,0 +1,156 @@
+package org.ezze.games.storekeeper;
+
+import java.util.ArrayList;
+import org.ezze.games.storekeeper.Level.MoveInformation;
+
+/**
+ * This class describes an outcome of solution optimizer's run.
+ *
+ * @author Dmitriy Pushkov
+ * @version 0.0.1
+ * @see SolutionOptimizer#optimize(java.util.List)
+ */
+public class OptimizerResult {
+
+    /**
+     * Optimized moves.
+     */
+    protected ArrayList<MoveInformation> moves = null;
+
+    /**
+     * Moves count of the original sequence.
+     */
+    protected int originalMovesCount = 0;
+
+    /**
+     * Pushes count of the original sequence.
+     */
+    protected int originalPushesCount = 0;
+
+    /**
+     * Pushes count of optimized sequence.
+     */
+    protected int pushesCount = 0;
+
+    /**
+     * Count of performed optimization rounds.
+     */
+    protected int roundsCount = 0;
+
+    /**
+     * Run's duration in milliseconds.
+     */
+    protected long elapsedTime = 0;
+
+    /**
+     * Creates run's result.
+     *
+     * @param moves
+     *      Optimized moves.
+     * @param originalMovesCount
+     *      Moves count of the original sequence.
+     * @param originalPushesCount
+     *      Pushes count of the original sequence.
+     * @param pushesCount
+     *      Pushes count of optimized sequence.
+     * @param roundsCount
+     *      Count of performed optimization rounds.
+     * @param elapsedTime
+     *      Run's duration in milliseconds.
+     */
+    public OptimizerResult(ArrayList<MoveInformation> moves, int originalMovesCount, int originalPushesCount,
+            int pushesCount, int roundsCount, long elapsedTime) {
+
+        this.moves = moves;
+        this.originalMovesCount = originalMovesCount;
+        this.originalPushesCount = originalPushesCount;
+        this.pushesCount = pushesCount;
+        this.roundsCount = roundsCount;
+        this.elapsedTime = elapsedTime;
+    }
+
+    /**
+     * Retrieves optimized moves.
+     *
+     * @return
+     *      Moves.
+     */
+    public ArrayList<MoveInformation> getMoves() {
+
+        return moves;
+    }
+
+    /**
+     * Retrieves optimized moves' count.
+     *
+     * @return
+     *      Moves count.
+     */
+    public int getMovesCount() {
+
+        return moves == null ? 0 : moves.size();
+    }
+
+    /**
+     * Retrieves optimized pushes' count.
+     *
+     * @return
+     *      Pushes count.
+     */
+    public int getPushesCount() {
+
+        return pushesCount;
+    }
+
+    /**
+     * Retrieves a count of saved moves.
+     *
+     * @return
+     *      Saved moves' count.
+     */
+    public int getSavedMovesCount() {
+
+        return originalMovesCount - getMovesCount();
+    }
+
+    /**
+     * Retrieves a count of saved pushes.
+     *
+     * @return
+     *      Saved pushes' count.
+     */
+    public int getSavedPushesCount() {
+
+        return originalPushesCount - pushesCount;
+    }
+
+    /**
+     * Retrieves a count of performed optimization rounds.
+     *
+     * @return
+     *      Rounds' count.
+     */
+    public int getRoundsCount() {
+
+        return roundsCount;
+    }
+
+    /**
+     * Retrieves run's duration.
+     *
+     * @return
+     *      Duration in milliseconds.
+     */
+    public long getElapsedTime() {
+
+        return elapsedTime;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+
+        return String.format("%d moves (%d saved), %d pushes (%d saved), %d rounds, %d ms",
+                getMovesCount(), getSavedMovesCount(), pushesCount, getSavedPushesCount(), roundsCount, elapsedTime);
+    }
+}
@@ -0,0 +1,305 @@
+package org.ezze.games.storekeeper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * This class parses a SOK file by chunks in parallel.
+ *
+ * The file is memory-mapped and split into chunks of about {@link #CHUNK_SIZE} bytes
+ * at levels' boundaries, i.e. before the first row of a level following an empty
+ * or information line, so lines describing a level never cross chunks.
+ * Each chunk is parsed by its own {@link SOKParser} starting from the end of
+ * the previous level's rows, so lines preceding chunk's first level can name it.
+ * Chunks' levels are joined in file's order, hence the result is the same
+ * as the one of a single parser.
+ *
+ * @author Dmitriy Pushkov
+ * @version 0.0.1
+ * @see LevelsSet#loadFromSOKFile(java.lang.String)
+ */
+public class ParallelSOKParser {
+
+    /**
+     * Approximate size of a chunk in bytes.
+     */
+    public static final int CHUNK_SIZE = 262144;
+
+    /**
+     * Size of a block copied from the mapped file to parse in bytes.
+     */
+    protected static final int BLOCK_SIZE = 65536;
+
+    /**
+     * Pool parsing chunks.
+     */
+    private static final ForkJoinPool pool = new ForkJoinPool();
+
+    /**
+     * This task parses a chunk of the file.
+     */
+    protected static class ChunkTask extends RecursiveTask<ArrayList<Level>> {
+
+        /**
+         * Serialization's version of the task.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Mapped file.
+         */
+        protected final ByteBuffer buffer;
+
+        /**
+         * Offset of chunk's first parsed line.
+         */
+        protected final int start;
+
+        /**
+         * Offset following chunk's last line.
+         */
+        protected final int end;
+
+        /**
+         * Creates chunk's task.
+         *
+         * @param buffer
+         *      Mapped file.
+         * @param start
+         *      Offset of chunk's first parsed line.
+         * @param end
+         *      Offset following chunk's last line.
+         */
+        public ChunkTask(ByteBuffer buffer, int start, int end) {
+
+            this.buffer = buffer;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected ArrayList<Level> compute() {
+
+            ArrayList<Level> levels = new ArrayList<Level>();
+            SOKParser parser = new SOKParser(levels);
+            ByteBuffer chunkBuffer = buffer.duplicate();
+            chunkBuffer.position(start);
+            chunkBuffer.limit(end);
+            byte[] block = new byte[Math.min(BLOCK_SIZE, end - start)];
+            while (chunkBuffer.hasRemaining()) {
+
+                int blockLength = Math.min(block.length, chunkBuffer.remaining());
+                chunkBuffer.get(block, 0, blockLength);
+                parser.parse(block, 0, blockLength);
+            }
+
+            parser.finish();
+            return levels;
+        }
+    }
+
+    /**
+     * Parses a file.
+     *
+     * @param file
+     *      SOK file.
+     * @return
+     *      File's levels in file's order.
+     * @throws IOException
+     *      If the file cannot be mapped or is larger than 2 GB.
+     */
+    public static ArrayList<Level> parse(File file) throws IOException {
+
+        MappedByteBuffer buffer;
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+
+            FileChannel channel = randomAccessFile.getChannel();
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("SOK file is too large to be mapped");
+
+            // The mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        finally {
+
+            randomAccessFile.close();
+        }
+
+        // Chunks are started by levels' first rows
+        int size = buffer.capacity();
+        ArrayList<Integer> boundaries = new ArrayList<Integer>();
+        boundaries.add(0);
+        int boundary = findLevelStart(buffer, CHUNK_SIZE);
+        while (boundary < size) {
+
+            boundaries.add(boundary);
+            boundary = findLevelStart(buffer, boundary + CHUNK_SIZE);
+        }
+
+        boundaries.add(size);
+        final ArrayList<ChunkTask> tasks = new ArrayList<ChunkTask>();
+        for (int chunkIndex = 0; chunkIndex + 1 < boundaries.size(); chunkIndex++) {
+
+            tasks.add(new ChunkTask(buffer, findGapStart(buffer, boundaries.get(chunkIndex)),
+                    boundaries.get(chunkIndex + 1)));
+        }
+
+        if (ForkJoinTask.inForkJoinPool())
+            ForkJoinTask.invokeAll(tasks);
+        else {
+
+            pool.invoke(new RecursiveAction() {
+
+                @Override
+                protected void compute() {
+
+                    invokeAll(tasks);
+                }
+            });
+        }
+
+        ArrayList<Level> levels = new ArrayList<Level>();
+        for (ChunkTask task : tasks)
+            levels.addAll(task.join());
+
+        return levels;
+    }
+
+    /**
+     * Finds the first row of a level which starts after a position.
+     *
+     * @param buffer
+     *      Mapped file.
+     * @param position
+     *      Position to search from.
+     * @return
+     *      Offset of level's first row or file's size if there is no such level.
+     */
+    protected static int findLevelStart(ByteBuffer buffer, int position) {
+
+        int size = buffer.capacity();
+        if (position >= size)
+            return size;
+
+        // The line containing the position is skipped as well as rows following it
+        int lineStart = getNextLineStart(buffer, getLineEnd(buffer, position));
+        boolean isPreviousLineRow = true;
+        while (lineStart < size) {
+
+            int lineEnd = getLineEnd(buffer, lineStart);
+            boolean isLineRow = isLevelLine(buffer, lineStart, lineEnd);
+            if (isLineRow && !isPreviousLineRow)
+                return lineStart;
+
+            isPreviousLineRow = isLineRow;
+            lineStart = getNextLineStart(buffer, lineEnd);
+        }
+
+        return size;
+    }
+
+    /**
+     * Finds the beginning of lines preceding level's first row up to the previous level's rows.
+     *
+     * @param buffer
+     *      Mapped file.
+     * @param levelStart
+     *      Offset of level's first row.
+     * @return
+     *      Offset of the line following the previous level's last row or {@code 0}.
+     */
+    protected static int findGapStart(ByteBuffer buffer, int levelStart) {
+
+        int gapStart = levelStart;
+        while (gapStart > 0) {
+
+            // Line's terminator is a carriage return, a line feed or both
+            int lineEnd = gapStart - 1;
+            if (lineEnd > 0 && buffer.get(lineEnd) == '\n' && buffer.get(lineEnd - 1) == '\r')
+                lineEnd--;
+
+            int lineStart = lineEnd;
+            while (lineStart > 0 && buffer.get(lineStart - 1) != '\n' && buffer.get(lineStart - 1) != '\r')
+                lineStart--;
+
+            if (isLevelLine(buffer, lineStart, lineEnd))
+                break;
+
+            gapStart = lineStart;
+        }
+
+        return gapStart;
+    }
+
+    /**
+     * Finds line's end.
+     *
+     * @param buffer
+     *      Mapped file.
+     * @param position
+     *      Position within the line.
+     * @return
+     *      Offset of line's terminator or file's size.
+     */
+    protected static int getLineEnd(ByteBuffer buffer, int position) {
+
+        int size = buffer.capacity();
+        while (position < size && buffer.get(position) != '\n' && buffer.get(position) != '\r')
+            position++;
+
+        return position;
+    }
+
+    /**
+     * Finds the beginning of the next line.
+     *
+     * @param buffer
+     *      Mapped file.
+     * @param lineEnd
+     *      Offset of line's terminator.
+     * @return
+     *      Offset of the next line, it exceeds file's size after the last line.
+     */
+    protected static int getNextLineStart(ByteBuffer buffer, int lineEnd) {
+
+        if (lineEnd + 1 < buffer.capacity() && buffer.get(lineEnd) == '\r' && buffer.get(lineEnd + 1) == '\n')
+            return lineEnd + 2;
+
+        return lineEnd + 1;
+    }
+
+    /**
+     * Checks whether a line is level's row.
+     *
+     * @param buffer
+     *      Mapped file.
+     * @param lineStart
+     *      Offset of line's beginning.
+     * @param lineEnd
+     *      Offset of line's terminator.
+     * @return
+     *      {@code true} if the line consists of level's items only, {@code false} otherwise.
+     */
+    protected static boolean isLevelLine(ByteBuffer buffer, int lineStart, int lineEnd) {
+
+        // Trimming the line from the right
+        while (lineEnd > lineStart && buffer.get(lineEnd - 1) == ' ')
+            lineEnd--;
+
+        boolean isLevelLine = lineEnd > lineStart;
+        for (int byteIndex = lineStart; byteIndex < lineEnd && isLevelLine; byteIndex++)
+            isLevelLine = SOKParser.IS_LEVEL_ITEM[buffer.get(byteIndex) & 0xFF];
+
+        return isLevelLine;
+    }
+}
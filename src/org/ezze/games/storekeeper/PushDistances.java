@@ -0,0 +1,583 @@
+package org.ezze.games.storekeeper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class keeps minimal counts of pushes required to move a box
+ * from each level's square to each goal respecting bricks only.
+ *
+ * Distances of each goal are found by pulling a box from the goal backwards,
+ * goals are processed in parallel by a shared {@link ForkJoinPool}.
+ * Distances are stored as {@code short} values goal by goal, a distance
+ * to goal {@code g} from square {@code y * width + x} is located at
+ * {@code g * width * height + y * width + x} index.
+ *
+ * Found tables may be cached on disk (see {@link #setCacheDirectory(java.io.File)})
+ * in files named by a hash of level's bricks and goals, so the same level
+ * loaded later by any set reuses them.
+ *
+ * @author Dmitriy Pushkov
+ * @version 0.0.1
+ * @see Level#getPushDistances()
+ */
+public final class PushDistances {
+
+    /**
+     * Distance of a square a box cannot be pushed to the goal from.
+     */
+    public static final short DISTANCE_UNREACHABLE = Short.MAX_VALUE;
+
+    /**
+     * Cache file's signature.
+     */
+    private static final int CACHE_FILE_MAGIC = 0x534B5044;
+
+    /**
+     * Cache file's format version.
+     */
+    private static final int CACHE_FILE_VERSION = 1;
+
+    /**
+     * Cache file's extension.
+     */
+    private static final String CACHE_FILE_EXTENSION = ".dist";
+
+    /**
+     * Pool computing distances.
+     */
+    private static final ForkJoinPool pool = new ForkJoinPool();
+
+    /**
+     * Directory of cache files or {@code null} if disk cache is disabled.
+     */
+    private static volatile File cacheDirectory = null;
+
+    /**
+     * Level's width.
+     */
+    private final int width;
+
+    /**
+     * Level's height.
+     */
+    private final int height;
+
+    /**
+     * Goals' squares.
+     */
+    private final int[] goalSquares;
+
+    /**
+     * Distances of all goals.
+     */
+    private final short[] distances;
+
+    /**
+     * This task finds distances of a range of goals splitting it between threads.
+     */
+    private static class GoalsTask extends RecursiveAction {
+
+        /**
+         * Serialization's version of the task.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Level's items.
+         */
+        private final byte[] items;
+
+        /**
+         * Level's width.
+         */
+        private final int width;
+
+        /**
+         * Level's height.
+         */
+        private final int height;
+
+        /**
+         * Goals' squares.
+         */
+        private final int[] goalSquares;
+
+        /**
+         * Distances to fill.
+         */
+        private final short[] distances;
+
+        /**
+         * Index of range's first goal.
+         */
+        private final int fromIndex;
+
+        /**
+         * Index following range's last goal.
+         */
+        private final int toIndex;
+
+        /**
+         * Creates goals' task.
+         *
+         * @param items
+         *      Level's items.
+         * @param width
+         *      Level's width.
+         * @param height
+         *      Level's height.
+         * @param goalSquares
+         *      Goals' squares.
+         * @param distances
+         *      Distances to fill.
+         * @param fromIndex
+         *      Index of range's first goal.
+         * @param toIndex
+         *      Index following range's last goal.
+         */
+        private GoalsTask(byte[] items, int width, int height, int[] goalSquares, short[] distances,
+                int fromIndex, int toIndex) {
+
+            this.items = items;
+            this.width = width;
+            this.height = height;
+            this.goalSquares = goalSquares;
+            this.distances = distances;
+            this.fromIndex = fromIndex;
+            this.toIndex = toIndex;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected void compute() {
+
+            if (toIndex - fromIndex > 1) {
+
+                int middleIndex = (fromIndex + toIndex) >>> 1;
+                invokeAll(new GoalsTask(items, width, height, goalSquares, distances, fromIndex, middleIndex),
+                        new GoalsTask(items, width, height, goalSquares, distances, middleIndex, toIndex));
+                return;
+            }
+
+            for (int goalIndex = fromIndex; goalIndex < toIndex; goalIndex++)
+                findGoalDistances(items, width, height, goalSquares[goalIndex], distances, goalIndex * width * height);
+        }
+    }
+
+    /**
+     * Creates distances' tables.
+     *
+     * @param width
+     *      Level's width.
+     * @param height
+     *      Level's height.
+     * @param goalSquares
+     *      Goals' squares.
+     * @param distances
+     *      Distances of all goals.
+     */
+    private PushDistances(int width, int height, int[] goalSquares, short[] distances) {
+
+        this.width = width;
+        this.height = height;
+        this.goalSquares = goalSquares;
+        this.distances = distances;
+    }
+
+    /**
+     * Sets a directory to cache found distances in.
+     *
+     * @param directory
+     *      Cache directory or {@code null} to disable disk cache.
+     */
+    public static void setCacheDirectory(File directory) {
+
+        cacheDirectory = directory;
+    }
+
+    /**
+     * Retrieves a directory to cache found distances in.
+     *
+     * @return
+     *      Cache directory or {@code null} if disk cache is disabled.
+     */
+    public static File getCacheDirectory() {
+
+        return cacheDirectory;
+    }
+
+    /**
+     * Finds distances of level's items reading them from disk cache if possible.
+     *
+     * @param items
+     *      Level's items row by row.
+     * @param width
+     *      Level's width.
+     * @param height
+     *      Level's height.
+     * @return
+     *      Distances' tables.
+     */
+    public static PushDistances create(byte[] items, int width, int height) {
+
+        ArrayList<Integer> goalSquaresList = new ArrayList<Integer>();
+        for (int square = 0; square < items.length; square++) {
+
+            if ((items[square] & Level.ITEM_CODE_GOAL) != 0)
+                goalSquaresList.add(square);
+        }
+
+        int[] goalSquares = new int[goalSquaresList.size()];
+        for (int goalIndex = 0; goalIndex < goalSquares.length; goalIndex++)
+            goalSquares[goalIndex] = goalSquaresList.get(goalIndex);
+
+        File cacheFile = getCacheFile(items, width, height);
+        if (cacheFile != null && cacheFile.isFile()) {
+
+            PushDistances cachedDistances = read(cacheFile, width, height, goalSquares);
+            if (cachedDistances != null)
+                return cachedDistances;
+        }
+
+        short[] distances = new short[goalSquares.length * width * height];
+        if (goalSquares.length > 0) {
+
+            GoalsTask task = new GoalsTask(items, width, height, goalSquares, distances, 0, goalSquares.length);
+            if (ForkJoinTask.inForkJoinPool())
+                task.invoke();
+            else
+                pool.invoke(task);
+        }
+
+        PushDistances pushDistances = new PushDistances(width, height, goalSquares, distances);
+        if (cacheFile != null)
+            pushDistances.write(cacheFile);
+
+        return pushDistances;
+    }
+
+    /**
+     * Finds distances of specified levels in background, levels are processed in parallel.
+     *
+     * @param levels
+     *      Levels.
+     * @see Level#getPushDistances()
+     */
+    public static void createInBackground(Collection<Level> levels) {
+
+        final ArrayList<Level> pendingLevels = new ArrayList<Level>(levels);
+        pool.execute(new RecursiveAction() {
+
+            @Override
+            protected void compute() {
+
+                ArrayList<RecursiveAction> levelTasks = new ArrayList<RecursiveAction>();
+                for (final Level level : pendingLevels) {
+
+                    levelTasks.add(new RecursiveAction() {
+
+                        @Override
+                        protected void compute() {
+
+                            level.getPushDistances();
+                        }
+                    });
+                }
+
+                invokeAll(levelTasks);
+            }
+        });
+    }
+
+    /**
+     * Fills distances of one goal pulling a box from it backwards.
+     *
+     * @param items
+     *      Level's items.
+     * @param width
+     *      Level's width.
+     * @param height
+     *      Level's height.
+     * @param goalSquare
+     *      Goal's square.
+     * @param distances
+     *      Distances to fill.
+     * @param offset
+     *      Offset of goal's distances.
+     */
+    private static void findGoalDistances(byte[] items, int width, int height, int goalSquare,
+            short[] distances, int offset) {
+
+        int squaresCount = width * height;
+        Arrays.fill(distances, offset, offset + squaresCount, DISTANCE_UNREACHABLE);
+        int[] queue = new int[squaresCount];
+        int queueHead = 0;
+        int queueTail = 0;
+        distances[offset + goalSquare] = 0;
+        queue[queueTail++] = goalSquare;
+
+        // A box can be pulled to a square if both the square and the one behind it are not bricks
+        while (queueHead < queueTail) {
+
+            int square = queue[queueHead++];
+            int x = square % width;
+            int y = square / width;
+            for (int directionIndex = 0; directionIndex < Level.moveDirections.length; directionIndex++) {
+
+                int boxX = x + Level.moveDeltasX[directionIndex];
+                int boxY = y + Level.moveDeltasY[directionIndex];
+                int pullerX = boxX + Level.moveDeltasX[directionIndex];
+                int pullerY = boxY + Level.moveDeltasY[directionIndex];
+                if (pullerX < 0 || pullerX >= width || pullerY < 0 || pullerY >= height)
+                    continue;
+
+                int boxSquare = boxY * width + boxX;
+                if (distances[offset + boxSquare] != DISTANCE_UNREACHABLE ||
+                        (items[boxSquare] & Level.ITEM_CODE_BRICK) != 0 ||
+                        (items[pullerY * width + pullerX] & Level.ITEM_CODE_BRICK) != 0) {
+
+                    continue;
+                }
+
+                distances[offset + boxSquare] = (short)Math.min(distances[offset + square] + 1, DISTANCE_UNREACHABLE - 1);
+                queue[queueTail++] = boxSquare;
+            }
+        }
+    }
+
+    /**
+     * Retrieves cache file of level's items.
+     *
+     * Only bricks and goals affect distances, so the file is named by their hash.
+     *
+     * @param items
+     *      Level's items.
+     * @param width
+     *      Level's width.
+     * @param height
+     *      Level's height.
+     * @return
+     *      Cache file or {@code null} if disk cache is disabled.
+     */
+    private static File getCacheFile(byte[] items, int width, int height) {
+
+        File directory = cacheDirectory;
+        if (directory == null)
+            return null;
+
+        try {
+
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(new byte[] { (byte)(width >>> 8), (byte)width, (byte)(height >>> 8), (byte)height });
+            byte[] layout = new byte[items.length];
+            for (int square = 0; square < items.length; square++)
+                layout[square] = (byte)(items[square] & (Level.ITEM_CODE_BRICK | Level.ITEM_CODE_GOAL));
+
+            digest.update(layout);
+            StringBuilder fileName = new StringBuilder();
+            for (byte hashByte : digest.digest())
+                fileName.append(String.format("%02x", hashByte & 0xFF));
+
+            fileName.append(CACHE_FILE_EXTENSION);
+            return new File(directory, fileName.toString());
+        }
+        catch (NoSuchAlgorithmException ex) {
+
+            return null;
+        }
+    }
+
+    /**
+     * Reads distances from cache file.
+     *
+     * @param cacheFile
+     *      Cache file.
+     * @param width
+     *      Expected level's width.
+     * @param height
+     *      Expected level's height.
+     * @param goalSquares
+     *      Expected goals' squares.
+     * @return
+     *      Distances or {@code null} if the file cannot be read or doesn't match the level.
+     */
+    private static PushDistances read(File cacheFile, int width, int height, int[] goalSquares) {
+
+        DataInputStream inputStream = null;
+        try {
+
+            inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+            if (inputStream.readInt() != CACHE_FILE_MAGIC || inputStream.readInt() != CACHE_FILE_VERSION ||
+                    inputStream.readInt() != width || inputStream.readInt() != height ||
+                    inputStream.readInt() != goalSquares.length) {
+
+                return null;
+            }
+
+            for (int goalIndex = 0; goalIndex < goalSquares.length; goalIndex++) {
+
+                if (inputStream.readInt() != goalSquares[goalIndex])
+                    return null;
+            }
+
+            short[] distances = new short[goalSquares.length * width * height];
+            for (int distanceIndex = 0; distanceIndex < distances.length; distanceIndex++)
+                distances[distanceIndex] = inputStream.readShort();
+
+            return new PushDistances(width, height, goalSquares, distances);
+        }
+        catch (IOException ex) {
+
+            return null;
+        }
+        finally {
+
+            if (inputStream != null) {
+
+                try {
+
+                    inputStream.close();
+                }
+                catch (IOException ex) {
+
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes distances to cache file.
+     *
+     * Distances are written to a temporary file which is renamed then,
+     * so concurrent readers never see a partially written file.
+     *
+     * @param cacheFile
+     *      Cache file.
+     */
+    private void write(File cacheFile) {
+
+        File directory = cacheFile.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs())
+            return;
+
+        File temporaryFile = null;
+        DataOutputStream outputStream = null;
+        try {
+
+            temporaryFile = File.createTempFile("distances", null, directory);
+            outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)));
+            outputStream.writeInt(CACHE_FILE_MAGIC);
+            outputStream.writeInt(CACHE_FILE_VERSION);
+            outputStream.writeInt(width);
+            outputStream.writeInt(height);
+            outputStream.writeInt(goalSquares.length);
+            for (int goalIndex = 0; goalIndex < goalSquares.length; goalIndex++)
+                outputStream.writeInt(goalSquares[goalIndex]);
+
+            for (int distanceIndex = 0; distanceIndex < distances.length; distanceIndex++)
+                outputStream.writeShort(distances[distanceIndex]);
+
+            outputStream.close();
+            outputStream = null;
+            if (!temporaryFile.renameTo(cacheFile) && !cacheFile.isFile())
+                temporaryFile.delete();
+        }
+        catch (IOException ex) {
+
+        }
+        finally {
+
+            if (outputStream != null) {
+
+                try {
+
+                    outputStream.close();
+                }
+                catch (IOException ex) {
+
+                }
+            }
+
+            if (temporaryFile != null && temporaryFile.isFile())
+                temporaryFile.delete();
+        }
+    }
+
+    /**
+     * Retrieves level's width.
+     *
+     * @return
+     *      Width.
+     */
+    public int getWidth() {
+
+        return width;
+    }
+
+    /**
+     * Retrieves level's height.
+     *
+     * @return
+     *      Height.
+     */
+    public int getHeight() {
+
+        return height;
+    }
+
+    /**
+     * Retrieves a count of goals.
+     *
+     * @return
+     *      Goals' count.
+     */
+    public int getGoalsCount() {
+
+        return goalSquares.length;
+    }
+
+    /**
+     * Retrieves goal's square.
+     *
+     * @param goalIndex
+     *      Goal's index.
+     * @return
+     *      Square's index {@code y * width + x}.
+     */
+    public int getGoalSquare(int goalIndex) {
+
+        return goalSquares[goalIndex];
+    }
+
+    /**
+     * Retrieves minimal count of pushes required to move a box from the square to the goal.
+     *
+     * @param goalIndex
+     *      Goal's index.
+     * @param x
+     *      Horizontal position within the range [0; {@link #getWidth()} - 1].
+     * @param y
+     *      Vertical position within the range [0; {@link #getHeight()} - 1].
+     * @return
+     *      Pushes' count or {@link #DISTANCE_UNREACHABLE}.
+     */
+    public int getDistance(int goalIndex, int x, int y) {
+
+        return distances[goalIndex * width * height + y * width + x];
+    }
+}
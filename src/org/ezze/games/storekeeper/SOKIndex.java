@@ -0,0 +1,235 @@
+package org.ezze.games.storekeeper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.ezze.games.storekeeper.Level.LevelSize;
+import org.ezze.games.storekeeper.Level.LevelState;
+
+/**
+ * This class indexes levels of a memory-mapped SOK file.
+ *
+ * The file is scanned once recording offsets of levels' rows together with
+ * levels' sizes and validity, so set's counters are known without creating levels.
+ * A level is decoded by {@link SOKParser} from the part of the file between
+ * the previous and the next levels' rows, i.e. the same lines the parser
+ * would use for level's name and information reading the whole file.
+ *
+ * @author Dmitriy Pushkov
+ * @version 0.0.1
+ * @see LevelsSet#loadFromMappedSOKFile(java.lang.String)
+ */
+public class SOKIndex implements LevelsIndex {
+
+    /**
+     * Mapped file.
+     */
+    protected MappedByteBuffer buffer = null;
+
+    /**
+     * Count of indexed levels.
+     */
+    protected int levelsCount = 0;
+
+    /**
+     * Offsets of levels' first rows.
+     */
+    protected int[] rowsStarts = new int[64];
+
+    /**
+     * Offsets of lines following levels' last rows.
+     */
+    protected int[] rowsEnds = new int[64];
+
+    /**
+     * Levels' widths.
+     */
+    protected short[] widths = new short[64];
+
+    /**
+     * Levels' heights.
+     */
+    protected short[] heights = new short[64];
+
+    /**
+     * Shows whether levels have one worker and as many boxes as goals.
+     */
+    protected boolean[] validities = new boolean[64];
+
+    /**
+     * Maps and indexes a file.
+     *
+     * @param file
+     *      SOK file.
+     * @throws IOException
+     *      If the file cannot be mapped or is larger than 2 GB.
+     */
+    public SOKIndex(File file) throws IOException {
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+
+            FileChannel channel = randomAccessFile.getChannel();
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("SOK file is too large to be mapped");
+
+            // The mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        finally {
+
+            randomAccessFile.close();
+        }
+
+        scan();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getLevelsCount() {
+
+        return levelsCount;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public LevelSize getLevelSize(int levelIndex) {
+
+        return new LevelSize(widths[levelIndex], heights[levelIndex]);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public LevelState getLevelState(int levelIndex, LevelSize maximalSize) {
+
+        if (!validities[levelIndex])
+            return LevelState.CORRUPTED;
+
+        if (widths[levelIndex] > maximalSize.getWidth() || heights[levelIndex] > maximalSize.getHeight())
+            return LevelState.OUT_OF_BOUNDS;
+
+        return LevelState.PLAYABLE;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Level decodeLevel(int levelIndex) {
+
+        if (levelIndex < 0 || levelIndex >= levelsCount)
+            return null;
+
+        int start = levelIndex > 0 ? rowsEnds[levelIndex - 1] : 0;
+        int end = levelIndex + 1 < levelsCount ? rowsStarts[levelIndex + 1] : buffer.capacity();
+        byte[] bytes = new byte[end - start];
+        ByteBuffer levelBuffer = buffer.duplicate();
+        levelBuffer.position(start);
+        levelBuffer.get(bytes);
+
+        ArrayList<Level> levels = new ArrayList<Level>(1);
+        SOKParser parser = new SOKParser(levels);
+        parser.parse(bytes, 0, bytes.length);
+        parser.finish();
+        return levels.isEmpty() ? null : levels.get(0);
+    }
+
+    /**
+     * Scans the file indexing its levels.
+     *
+     * Lines are split and classified the same way {@link SOKParser} does.
+     */
+    protected void scan() {
+
+        int end = buffer.capacity();
+        int lineStart = 0;
+        boolean isLevelRead = false;
+        int width = 0;
+        int height = 0;
+        int workersCount = 0;
+        int boxesCount = 0;
+        int goalsCount = 0;
+        while (lineStart <= end) {
+
+            // Finding line's end and the beginning of the next line
+            int lineEnd = lineStart;
+            while (lineEnd < end && buffer.get(lineEnd) != '\n' && buffer.get(lineEnd) != '\r')
+                lineEnd++;
+
+            int nextLineStart = lineEnd + 1;
+            if (lineEnd + 1 < end && buffer.get(lineEnd) == '\r' && buffer.get(lineEnd + 1) == '\n')
+                nextLineStart++;
+
+            int trimmedLineEnd = lineEnd;
+            while (trimmedLineEnd > lineStart && buffer.get(trimmedLineEnd - 1) == ' ')
+                trimmedLineEnd--;
+
+            boolean isLevelLine = trimmedLineEnd > lineStart;
+            for (int byteIndex = lineStart; byteIndex < trimmedLineEnd && isLevelLine; byteIndex++)
+                isLevelLine = SOKParser.IS_LEVEL_ITEM[buffer.get(byteIndex) & 0xFF];
+
+            if (isLevelLine) {
+
+                if (!isLevelRead) {
+
+                    isLevelRead = true;
+                    width = 0;
+                    height = 0;
+                    workersCount = 0;
+                    boxesCount = 0;
+                    goalsCount = 0;
+                    ensureCapacity(levelsCount + 1);
+                    rowsStarts[levelsCount] = lineStart;
+                }
+
+                width = Math.max(width, trimmedLineEnd - lineStart);
+                height++;
+                for (int byteIndex = lineStart; byteIndex < trimmedLineEnd; byteIndex++) {
+
+                    byte itemCode = Level.getItemCode((char)buffer.get(byteIndex));
+                    if ((itemCode & Level.ITEM_CODE_WORKER) != 0)
+                        workersCount++;
+                    if ((itemCode & Level.ITEM_CODE_BOX) != 0)
+                        boxesCount++;
+                    if ((itemCode & Level.ITEM_CODE_GOAL) != 0)
+                        goalsCount++;
+                }
+            }
+
+            // Level's rows are over with a line which is not a row or with the end of the file
+            if (isLevelRead && (!isLevelLine || nextLineStart > end)) {
+
+                isLevelRead = false;
+                rowsEnds[levelsCount] = Math.min(isLevelLine ? nextLineStart : lineStart, end);
+                widths[levelsCount] = (short)Math.min(width, Short.MAX_VALUE);
+                heights[levelsCount] = (short)Math.min(height, Short.MAX_VALUE);
+                validities[levelsCount] = workersCount == 1 && boxesCount == goalsCount;
+                levelsCount++;
+            }
+
+            lineStart = nextLineStart;
+        }
+    }
+
+    /**
+     * Grows index's arrays if required.
+     *
+     * @param capacity
+     *      Required count of levels.
+     */
+    protected void ensureCapacity(int capacity) {
+
+        if (capacity <= rowsStarts.length)
+            return;
+
+        int grownCapacity = Math.max(rowsStarts.length * 2, capacity);
+        rowsStarts = Arrays.copyOf(rowsStarts, grownCapacity);
+        rowsEnds = Arrays.copyOf(rowsEnds, grownCapacity);
+        widths = Arrays.copyOf(widths, grownCapacity);
+        heights = Arrays.copyOf(heights, grownCapacity);
+        validities = Arrays.copyOf(validities, grownCapacity);
+    }
+}
@@ -0,0 +1,380 @@
+package org.ezze.games.storekeeper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * This class parses levels of SOK format in one forward pass.
+ *
+ * Lines are read from a byte stream and classified by a lookup table of level's items,
+ * consecutive rows of items form a level. Lines following a level up to
+ * the next one are level's information, {@code Title:} and {@code Author:} lines
+ * among them give level's name and author, the last non-empty line is skipped
+ * since it usually names the next level. A level without a title is named by
+ * the closest line preceding its rows which is not an information line.
+ *
+ * Only rows of the current level and a few lines of its information are kept,
+ * so memory does not depend on file's size. The file can be passed by stream
+ * or by blocks of bytes split at any position.
+ *
+ * @author Dmitriy Pushkov
+ * @version 0.0.1
+ * @see LevelsSet#loadFromSOKFile(java.lang.String)
+ */
+public class SOKParser {
+
+    /**
+     * Size of stream's read buffer in bytes.
+     */
+    protected static final int BUFFER_SIZE = 65536;
+
+    /**
+     * Charset of level's rows consisting of ASCII characters only.
+     */
+    protected static final Charset LEVEL_LINE_CHARSET = Charset.forName("ISO-8859-1");
+
+    /**
+     * Shows whether a byte is level's item.
+     */
+    protected static final boolean[] IS_LEVEL_ITEM = new boolean[256];
+
+    /**
+     * Shows whether a byte can be a part of information line's name.
+     */
+    protected static final boolean[] IS_INFO_NAME_CHARACTER = new boolean[256];
+
+    static {
+
+        for (char levelItem : new char[] {Level.LEVEL_ITEM_WORKER, Level.LEVEL_ITEM_WORKER_ON_GOAL,
+                Level.LEVEL_ITEM_BRICK, Level.LEVEL_ITEM_GOAL, Level.LEVEL_ITEM_BOX,
+                Level.LEVEL_ITEM_BOX_ON_GOAL, Level.LEVEL_ITEM_SPACE})
+            IS_LEVEL_ITEM[levelItem] = true;
+
+        for (char character = 'A'; character <= 'Z'; character++) {
+
+            IS_INFO_NAME_CHARACTER[character] = true;
+            IS_INFO_NAME_CHARACTER[Character.toLowerCase(character)] = true;
+        }
+
+        IS_INFO_NAME_CHARACTER[' '] = true;
+    }
+
+    /**
+     * List receiving parsed levels.
+     */
+    protected List<Level> levels = null;
+
+    /**
+     * Beginning of a line which is not terminated yet.
+     */
+    protected byte[] line = new byte[256];
+
+    /**
+     * Length of the line which is not terminated yet.
+     */
+    protected int lineLength = 0;
+
+    /**
+     * Shows whether the last parsed byte is a carriage return.
+     */
+    protected boolean isCarriageReturnParsed = false;
+
+    /**
+     * Rows of the level being read or {@code null} between levels.
+     */
+    protected ArrayList<String> levelLines = null;
+
+    /**
+     * Name preceding rows of the level being read or {@code null}.
+     */
+    protected String levelName = null;
+
+    /**
+     * Rows of the level whose information is being read or {@code null}.
+     */
+    protected ArrayList<String> completedLevelLines = null;
+
+    /**
+     * Name preceding rows of the level whose information is being read or {@code null}.
+     */
+    protected String completedLevelName = null;
+
+    /**
+     * Information of the level whose information is being read.
+     */
+    protected HashMap<String, Object> completedLevelInfo = null;
+
+    /**
+     * The last non-empty line after the previous level which is not applied yet.
+     */
+    protected String pendingInfoLine = null;
+
+    /**
+     * The last non-empty line after the previous level which is not an information line.
+     */
+    protected String lastNameLine = null;
+
+    /**
+     * Creates a parser.
+     *
+     * @param levels
+     *      List receiving parsed levels.
+     */
+    public SOKParser(List<Level> levels) {
+
+        this.levels = levels;
+    }
+
+    /**
+     * Parses all lines of a stream and completes the last level.
+     *
+     * Lines can be terminated by {@code \n}, {@code \r} or {@code \r\n}.
+     * The stream is not closed by the method.
+     *
+     * @param inputStream
+     *      Stream of SOK file.
+     * @throws IOException
+     *      If the stream cannot be read.
+     */
+    public void parse(InputStream inputStream) throws IOException {
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int readBytesCount;
+        while ((readBytesCount = inputStream.read(buffer)) >= 0)
+            parse(buffer, 0, readBytesCount);
+
+        finish();
+    }
+
+    /**
+     * Parses a block of bytes.
+     *
+     * Lines can be terminated by {@code \n}, {@code \r} or {@code \r\n}.
+     * The beginning of block's last line is kept until the line is terminated
+     * by the next block or by {@link #finish()}.
+     *
+     * @param bytes
+     *      Bytes containing the block.
+     * @param offset
+     *      Block's offset.
+     * @param length
+     *      Block's length in bytes.
+     */
+    public void parse(byte[] bytes, int offset, int length) {
+
+        int end = offset + length;
+        int lineStart = offset;
+        for (int byteIndex = offset; byteIndex < end; byteIndex++) {
+
+            byte parsedByte = bytes[byteIndex];
+            if (parsedByte != '\n' && parsedByte != '\r') {
+
+                isCarriageReturnParsed = false;
+                continue;
+            }
+
+            // Line feed completing carriage return terminates no line
+            if (parsedByte == '\n' && isCarriageReturnParsed) {
+
+                isCarriageReturnParsed = false;
+                lineStart = byteIndex + 1;
+                continue;
+            }
+
+            isCarriageReturnParsed = parsedByte == '\r';
+            if (lineLength > 0) {
+
+                line = append(line, lineLength, bytes, lineStart, byteIndex - lineStart);
+                parseLine(line, 0, lineLength + byteIndex - lineStart);
+                lineLength = 0;
+            }
+            else
+                parseLine(bytes, lineStart, byteIndex - lineStart);
+
+            lineStart = byteIndex + 1;
+        }
+
+        line = append(line, lineLength, bytes, lineStart, end - lineStart);
+        lineLength += end - lineStart;
+    }
+
+    /**
+     * Parses a line.
+     *
+     * @param bytes
+     *      Bytes containing the line.
+     * @param offset
+     *      Line's offset.
+     * @param length
+     *      Line's length in bytes without terminating characters.
+     */
+    public void parseLine(byte[] bytes, int offset, int length) {
+
+        // Trimming the line from the right
+        int end = offset + length;
+        while (end > offset && bytes[end - 1] == ' ')
+            end--;
+
+        boolean isLevelLine = end > offset;
+        for (int byteIndex = offset; byteIndex < end && isLevelLine; byteIndex++)
+            isLevelLine = IS_LEVEL_ITEM[bytes[byteIndex] & 0xFF];
+
+        if (isLevelLine) {
+
+            if (levelLines == null) {
+
+                // Lines between levels are over
+                completeLevel();
+                levelLines = new ArrayList<String>();
+                levelName = lastNameLine;
+                lastNameLine = null;
+                pendingInfoLine = null;
+            }
+
+            levelLines.add(new String(bytes, offset, end - offset, LEVEL_LINE_CHARSET));
+            return;
+        }
+
+        if (levelLines != null) {
+
+            // Level's rows are over, its information follows
+            completedLevelLines = levelLines;
+            completedLevelName = levelName;
+            completedLevelInfo = new HashMap<String, Object>();
+            levelLines = null;
+        }
+
+        if (end == offset)
+            return;
+
+        // The previous line is not the last one before the next level
+        if (pendingInfoLine != null)
+            applyInfoLine(pendingInfoLine);
+
+        pendingInfoLine = new String(bytes, offset, end - offset);
+        if (getInfoSeparatorIndex(pendingInfoLine) < 0)
+            lastNameLine = pendingInfoLine;
+    }
+
+    /**
+     * Parses the last line if it's not terminated and completes the last level.
+     */
+    public void finish() {
+
+        if (lineLength > 0) {
+
+            parseLine(line, 0, lineLength);
+            lineLength = 0;
+        }
+
+        isCarriageReturnParsed = false;
+        if (levelLines != null) {
+
+            completedLevelLines = levelLines;
+            completedLevelName = levelName;
+            completedLevelInfo = new HashMap<String, Object>();
+            levelLines = null;
+        }
+
+        completeLevel();
+        pendingInfoLine = null;
+        lastNameLine = null;
+    }
+
+    /**
+     * Adds the level whose information is being read to the list.
+     */
+    protected void completeLevel() {
+
+        if (completedLevelLines == null)
+            return;
+
+        if (!completedLevelInfo.containsKey("name") && completedLevelName != null)
+            completedLevelInfo.put("name", completedLevelName.trim());
+
+        levels.add(new Level(completedLevelLines, completedLevelInfo));
+        completedLevelLines = null;
+        completedLevelName = null;
+        completedLevelInfo = null;
+    }
+
+    /**
+     * Applies an information line to the level whose information is being read.
+     *
+     * The first title and the first author of the level are kept.
+     *
+     * @param infoLine
+     *      Information line.
+     */
+    protected void applyInfoLine(String infoLine) {
+
+        if (completedLevelInfo == null)
+            return;
+
+        int separatorIndex = getInfoSeparatorIndex(infoLine);
+        if (separatorIndex < 0)
+            return;
+
+        String infoName = infoLine.substring(0, separatorIndex).trim().toLowerCase();
+        String infoKey = infoName.equals("title") ? "name" : infoName.equals("author") ? "author" : null;
+        if (infoKey != null && !completedLevelInfo.containsKey(infoKey))
+            completedLevelInfo.put(infoKey, infoLine.substring(separatorIndex + 1).trim());
+    }
+
+    /**
+     * Finds a separator of information line's name and value.
+     *
+     * Information line's name consists of latin letters and spaces
+     * and is followed by a colon and a non-empty value.
+     *
+     * @param line
+     *      Line to check.
+     * @return
+     *      Colon's index or {@code -1} if the line is not an information line.
+     */
+    protected static int getInfoSeparatorIndex(String line) {
+
+        int characterIndex = 0;
+        while (characterIndex < line.length() && line.charAt(characterIndex) < 256
+                && IS_INFO_NAME_CHARACTER[line.charAt(characterIndex)])
+            characterIndex++;
+
+        if (characterIndex == 0 || characterIndex + 1 >= line.length() || line.charAt(characterIndex) != ':')
+            return -1;
+
+        return characterIndex;
+    }
+
+    /**
+     * Appends bytes to a line growing its array if required.
+     *
+     * @param line
+     *      Line's bytes.
+     * @param lineLength
+     *      Line's length in bytes.
+     * @param bytes
+     *      Bytes to append.
+     * @param offset
+     *      Offset of bytes to append.
+     * @param length
+     *      Count of bytes to append.
+     * @return
+     *      Line's bytes, a new array if the line has been grown.
+     */
+    protected static byte[] append(byte[] line, int lineLength, byte[] bytes, int offset, int length) {
+
+        if (lineLength + length > line.length) {
+
+            byte[] grownLine = new byte[Math.max(line.length * 2, lineLength + length)];
+            System.arraycopy(line, 0, grownLine, 0, lineLength);
+            line = grownLine;
+        }
+
+        System.arraycopy(bytes, offset, line, lineLength, length);
+        return line;
+    }
+}
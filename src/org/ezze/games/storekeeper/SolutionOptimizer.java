@@ -0,0 +1,510 @@
+package org.ezze.games.storekeeper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import org.ezze.games.storekeeper.Level.MoveInformation;
+import org.ezze.games.storekeeper.Level.MoveType;
+
+/**
+ * This class shortens a sequence of moves keeping the position it leads to.
+ *
+ * Moves are reduced to pushes, then each optimization round searches
+ * breadth-first from every position of the sequence for a later position
+ * of the sequence reachable by fewer pushes. Searches are limited by window's
+ * pushes count and run in parallel, the best set of non-overlapping shortcuts
+ * is applied and rounds are repeated while pushes are saved.
+ * Finally pushes are joined by worker's shortest walks, so pushes are
+ * minimized first and moves second.
+ *
+ * A sequence may come from {@link Solver} or from level's history
+ * taken back to its start (see {@link Level#getHistoryMoveCode(int)}).
+ *
+ * @author Dmitriy Pushkov
+ * @version 0.0.1
+ * @see OptimizerResult
+ */
+public class SolutionOptimizer {
+
+    /**
+     * Default maximal pushes count of a shortcut.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 12;
+
+    /**
+     * Maximal count of positions visited by one window's search.
+     */
+    public static final int WINDOW_STATES_LIMIT = 10000;
+
+    /**
+     * Maximal count of optimization rounds.
+     */
+    protected static final int MAXIMAL_ROUNDS_COUNT = 16;
+
+    /**
+     * Level's geometry or {@code null} if level cannot be optimized.
+     */
+    protected SolverBoard board = null;
+
+    /**
+     * Count of threads searching windows.
+     */
+    protected int parallelism = 1;
+
+    /**
+     * Maximal pushes count of a shortcut.
+     */
+    protected int windowSize = DEFAULT_WINDOW_SIZE;
+
+    /**
+     * This class describes a shorter way between two positions of the sequence.
+     */
+    protected static class Shortcut {
+
+        /**
+         * Index of the position the shortcut leads to.
+         */
+        protected final int toIndex;
+
+        /**
+         * Shortcut's pushes packed by {@link SolutionOptimizer#packPush(int, int)}.
+         */
+        protected final int[] pushes;
+
+        /**
+         * Count of pushes saved by the shortcut.
+         */
+        protected final int savedPushesCount;
+
+        /**
+         * Creates a shortcut.
+         *
+         * @param fromIndex
+         *      Index of the position the shortcut starts from.
+         * @param toIndex
+         *      Index of the position the shortcut leads to.
+         * @param pushes
+         *      Shortcut's packed pushes.
+         */
+        protected Shortcut(int fromIndex, int toIndex, int[] pushes) {
+
+            this.toIndex = toIndex;
+            this.pushes = pushes;
+            savedPushesCount = toIndex - fromIndex - pushes.length;
+        }
+    }
+
+    /**
+     * This task searches windows of a range of positions splitting it between threads.
+     */
+    protected class WindowsTask extends RecursiveAction {
+
+        /**
+         * Serialization's version of the task.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Positions of the sequence.
+         */
+        protected final SolverState[] states;
+
+        /**
+         * Last indexes of the sequence's positions.
+         */
+        protected final HashMap<SolverState, Integer> lastIndexes;
+
+        /**
+         * Found shortcuts by their first positions.
+         */
+        protected final Shortcut[] shortcuts;
+
+        /**
+         * Index of range's first position.
+         */
+        protected final int fromIndex;
+
+        /**
+         * Index following range's last position.
+         */
+        protected final int toIndex;
+
+        /**
+         * Creates windows' task.
+         *
+         * @param states
+         *      Positions of the sequence.
+         * @param lastIndexes
+         *      Last indexes of the sequence's positions.
+         * @param shortcuts
+         *      Shortcuts to fill.
+         * @param fromIndex
+         *      Index of range's first position.
+         * @param toIndex
+         *      Index following range's last position.
+         */
+        protected WindowsTask(SolverState[] states, HashMap<SolverState, Integer> lastIndexes, Shortcut[] shortcuts,
+                int fromIndex, int toIndex) {
+
+            this.states = states;
+            this.lastIndexes = lastIndexes;
+            this.shortcuts = shortcuts;
+            this.fromIndex = fromIndex;
+            this.toIndex = toIndex;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected void compute() {
+
+            if (toIndex - fromIndex > 1) {
+
+                int middleIndex = (fromIndex + toIndex) >>> 1;
+                invokeAll(new WindowsTask(states, lastIndexes, shortcuts, fromIndex, middleIndex),
+                        new WindowsTask(states, lastIndexes, shortcuts, middleIndex, toIndex));
+                return;
+            }
+
+            for (int stateIndex = fromIndex; stateIndex < toIndex; stateIndex++)
+                shortcuts[stateIndex] = findShortcut(states, lastIndexes, stateIndex);
+        }
+    }
+
+    /**
+     * Creates an optimizer of moves starting from level's current position
+     * using all available processors.
+     *
+     * @param level
+     *      Level.
+     */
+    public SolutionOptimizer(Level level) {
+
+        this(level, Runtime.getRuntime().availableProcessors(), DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Creates an optimizer of moves starting from level's current position.
+     *
+     * @param level
+     *      Level.
+     * @param parallelism
+     *      Count of threads searching windows.
+     * @param windowSize
+     *      Maximal pushes count of a shortcut.
+     */
+    public SolutionOptimizer(Level level, int parallelism, int windowSize) {
+
+        this.parallelism = Math.max(1, parallelism);
+        this.windowSize = Math.max(1, windowSize);
+        board = SolverBoard.create(level);
+    }
+
+    /**
+     * Retrieves optimizer's board.
+     *
+     * @return
+     *      Board or {@code null} if level cannot be optimized.
+     */
+    public SolverBoard getBoard() {
+
+        return board;
+    }
+
+    /**
+     * Packs a push into an integer.
+     *
+     * @param boxCell
+     *      Cell of the pushed box.
+     * @param directionIndex
+     *      Direction's index of the push.
+     * @return
+     *      Packed push.
+     */
+    protected static int packPush(int boxCell, int directionIndex) {
+
+        return (boxCell << 2) | directionIndex;
+    }
+
+    /**
+     * Shortens a sequence of moves.
+     *
+     * @param moves
+     *      Moves starting from level's position the optimizer has been created for.
+     * @return
+     *      Optimization's result or {@code null} if level cannot be optimized
+     *      or moves cannot be performed.
+     */
+    public OptimizerResult optimize(List<MoveInformation> moves) {
+
+        long startTime = System.currentTimeMillis();
+        if (board == null || moves == null)
+            return null;
+
+        // Reducing moves to pushes
+        int[] pushes = new int[moves.size()];
+        int pushesCount = 0;
+        int movesCount = 0;
+        long[] boxes = board.initialBoxes.clone();
+        int workerCell = board.initialWorkerCell;
+        for (MoveInformation moveInformation : moves) {
+
+            if (moveInformation == null || moveInformation.getType() == MoveType.NOTHING)
+                continue;
+
+            int directionIndex = moveInformation.getDirection().ordinal() - 1;
+            int nextCell = board.getNeighbour(workerCell, directionIndex);
+            if (nextCell < 0)
+                return null;
+
+            if (SolverBoard.hasBox(boxes, nextCell)) {
+
+                int boxDestinationCell = board.getNeighbour(nextCell, directionIndex);
+                if (boxDestinationCell < 0 || SolverBoard.hasBox(boxes, boxDestinationCell))
+                    return null;
+
+                boxes[nextCell >>> 6] &= ~(1L << nextCell);
+                boxes[boxDestinationCell >>> 6] |= 1L << boxDestinationCell;
+                pushes[pushesCount++] = packPush(nextCell, directionIndex);
+            }
+
+            workerCell = nextCell;
+            movesCount++;
+        }
+
+        int originalPushesCount = pushesCount;
+        int roundsCount = 0;
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+
+            while (roundsCount < MAXIMAL_ROUNDS_COUNT) {
+
+                int optimizedPushesCount = optimizePushes(pool, pushes, pushesCount);
+                roundsCount++;
+                if (optimizedPushesCount == pushesCount)
+                    break;
+
+                pushesCount = optimizedPushesCount;
+            }
+        }
+        finally {
+
+            pool.shutdownNow();
+        }
+
+        // Joining pushes by the shortest walks
+        int[] pushBoxCells = new int[pushesCount];
+        int[] pushDirections = new int[pushesCount];
+        for (int pushIndex = 0; pushIndex < pushesCount; pushIndex++) {
+
+            pushBoxCells[pushIndex] = pushes[pushIndex] >>> 2;
+            pushDirections[pushIndex] = pushes[pushIndex] & 3;
+        }
+
+        ArrayList<MoveInformation> optimizedMoves = board.convertPushesToMoves(pushBoxCells, pushDirections, pushesCount);
+        if (optimizedMoves == null)
+            return null;
+
+        // Worker's final cell matters unless the level is completed
+        if (!board.isSolved(boxes)) {
+
+            int lastWorkerCell = pushesCount > 0 ? pushBoxCells[pushesCount - 1] : board.initialWorkerCell;
+            int[] previousCells = new int[board.getCellsCount()];
+            int[] queue = new int[board.getCellsCount()];
+            if (!board.appendWalk(boxes, lastWorkerCell, workerCell, previousCells, queue, optimizedMoves))
+                return null;
+        }
+
+        return new OptimizerResult(optimizedMoves, movesCount, originalPushesCount, pushesCount, roundsCount,
+                System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Performs an optimization round replacing pushes in place.
+     *
+     * @param pool
+     *      Pool searching windows.
+     * @param pushes
+     *      Packed pushes.
+     * @param pushesCount
+     *      Count of pushes.
+     * @return
+     *      Count of pushes after the round.
+     */
+    protected int optimizePushes(ForkJoinPool pool, int[] pushes, int pushesCount) {
+
+        // Replaying pushes to collect sequence's positions
+        long[] reachable = new long[board.getWordsCount()];
+        SolverBoard.AreaBuffers area = new SolverBoard.AreaBuffers(board);
+        SolverState[] states = new SolverState[pushesCount + 1];
+        HashMap<SolverState, Integer> lastIndexes = new HashMap<SolverState, Integer>();
+        long[] boxes = board.initialBoxes.clone();
+        long boxesHash = board.getBoxesHash(boxes);
+        int workerCell = board.initialWorkerCell;
+        for (int stateIndex = 0; stateIndex <= pushesCount; stateIndex++) {
+
+            if (stateIndex > 0) {
+
+                int boxCell = pushes[stateIndex - 1] >>> 2;
+                int boxDestinationCell = board.getNeighbour(boxCell, pushes[stateIndex - 1] & 3);
+                boxes = boxes.clone();
+                boxes[boxCell >>> 6] &= ~(1L << boxCell);
+                boxes[boxDestinationCell >>> 6] |= 1L << boxDestinationCell;
+                boxesHash ^= board.getBoxKey(boxCell) ^ board.getBoxKey(boxDestinationCell);
+                workerCell = boxCell;
+            }
+
+            int normalizedWorkerCell = board.findReachableCells(boxes, workerCell, reachable, area);
+            states[stateIndex] = new SolverState(boxes, normalizedWorkerCell, boxesHash,
+                    boxesHash ^ board.getWorkerKey(normalizedWorkerCell));
+            lastIndexes.put(states[stateIndex], stateIndex);
+        }
+
+        Shortcut[] shortcuts = new Shortcut[pushesCount];
+        pool.invoke(new WindowsTask(states, lastIndexes, shortcuts, 0, pushesCount));
+
+        // Choosing non-overlapping shortcuts saving the most pushes
+        int[] savedPushesCounts = new int[pushesCount + 1];
+        boolean[] isShortcutTaken = new boolean[pushesCount];
+        for (int stateIndex = pushesCount - 1; stateIndex >= 0; stateIndex--) {
+
+            savedPushesCounts[stateIndex] = savedPushesCounts[stateIndex + 1];
+            Shortcut shortcut = shortcuts[stateIndex];
+            if (shortcut != null && shortcut.savedPushesCount + savedPushesCounts[shortcut.toIndex] >
+                    savedPushesCounts[stateIndex]) {
+
+                savedPushesCounts[stateIndex] = shortcut.savedPushesCount + savedPushesCounts[shortcut.toIndex];
+                isShortcutTaken[stateIndex] = true;
+            }
+        }
+
+        if (savedPushesCounts[0] == 0)
+            return pushesCount;
+
+        // Shortcuts are never longer than replaced pushes, so they are written in place
+        int optimizedPushesCount = 0;
+        int stateIndex = 0;
+        while (stateIndex < pushesCount) {
+
+            if (isShortcutTaken[stateIndex]) {
+
+                Shortcut shortcut = shortcuts[stateIndex];
+                for (int push : shortcut.pushes)
+                    pushes[optimizedPushesCount++] = push;
+                stateIndex = shortcut.toIndex;
+            }
+            else
+                pushes[optimizedPushesCount++] = pushes[stateIndex++];
+        }
+
+        return optimizedPushesCount;
+    }
+
+    /**
+     * Searches breadth-first for the shortcut saving the most pushes from a position of the sequence.
+     *
+     * @param states
+     *      Positions of the sequence.
+     * @param lastIndexes
+     *      Last indexes of the sequence's positions.
+     * @param fromIndex
+     *      Index of the position to search from.
+     * @return
+     *      Shortcut or {@code null} if no pushes can be saved.
+     */
+    protected Shortcut findShortcut(SolverState[] states, HashMap<SolverState, Integer> lastIndexes, int fromIndex) {
+
+        int lastIndex = states.length - 1;
+        SolverNode bestNode = null;
+        int bestToIndex = lastIndexes.get(states[fromIndex]);
+        int bestSavedPushesCount = bestToIndex - fromIndex;
+
+        long[] reachable = new long[board.getWordsCount()];
+        long[] childReachable = new long[board.getWordsCount()];
+        SolverBoard.AreaBuffers area = new SolverBoard.AreaBuffers(board);
+        HashSet<SolverState> visitedStates = new HashSet<SolverState>();
+        ArrayList<SolverNode> nodes = new ArrayList<SolverNode>();
+        ArrayList<SolverNode> children = new ArrayList<SolverNode>();
+        SolverNode root = new SolverNode(states[fromIndex], null, -1, -1, 0, 0);
+        visitedStates.add(root.getState());
+        nodes.add(root);
+
+        int maximalDepth = Math.min(windowSize, lastIndex - fromIndex - 1);
+        for (int depth = 1; depth <= maximalDepth && !nodes.isEmpty(); depth++) {
+
+            // Deeper shortcuts cannot save more pushes
+            if (lastIndex - fromIndex - depth <= bestSavedPushesCount)
+                break;
+
+            children.clear();
+            for (SolverNode node : nodes) {
+
+                SolverState state = node.getState();
+                long[] boxes = state.getBoxes();
+                board.findReachableCells(boxes, state.getWorkerCell(), reachable, area);
+                for (int wordIndex = 0; wordIndex < reachable.length; wordIndex++) {
+
+                    long word = reachable[wordIndex];
+                    while (word != 0) {
+
+                        int workerCell = (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+                        word &= word - 1;
+                        for (int directionIndex = 0; directionIndex < 4; directionIndex++) {
+
+                            int boxCell = board.getNeighbour(workerCell, directionIndex);
+                            if (boxCell < 0 || !SolverBoard.hasBox(boxes, boxCell))
+                                continue;
+
+                            int boxDestinationCell = board.getNeighbour(boxCell, directionIndex);
+                            if (boxDestinationCell < 0 || SolverBoard.hasBox(boxes, boxDestinationCell))
+                                continue;
+
+                            long[] childBoxes = boxes.clone();
+                            childBoxes[boxCell >>> 6] &= ~(1L << boxCell);
+                            childBoxes[boxDestinationCell >>> 6] |= 1L << boxDestinationCell;
+                            long childBoxesHash = state.getBoxesHash() ^ board.getBoxKey(boxCell) ^
+                                    board.getBoxKey(boxDestinationCell);
+                            int childWorkerCell = board.findReachableCells(childBoxes, boxCell, childReachable, area);
+                            SolverState childState = new SolverState(childBoxes, childWorkerCell, childBoxesHash,
+                                    childBoxesHash ^ board.getWorkerKey(childWorkerCell));
+                            if (!visitedStates.add(childState))
+                                continue;
+
+                            SolverNode child = new SolverNode(childState, node, boxCell, directionIndex, depth, 0);
+                            Integer toIndex = lastIndexes.get(childState);
+                            if (toIndex != null && toIndex - fromIndex - depth > bestSavedPushesCount) {
+
+                                bestNode = child;
+                                bestToIndex = toIndex;
+                                bestSavedPushesCount = toIndex - fromIndex - depth;
+                            }
+
+                            children.add(child);
+                        }
+                    }
+                }
+
+                if (visitedStates.size() > WINDOW_STATES_LIMIT)
+                    break;
+            }
+
+            if (visitedStates.size() > WINDOW_STATES_LIMIT)
+                break;
+
+            ArrayList<SolverNode> swappedNodes = nodes;
+            nodes = children;
+            children = swappedNodes;
+        }
+
+        if (bestSavedPushesCount <= 0)
+            return null;
+
+        int[] shortcutPushes = new int[bestNode == null ? 0 : bestNode.getPushesCount()];
+        for (SolverNode node = bestNode; node != null && node.getParent() != null; node = node.getParent())
+            shortcutPushes[node.getPushesCount() - 1] = packPush(node.boxCell, node.directionIndex);
+
+        return new Shortcut(fromIndex, bestToIndex, shortcutPushes);
+    }
+}
@@ -0,0 +1,820 @@
+package org.ezze.games.storekeeper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import org.ezze.games.storekeeper.Level.MoveInformation;
+
+/**
+ * This class implements a solver of storekeeper's levels.
+ *
+ * The solver runs A* search over positions reached by pushes (see {@link SolverState}),
+ * so each push costs one step and worker's walks between pushes are free.
+ * Remaining pushes are estimated by {@link MatchingHeuristic}.
+ * Positions are taken from the open list in batches which are expanded
+ * by all cores with a work-stealing {@link ForkJoinPool}, generated
+ * positions are checked against shared {@link TranspositionTable} by expanding
+ * threads and queued by the coordinating one.
+ * Batches make found solutions not necessarily optimal by pushes.
+ *
+ * @author Dmitriy Pushkov
+ * @version 0.0.1
+ * @see SolverBoard
+ * @see SolverResult
+ */
+public class Solver {
+
+    /**
+     * Count of positions expanded by one thread per batch.
+     */
+    public static final int BATCH_SIZE_PER_THREAD = 32;
+
+    /**
+     * Default interval between checkpoints in milliseconds.
+     */
+    public static final long DEFAULT_CHECKPOINT_INTERVAL = 60000L;
+
+    /**
+     * Solved level.
+     */
+    protected Level level = null;
+
+    /**
+     * Level's geometry or {@code null} if level cannot be solved.
+     */
+    protected SolverBoard board = null;
+
+    /**
+     * Estimator of remaining pushes.
+     */
+    protected MatchingHeuristic heuristic = null;
+
+    /**
+     * Count of threads expanding positions.
+     */
+    protected int parallelism = 1;
+
+    /**
+     * Memory size of the transposition table in bytes.
+     */
+    protected long tableMemorySize = TranspositionTable.DEFAULT_MEMORY_SIZE;
+
+    /**
+     * Table of visited positions of the running search.
+     */
+    protected TranspositionTable transpositionTable = null;
+
+    /**
+     * Count of open nodes of the running search updated after each expanded batch.
+     */
+    protected volatile int openNodesCount = 0;
+
+    /**
+     * Estimated memory size of a search node in bytes.
+     *
+     * @see SolverNode#getMemorySize(int, int)
+     */
+    protected long nodeMemorySize = 0;
+
+    /**
+     * Checkpoint's file or {@code null} if checkpoints are disabled.
+     */
+    protected File checkpointFile = null;
+
+    /**
+     * Interval between checkpoints in milliseconds.
+     */
+    protected long checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+
+    /**
+     * Shows whether the search has been cancelled.
+     */
+    protected volatile boolean isCancelled = false;
+
+    /**
+     * Traces a count of expanded positions.
+     */
+    protected final AtomicLong expandedStatesCount = new AtomicLong();
+
+    /**
+     * Keeps search buffers of each expanding thread.
+     */
+    protected final ThreadLocal<SearchBuffers> searchBuffers = new ThreadLocal<SearchBuffers>() {
+
+        @Override
+        protected SearchBuffers initialValue() {
+
+            return new SearchBuffers(board);
+        }
+    };
+
+    /**
+     * This class keeps thread's buffers used to expand positions.
+     */
+    protected static class SearchBuffers {
+
+        /**
+         * Reachable cells of expanded position.
+         */
+        protected final long[] reachable;
+
+        /**
+         * Reachable cells of generated position.
+         */
+        protected final long[] childReachable;
+
+        /**
+         * Row bitmasks' buffers of reachable cells' search.
+         */
+        protected final SolverBoard.AreaBuffers area;
+
+        /**
+         * Thread's deadlock detector.
+         */
+        protected final DeadlockDetector deadlockDetector;
+
+        /**
+         * Creates buffers for specified board.
+         *
+         * @param board
+         *      Solver's board.
+         */
+        protected SearchBuffers(SolverBoard board) {
+
+            reachable = new long[board.getWordsCount()];
+            childReachable = new long[board.getWordsCount()];
+            area = new SolverBoard.AreaBuffers(board);
+            deadlockDetector = new DeadlockDetector(board);
+        }
+    }
+
+    /**
+     * This task expands a range of positions splitting it between threads.
+     */
+    protected class ExpansionTask extends RecursiveTask<ArrayList<SolverNode>> {
+
+        /**
+         * Serialization's version of the task.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Positions to expand.
+         */
+        protected final ArrayList<SolverNode> nodes;
+
+        /**
+         * Index of range's first position.
+         */
+        protected final int fromIndex;
+
+        /**
+         * Index following range's last position.
+         */
+        protected final int toIndex;
+
+        /**
+         * Creates expansion task.
+         *
+         * @param nodes
+         *      Positions to expand.
+         * @param fromIndex
+         *      Index of range's first position.
+         * @param toIndex
+         *      Index following range's last position.
+         */
+        protected ExpansionTask(ArrayList<SolverNode> nodes, int fromIndex, int toIndex) {
+
+            this.nodes = nodes;
+            this.fromIndex = fromIndex;
+            this.toIndex = toIndex;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected ArrayList<SolverNode> compute() {
+
+            if (toIndex - fromIndex <= 1) {
+
+                ArrayList<SolverNode> children = new ArrayList<SolverNode>();
+                if (fromIndex < toIndex && !isCancelled)
+                    expand(nodes.get(fromIndex), children);
+                return children;
+            }
+
+            int middleIndex = (fromIndex + toIndex) >>> 1;
+            ExpansionTask secondTask = new ExpansionTask(nodes, middleIndex, toIndex);
+            secondTask.fork();
+            ArrayList<SolverNode> children = new ExpansionTask(nodes, fromIndex, middleIndex).compute();
+            children.addAll(secondTask.join());
+            return children;
+        }
+    }
+
+    /**
+     * Creates a solver of level's current position using all available processors.
+     *
+     * @param level
+     *      Level to solve.
+     * @see #Solver(org.ezze.games.storekeeper.Level, int)
+     */
+    public Solver(Level level) {
+
+        this(level, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a solver of level's current position.
+     *
+     * @param level
+     *      Level to solve.
+     * @param parallelism
+     *      Count of threads expanding positions.
+     */
+    public Solver(Level level, int parallelism) {
+
+        this(level, parallelism, TranspositionTable.DEFAULT_MEMORY_SIZE);
+    }
+
+    /**
+     * Creates a solver of level's current position.
+     *
+     * @param level
+     *      Level to solve.
+     * @param parallelism
+     *      Count of threads expanding positions.
+     * @param tableMemorySize
+     *      Memory size of the transposition table in bytes.
+     */
+    public Solver(Level level, int parallelism, long tableMemorySize) {
+
+        this.level = level;
+        this.parallelism = Math.max(1, parallelism);
+        this.tableMemorySize = tableMemorySize;
+        board = SolverBoard.create(level);
+        if (board != null) {
+
+            heuristic = new MatchingHeuristic(board);
+            nodeMemorySize = SolverNode.getMemorySize(board.getWordsCount(), heuristic.getMatchingLength());
+        }
+    }
+
+    /**
+     * Retrieves solver's board.
+     *
+     * @return
+     *      Board or {@code null} if level cannot be solved.
+     */
+    public SolverBoard getBoard() {
+
+        return board;
+    }
+
+    /**
+     * Enables periodic checkpoints of the search.
+     *
+     * If the file keeps a checkpoint of the same position {@link #solve()} resumes
+     * the search from it. The file is deleted when the search finishes
+     * and kept if the search is cancelled. If the file cannot be written
+     * the search continues without checkpoints.
+     *
+     * @param checkpointFile
+     *      Checkpoint's file or {@code null} to disable checkpoints.
+     * @param checkpointInterval
+     *      Interval between checkpoints in milliseconds.
+     * @see SolverCheckpoint
+     */
+    public void setCheckpointFile(File checkpointFile, long checkpointInterval) {
+
+        this.checkpointFile = checkpointFile;
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Cancels the search, {@link #solve()} returns as soon as possible.
+     */
+    public void cancel() {
+
+        isCancelled = true;
+    }
+
+    /**
+     * Checks whether the search has been cancelled.
+     *
+     * @return
+     *      {@code true} if the search has been cancelled, {@code false} otherwise.
+     */
+    public boolean isCancelled() {
+
+        return isCancelled;
+    }
+
+    /**
+     * Retrieves a count of positions expanded so far.
+     *
+     * @return
+     *      Expanded positions' count.
+     */
+    public long getExpandedStatesCount() {
+
+        return expandedStatesCount.get();
+    }
+
+    /**
+     * Retrieves a count of positions replaced in the transposition table so far.
+     *
+     * @return
+     *      Replaced positions' count, a positive count means the search
+     *      doesn't fit into table's memory.
+     */
+    public long getReplacedStatesCount() {
+
+        TranspositionTable table = transpositionTable;
+        return table == null ? 0 : table.getReplacementsCount();
+    }
+
+    /**
+     * Estimates memory occupied by the running search.
+     *
+     * The transposition table replaces positions when it's full, so the search
+     * grows in memory by its open nodes and expanded nodes they refer to as parents.
+     * All expanded nodes are counted, so the estimation is an upper bound.
+     *
+     * @return
+     *      Memory size of search's nodes and of the transposition table in bytes.
+     */
+    public long getMemorySize() {
+
+        TranspositionTable table = transpositionTable;
+        return (openNodesCount + expandedStatesCount.get()) * nodeMemorySize +
+                (table == null ? 0 : table.getMemorySize());
+    }
+
+    /**
+     * Searches for level's solution.
+     *
+     * @return
+     *      Search's result.
+     */
+    public SolverResult solve() {
+
+        long startTime = System.currentTimeMillis();
+        if (board == null)
+            return new SolverResult(SolverResult.Status.INVALID, null, 0, 0, 0, 0);
+
+        SearchBuffers buffers = searchBuffers.get();
+        SolverState initialState = board.createInitialState(buffers.reachable, buffers.area);
+        int[] initialMatching = heuristic.createMatching(initialState.getBoxes());
+        if (initialMatching == null)
+            return createResult(SolverResult.Status.UNSOLVABLE, null, 0, startTime);
+
+        SolverNode root = new SolverNode(initialState, null, -1, -1, 0, initialMatching);
+        if (board.isSolved(initialState.getBoxes()))
+            return createResult(SolverResult.Status.SOLVED, root, 1, startTime);
+
+        PriorityQueue<SolverNode> openNodes = createOpenNodes();
+        transpositionTable = new TranspositionTable(board.getWordsCount(), tableMemorySize);
+
+        // Resuming from the checkpoint if it has been written for the same position
+        SolverCheckpoint checkpoint = openCheckpoint(initialState);
+        if (checkpoint != null && checkpoint.getRecordsCount() > 0 && restoreCheckpoint(checkpoint, root, openNodes)) {
+
+            expandedStatesCount.set(checkpoint.getExpandedStatesCount());
+            startTime -= checkpoint.getElapsedTime();
+        }
+        else {
+
+            if (checkpoint != null)
+                checkpoint.reset();
+
+            openNodes.clear();
+            transpositionTable = new TranspositionTable(board.getWordsCount(), tableMemorySize);
+            openNodes.add(root);
+            transpositionTable.offer(initialState, 0);
+            checkpoint = appendToCheckpoint(checkpoint, Collections.singletonList(root));
+        }
+
+        int batchSize = parallelism * BATCH_SIZE_PER_THREAD;
+        ArrayList<SolverNode> batch = new ArrayList<SolverNode>(batchSize);
+        openNodesCount = openNodes.size();
+        long checkpointTime = System.currentTimeMillis();
+        SolverResult.Status status = SolverResult.Status.CANCELLED;
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+
+            while (!openNodes.isEmpty()) {
+
+                if (isCancelled) {
+
+                    checkpoint = writeCheckpoint(checkpoint, startTime);
+                    return createResult(status, null, transpositionTable.getSize(), startTime);
+                }
+
+                // Taking the best positions skipping ones reached later by a shorter path
+                batch.clear();
+                while (batch.size() < batchSize && !openNodes.isEmpty()) {
+
+                    SolverNode node = openNodes.poll();
+                    int bestPushesCount = transpositionTable.getPushesCount(node.getState());
+                    if (bestPushesCount == TranspositionTable.PUSHES_COUNT_UNKNOWN || bestPushesCount >= node.getPushesCount())
+                        batch.add(node);
+                }
+
+                ArrayList<SolverNode> children = pool.invoke(new ExpansionTask(batch, 0, batch.size()));
+                expandedStatesCount.addAndGet(batch.size());
+
+                SolverNode solution = null;
+                for (SolverNode child : children) {
+
+                    if (child.getEstimation() == 0 && board.isSolved(child.getState().getBoxes())) {
+
+                        if (solution == null || child.getPushesCount() < solution.getPushesCount())
+                            solution = child;
+                    }
+
+                    openNodes.add(child);
+                }
+
+                openNodesCount = openNodes.size();
+                if (solution != null) {
+
+                    status = SolverResult.Status.SOLVED;
+                    return createResult(status, solution, transpositionTable.getSize(), startTime);
+                }
+
+                // Each batch is appended to mapped records, only forcing them is left to the interval
+                if (checkpoint != null) {
+
+                    checkpoint = appendToCheckpoint(checkpoint, children);
+                    if (System.currentTimeMillis() - checkpointTime >= checkpointInterval) {
+
+                        checkpoint = writeCheckpoint(checkpoint, startTime);
+                        checkpointTime = System.currentTimeMillis();
+                    }
+                }
+            }
+
+            status = SolverResult.Status.UNSOLVABLE;
+        }
+        finally {
+
+            pool.shutdownNow();
+            closeCheckpoint(checkpoint, status != SolverResult.Status.CANCELLED);
+        }
+
+        return createResult(status, null, transpositionTable.getSize(), startTime);
+    }
+
+    /**
+     * Computes a signature of solved position, so checkpoints of other levels
+     * or positions are never resumed.
+     *
+     * @param initialState
+     *      Initial position.
+     * @return
+     *      Signature.
+     */
+    protected long getCheckpointSignature(SolverState initialState) {
+
+        long signature = initialState.getHash();
+        signature = signature * 31 + board.getCellsCount();
+        for (int cell = 0; cell < board.getCellsCount(); cell++)
+            signature = signature * 31 + board.getSquare(cell) * 2 + (board.isGoal(cell) ? 1 : 0);
+
+        return signature;
+    }
+
+    /**
+     * Opens the checkpoint if checkpoints are enabled.
+     *
+     * @param initialState
+     *      Initial position.
+     * @return
+     *      Checkpoint or {@code null} if checkpoints are disabled or the file cannot be opened.
+     */
+    protected SolverCheckpoint openCheckpoint(SolverState initialState) {
+
+        if (checkpointFile == null)
+            return null;
+
+        SolverCheckpoint checkpoint = new SolverCheckpoint(checkpointFile, getCheckpointSignature(initialState));
+        try {
+
+            checkpoint.open();
+            return checkpoint;
+        }
+        catch (IOException ex) {
+
+            closeCheckpoint(checkpoint, false);
+            return null;
+        }
+    }
+
+    /**
+     * Restores search tree from the checkpoint filling the open list and the transposition table.
+     *
+     * @param checkpoint
+     *      Checkpoint.
+     * @param root
+     *      Node of the initial position.
+     * @param openNodes
+     *      Open list to fill.
+     * @return
+     *      {@code true} if the tree has been restored, {@code false} if the checkpoint is broken.
+     */
+    protected boolean restoreCheckpoint(SolverCheckpoint checkpoint, SolverNode root, PriorityQueue<SolverNode> openNodes) {
+
+        try {
+
+            int recordsCount = (int)checkpoint.getRecordsCount();
+            if (checkpoint.getParentIndex(0) != -1)
+                return false;
+
+            // Nodes without children are open
+            boolean[] hasChildren = new boolean[recordsCount];
+            for (int recordIndex = 1; recordIndex < recordsCount; recordIndex++) {
+
+                int parentIndex = checkpoint.getParentIndex(recordIndex);
+                if (parentIndex < 0 || parentIndex >= recordIndex)
+                    return false;
+
+                hasChildren[parentIndex] = true;
+            }
+
+            SolverNode[] nodes = new SolverNode[recordsCount];
+            nodes[0] = root;
+            root.checkpointIndex = 0;
+            transpositionTable.offer(root.getState(), 0);
+            if (!hasChildren[0])
+                openNodes.add(root);
+
+            for (int recordIndex = 1; recordIndex < recordsCount; recordIndex++) {
+
+                SolverNode parent = nodes[checkpoint.getParentIndex(recordIndex)];
+                int push = checkpoint.getPush(recordIndex);
+                int boxCell = push >>> 2;
+                int directionIndex = push & 3;
+                int workerCell = checkpoint.getWorkerCell(recordIndex);
+                long[] boxes = parent.getState().getBoxes();
+                if (boxCell >= board.getCellsCount() || !SolverBoard.hasBox(boxes, boxCell) ||
+                        workerCell < 0 || workerCell >= board.getCellsCount())
+                    return false;
+
+                int boxDestinationCell = board.getNeighbour(boxCell, directionIndex);
+                if (boxDestinationCell < 0 || SolverBoard.hasBox(boxes, boxDestinationCell))
+                    return false;
+
+                long[] childBoxes = boxes.clone();
+                childBoxes[boxCell >>> 6] &= ~(1L << boxCell);
+                childBoxes[boxDestinationCell >>> 6] |= 1L << boxDestinationCell;
+                long childBoxesHash = parent.getState().getBoxesHash() ^ board.getBoxKey(boxCell) ^
+                        board.getBoxKey(boxDestinationCell);
+                SolverState childState = new SolverState(childBoxes, workerCell, childBoxesHash,
+                        childBoxesHash ^ board.getWorkerKey(workerCell));
+                int pushesCount = parent.getPushesCount() + 1;
+
+                // Only open nodes need matchings to be expanded
+                SolverNode node;
+                boolean isBest = transpositionTable.offer(childState, pushesCount);
+                if (!hasChildren[recordIndex] && isBest) {
+
+                    int[] matching = heuristic.createMatching(childBoxes);
+                    if (matching == null)
+                        return false;
+
+                    node = new SolverNode(childState, parent, boxCell, directionIndex, pushesCount, matching);
+                    openNodes.add(node);
+                }
+                else
+                    node = new SolverNode(childState, parent, boxCell, directionIndex, pushesCount, 0);
+
+                node.checkpointIndex = recordIndex;
+                nodes[recordIndex] = node;
+            }
+
+            return true;
+        }
+        catch (IOException ex) {
+
+            return false;
+        }
+    }
+
+    /**
+     * Appends created nodes to the checkpoint's records.
+     *
+     * Records are copied to mapped memory, so appending a batch is cheap
+     * and it's done right after the batch has been expanded.
+     *
+     * @param checkpoint
+     *      Checkpoint or {@code null}.
+     * @param nodes
+     *      Created nodes whose parents have been appended already.
+     * @return
+     *      The checkpoint or {@code null} if it has failed and checkpoints are disabled.
+     */
+    protected SolverCheckpoint appendToCheckpoint(SolverCheckpoint checkpoint, List<SolverNode> nodes) {
+
+        if (checkpoint == null)
+            return null;
+
+        try {
+
+            for (SolverNode node : nodes) {
+
+                SolverNode parent = node.getParent();
+                node.checkpointIndex = parent == null ?
+                        checkpoint.append(-1, -1, node.getState().getWorkerCell()) :
+                        checkpoint.append(parent.checkpointIndex, (node.boxCell << 2) | node.directionIndex,
+                        node.getState().getWorkerCell());
+            }
+
+            return checkpoint;
+        }
+        catch (IOException ex) {
+
+            closeCheckpoint(checkpoint, false);
+            return null;
+        }
+    }
+
+    /**
+     * Completes a new checkpoint of appended records.
+     *
+     * Records are forced to the disk and the header is updated in the background.
+     *
+     * @param checkpoint
+     *      Checkpoint or {@code null}.
+     * @param startTime
+     *      Search's start time in milliseconds.
+     * @return
+     *      The checkpoint or {@code null} if it has failed and checkpoints are disabled.
+     */
+    protected SolverCheckpoint writeCheckpoint(SolverCheckpoint checkpoint, long startTime) {
+
+        if (checkpoint == null)
+            return null;
+
+        try {
+
+            checkpoint.commit(expandedStatesCount.get(), System.currentTimeMillis() - startTime);
+            return checkpoint;
+        }
+        catch (IOException ex) {
+
+            closeCheckpoint(checkpoint, false);
+            return null;
+        }
+    }
+
+    /**
+     * Closes the checkpoint.
+     *
+     * @param checkpoint
+     *      Checkpoint or {@code null}.
+     * @param isSearchFinished
+     *      Shows whether the search has finished, so the checkpoint is deleted.
+     */
+    protected void closeCheckpoint(SolverCheckpoint checkpoint, boolean isSearchFinished) {
+
+        if (checkpoint == null)
+            return;
+
+        if (isSearchFinished) {
+
+            checkpoint.delete();
+            return;
+        }
+
+        try {
+
+            checkpoint.close();
+        }
+        catch (IOException ex) {
+
+        }
+    }
+
+    /**
+     * Creates an empty open list.
+     *
+     * @return
+     *      Open list ordered by total estimation, see {@link SolverNode#compareTo(org.ezze.games.storekeeper.SolverNode)}.
+     */
+    protected PriorityQueue<SolverNode> createOpenNodes() {
+
+        return new PriorityQueue<SolverNode>();
+    }
+
+    /**
+     * Generates positions reachable from node's position by one push.
+     *
+     * Pushes to dead cells, positions where boxes cannot be matched to goals,
+     * deadlocked positions (see {@link DeadlockDetector}) and positions
+     * already reached with the same or fewer pushes are skipped.
+     *
+     * @param node
+     *      Expanded node.
+     * @param children
+     *      List to add generated nodes to.
+     */
+    protected void expand(SolverNode node, ArrayList<SolverNode> children) {
+
+        SearchBuffers buffers = searchBuffers.get();
+        SolverState state = node.getState();
+        long[] boxes = state.getBoxes();
+        long[] reachable = buffers.reachable;
+        board.findReachableCells(boxes, state.getWorkerCell(), reachable, buffers.area);
+
+        for (int wordIndex = 0; wordIndex < reachable.length; wordIndex++) {
+
+            long word = reachable[wordIndex];
+            while (word != 0) {
+
+                int workerCell = (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+
+                for (int directionIndex = 0; directionIndex < 4; directionIndex++) {
+
+                    int boxCell = board.getNeighbour(workerCell, directionIndex);
+                    if (boxCell < 0 || !SolverBoard.hasBox(boxes, boxCell))
+                        continue;
+
+                    int boxDestinationCell = board.getNeighbour(boxCell, directionIndex);
+                    if (boxDestinationCell < 0 || SolverBoard.hasBox(boxes, boxDestinationCell) ||
+                            board.isDead(boxDestinationCell)) {
+
+                        continue;
+                    }
+
+                    int[] childMatching = heuristic.updateMatching(node.getMatching(), boxCell, boxDestinationCell);
+                    if (childMatching == null)
+                        continue;
+
+                    long[] childBoxes = boxes.clone();
+                    childBoxes[boxCell >>> 6] &= ~(1L << boxCell);
+                    childBoxes[boxDestinationCell >>> 6] |= 1L << boxDestinationCell;
+                    long childBoxesHash = state.getBoxesHash() ^ board.getBoxKey(boxCell) ^ board.getBoxKey(boxDestinationCell);
+                    int childWorkerCell = board.findReachableCells(childBoxes, boxCell, buffers.childReachable, buffers.area);
+                    if (buffers.deadlockDetector.isDeadlocked(childBoxes, buffers.childReachable, boxDestinationCell))
+                        continue;
+
+                    SolverState childState = new SolverState(childBoxes, childWorkerCell, childBoxesHash,
+                            childBoxesHash ^ board.getWorkerKey(childWorkerCell));
+                    if (!transpositionTable.offer(childState, node.getPushesCount() + 1))
+                        continue;
+
+                    children.add(new SolverNode(childState, node, boxCell, directionIndex,
+                            node.getPushesCount() + 1, childMatching));
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates search's result.
+     *
+     * @param status
+     *      Search's outcome.
+     * @param solution
+     *      Solution's node or {@code null}.
+     * @param storedStatesCount
+     *      Count of positions stored by transposition table.
+     * @param startTime
+     *      Search's start time in milliseconds.
+     * @return
+     *      Search's result.
+     */
+    protected SolverResult createResult(SolverResult.Status status, SolverNode solution,
+            long storedStatesCount, long startTime) {
+
+        ArrayList<MoveInformation> moves = null;
+        int pushesCount = 0;
+        if (solution != null) {
+
+            pushesCount = solution.getPushesCount();
+            int[] pushBoxCells = new int[pushesCount];
+            int[] pushDirections = new int[pushesCount];
+            SolverNode node = solution;
+            while (node.getParent() != null) {
+
+                pushBoxCells[node.getPushesCount() - 1] = node.boxCell;
+                pushDirections[node.getPushesCount() - 1] = node.directionIndex;
+                node = node.getParent();
+            }
+
+            moves = board.convertPushesToMoves(pushBoxCells, pushDirections, pushesCount);
+            if (moves == null)
+                status = SolverResult.Status.INVALID;
+        }
+
+        return new SolverResult(status, moves, pushesCount, expandedStatesCount.get(),
+                storedStatesCount, System.currentTimeMillis() - startTime);
+    }
+}
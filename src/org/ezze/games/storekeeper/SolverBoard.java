@@ -0,0 +1,799 @@
+package org.ezze.games.storekeeper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import org.ezze.games.storekeeper.Level.MoveInformation;
+
+/**
+ * This class keeps level's static geometry used by the solver.
+ *
+ * Level's floor squares accessible by the worker are enumerated as cells
+ * line by line, so the least cell's index of an area is its top left square.
+ * Boxes' positions are represented by bit sets of cells' indexes.
+ *
+ * Cells' Zobrist keys, dead cells and worker's reachable areas are taken from
+ * level's own components, so a hash of solver's state is equal to
+ * {@link Level#getStateHash()} of the same position.
+ *
+ * @author Dmitriy Pushkov
+ * @version 0.0.1
+ * @see Solver
+ */
+public class SolverBoard {
+
+    /**
+     * Value of a distance meaning that a box cannot be pushed to any goal.
+     */
+    public static final int DISTANCE_INFINITE = Integer.MAX_VALUE;
+
+    /**
+     * Board's width in squares.
+     */
+    protected int width = 0;
+
+    /**
+     * Board's height in squares.
+     */
+    protected int height = 0;
+
+    /**
+     * Count of board's cells.
+     */
+    protected int cellsCount = 0;
+
+    /**
+     * Count of {@code long} words in boxes' bit sets.
+     */
+    protected int wordsCount = 0;
+
+    /**
+     * Maps board's squares ({@code y * width + x}) to cells' indexes, {@code -1} stands for a square out of cells.
+     */
+    protected int[] cellIndexes = null;
+
+    /**
+     * Maps cells' indexes to board's squares.
+     */
+    protected int[] cellSquares = null;
+
+    /**
+     * Keeps cells' neighbours, a neighbour of cell {@code c} in direction {@code d}
+     * (see {@link Level#moveDirections}) is located at {@code c * 4 + d} index,
+     * {@code -1} stands for a brick.
+     */
+    protected int[] neighbours = null;
+
+    /**
+     * Count of {@code long} words representing one line of board's row bitmasks.
+     *
+     * @see Level#rowWordsCount
+     */
+    protected int rowWordsCount = 0;
+
+    /**
+     * Marks squares which are not cells line by line as {@link Level#obstacleRows} does.
+     */
+    protected long[] wallRows = null;
+
+    /**
+     * Keeps indexes of cells' words within row bitmasks.
+     */
+    protected int[] cellRowWordIndexes = null;
+
+    /**
+     * Keeps cells' bits within their words of row bitmasks.
+     */
+    protected long[] cellRowBits = null;
+
+    /**
+     * Marks dead cells.
+     *
+     * @see Level#isDeadSquare(int, int)
+     */
+    protected long[] deadCells = null;
+
+    /**
+     * Marks cells with goals.
+     */
+    protected long[] goals = null;
+
+    /**
+     * Lists goals' cells.
+     */
+    protected int[] goalCells = null;
+
+    /**
+     * Keeps minimal count of pushes required to move a box from a cell
+     * to the nearest goal ignoring other boxes.
+     */
+    protected int[] minimalPushDistances = null;
+
+    /**
+     * Keeps minimal counts of pushes required to move a box from a cell
+     * to each goal ignoring other boxes, a distance from cell {@code c}
+     * to goal {@code g} is located at {@code g * cellsCount + c} index.
+     *
+     * @see Level#getPushDistances()
+     */
+    protected short[] goalPushDistances = null;
+
+    /**
+     * Zobrist keys of a box placed at the cell.
+     *
+     * @see Level#zobristBoxKeys
+     */
+    protected long[] boxKeys = null;
+
+    /**
+     * Zobrist keys of normalized worker's cell.
+     *
+     * @see Level#zobristWorkerKeys
+     */
+    protected long[] workerKeys = null;
+
+    /**
+     * Worker's initial cell.
+     */
+    protected int initialWorkerCell = -1;
+
+    /**
+     * Boxes' initial bit set.
+     */
+    protected long[] initialBoxes = null;
+
+    /**
+     * Count of boxes.
+     */
+    protected int boxesCount = 0;
+
+    /**
+     * This class keeps row bitmasks' buffers to find worker's reachable cells.
+     *
+     * @see SolverBoard#findReachableCells(long[], int, long[], org.ezze.games.storekeeper.SolverBoard.AreaBuffers)
+     */
+    public static class AreaBuffers {
+
+        /**
+         * Bitmasks of squares the worker cannot enter.
+         */
+        protected final long[] obstacleRows;
+
+        /**
+         * Bitmasks of reachable squares.
+         */
+        protected final long[] reachableRows;
+
+        /**
+         * Creates buffers for specified board.
+         *
+         * @param board
+         *      Solver's board.
+         */
+        public AreaBuffers(SolverBoard board) {
+
+            obstacleRows = new long[board.wallRows.length];
+            reachableRows = new long[board.wallRows.length];
+        }
+    }
+
+    /**
+     * Creates solver's board of level's current position.
+     *
+     * @param level
+     *      Playable level.
+     * @return
+     *      Created board or {@code null} if level is not playable or
+     *      some of its boxes or goals cannot be accessed by the worker.
+     */
+    public static SolverBoard create(Level level) {
+
+        if (level == null)
+            return null;
+
+        synchronized (level) {
+
+            if (!level.materialize())
+                return null;
+
+            SolverBoard board = new SolverBoard();
+            if (!board.build(level))
+                return null;
+
+            return board;
+        }
+    }
+
+    /**
+     * Builds the board from level's current position.
+     *
+     * @param level
+     *      Materialized level.
+     * @return
+     *      {@code true} if the board has been built, {@code false} otherwise.
+     */
+    protected boolean build(Level level) {
+
+        width = level.getMaximalWidth();
+        height = level.getMaximalHeight();
+        int squaresCount = width * height;
+        int workerSquare = level.getWorkerY() * width + level.getWorkerX();
+
+        // Enumerating squares accessible by the worker when boxes are removed
+        boolean[] isAccessible = new boolean[squaresCount];
+        int[] queue = new int[squaresCount];
+        int queueHead = 0;
+        int queueTail = 0;
+        isAccessible[workerSquare] = true;
+        queue[queueTail++] = workerSquare;
+        while (queueHead < queueTail) {
+
+            int square = queue[queueHead++];
+            int x = square % width;
+            int y = square / width;
+            for (int directionIndex = 0; directionIndex < 4; directionIndex++) {
+
+                int neighbourX = x + Level.moveDeltasX[directionIndex];
+                int neighbourY = y + Level.moveDeltasY[directionIndex];
+                if (neighbourX < 0 || neighbourX >= width || neighbourY < 0 || neighbourY >= height)
+                    continue;
+
+                int neighbourSquare = neighbourY * width + neighbourX;
+                if (isAccessible[neighbourSquare] ||
+                        (level.level[neighbourSquare] & Level.ITEM_CODE_BRICK) != 0) {
+
+                    continue;
+                }
+
+                isAccessible[neighbourSquare] = true;
+                queue[queueTail++] = neighbourSquare;
+            }
+        }
+
+        cellIndexes = new int[squaresCount];
+        cellSquares = new int[queueTail];
+        for (int square = 0; square < squaresCount; square++) {
+
+            if (isAccessible[square]) {
+
+                cellIndexes[square] = cellsCount;
+                cellSquares[cellsCount++] = square;
+            }
+            else
+                cellIndexes[square] = -1;
+        }
+
+        // Squares which are not cells are walls of reachable areas
+        rowWordsCount = (width + 63) >>> 6;
+        wallRows = new long[rowWordsCount * height];
+        for (int square = 0; square < squaresCount; square++) {
+
+            if (cellIndexes[square] < 0)
+                wallRows[(square / width) * rowWordsCount + ((square % width) >>> 6)] |= 1L << (square % width);
+        }
+
+        wordsCount = (cellsCount + 63) >>> 6;
+        neighbours = new int[cellsCount * 4];
+        cellRowWordIndexes = new int[cellsCount];
+        cellRowBits = new long[cellsCount];
+        deadCells = new long[wordsCount];
+        boxKeys = new long[cellsCount];
+        workerKeys = new long[cellsCount];
+        goals = new long[wordsCount];
+        initialBoxes = new long[wordsCount];
+        ArrayList<Integer> goalCellsList = new ArrayList<Integer>();
+        for (int cell = 0; cell < cellsCount; cell++) {
+
+            int square = cellSquares[cell];
+            int x = square % width;
+            int y = square / width;
+            for (int directionIndex = 0; directionIndex < 4; directionIndex++) {
+
+                int neighbourX = x + Level.moveDeltasX[directionIndex];
+                int neighbourY = y + Level.moveDeltasY[directionIndex];
+                neighbours[cell * 4 + directionIndex] = neighbourX < 0 || neighbourX >= width ||
+                        neighbourY < 0 || neighbourY >= height ? -1 : cellIndexes[neighbourY * width + neighbourX];
+            }
+
+            cellRowWordIndexes[cell] = y * rowWordsCount + (x >>> 6);
+            cellRowBits[cell] = 1L << x;
+            int zobristIndex = Level.getZobristIndex(x, y, level.levelOffsetX, level.levelOffsetY);
+            boxKeys[cell] = Level.zobristBoxKeys[zobristIndex];
+            workerKeys[cell] = Level.zobristWorkerKeys[zobristIndex];
+
+            // Level supposes squares beyond its real bounds to be bricks pulling boxes from goals
+            int realX = x - level.levelOffsetX;
+            int realY = y - level.levelOffsetY;
+            if (level.isDeadSquare(x, y) || realX < 0 || realX >= level.size.getWidth() ||
+                    realY < 0 || realY >= level.size.getHeight()) {
+
+                deadCells[cell >>> 6] |= 1L << cell;
+            }
+
+            byte itemCode = level.level[square];
+            if ((itemCode & Level.ITEM_CODE_GOAL) != 0) {
+
+                goals[cell >>> 6] |= 1L << cell;
+                goalCellsList.add(cell);
+            }
+
+            if ((itemCode & Level.ITEM_CODE_BOX) != 0) {
+
+                initialBoxes[cell >>> 6] |= 1L << cell;
+                boxesCount++;
+            }
+        }
+
+        // All boxes and goals must be accessible
+        if (goalCellsList.size() != level.goalsCount || boxesCount != level.boxesCount || boxesCount != goalCellsList.size())
+            return false;
+
+        goalCells = new int[goalCellsList.size()];
+        for (int goalIndex = 0; goalIndex < goalCells.length; goalIndex++)
+            goalCells[goalIndex] = goalCellsList.get(goalIndex);
+
+        initialWorkerCell = cellIndexes[workerSquare];
+        findPushDistances(level);
+        return true;
+    }
+
+    /**
+     * Takes push distances of board's cells from level's tables.
+     *
+     * @param level
+     *      Materialized level.
+     * @see Level#getPushDistances()
+     */
+    protected void findPushDistances(Level level) {
+
+        PushDistances levelDistances = level.getPushDistances();
+        minimalPushDistances = new int[cellsCount];
+        Arrays.fill(minimalPushDistances, DISTANCE_INFINITE);
+        goalPushDistances = new short[goalCells.length * cellsCount];
+        for (int goalIndex = 0; goalIndex < goalCells.length; goalIndex++) {
+
+            int goalSquare = cellSquares[goalCells[goalIndex]];
+            int realGoalSquare = (goalSquare / width - level.levelOffsetY) * levelDistances.getWidth() +
+                    goalSquare % width - level.levelOffsetX;
+            int levelGoalIndex = 0;
+            while (levelDistances.getGoalSquare(levelGoalIndex) != realGoalSquare)
+                levelGoalIndex++;
+
+            for (int cell = 0; cell < cellsCount; cell++) {
+
+                // Squares beyond level's real bounds are not covered by level's tables
+                int realX = cellSquares[cell] % width - level.levelOffsetX;
+                int realY = cellSquares[cell] / width - level.levelOffsetY;
+                int distance = realX < 0 || realX >= levelDistances.getWidth() || realY < 0 ||
+                        realY >= levelDistances.getHeight() ? PushDistances.DISTANCE_UNREACHABLE :
+                        levelDistances.getDistance(levelGoalIndex, realX, realY);
+                goalPushDistances[goalIndex * cellsCount + cell] = (short)distance;
+                if (distance != PushDistances.DISTANCE_UNREACHABLE && distance < minimalPushDistances[cell])
+                    minimalPushDistances[cell] = distance;
+            }
+        }
+    }
+
+    /**
+     * Retrieves a count of board's cells.
+     *
+     * @return
+     *      Cells' count.
+     */
+    public int getCellsCount() {
+
+        return cellsCount;
+    }
+
+    /**
+     * Retrieves a count of boxes.
+     *
+     * @return
+     *      Boxes' count.
+     */
+    public int getBoxesCount() {
+
+        return boxesCount;
+    }
+
+    /**
+     * Retrieves a count of goals.
+     *
+     * @return
+     *      Goals' count.
+     */
+    public int getGoalsCount() {
+
+        return goalCells.length;
+    }
+
+    /**
+     * Retrieves a count of {@code long} words in boxes' bit sets.
+     *
+     * @return
+     *      Words' count.
+     */
+    public int getWordsCount() {
+
+        return wordsCount;
+    }
+
+    /**
+     * Retrieves a neighbour of the cell.
+     *
+     * @param cell
+     *      Cell's index.
+     * @param directionIndex
+     *      Direction's index, see {@link Level#moveDirections}.
+     * @return
+     *      Neighbour's index or {@code -1} if there is a brick.
+     */
+    public int getNeighbour(int cell, int directionIndex) {
+
+        return neighbours[cell * 4 + directionIndex];
+    }
+
+    /**
+     * Checks whether the cell has a goal.
+     *
+     * @param cell
+     *      Cell's index.
+     * @return
+     *      {@code true} if the cell has a goal, {@code false} otherwise.
+     */
+    public boolean isGoal(int cell) {
+
+        return (goals[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * Checks whether a box pushed to the cell can never reach any goal.
+     *
+     * @param cell
+     *      Cell's index.
+     * @return
+     *      {@code true} if the cell is dead, {@code false} otherwise.
+     * @see Level#isDeadSquare(int, int)
+     */
+    public boolean isDead(int cell) {
+
+        return (deadCells[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * Retrieves minimal count of pushes required to move a box from the cell to the nearest goal.
+     *
+     * @param cell
+     *      Cell's index.
+     * @return
+     *      Pushes' count or {@link #DISTANCE_INFINITE}.
+     */
+    public int getMinimalPushDistance(int cell) {
+
+        return minimalPushDistances[cell];
+    }
+
+    /**
+     * Retrieves minimal count of pushes required to move a box from the cell to specified goal.
+     *
+     * @param goalIndex
+     *      Goal's index.
+     * @param cell
+     *      Cell's index.
+     * @return
+     *      Pushes' count or {@link #DISTANCE_INFINITE}.
+     */
+    public int getGoalPushDistance(int goalIndex, int cell) {
+
+        int distance = goalPushDistances[goalIndex * cellsCount + cell];
+        return distance == PushDistances.DISTANCE_UNREACHABLE ? DISTANCE_INFINITE : distance;
+    }
+
+    /**
+     * Retrieves board's square of the cell.
+     *
+     * @param cell
+     *      Cell's index.
+     * @return
+     *      Square's index {@code y * width + x} in level's coordinates.
+     */
+    public int getSquare(int cell) {
+
+        return cellSquares[cell];
+    }
+
+    /**
+     * Retrieves a cell of level's square.
+     *
+     * @param x
+     *      Horizontal position within the range [0; {@link Level#getMaximalWidth()} - 1].
+     * @param y
+     *      Vertical position within the range [0; {@link Level#getMaximalHeight()} - 1].
+     * @return
+     *      Cell's index or {@code -1} if the square is not accessible by the worker.
+     */
+    public int getCell(int x, int y) {
+
+        if (x < 0 || x >= width || y < 0 || y >= height)
+            return -1;
+
+        return cellIndexes[y * width + x];
+    }
+
+    /**
+     * Checks whether the cell is occupied by a box.
+     *
+     * @param boxes
+     *      Boxes' bit set.
+     * @param cell
+     *      Cell's index.
+     * @return
+     *      {@code true} if the cell has a box, {@code false} otherwise.
+     */
+    public static boolean hasBox(long[] boxes, int cell) {
+
+        return (boxes[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * Checks whether all boxes are placed on goals.
+     *
+     * @param boxes
+     *      Boxes' bit set.
+     * @return
+     *      {@code true} if boxes' position is solved, {@code false} otherwise.
+     */
+    public boolean isSolved(long[] boxes) {
+
+        for (int wordIndex = 0; wordIndex < wordsCount; wordIndex++) {
+
+            if (boxes[wordIndex] != goals[wordIndex])
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Retrieves Zobrist hash of boxes' bit set.
+     *
+     * @param boxes
+     *      Boxes' bit set.
+     * @return
+     *      Boxes' hash.
+     */
+    public long getBoxesHash(long[] boxes) {
+
+        long boxesHash = 0;
+        for (int wordIndex = 0; wordIndex < wordsCount; wordIndex++) {
+
+            long word = boxes[wordIndex];
+            while (word != 0) {
+
+                boxesHash ^= boxKeys[(wordIndex << 6) + Long.numberOfTrailingZeros(word)];
+                word &= word - 1;
+            }
+        }
+
+        return boxesHash;
+    }
+
+    /**
+     * Retrieves Zobrist key of a box placed at the cell.
+     *
+     * @param cell
+     *      Cell's index.
+     * @return
+     *      Box' key.
+     */
+    public long getBoxKey(int cell) {
+
+        return boxKeys[cell];
+    }
+
+    /**
+     * Retrieves Zobrist key of normalized worker's cell.
+     *
+     * @param cell
+     *      Cell's index.
+     * @return
+     *      Worker's key.
+     */
+    public long getWorkerKey(int cell) {
+
+        return workerKeys[cell];
+    }
+
+    /**
+     * Marks cells reachable by the worker without pushing boxes.
+     *
+     * The area is filled over row bitmasks by level's own method.
+     *
+     * @param boxes
+     *      Boxes' bit set.
+     * @param workerCell
+     *      Worker's cell.
+     * @param reachable
+     *      Bit set to mark reachable cells in, it's cleared by the method.
+     * @param area
+     *      Thread's row bitmasks' buffers.
+     * @return
+     *      Normalized worker's cell (the least reachable cell's index).
+     * @see Level#fillReachableArea(long[], long[], int, int, int, int, int)
+     */
+    public int findReachableCells(long[] boxes, int workerCell, long[] reachable, AreaBuffers area) {
+
+        long[] obstacleRows = area.obstacleRows;
+        long[] reachableRows = area.reachableRows;
+        System.arraycopy(wallRows, 0, obstacleRows, 0, wallRows.length);
+        for (int wordIndex = 0; wordIndex < wordsCount; wordIndex++) {
+
+            long word = boxes[wordIndex];
+            while (word != 0) {
+
+                int cell = (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+                obstacleRows[cellRowWordIndexes[cell]] |= cellRowBits[cell];
+                word &= word - 1;
+            }
+        }
+
+        int workerSquare = cellSquares[workerCell];
+        int normalizedSquare = Level.fillReachableArea(obstacleRows, reachableRows, rowWordsCount,
+                width, height, workerSquare % width, workerSquare / width);
+
+        convertReachableRows(reachableRows, reachable);
+        return cellIndexes[normalizedSquare];
+    }
+
+    /**
+     * Converts reachable squares' row bitmasks to reachable cells.
+     *
+     * @param reachableRows
+     *      Reachable squares laid out as {@link Level#reachableRows}.
+     * @param reachable
+     *      Bit set to mark reachable cells in, it's cleared by the method.
+     *      Squares out of board's cells are skipped.
+     */
+    public void convertReachableRows(long[] reachableRows, long[] reachable) {
+
+        Arrays.fill(reachable, 0, wordsCount, 0);
+        for (int rowWordIndex = 0; rowWordIndex < reachableRows.length; rowWordIndex++) {
+
+            long word = reachableRows[rowWordIndex];
+            if (word == 0)
+                continue;
+
+            int wordSquare = (rowWordIndex / rowWordsCount) * width + ((rowWordIndex % rowWordsCount) << 6);
+            while (word != 0) {
+
+                int cell = cellIndexes[wordSquare + Long.numberOfTrailingZeros(word)];
+                if (cell >= 0)
+                    reachable[cell >>> 6] |= 1L << cell;
+                word &= word - 1;
+            }
+        }
+    }
+
+    /**
+     * Creates initial solver's state of the board.
+     *
+     * @param reachable
+     *      Reachable cells' buffer of at least {@link #getWordsCount()} length.
+     * @param area
+     *      Thread's row bitmasks' buffers.
+     * @return
+     *      Initial state.
+     */
+    public SolverState createInitialState(long[] reachable, AreaBuffers area) {
+
+        int normalizedWorkerCell = findReachableCells(initialBoxes, initialWorkerCell, reachable, area);
+        long boxesHash = getBoxesHash(initialBoxes);
+        return new SolverState(initialBoxes.clone(), normalizedWorkerCell, boxesHash, boxesHash ^ workerKeys[normalizedWorkerCell]);
+    }
+
+    /**
+     * Converts a sequence of pushes to worker's moves starting from the initial position.
+     *
+     * @param pushBoxCells
+     *      Cells of pushed boxes.
+     * @param pushDirections
+     *      Directions' indexes of pushes.
+     * @param pushesCount
+     *      Count of pushes.
+     * @return
+     *      Worker's moves or {@code null} if pushes cannot be performed.
+     */
+    public ArrayList<MoveInformation> convertPushesToMoves(int[] pushBoxCells, int[] pushDirections, int pushesCount) {
+
+        ArrayList<MoveInformation> moves = new ArrayList<MoveInformation>();
+        long[] boxes = initialBoxes.clone();
+        int workerCell = initialWorkerCell;
+        int[] previousCells = new int[cellsCount];
+        int[] queue = new int[cellsCount];
+        for (int pushIndex = 0; pushIndex < pushesCount; pushIndex++) {
+
+            int boxCell = pushBoxCells[pushIndex];
+            int directionIndex = pushDirections[pushIndex];
+            int pusherCell = neighbours[boxCell * 4 + (directionIndex ^ 2)];
+            if (pusherCell < 0 || !hasBox(boxes, boxCell))
+                return null;
+
+            if (!appendWalk(boxes, workerCell, pusherCell, previousCells, queue, moves))
+                return null;
+
+            int boxDestinationCell = neighbours[boxCell * 4 + directionIndex];
+            if (boxDestinationCell < 0 || hasBox(boxes, boxDestinationCell))
+                return null;
+
+            boxes[boxCell >>> 6] &= ~(1L << boxCell);
+            boxes[boxDestinationCell >>> 6] |= 1L << boxDestinationCell;
+            moves.add(MoveInformation.valueOf(directionIndex | Level.MOVE_CODE_PUSH));
+            workerCell = boxCell;
+        }
+
+        return moves;
+    }
+
+    /**
+     * Appends worker's shortest walk between two cells avoiding boxes.
+     *
+     * @param boxes
+     *      Boxes' bit set.
+     * @param fromCell
+     *      Worker's cell.
+     * @param toCell
+     *      Destination cell.
+     * @param previousCells
+     *      Buffer of at least {@link #getCellsCount()} length.
+     * @param queue
+     *      Queue's buffer of at least {@link #getCellsCount()} length.
+     * @param moves
+     *      Moves' list to append the walk to.
+     * @return
+     *      {@code true} if the walk has been appended, {@code false} if destination cell is not reachable.
+     */
+    public boolean appendWalk(long[] boxes, int fromCell, int toCell, int[] previousCells, int[] queue,
+            ArrayList<MoveInformation> moves) {
+
+        if (fromCell == toCell)
+            return true;
+
+        Arrays.fill(previousCells, -1);
+        previousCells[fromCell] = fromCell;
+        int queueHead = 0;
+        int queueTail = 0;
+        queue[queueTail++] = fromCell;
+        while (queueHead < queueTail && previousCells[toCell] < 0) {
+
+            int cell = queue[queueHead++];
+            for (int directionIndex = 0; directionIndex < 4; directionIndex++) {
+
+                int neighbour = neighbours[cell * 4 + directionIndex];
+                if (neighbour < 0 || previousCells[neighbour] >= 0 || hasBox(boxes, neighbour))
+                    continue;
+
+                previousCells[neighbour] = cell;
+                queue[queueTail++] = neighbour;
+            }
+        }
+
+        if (previousCells[toCell] < 0)
+            return false;
+
+        // Collecting the walk backwards
+        int walkStartIndex = moves.size();
+        int cell = toCell;
+        while (cell != fromCell) {
+
+            int previousCell = previousCells[cell];
+            int directionIndex = 0;
+            while (neighbours[previousCell * 4 + directionIndex] != cell)
+                directionIndex++;
+            moves.add(MoveInformation.valueOf(directionIndex));
+            cell = previousCell;
+        }
+
+        Collections.reverse(moves.subList(walkStartIndex, moves.size()));
+        return true;
+    }
+}
@@ -0,0 +1,449 @@
+package org.ezze.games.storekeeper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * This class keeps solver's search tree in a memory-mapped file.
+ *
+ * The file is an append-only log of nodes following a header, a node's record
+ * is its parent's index, the push from parent's position and normalized worker's cell,
+ * so positions are restored by replaying pushes from the root. Nodes without
+ * recorded children are the open list and every recorded position refills
+ * the transposition table, so only nodes created since the previous checkpoint
+ * are written each time.
+ *
+ * Records are copied to mapped chunks by the calling thread, while chunks are
+ * forced to the disk and the header is updated by a background thread,
+ * so a checkpoint is never seen before its records have been written.
+ * The header keeps a signature of solved position to reject foreign checkpoints.
+ *
+ * @author Dmitriy Pushkov
+ * @version 0.0.1
+ * @see Solver#setCheckpointFile(java.io.File, long)
+ */
+public class SolverCheckpoint {
+
+    /**
+     * Checkpoint file's magic number, "SKCP" in ASCII.
+     */
+    protected static final int MAGIC = 0x534B4350;
+
+    /**
+     * Checkpoint file's format version.
+     */
+    protected static final int VERSION = 1;
+
+    /**
+     * Size of file's header in bytes.
+     */
+    protected static final int HEADER_SIZE = 64;
+
+    /**
+     * Size of node's record in bytes.
+     */
+    protected static final int RECORD_SIZE = 12;
+
+    /**
+     * Count of records in a mapped chunk.
+     */
+    protected static final int CHUNK_RECORDS_COUNT = 1 << 22;
+
+    /**
+     * Checkpoint's file.
+     */
+    protected File file = null;
+
+    /**
+     * Signature of solved position.
+     */
+    protected long signature = 0L;
+
+    /**
+     * Opened file.
+     */
+    protected RandomAccessFile randomAccessFile = null;
+
+    /**
+     * File's channel.
+     */
+    protected FileChannel channel = null;
+
+    /**
+     * Mapped header.
+     */
+    protected MappedByteBuffer header = null;
+
+    /**
+     * Mapped chunks of records.
+     */
+    protected final ArrayList<MappedByteBuffer> chunks = new ArrayList<MappedByteBuffer>();
+
+    /**
+     * Count of records of the last completed checkpoint.
+     */
+    protected long recordsCount = 0;
+
+    /**
+     * Count of appended records.
+     */
+    protected long appendedRecordsCount = 0;
+
+    /**
+     * Count of expanded positions of the last completed checkpoint.
+     */
+    protected long expandedStatesCount = 0;
+
+    /**
+     * Search's duration of the last completed checkpoint in milliseconds.
+     */
+    protected long elapsedTime = 0;
+
+    /**
+     * Thread forcing records to the disk.
+     */
+    protected ExecutorService flusher = null;
+
+    /**
+     * The last checkpoint being forced to the disk.
+     */
+    protected Future<?> pendingFlush = null;
+
+    /**
+     * Creates a checkpoint.
+     *
+     * @param file
+     *      Checkpoint's file.
+     * @param signature
+     *      Signature of solved position.
+     */
+    public SolverCheckpoint(File file, long signature) {
+
+        this.file = file;
+        this.signature = signature;
+    }
+
+    /**
+     * Opens checkpoint's file reading the last completed checkpoint if it exists.
+     *
+     * @throws IOException
+     *      If the file cannot be opened or mapped.
+     */
+    public void open() throws IOException {
+
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt(0) == MAGIC && header.getInt(4) == VERSION && header.getLong(8) == signature) {
+
+            recordsCount = header.getLong(16);
+            expandedStatesCount = header.getLong(24);
+            elapsedTime = header.getLong(32);
+            if (recordsCount < 0 || recordsCount > (channel.size() - HEADER_SIZE) / RECORD_SIZE)
+                reset();
+        }
+        else
+            reset();
+
+        appendedRecordsCount = recordsCount;
+        flusher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+
+                Thread thread = new Thread(runnable);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Discards all records.
+     */
+    public void reset() {
+
+        recordsCount = 0;
+        appendedRecordsCount = 0;
+        expandedStatesCount = 0;
+        elapsedTime = 0;
+        header.putInt(0, MAGIC);
+        header.putInt(4, VERSION);
+        header.putLong(8, signature);
+        writeHeader();
+    }
+
+    /**
+     * Retrieves a count of records of the last completed checkpoint.
+     *
+     * @return
+     *      Records' count.
+     */
+    public long getRecordsCount() {
+
+        return recordsCount;
+    }
+
+    /**
+     * Retrieves a count of expanded positions of the last completed checkpoint.
+     *
+     * @return
+     *      Expanded positions' count.
+     */
+    public long getExpandedStatesCount() {
+
+        return expandedStatesCount;
+    }
+
+    /**
+     * Retrieves search's duration of the last completed checkpoint.
+     *
+     * @return
+     *      Duration in milliseconds.
+     */
+    public long getElapsedTime() {
+
+        return elapsedTime;
+    }
+
+    /**
+     * Retrieves record's parent index.
+     *
+     * @param recordIndex
+     *      Record's index.
+     * @return
+     *      Parent's index or {@code -1} for the root.
+     * @throws IOException
+     *      If the record cannot be mapped.
+     */
+    public int getParentIndex(int recordIndex) throws IOException {
+
+        return getChunk(recordIndex).getInt(getRecordOffset(recordIndex));
+    }
+
+    /**
+     * Retrieves record's push.
+     *
+     * @param recordIndex
+     *      Record's index.
+     * @return
+     *      Pushed box' cell shifted left by two bits with direction's index in the lowest bits.
+     * @throws IOException
+     *      If the record cannot be mapped.
+     */
+    public int getPush(int recordIndex) throws IOException {
+
+        return getChunk(recordIndex).getInt(getRecordOffset(recordIndex) + 4);
+    }
+
+    /**
+     * Retrieves record's normalized worker's cell.
+     *
+     * @param recordIndex
+     *      Record's index.
+     * @return
+     *      Worker's cell.
+     * @throws IOException
+     *      If the record cannot be mapped.
+     */
+    public int getWorkerCell(int recordIndex) throws IOException {
+
+        return getChunk(recordIndex).getInt(getRecordOffset(recordIndex) + 8);
+    }
+
+    /**
+     * Appends node's record.
+     *
+     * @param parentIndex
+     *      Parent's index or {@code -1} for the root.
+     * @param push
+     *      Pushed box' cell shifted left by two bits with direction's index in the lowest bits.
+     * @param workerCell
+     *      Normalized worker's cell.
+     * @return
+     *      Record's index.
+     * @throws IOException
+     *      If the record cannot be mapped.
+     */
+    public int append(int parentIndex, int push, int workerCell) throws IOException {
+
+        int recordIndex = (int)appendedRecordsCount;
+        MappedByteBuffer chunk = getChunk(recordIndex);
+        int offset = getRecordOffset(recordIndex);
+        chunk.putInt(offset, parentIndex);
+        chunk.putInt(offset + 4, push);
+        chunk.putInt(offset + 8, workerCell);
+        appendedRecordsCount++;
+        return recordIndex;
+    }
+
+    /**
+     * Completes a checkpoint of appended records in the background.
+     *
+     * Waits for the previous checkpoint to be forced to the disk.
+     *
+     * @param expandedStatesCount
+     *      Count of expanded positions.
+     * @param elapsedTime
+     *      Search's duration in milliseconds.
+     * @throws IOException
+     *      If the previous checkpoint has failed.
+     */
+    public void commit(final long expandedStatesCount, final long elapsedTime) throws IOException {
+
+        waitForFlush();
+        final long committedRecordsCount = appendedRecordsCount;
+
+        // Only chunks appended to since the previous checkpoint are forced
+        int firstChunkIndex = (int)(recordsCount / CHUNK_RECORDS_COUNT);
+        final MappedByteBuffer[] committedChunks = chunks.subList(Math.min(firstChunkIndex, chunks.size()),
+                chunks.size()).toArray(new MappedByteBuffer[0]);
+        pendingFlush = flusher.submit(new Runnable() {
+
+            @Override
+            public void run() {
+
+                for (MappedByteBuffer chunk : committedChunks)
+                    chunk.force();
+
+                SolverCheckpoint.this.recordsCount = committedRecordsCount;
+                SolverCheckpoint.this.expandedStatesCount = expandedStatesCount;
+                SolverCheckpoint.this.elapsedTime = elapsedTime;
+                writeHeader();
+            }
+        });
+    }
+
+    /**
+     * Waits for the last checkpoint and closes the file.
+     *
+     * @throws IOException
+     *      If the last checkpoint has failed.
+     */
+    public void close() throws IOException {
+
+        try {
+
+            waitForFlush();
+        }
+        finally {
+
+            if (flusher != null)
+                flusher.shutdown();
+
+            chunks.clear();
+            header = null;
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Closes and deletes the file.
+     *
+     * @return
+     *      {@code true} if the file has been deleted, {@code false} otherwise.
+     */
+    public boolean delete() {
+
+        try {
+
+            close();
+        }
+        catch (IOException ex) {
+
+            // The file is deleted anyway
+        }
+
+        return file.delete();
+    }
+
+    /**
+     * Writes checkpoint's counters to the header and forces it to the disk.
+     */
+    protected void writeHeader() {
+
+        header.putLong(16, recordsCount);
+        header.putLong(24, expandedStatesCount);
+        header.putLong(32, elapsedTime);
+        header.force();
+    }
+
+    /**
+     * Waits for the previous checkpoint to be forced to the disk.
+     *
+     * @throws IOException
+     *      If the previous checkpoint has failed.
+     */
+    protected void waitForFlush() throws IOException {
+
+        if (pendingFlush == null)
+            return;
+
+        try {
+
+            pendingFlush.get();
+        }
+        catch (InterruptedException ex) {
+
+            Thread.currentThread().interrupt();
+            throw new IOException("Checkpoint has been interrupted");
+        }
+        catch (ExecutionException ex) {
+
+            throw new IOException(ex.getCause());
+        }
+        finally {
+
+            pendingFlush = null;
+        }
+    }
+
+    /**
+     * Retrieves a mapped chunk containing a record, mapping new chunks if required.
+     *
+     * @param recordIndex
+     *      Record's index.
+     * @return
+     *      Chunk.
+     * @throws IOException
+     *      If the chunk cannot be mapped.
+     */
+    protected MappedByteBuffer getChunk(int recordIndex) throws IOException {
+
+        int chunkIndex = recordIndex / CHUNK_RECORDS_COUNT;
+        while (chunks.size() <= chunkIndex) {
+
+            long position = HEADER_SIZE + (long)chunks.size() * CHUNK_RECORDS_COUNT * RECORD_SIZE;
+            MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_WRITE, position,
+                    (long)CHUNK_RECORDS_COUNT * RECORD_SIZE);
+            chunk.order(ByteOrder.LITTLE_ENDIAN);
+            chunks.add(chunk);
+        }
+
+        return chunks.get(chunkIndex);
+    }
+
+    /**
+     * Retrieves record's offset within its chunk.
+     *
+     * @param recordIndex
+     *      Record's index.
+     * @return
+     *      Offset in bytes.
+     */
+    protected static int getRecordOffset(int recordIndex) {
+
+        return (recordIndex % CHUNK_RECORDS_COUNT) * RECORD_SIZE;
+    }
+}
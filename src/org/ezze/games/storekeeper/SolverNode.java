@@ -0,0 +1,233 @@
+package org.ezze.games.storekeeper;
+
+/**
+ * This class represents a node of solver's search tree.
+ *
+ * Each node refers to its parent and keeps the push leading from the parent's
+ * position to its own one, so the solution is restored by following parents.
+ *
+ * @author Dmitriy Pushkov
+ * @version 0.0.1
+ * @see Solver
+ */
+public class SolverNode implements Comparable<SolverNode> {
+
+    /**
+     * Supposed size of node's object in bytes: 12 bytes' header,
+     * compressed references and fields aligned to 8 bytes.
+     */
+    protected static final int NODE_OBJECT_SIZE = 48;
+
+    /**
+     * Supposed size of position's object in bytes.
+     */
+    protected static final int STATE_OBJECT_SIZE = 40;
+
+    /**
+     * Supposed size of array's header in bytes.
+     */
+    protected static final int ARRAY_HEADER_SIZE = 16;
+
+    /**
+     * Node's position.
+     */
+    protected final SolverState state;
+
+    /**
+     * Parent node or {@code null} for the root.
+     */
+    protected final SolverNode parent;
+
+    /**
+     * Cell of the box pushed from parent's position or {@code -1} for the root.
+     */
+    protected final int boxCell;
+
+    /**
+     * Direction's index of the push from parent's position.
+     */
+    protected final int directionIndex;
+
+    /**
+     * Count of pushes performed from the root.
+     */
+    protected final int pushesCount;
+
+    /**
+     * Estimated count of pushes remaining to solve the position.
+     */
+    protected final int estimation;
+
+    /**
+     * Boxes' matching to goals the estimation has been taken from.
+     */
+    protected final int[] matching;
+
+    /**
+     * Index of node's record in solver's checkpoint or {@code -1} if the node is not recorded yet.
+     */
+    protected int checkpointIndex = -1;
+
+    /**
+     * Creates search tree's node.
+     *
+     * @param state
+     *      Node's position.
+     * @param parent
+     *      Parent node or {@code null} for the root.
+     * @param boxCell
+     *      Cell of the pushed box.
+     * @param directionIndex
+     *      Direction's index of the push.
+     * @param pushesCount
+     *      Count of pushes from the root.
+     * @param matching
+     *      Boxes' matching to goals, see {@link MatchingHeuristic}.
+     */
+    public SolverNode(SolverState state, SolverNode parent, int boxCell, int directionIndex,
+            int pushesCount, int[] matching) {
+
+        this.state = state;
+        this.parent = parent;
+        this.boxCell = boxCell;
+        this.directionIndex = directionIndex;
+        this.pushesCount = pushesCount;
+        this.matching = matching;
+        estimation = MatchingHeuristic.getEstimation(matching);
+    }
+
+    /**
+     * Creates search tree's node without boxes' matching.
+     *
+     * @param state
+     *      Node's position.
+     * @param parent
+     *      Parent node or {@code null} for the root.
+     * @param boxCell
+     *      Cell of the moved box.
+     * @param directionIndex
+     *      Direction's index of the move.
+     * @param pushesCount
+     *      Count of moves from the root.
+     * @param estimation
+     *      Estimated count of remaining moves.
+     */
+    protected SolverNode(SolverState state, SolverNode parent, int boxCell, int directionIndex,
+            int pushesCount, int estimation) {
+
+        this.state = state;
+        this.parent = parent;
+        this.boxCell = boxCell;
+        this.directionIndex = directionIndex;
+        this.pushesCount = pushesCount;
+        this.matching = null;
+        this.estimation = estimation;
+    }
+
+    /**
+     * Estimates memory occupied by a node together with its position.
+     *
+     * @param wordsCount
+     *      Count of boxes' bit set words.
+     * @param matchingLength
+     *      Length of boxes' matching or {@code 0} if nodes have no matching.
+     * @return
+     *      Node's size in bytes.
+     */
+    public static long getMemorySize(int wordsCount, int matchingLength) {
+
+        long size = NODE_OBJECT_SIZE + STATE_OBJECT_SIZE + ((ARRAY_HEADER_SIZE + 8L * wordsCount + 7) & ~7L);
+        if (matchingLength > 0)
+            size += (ARRAY_HEADER_SIZE + 4L * matchingLength + 7) & ~7L;
+
+        return size;
+    }
+
+    /**
+     * Retrieves node's position.
+     *
+     * @return
+     *      Position.
+     */
+    public SolverState getState() {
+
+        return state;
+    }
+
+    /**
+     * Retrieves parent node.
+     *
+     * @return
+     *      Parent node or {@code null} for the root.
+     */
+    public SolverNode getParent() {
+
+        return parent;
+    }
+
+    /**
+     * Retrieves a count of pushes performed from the root.
+     *
+     * @return
+     *      Pushes' count.
+     */
+    public int getPushesCount() {
+
+        return pushesCount;
+    }
+
+    /**
+     * Retrieves estimated count of remaining pushes.
+     *
+     * @return
+     *      Estimation.
+     */
+    public int getEstimation() {
+
+        return estimation;
+    }
+
+    /**
+     * Retrieves boxes' matching to goals.
+     *
+     * @return
+     *      Matching which must not be modified or {@code null}.
+     */
+    public int[] getMatching() {
+
+        return matching;
+    }
+
+    /**
+     * Retrieves estimated total count of pushes of solutions passing the node.
+     *
+     * @return
+     *      Total estimation.
+     */
+    public int getTotalEstimation() {
+
+        return pushesCount + estimation;
+    }
+
+    /**
+     * Orders nodes by total estimation preferring deeper nodes on ties.
+     *
+     * @param node
+     *      Node to compare with.
+     * @return
+     *      Comparison's result.
+     */
+    @Override
+    public int compareTo(SolverNode node) {
+
+        int totalEstimation = getTotalEstimation();
+        int nodeTotalEstimation = node.getTotalEstimation();
+        if (totalEstimation != nodeTotalEstimation)
+            return totalEstimation < nodeTotalEstimation ? -1 : 1;
+
+        if (estimation != node.estimation)
+            return estimation < node.estimation ? -1 : 1;
+
+        return 0;
+    }
+}
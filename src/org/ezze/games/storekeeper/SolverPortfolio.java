@@ -0,0 +1,421 @@
+package org.ezze.games.storekeeper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.ezze.games.storekeeper.Level.LevelState;
+
+/**
+ * This class races different search strategies on the same level.
+ *
+ * Each strategy runs on its own thread and all of them are cancelled together
+ * when the first solution is found, when some strategy proves the level
+ * is unsolvable or when the deadline expires. Alternatively the portfolio
+ * waits for all strategies until the deadline and returns the solution
+ * with the least pushes and moves.
+ *
+ * The portfolio counts wins of strategies and keeps them ordered by wins,
+ * so while a set is solved successful strategies are launched first
+ * and the least successful ones are skipped if there are fewer threads than strategies.
+ *
+ * @author Dmitriy Pushkov
+ * @version 0.0.1
+ * @see Solver
+ */
+public class SolverPortfolio {
+
+    /**
+     * Enumerates search strategies.
+     */
+    public static enum Strategy {
+
+        /**
+         * Greedy best-first search, see {@link GreedySolver}.
+         */
+        GREEDY,
+
+        /**
+         * A* search with matching estimation, see {@link Solver}.
+         */
+        A_STAR,
+
+        /**
+         * Iterative deepening A* search, see {@link IterativeDeepeningSolver}.
+         */
+        IDA_STAR,
+
+        /**
+         * Forward and reverse search, see {@link BidirectionalSolver}.
+         */
+        BIDIRECTIONAL;
+
+        /**
+         * Creates strategy's solver.
+         *
+         * @param level
+         *      Level to solve.
+         * @param tableMemorySize
+         *      Memory size of solver's transposition table in bytes.
+         * @return
+         *      Solver.
+         */
+        public Solver createSolver(Level level, long tableMemorySize) {
+
+            switch (this) {
+
+                case GREEDY:
+                    return new GreedySolver(level, 1, tableMemorySize);
+                case IDA_STAR:
+                    return new IterativeDeepeningSolver(level, tableMemorySize);
+                case BIDIRECTIONAL:
+                    return new BidirectionalSolver(level, tableMemorySize);
+                default:
+                    return new Solver(level, 1, tableMemorySize);
+            }
+        }
+    }
+
+    /**
+     * Strategies ordered by wins.
+     */
+    protected final ArrayList<Strategy> strategies = new ArrayList<Strategy>();
+
+    /**
+     * Counts of strategies' wins.
+     */
+    protected final EnumMap<Strategy, Integer> winsCounts = new EnumMap<Strategy, Integer>(Strategy.class);
+
+    /**
+     * Count of strategies launched at once.
+     */
+    protected int parallelism = 1;
+
+    /**
+     * Memory size of each solver's transposition table in bytes.
+     */
+    protected long tableMemorySize = TranspositionTable.DEFAULT_MEMORY_SIZE;
+
+    /**
+     * Winner of the last level or {@code null}.
+     */
+    protected volatile Strategy lastWinner = null;
+
+    /**
+     * Solvers of the running race.
+     */
+    protected volatile Solver[] runningSolvers = null;
+
+    /**
+     * Shows whether the portfolio has been cancelled.
+     */
+    protected volatile boolean isCancelled = false;
+
+    /**
+     * Creates a portfolio of all strategies launched at once.
+     */
+    public SolverPortfolio() {
+
+        this(Arrays.asList(Strategy.values()), Strategy.values().length, TranspositionTable.DEFAULT_MEMORY_SIZE);
+    }
+
+    /**
+     * Creates a portfolio.
+     *
+     * @param strategies
+     *      Strategies in initial order.
+     * @param parallelism
+     *      Count of strategies launched at once.
+     * @param tableMemorySize
+     *      Memory size of each solver's transposition table in bytes.
+     */
+    public SolverPortfolio(List<Strategy> strategies, int parallelism, long tableMemorySize) {
+
+        for (Strategy strategy : strategies) {
+
+            if (strategy != null && !this.strategies.contains(strategy)) {
+
+                this.strategies.add(strategy);
+                winsCounts.put(strategy, 0);
+            }
+        }
+
+        this.parallelism = Math.max(1, parallelism);
+        this.tableMemorySize = tableMemorySize;
+    }
+
+    /**
+     * Retrieves strategies ordered by wins.
+     *
+     * @return
+     *      Strategies.
+     */
+    synchronized public List<Strategy> getStrategies() {
+
+        return new ArrayList<Strategy>(strategies);
+    }
+
+    /**
+     * Retrieves a count of strategy's wins.
+     *
+     * @param strategy
+     *      Strategy.
+     * @return
+     *      Wins' count.
+     */
+    synchronized public int getWinsCount(Strategy strategy) {
+
+        Integer winsCount = winsCounts.get(strategy);
+        return winsCount == null ? 0 : winsCount;
+    }
+
+    /**
+     * Retrieves a strategy which has solved the last level.
+     *
+     * @return
+     *      Strategy or {@code null} if the last level has not been solved.
+     */
+    public Strategy getLastWinner() {
+
+        return lastWinner;
+    }
+
+    /**
+     * Cancels the running race and all following ones.
+     */
+    public void cancel() {
+
+        isCancelled = true;
+        Solver[] solvers = runningSolvers;
+        if (solvers != null) {
+
+            for (Solver solver : solvers)
+                solver.cancel();
+        }
+    }
+
+    /**
+     * Races strategies on level's current position.
+     *
+     * @param level
+     *      Level to solve.
+     * @param deadline
+     *      Race's duration limit in milliseconds or {@code 0} for no limit.
+     * @param isBestRequired
+     *      Shows whether to wait for all strategies until the deadline
+     *      and return the best solution instead of the first one.
+     * @return
+     *      Winner's result, an invalid result if all strategies have failed to search the level
+     *      or a cancelled result if no strategy has finished in time.
+     * @throws InterruptedException
+     *      If the calling thread has been interrupted.
+     */
+    public SolverResult solve(Level level, long deadline, boolean isBestRequired) throws InterruptedException {
+
+        long startTime = System.currentTimeMillis();
+        List<Strategy> launchedStrategies;
+        synchronized (this) {
+
+            launchedStrategies = new ArrayList<Strategy>(strategies.subList(0, Math.min(parallelism, strategies.size())));
+        }
+
+        final Solver[] solvers = new Solver[launchedStrategies.size()];
+        final SolverResult[] results = new SolverResult[solvers.length];
+        for (int solverIndex = 0; solverIndex < solvers.length; solverIndex++)
+            solvers[solverIndex] = launchedStrategies.get(solverIndex).createSolver(level, tableMemorySize);
+
+        if (solvers.length == 0 || isCancelled)
+            return new SolverResult(SolverResult.Status.CANCELLED, null, 0, 0, 0, 0);
+
+        ExecutorService executor = Executors.newFixedThreadPool(solvers.length, BatchSolver.createThreadFactory());
+        ExecutorCompletionService<Integer> completionService = new ExecutorCompletionService<Integer>(executor);
+        runningSolvers = solvers;
+        int winnerIndex = -1;
+        int invalidIndex = -1;
+        int invalidCount = 0;
+        try {
+
+            for (int solverIndex = 0; solverIndex < solvers.length; solverIndex++) {
+
+                final int index = solverIndex;
+                completionService.submit(new Callable<Integer>() {
+
+                    @Override
+                    public Integer call() {
+
+                        results[index] = solvers[index].solve();
+                        return index;
+                    }
+                });
+            }
+
+            // The cancellation could have missed solvers before they have been published
+            if (isCancelled)
+                cancel();
+
+            long deadlineTime = deadline > 0 ? startTime + deadline : Long.MAX_VALUE;
+            int runningCount = solvers.length;
+            while (runningCount > 0) {
+
+                Future<Integer> future = deadline > 0 ?
+                        completionService.poll(deadlineTime - System.currentTimeMillis(), TimeUnit.MILLISECONDS) :
+                        completionService.take();
+                if (future == null)
+                    break;
+
+                int solverIndex;
+                try {
+
+                    solverIndex = future.get();
+                }
+                catch (ExecutionException ex) {
+
+                    throw new IllegalStateException(ex.getCause());
+                }
+
+                runningCount--;
+                SolverResult result = results[solverIndex];
+                if (result.getStatus() == SolverResult.Status.INVALID) {
+
+                    // A strategy failing to search the level doesn't prove anything about others
+                    invalidIndex = solverIndex;
+                    invalidCount++;
+                    continue;
+                }
+
+                if (result.getStatus() == SolverResult.Status.UNSOLVABLE) {
+
+                    // Exhausted search proves there is no solution at all
+                    winnerIndex = solverIndex;
+                    break;
+                }
+
+                if (result.isSolved()) {
+
+                    if (winnerIndex < 0 || isBetter(result, results[winnerIndex]))
+                        winnerIndex = solverIndex;
+
+                    if (!isBestRequired)
+                        break;
+                }
+            }
+        }
+        finally {
+
+            for (Solver solver : solvers)
+                solver.cancel();
+
+            runningSolvers = null;
+            executor.shutdownNow();
+        }
+
+        if (winnerIndex < 0 && invalidCount == solvers.length) {
+
+            lastWinner = null;
+            return results[invalidIndex];
+        }
+
+        if (winnerIndex < 0) {
+
+            lastWinner = null;
+            long expandedStatesCount = 0;
+            for (Solver solver : solvers)
+                expandedStatesCount += solver.getExpandedStatesCount();
+
+            return new SolverResult(SolverResult.Status.CANCELLED, null, 0, expandedStatesCount, 0,
+                    System.currentTimeMillis() - startTime);
+        }
+
+        SolverResult winnerResult = results[winnerIndex];
+        if (winnerResult.isSolved()) {
+
+            lastWinner = launchedStrategies.get(winnerIndex);
+            addWin(lastWinner);
+        }
+        else
+            lastWinner = null;
+
+        return winnerResult;
+    }
+
+    /**
+     * Races strategies on all playable levels of a set one by one reordering strategies after each level.
+     *
+     * @param levelsSet
+     *      Set to solve.
+     * @param deadline
+     *      Race's duration limit per level in milliseconds or {@code 0} for no limit.
+     * @param isBestRequired
+     *      Shows whether to return the best solution within the deadline instead of the first one.
+     * @param listener
+     *      Listener of solved levels or {@code null}.
+     * @return
+     *      Results by levels' indexes, {@code null} for levels which are not playable.
+     * @throws InterruptedException
+     *      If the calling thread has been interrupted.
+     */
+    public SolverResult[] solve(LevelsSet levelsSet, long deadline, boolean isBestRequired,
+            BatchSolverListener listener) throws InterruptedException {
+
+        SolverResult[] results = new SolverResult[levelsSet.getLevelsCount()];
+        for (int levelIndex = 0; levelIndex < results.length && !isCancelled; levelIndex++) {
+
+            Level level = levelsSet.getLevelByIndex(levelIndex);
+            if (level.getState() != LevelState.PLAYABLE)
+                continue;
+
+            results[levelIndex] = solve(level, deadline, isBestRequired);
+            level.evict();
+            if (listener != null)
+                listener.levelSolved(levelIndex, level, results[levelIndex]);
+        }
+
+        return results;
+    }
+
+    /**
+     * Checks whether a solution is better than another one.
+     *
+     * @param result
+     *      Solution to check.
+     * @param bestResult
+     *      The best solution so far.
+     * @return
+     *      {@code true} if the solution takes fewer pushes or the same pushes and fewer moves.
+     */
+    protected static boolean isBetter(SolverResult result, SolverResult bestResult) {
+
+        if (result.getPushesCount() != bestResult.getPushesCount())
+            return result.getPushesCount() < bestResult.getPushesCount();
+
+        return result.getMovesCount() < bestResult.getMovesCount();
+    }
+
+    /**
+     * Counts strategy's win and reorders strategies by wins keeping the order of equal ones.
+     *
+     * @param strategy
+     *      Winner.
+     */
+    synchronized protected void addWin(Strategy strategy) {
+
+        winsCounts.put(strategy, getWinsCount(strategy) + 1);
+        Collections.sort(strategies, new Comparator<Strategy>() {
+
+            @Override
+            public int compare(Strategy firstStrategy, Strategy secondStrategy) {
+
+                return getWinsCount(secondStrategy) - getWinsCount(firstStrategy);
+            }
+        });
+    }
+}
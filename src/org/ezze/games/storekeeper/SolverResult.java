@@ -0,0 +1,214 @@
+package org.ezze.games.storekeeper;
+
+import java.util.ArrayList;
+import org.ezze.games.storekeeper.Level.MoveInformation;
+
+/**
+ * This class describes an outcome of solver's run.
+ *
+ * @author Dmitriy Pushkov
+ * @version 0.0.1
+ * @see Solver#solve()
+ */
+public class SolverResult {
+
+    /**
+     * Enumerates solver run's outcomes.
+     */
+    public static enum Status {
+
+        /**
+         * Solution has been found.
+         */
+        SOLVED,
+
+        /**
+         * All reachable positions have been explored without finding a solution.
+         */
+        UNSOLVABLE,
+
+        /**
+         * Search has been cancelled before finding a solution.
+         */
+        CANCELLED,
+
+        /**
+         * Search has been cancelled on running out of its time budget.
+         */
+        OUT_OF_TIME,
+
+        /**
+         * Search has been cancelled on running out of its memory budget.
+         */
+        OUT_OF_MEMORY,
+
+        /**
+         * Level is not playable or cannot be searched.
+         */
+        INVALID
+    }
+
+    /**
+     * Run's outcome.
+     */
+    protected Status status = Status.INVALID;
+
+    /**
+     * Solution's moves starting from level's position the solver has been created for.
+     */
+    protected ArrayList<MoveInformation> moves = null;
+
+    /**
+     * Solution's pushes count.
+     */
+    protected int pushesCount = 0;
+
+    /**
+     * Count of expanded positions.
+     */
+    protected long expandedStatesCount = 0;
+
+    /**
+     * Count of positions stored by transposition table at the end of the run.
+     */
+    protected long storedStatesCount = 0;
+
+    /**
+     * Run's duration in milliseconds.
+     */
+    protected long elapsedTime = 0;
+
+    /**
+     * Creates run's result.
+     *
+     * @param status
+     *      Run's outcome.
+     * @param moves
+     *      Solution's moves or {@code null}.
+     * @param pushesCount
+     *      Solution's pushes count.
+     * @param expandedStatesCount
+     *      Count of expanded positions.
+     * @param storedStatesCount
+     *      Count of stored positions.
+     * @param elapsedTime
+     *      Run's duration in milliseconds.
+     */
+    public SolverResult(Status status, ArrayList<MoveInformation> moves, int pushesCount,
+            long expandedStatesCount, long storedStatesCount, long elapsedTime) {
+
+        this.status = status == null ? Status.INVALID : status;
+        this.moves = moves;
+        this.pushesCount = pushesCount;
+        this.expandedStatesCount = expandedStatesCount;
+        this.storedStatesCount = storedStatesCount;
+        this.elapsedTime = elapsedTime;
+    }
+
+    /**
+     * Retrieves run's outcome.
+     *
+     * @return
+     *      Outcome.
+     */
+    public Status getStatus() {
+
+        return status;
+    }
+
+    /**
+     * Checks whether solution has been found.
+     *
+     * @return
+     *      {@code true} if the level is solved, {@code false} otherwise.
+     */
+    public boolean isSolved() {
+
+        return status == Status.SOLVED;
+    }
+
+    /**
+     * Retrieves solution's moves.
+     *
+     * @return
+     *      Moves or {@code null} if the level is not solved.
+     */
+    public ArrayList<MoveInformation> getMoves() {
+
+        return moves;
+    }
+
+    /**
+     * Retrieves solution's moves count.
+     *
+     * @return
+     *      Moves count.
+     */
+    public int getMovesCount() {
+
+        return moves == null ? 0 : moves.size();
+    }
+
+    /**
+     * Retrieves solution's pushes count.
+     *
+     * @return
+     *      Pushes count.
+     */
+    public int getPushesCount() {
+
+        return pushesCount;
+    }
+
+    /**
+     * Retrieves a count of expanded positions.
+     *
+     * @return
+     *      Expanded positions' count.
+     */
+    public long getExpandedStatesCount() {
+
+        return expandedStatesCount;
+    }
+
+    /**
+     * Retrieves a count of positions stored by transposition table.
+     *
+     * @return
+     *      Stored positions' count.
+     */
+    public long getStoredStatesCount() {
+
+        return storedStatesCount;
+    }
+
+    /**
+     * Retrieves run's duration.
+     *
+     * @return
+     *      Duration in milliseconds.
+     */
+    public long getElapsedTime() {
+
+        return elapsedTime;
+    }
+
+    /**
+     * Retrieves solver's throughput.
+     *
+     * @return
+     *      Expanded positions per second.
+     */
+    public double getExpandedStatesPerSecond() {
+
+        return elapsedTime <= 0 ? 0.0 : expandedStatesCount * 1000.0 / elapsedTime;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+
+        return String.format("%s: %d moves, %d pushes, %d states expanded, %d stored, %d ms",
+                status, getMovesCount(), pushesCount, expandedStatesCount, storedStatesCount, elapsedTime);
+    }
+}
@@ -0,0 +1,122 @@
+package org.ezze.games.storekeeper;
+
+import java.util.Arrays;
+
+/**
+ * This class represents a position explored by the solver.
+ *
+ * A position consists of boxes' bit set and normalized worker's cell
+ * (see {@link SolverBoard}), so positions differing by worker's location
+ * within the same reachable area are equal.
+ *
+ * @author Dmitriy Pushkov
+ * @version 0.0.1
+ * @see Solver
+ */
+public final class SolverState {
+
+    /**
+     * Boxes' bit set, it must not be modified.
+     */
+    protected final long[] boxes;
+
+    /**
+     * Normalized worker's cell.
+     */
+    protected final int workerCell;
+
+    /**
+     * Zobrist hash of boxes' bit set.
+     */
+    protected final long boxesHash;
+
+    /**
+     * Zobrist hash of the position.
+     */
+    protected final long hash;
+
+    /**
+     * Creates solver's state.
+     *
+     * @param boxes
+     *      Boxes' bit set which must not be modified after the call.
+     * @param workerCell
+     *      Normalized worker's cell.
+     * @param boxesHash
+     *      Zobrist hash of boxes' bit set.
+     * @param hash
+     *      Zobrist hash of the position.
+     */
+    public SolverState(long[] boxes, int workerCell, long boxesHash, long hash) {
+
+        this.boxes = boxes;
+        this.workerCell = workerCell;
+        this.boxesHash = boxesHash;
+        this.hash = hash;
+    }
+
+    /**
+     * Retrieves boxes' bit set.
+     *
+     * @return
+     *      Boxes' bit set which must not be modified.
+     */
+    public long[] getBoxes() {
+
+        return boxes;
+    }
+
+    /**
+     * Retrieves normalized worker's cell.
+     *
+     * @return
+     *      Worker's cell.
+     */
+    public int getWorkerCell() {
+
+        return workerCell;
+    }
+
+    /**
+     * Retrieves Zobrist hash of boxes' bit set.
+     *
+     * @return
+     *      Boxes' hash.
+     */
+    public long getBoxesHash() {
+
+        return boxesHash;
+    }
+
+    /**
+     * Retrieves Zobrist hash of the position.
+     *
+     * @return
+     *      Position's hash.
+     */
+    public long getHash() {
+
+        return hash;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int hashCode() {
+
+        return (int)(hash ^ (hash >>> 32));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean equals(Object object) {
+
+        if (this == object)
+            return true;
+
+        if (!(object instanceof SolverState))
+            return false;
+
+        SolverState state = (SolverState)object;
+        return hash == state.hash && workerCell == state.workerCell && Arrays.equals(boxes, state.boxes);
+    }
+}
@@ -0,0 +1,480 @@
+package org.ezze.games.storekeeper;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class implements solver's table of visited positions.
+ *
+ * Slots' records are kept outside of the heap in direct buffers, each record holds
+ * position's Zobrist hash, slot's sequence number, the least pushes count
+ * the position has been reached with, normalized worker's cell and boxes' bit set.
+ * A single buffer cannot exceed 2 GB, so slots are spread over several buffers
+ * of {@link #MAXIMAL_BUFFER_SIZE} bytes at most and addressed by a long index,
+ * hence the table may keep hundreds of millions of positions while the heap
+ * holds only a few buffers' objects.
+ * The table uses open addressing with linear probing limited by {@link #MAXIMAL_PROBES_COUNT} slots.
+ *
+ * Each slot is guarded by its sequence number: writers acquire the slot by CAS
+ * making the number odd and release it by making the number even again, while
+ * readers never block and retry if the number has changed during the read.
+ * A thread meeting an odd number spins for a while and then yields.
+ * If all probed slots are occupied by other positions the one reached with
+ * the greatest pushes count is replaced, so the table may forget positions
+ * (which leads to their repeated expansion) but never confuses them.
+ *
+ * @author Dmitriy Pushkov
+ * @version 0.0.1
+ * @see Solver
+ */
+public class TranspositionTable {
+
+    /**
+     * Default memory size of the table in bytes.
+     */
+    public static final long DEFAULT_MEMORY_SIZE = 64L << 20;
+
+    /**
+     * Returned by {@link #getPushesCount(org.ezze.games.storekeeper.SolverState)}
+     * if the position is not in the table.
+     */
+    public static final int PUSHES_COUNT_UNKNOWN = -1;
+
+    /**
+     * Count of slots probed for a position.
+     */
+    public static final int MAXIMAL_PROBES_COUNT = 16;
+
+    /**
+     * Maximal size of a direct buffer keeping records in bytes.
+     */
+    public static final int MAXIMAL_BUFFER_SIZE = 1 << 30;
+
+    /**
+     * Hash of an empty slot.
+     */
+    protected static final long EMPTY_KEY = 0L;
+
+    /**
+     * Count of spins waiting for a slot being written before the thread starts yielding.
+     */
+    protected static final int MAXIMAL_SPINS_COUNT = 64;
+
+    /**
+     * Offset of position's hash within a record.
+     */
+    protected static final int KEY_OFFSET = 0;
+
+    /**
+     * Offset of slot's sequence number within a record, odd number means the slot is being written.
+     */
+    protected static final int SEQUENCE_OFFSET = 8;
+
+    /**
+     * Offset of pushes count within a record.
+     */
+    protected static final int PUSHES_COUNT_OFFSET = 12;
+
+    /**
+     * Offset of normalized worker's cell within a record.
+     */
+    protected static final int WORKER_CELL_OFFSET = 16;
+
+    /**
+     * Offset of boxes' bit set within a record.
+     */
+    protected static final int BOXES_OFFSET = 24;
+
+    /**
+     * Atomic access to records' hashes.
+     */
+    protected static final VarHandle KEY = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    /**
+     * Atomic access to records' sequence numbers.
+     */
+    protected static final VarHandle SEQUENCE = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    /**
+     * Count of boxes' bit set words.
+     */
+    protected int wordsCount = 0;
+
+    /**
+     * Size of slot's record which is a multiple of 8 bytes.
+     */
+    protected int recordSize = 0;
+
+    /**
+     * Count of slots which is a power of two.
+     */
+    protected long capacity = 0;
+
+    /**
+     * Binary logarithm of slots' count of a buffer.
+     */
+    protected int bufferSlotsShift = 0;
+
+    /**
+     * Slots' records kept off the heap by buffers of {@code 1 << bufferSlotsShift} slots.
+     */
+    protected ByteBuffer[] records = null;
+
+    /**
+     * Count of occupied slots.
+     */
+    protected final AtomicLong size = new AtomicLong();
+
+    /**
+     * Count of replaced positions.
+     */
+    protected final AtomicLong replacementsCount = new AtomicLong();
+
+    /**
+     * Creates the table.
+     *
+     * @param wordsCount
+     *      Count of boxes' bit set words.
+     * @param memorySize
+     *      Maximal memory size of the table in bytes.
+     */
+    public TranspositionTable(int wordsCount, long memorySize) {
+
+        this.wordsCount = wordsCount;
+        recordSize = BOXES_OFFSET + 8 * wordsCount;
+
+        // Choosing the greatest power of two fitting into the memory
+        capacity = Long.highestOneBit(Math.max(1, memorySize / recordSize));
+        bufferSlotsShift = 63 - Long.numberOfLeadingZeros(Math.min(capacity, MAXIMAL_BUFFER_SIZE / recordSize));
+        int bufferSlotsCount = 1 << bufferSlotsShift;
+        records = new ByteBuffer[(int)(capacity >>> bufferSlotsShift)];
+        for (int bufferIndex = 0; bufferIndex < records.length; bufferIndex++) {
+
+            // Records' hashes and sequence numbers must be aligned to be accessed atomically
+            records[bufferIndex] = ByteBuffer.allocateDirect(bufferSlotsCount * recordSize + 7).alignedSlice(8)
+                    .order(ByteOrder.nativeOrder());
+        }
+    }
+
+    /**
+     * Retrieves a count of table's slots.
+     *
+     * @return
+     *      Slots' count.
+     */
+    public long getCapacity() {
+
+        return capacity;
+    }
+
+    /**
+     * Retrieves memory occupied by the table.
+     *
+     * @return
+     *      Memory size of slots' records in bytes.
+     */
+    public long getMemorySize() {
+
+        return capacity * recordSize;
+    }
+
+    /**
+     * Retrieves a count of positions kept by the table.
+     *
+     * @return
+     *      Positions' count.
+     */
+    public long getSize() {
+
+        return size.get();
+    }
+
+    /**
+     * Retrieves a count of positions replaced by other ones.
+     *
+     * @return
+     *      Replacements' count.
+     */
+    public long getReplacementsCount() {
+
+        return replacementsCount.get();
+    }
+
+    /**
+     * Forgets all positions keeping table's memory allocated.
+     *
+     * The table must not be accessed by other threads while it's being cleared.
+     */
+    public void clear() {
+
+        // Records of empty slots are never read, so only hashes are reset
+        for (long slot = 0; slot < capacity; slot++)
+            getBuffer(slot).putLong(getOffset(slot) + KEY_OFFSET, EMPTY_KEY);
+
+        size.set(0);
+        replacementsCount.set(0);
+    }
+
+    /**
+     * Retrieves the least pushes count the position has been reached with.
+     *
+     * @param state
+     *      Position.
+     * @return
+     *      Pushes count or {@link #PUSHES_COUNT_UNKNOWN} if the position is not in the table.
+     */
+    public int getPushesCount(SolverState state) {
+
+        long key = getKey(state);
+        long firstSlot = key & (capacity - 1);
+        for (int probeIndex = 0; probeIndex < MAXIMAL_PROBES_COUNT; probeIndex++) {
+
+            long slot = (firstSlot + probeIndex) & (capacity - 1);
+            ByteBuffer buffer = getBuffer(slot);
+            int offset = getOffset(slot);
+            while (true) {
+
+                int sequence = readSequence(buffer, offset);
+                long slotKey = (long)KEY.getOpaque(buffer, offset + KEY_OFFSET);
+                if (slotKey == EMPTY_KEY)
+                    return PUSHES_COUNT_UNKNOWN;
+
+                boolean isMatching = slotKey == key && isRecordMatching(buffer, offset, state);
+                int pushesCount = buffer.getInt(offset + PUSHES_COUNT_OFFSET);
+                if (!isSequenceValid(buffer, offset, sequence))
+                    continue;
+
+                if (isMatching)
+                    return pushesCount;
+
+                break;
+            }
+        }
+
+        return PUSHES_COUNT_UNKNOWN;
+    }
+
+    /**
+     * Records the position if it is new or has been reached with fewer pushes.
+     *
+     * @param state
+     *      Position.
+     * @param pushesCount
+     *      Pushes count the position has been reached with.
+     * @return
+     *      {@code true} if the position should be explored,
+     *      {@code false} if it has been already reached with the same or fewer pushes.
+     */
+    public boolean offer(SolverState state, int pushesCount) {
+
+        long key = getKey(state);
+        long firstSlot = key & (capacity - 1);
+        ByteBuffer victimBuffer = null;
+        int victimOffset = 0;
+        int victimSequence = 0;
+        int victimPushesCount = -1;
+        for (int probeIndex = 0; probeIndex < MAXIMAL_PROBES_COUNT; probeIndex++) {
+
+            long slot = (firstSlot + probeIndex) & (capacity - 1);
+            ByteBuffer buffer = getBuffer(slot);
+            int offset = getOffset(slot);
+            while (true) {
+
+                int sequence = readSequence(buffer, offset);
+                long slotKey = (long)KEY.getOpaque(buffer, offset + KEY_OFFSET);
+                if (slotKey == EMPTY_KEY) {
+
+                    if (!SEQUENCE.compareAndSet(buffer, offset + SEQUENCE_OFFSET, sequence, sequence + 1))
+                        continue;
+
+                    writeRecord(buffer, offset, key, state, pushesCount);
+                    SEQUENCE.setRelease(buffer, offset + SEQUENCE_OFFSET, sequence + 2);
+                    size.incrementAndGet();
+                    return true;
+                }
+
+                boolean isMatching = slotKey == key && isRecordMatching(buffer, offset, state);
+                int slotPushesCount = buffer.getInt(offset + PUSHES_COUNT_OFFSET);
+                if (!isSequenceValid(buffer, offset, sequence))
+                    continue;
+
+                if (isMatching) {
+
+                    if (slotPushesCount <= pushesCount)
+                        return false;
+
+                    if (!SEQUENCE.compareAndSet(buffer, offset + SEQUENCE_OFFSET, sequence, sequence + 1))
+                        continue;
+
+                    buffer.putInt(offset + PUSHES_COUNT_OFFSET, pushesCount);
+                    SEQUENCE.setRelease(buffer, offset + SEQUENCE_OFFSET, sequence + 2);
+                    return true;
+                }
+
+                if (slotPushesCount > victimPushesCount) {
+
+                    victimBuffer = buffer;
+                    victimOffset = offset;
+                    victimSequence = sequence;
+                    victimPushesCount = slotPushesCount;
+                }
+
+                break;
+            }
+        }
+
+        // Replacing the deepest probed position, the position is explored even if the slot is lost
+        if (SEQUENCE.compareAndSet(victimBuffer, victimOffset + SEQUENCE_OFFSET, victimSequence, victimSequence + 1)) {
+
+            writeRecord(victimBuffer, victimOffset, key, state, pushesCount);
+            SEQUENCE.setRelease(victimBuffer, victimOffset + SEQUENCE_OFFSET, victimSequence + 2);
+            replacementsCount.incrementAndGet();
+        }
+
+        return true;
+    }
+
+    /**
+     * Retrieves a buffer keeping slot's record.
+     *
+     * @param slot
+     *      Slot's index.
+     * @return
+     *      Records' buffer.
+     */
+    protected ByteBuffer getBuffer(long slot) {
+
+        return records[(int)(slot >>> bufferSlotsShift)];
+    }
+
+    /**
+     * Retrieves an offset of slot's record within its buffer.
+     *
+     * @param slot
+     *      Slot's index.
+     * @return
+     *      Record's offset.
+     */
+    protected int getOffset(long slot) {
+
+        return (int)(slot & ((1L << bufferSlotsShift) - 1)) * recordSize;
+    }
+
+    /**
+     * Reads slot's sequence number waiting while the slot is being written.
+     *
+     * @param buffer
+     *      Records' buffer.
+     * @param offset
+     *      Record's offset.
+     * @return
+     *      Even sequence number.
+     */
+    protected int readSequence(ByteBuffer buffer, int offset) {
+
+        int spinsCount = 0;
+        int sequence = (int)SEQUENCE.getAcquire(buffer, offset + SEQUENCE_OFFSET);
+        while ((sequence & 1) != 0) {
+
+            if (spinsCount < MAXIMAL_SPINS_COUNT) {
+
+                spinsCount++;
+                Thread.onSpinWait();
+            }
+            else
+                Thread.yield();
+
+            sequence = (int)SEQUENCE.getAcquire(buffer, offset + SEQUENCE_OFFSET);
+        }
+
+        return sequence;
+    }
+
+    /**
+     * Checks whether slot's values read after its sequence number are consistent.
+     *
+     * @param buffer
+     *      Records' buffer.
+     * @param offset
+     *      Record's offset.
+     * @param sequence
+     *      Sequence number read by {@link #readSequence(java.nio.ByteBuffer, int)} before values.
+     * @return
+     *      {@code true} if the slot hasn't been written meanwhile, {@code false} otherwise.
+     */
+    protected boolean isSequenceValid(ByteBuffer buffer, int offset, int sequence) {
+
+        // Record's plain reads must not be reordered after the validating read
+        VarHandle.acquireFence();
+        return (int)SEQUENCE.getVolatile(buffer, offset + SEQUENCE_OFFSET) == sequence;
+    }
+
+    /**
+     * Retrieves position's key which is never equal to {@link #EMPTY_KEY}.
+     *
+     * @param state
+     *      Position.
+     * @return
+     *      Key.
+     */
+    protected long getKey(SolverState state) {
+
+        long key = state.getHash();
+        return key == EMPTY_KEY ? 1L : key;
+    }
+
+    /**
+     * Checks whether slot's record describes specified position.
+     *
+     * @param buffer
+     *      Records' buffer.
+     * @param offset
+     *      Record's offset.
+     * @param state
+     *      Position.
+     * @return
+     *      {@code true} if the record matches the position, {@code false} otherwise.
+     */
+    protected boolean isRecordMatching(ByteBuffer buffer, int offset, SolverState state) {
+
+        if (buffer.getInt(offset + WORKER_CELL_OFFSET) != state.getWorkerCell())
+            return false;
+
+        long[] boxes = state.getBoxes();
+        for (int wordIndex = 0; wordIndex < wordsCount; wordIndex++) {
+
+            if (buffer.getLong(offset + BOXES_OFFSET + 8 * wordIndex) != boxes[wordIndex])
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Writes slot's record, the slot must be acquired by the caller.
+     *
+     * @param buffer
+     *      Records' buffer.
+     * @param offset
+     *      Record's offset.
+     * @param key
+     *      Position's key.
+     * @param state
+     *      Position.
+     * @param pushesCount
+     *      Pushes count the position has been reached with.
+     */
+    protected void writeRecord(ByteBuffer buffer, int offset, long key, SolverState state, int pushesCount) {
+
+        buffer.putInt(offset + PUSHES_COUNT_OFFSET, pushesCount);
+        buffer.putInt(offset + WORKER_CELL_OFFSET, state.getWorkerCell());
+        long[] boxes = state.getBoxes();
+        for (int wordIndex = 0; wordIndex < wordsCount; wordIndex++)
+            buffer.putLong(offset + BOXES_OFFSET + 8 * wordIndex, boxes[wordIndex]);
+
+        KEY.setOpaque(buffer, offset + KEY_OFFSET, key);
+    }
+}
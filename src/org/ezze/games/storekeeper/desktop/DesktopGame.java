@@ -257,6 +257,10 @@ public final class DesktopGame extends JFrame {
                 ApplicationPath.getApplicationPath(DesktopGame.class));
         final Configuration gameConfiguration = new Configuration(configurationFileName);
         
+        // Caching levels' push distances next to the configuration
+        PushDistances.setCacheDirectory(new File(String.format("%s/cache",
+                ApplicationPath.getApplicationPath(DesktopGame.class))));
+        
         // Creating game graphics' instance
         desktopGameGraphics = new DesktopGameGraphics();
         
@@ -394,6 +398,8 @@ public final class DesktopGame extends JFrame {
                             movesCountLabel.setText(movesCountString);
 
                             String pushesCountString = String.format("Pushes Count: %05d", level.getPushesCount());
+                            if (game.isDeadlocked())
+                                pushesCountString += " (Deadlock)";
                             pushesCountLabel.setText(pushesCountString);
                         }
                         else {
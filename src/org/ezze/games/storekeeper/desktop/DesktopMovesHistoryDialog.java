@@ -107,13 +107,11 @@ public class DesktopMovesHistoryDialog extends JDialog {
 
             JSlider slider = (JSlider)sourceObject;
 
-            int movesShift = slider.getValue() - currentMovesCount;
-            if (movesShift < 0)
-                desktopGame.getGameInstance().takeBack(Math.abs(movesShift));
-            else if (movesShift > 0)
-                desktopGame.getGameInstance().repeatMoves(movesShift);
-            
-            currentMovesCount += movesShift;
+            if (slider.getValue() != currentMovesCount &&
+                    desktopGame.getGameInstance().seekToMove(slider.getValue()) >= 0) {
+                
+                currentMovesCount = slider.getValue();
+            }
             
             int movesShiftSummary = getMovesShift();
             if (movesShiftSummary < 0) {
@@ -143,6 +141,17 @@ public class DesktopMovesHistoryDialog extends JDialog {
             
             return currentMovesCount - initialMovesCount;
         }
+        
+        /**
+         * Retrieves moves count the dialog has been opened with.
+         * 
+         * @return 
+         *      Initial moves count.
+         */
+        public int getInitialMovesCount() {
+            
+            return initialMovesCount;
+        }
     }
     
     /**
@@ -318,11 +327,8 @@ public class DesktopMovesHistoryDialog extends JDialog {
         
         if (isCancelled) {
             
-            int movesShift = movesHistoryListener.getMovesShift();
-            if (movesShift < 0)
-                desktopGame.getGameInstance().repeatMoves(Math.abs(movesShift));
-            else if (movesShift > 0)
-                desktopGame.getGameInstance().takeBack(movesShift);
+            if (movesHistoryListener.getMovesShift() != 0)
+                desktopGame.getGameInstance().seekToMove(movesHistoryListener.getInitialMovesCount());
         }
 
         dispose();
@@ -0,0 +1,117 @@
+package org.ezze.games.storekeeper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link DeadlockDetector} flags known freeze and corral deadlocks
+ * and doesn't flag similar positions which are still solvable.
+ *
+ * @author Dmitriy Pushkov
+ * @version 0.0.1
+ * @see DeadlockDetector
+ */
+public class DeadlockDetectorTest {
+
+    /**
+     * Pushes the box next to the worker and checks the position after the push.
+     *
+     * @param rows
+     *      Level's rows before the push.
+     * @param shiftX
+     *      Horizontal shift of the push.
+     * @param shiftY
+     *      Vertical shift of the push.
+     * @return
+     *      {@code true} if the position after the push is detected as deadlocked, {@code false} otherwise.
+     */
+    private static boolean isDeadlockedAfterPush(String[] rows, int shiftX, int shiftY) {
+
+        Level level = new Level(new ArrayList<String>(Arrays.asList(rows)), new HashMap<String, Object>());
+        assertTrue(level.initialize());
+        DeadlockDetector deadlockDetector = DeadlockDetector.create(level);
+        assertNotNull(deadlockDetector);
+
+        int moveCode = level.performMove(shiftX, shiftY);
+        assertTrue(moveCode != Level.MOVE_CODE_NOTHING && (moveCode & Level.MOVE_CODE_PUSH) != 0);
+
+        // A push's check and a check of the whole position must agree
+        boolean isDeadlocked = deadlockDetector.isDeadlocked(level,
+                level.getWorkerX() + shiftX, level.getWorkerY() + shiftY);
+        assertEquals(isDeadlocked, deadlockDetector.isDeadlocked(level));
+        return isDeadlocked;
+    }
+
+    @Test
+    public void testFreezeDeadlockIsDetected() {
+
+        // The pushed box gets stuck next to another box along the wall
+        assertTrue(isDeadlockedAfterPush(new String[] {
+            "########",
+            "#.  $ .#",
+            "#    $ #",
+            "#    @ #",
+            "########"
+        }, 0, -1));
+    }
+
+    @Test
+    public void testFreezeNearMissIsNotDetected() {
+
+        // A gap between the boxes lets both of them slide along the wall to goals
+        assertFalse(isDeadlockedAfterPush(new String[] {
+            "########",
+            "#. $  .#",
+            "#    $ #",
+            "#    @ #",
+            "########"
+        }, 0, -1));
+    }
+
+    @Test
+    public void testFrozenBoxesOnGoalsAreNotDetected() {
+
+        assertFalse(isDeadlockedAfterPush(new String[] {
+            "########",
+            "#  *.  #",
+            "#   $  #",
+            "#   @  #",
+            "########"
+        }, 0, -1));
+    }
+
+    @Test
+    public void testCorralDeadlockIsDetected() {
+
+        // The pushed box closes the corner's corral, no box of it can be pushed to the upper goal
+        assertTrue(isDeadlockedAfterPush(new String[] {
+            "####",
+            "# .#",
+            "#  ###",
+            "#*   #",
+            "#  $@#",
+            "#  ###",
+            "####"
+        }, -1, 0));
+    }
+
+    @Test
+    public void testCorralNearMissIsNotDetected() {
+
+        // The pushed box closes the left corral but can be pushed further into it
+        assertFalse(isDeadlockedAfterPush(new String[] {
+            "  ####",
+            "###  ####",
+            "#     $@#",
+            "# #  #$ #",
+            "# . .#  #",
+            "#########"
+        }, -1, 0));
+    }
+}
@@ -0,0 +1,118 @@
+package org.ezze.games.storekeeper;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that worker's moves and take-backs don't allocate objects in steady state.
+ *
+ * @author Dmitriy Pushkov
+ * @version 0.0.1
+ * @see Level#performMove(int, int, boolean)
+ * @see Level#takeBack(int)
+ */
+public class LevelAllocationTest {
+
+    /**
+     * Count of rounds warming moves' code up.
+     */
+    private static final int WARM_UP_ROUNDS_COUNT = 5000;
+
+    /**
+     * Count of measured rounds.
+     */
+    private static final int MEASURED_ROUNDS_COUNT = 500;
+
+    /**
+     * Count of loops performed by a round, a round crosses a few checkpoints of moves' history.
+     */
+    private static final int ROUND_LOOPS_COUNT = 60;
+
+    /**
+     * Horizontal and vertical shifts of a loop pushing the box right and back left
+     * which returns the worker and the box to their initial positions.
+     */
+    private static final int[][] LOOP_SHIFTS = {
+        { 1, 0 }, { 0, -1 }, { 1, 0 }, { 1, 0 }, { 0, 1 },
+        { -1, 0 }, { 0, -1 }, { -1, 0 }, { -1, 0 }, { 0, 1 }
+    };
+
+    /**
+     * Thread's bean measuring allocated memory.
+     */
+    private com.sun.management.ThreadMXBean threadBean;
+
+    /**
+     * Tested level.
+     */
+    private Level level;
+
+    @Before
+    public void setUp() {
+
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threadBean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        level = new Level(new ArrayList<String>(Arrays.asList(
+                "##########",
+                "#        #",
+                "# @$     #",
+                "#       .#",
+                "##########")), new HashMap<String, Object>());
+        assertTrue(level.initialize());
+    }
+
+    @Test
+    public void testMovesDoNotAllocate() {
+
+        assertTrue(ROUND_LOOPS_COUNT * LOOP_SHIFTS.length > 2 * Level.CHECKPOINT_INTERVAL);
+
+        for (int roundIndex = 0; roundIndex < WARM_UP_ROUNDS_COUNT; roundIndex++) {
+
+            performRound();
+            level.takeBack(level.getMovesCount());
+        }
+
+        // Measuring itself may allocate, so its own cost is subtracted
+        long threadId = Thread.currentThread().getId();
+        long measureBytes = threadBean.getThreadAllocatedBytes(threadId);
+        measureBytes = threadBean.getThreadAllocatedBytes(threadId) - measureBytes;
+
+        long allocatedBytes = 0;
+        for (int roundIndex = 0; roundIndex < MEASURED_ROUNDS_COUNT; roundIndex++) {
+
+            long roundBytes = threadBean.getThreadAllocatedBytes(threadId);
+            performRound();
+            level.takeBack(level.getMovesCount());
+            allocatedBytes += threadBean.getThreadAllocatedBytes(threadId) - roundBytes - measureBytes;
+        }
+
+        assertEquals(0, allocatedBytes);
+    }
+
+    /**
+     * Performs a round of moves starting from level's initial position.
+     */
+    private void performRound() {
+
+        for (int loopIndex = 0; loopIndex < ROUND_LOOPS_COUNT; loopIndex++) {
+
+            for (int[] shift : LOOP_SHIFTS) {
+
+                int moveCode = level.performMove(shift[0], shift[1], false);
+                assertTrue(moveCode != Level.MOVE_CODE_NOTHING);
+            }
+        }
+
+        assertEquals(ROUND_LOOPS_COUNT * 2, level.getPushesCount());
+    }
+}
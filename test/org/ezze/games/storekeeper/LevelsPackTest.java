@@ -0,0 +1,132 @@
+package org.ezze.games.storekeeper;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that levels' packs keep levels of the source set and that damaged packs are rejected.
+ *
+ * @author Dmitriy Pushkov
+ * @version 0.0.1
+ * @see LevelsPack
+ */
+public class LevelsPackTest {
+
+    /**
+     * Levels of the default set.
+     */
+    private LevelsSet sourceSet;
+
+    /**
+     * Pack written from {@link #sourceSet}.
+     */
+    private File packFile;
+
+    @Before
+    public void setUp() throws Exception {
+
+        InputStream levelsSetInputStream = LevelsPackTest.class.getResourceAsStream(
+                "/org/ezze/games/storekeeper/resources/levels.xml");
+        try {
+
+            sourceSet = new LevelsSet(new BufferedInputStream(levelsSetInputStream));
+        }
+        finally {
+
+            levelsSetInputStream.close();
+        }
+
+        packFile = File.createTempFile("storekeeper", ".skp");
+        LevelsPack.write(sourceSet, packFile);
+    }
+
+    @After
+    public void tearDown() {
+
+        packFile.delete();
+    }
+
+    @Test
+    public void testPackKeepsLevels() {
+
+        LevelsSet packedSet = new LevelsSet();
+        assertTrue(packedSet.load(packFile.getAbsolutePath()));
+        assertEquals(sourceSet.getName(), packedSet.getName());
+        assertEquals(sourceSet.getLevelsCount(), packedSet.getLevelsCount());
+        for (int levelIndex = 0; levelIndex < sourceSet.getLevelsCount(); levelIndex++) {
+
+            Level sourceLevel = sourceSet.getLevelByIndex(levelIndex);
+            Level packedLevel = packedSet.getLevelByIndex(levelIndex);
+            assertEquals(sourceLevel.getName(), packedLevel.getName());
+            assertEquals(sourceLevel.getState(), packedLevel.getState());
+            assertEquals(sourceLevel.getWidth(), packedLevel.getWidth());
+            assertEquals(sourceLevel.getHeight(), packedLevel.getHeight());
+            assertArrayEquals(sourceLevel.levelInitial, packedLevel.levelInitial);
+        }
+    }
+
+    @Test
+    public void testTruncatedPackIsRejected() throws Exception {
+
+        long packSize = packFile.length();
+        for (long truncatedSize : new long[] { packSize - 1, packSize / 2, LevelsPack.HEADER_SIZE + 1, 4 }) {
+
+            RandomAccessFile randomAccessFile = new RandomAccessFile(packFile, "rw");
+            try {
+
+                randomAccessFile.setLength(truncatedSize);
+            }
+            finally {
+
+                randomAccessFile.close();
+            }
+
+            assertRejected();
+        }
+    }
+
+    @Test
+    public void testPackWithBadMagicIsRejected() throws Exception {
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(packFile, "rw");
+        try {
+
+            randomAccessFile.writeInt(LevelsPack.MAGIC + 1);
+        }
+        finally {
+
+            randomAccessFile.close();
+        }
+
+        assertFalse(LevelsPack.isLevelsPack(packFile));
+        assertRejected();
+    }
+
+    /**
+     * Checks that the pack can be neither opened nor loaded.
+     */
+    private void assertRejected() {
+
+        try {
+
+            new LevelsPack(packFile);
+            fail(String.format("Pack of %d bytes has been opened", packFile.length()));
+        }
+        catch (IOException ex) {
+
+        }
+
+        assertFalse(new LevelsSet().load(packFile.getAbsolutePath()));
+    }
+}
@@ -0,0 +1,246 @@
+package org.ezze.games.storekeeper;
+
+import java.io.BufferedInputStream;
+import java.io.InputStream;
+import java.util.Random;
+
+/**
+ * Measures matching's updates per second of {@link MatchingHeuristic}.
+ *
+ * A random walk of pushes is prepared for each level of the default levels' set,
+ * then the walk is replayed by {@link MatchingHeuristic#updateMatching(int[], int, int)}
+ * and by {@link MatchingHeuristic#createMatching(long[])} from scratch.
+ * Both replays must produce the same estimations.
+ *
+ * Run it by "ant benchmark -Dbenchmark.class=org.ezze.games.storekeeper.MatchingHeuristicBenchmark".
+ *
+ * @author Dmitriy Pushkov
+ * @version 0.0.1
+ * @see MatchingHeuristic
+ */
+public class MatchingHeuristicBenchmark {
+
+    /**
+     * Count of pushes of a level's walk.
+     */
+    private static final int WALK_PUSHES_COUNT = 2000;
+
+    /**
+     * Count of walks' replays warming the code up.
+     */
+    private static final int WARM_UP_REPLAYS_COUNT = 20;
+
+    /**
+     * Minimal duration of measured replays in milliseconds.
+     */
+    private static final long MEASURED_DURATION = 500;
+
+    /**
+     * Seed of walks' pushes.
+     */
+    private static final long WALK_SEED = 20121015L;
+
+    /**
+     * Prepared walk of a level.
+     */
+    private static class Walk {
+
+        /**
+         * Heuristic of level's board.
+         */
+        private final MatchingHeuristic heuristic;
+
+        /**
+         * Matching of walk's initial position.
+         */
+        private final int[] initialMatching;
+
+        /**
+         * Pushed boxes' cells.
+         */
+        private final int[] boxCells = new int[WALK_PUSHES_COUNT];
+
+        /**
+         * Boxes' destination cells.
+         */
+        private final int[] boxDestinationCells = new int[WALK_PUSHES_COUNT];
+
+        /**
+         * Boxes' bit sets after pushes.
+         */
+        private final long[][] boxes = new long[WALK_PUSHES_COUNT][];
+
+        /**
+         * Estimations after pushes.
+         */
+        private final int[] estimations = new int[WALK_PUSHES_COUNT];
+
+        /**
+         * Count of walk's pushes.
+         */
+        private int pushesCount = 0;
+
+        /**
+         * Prepares a walk of random pushes ignoring worker's reachability.
+         *
+         * @param board
+         *      Level's board.
+         * @param random
+         *      Pushes' generator.
+         */
+        private Walk(SolverBoard board, Random random) {
+
+            heuristic = new MatchingHeuristic(board);
+            long[] currentBoxes = board.initialBoxes.clone();
+            initialMatching = heuristic.createMatching(currentBoxes);
+            int[] matching = initialMatching;
+            int[] cells = new int[board.getBoxesCount()];
+            for (int attemptIndex = 0; matching != null && pushesCount < WALK_PUSHES_COUNT &&
+                    attemptIndex < WALK_PUSHES_COUNT * 10; attemptIndex++) {
+
+                int cellsCount = 0;
+                for (int cell = 0; cell < board.getCellsCount(); cell++) {
+
+                    if (SolverBoard.hasBox(currentBoxes, cell))
+                        cells[cellsCount++] = cell;
+                }
+
+                int boxCell = cells[random.nextInt(cellsCount)];
+                int boxDestinationCell = board.getNeighbour(boxCell, random.nextInt(4));
+                if (boxDestinationCell < 0 || SolverBoard.hasBox(currentBoxes, boxDestinationCell) ||
+                        board.isDead(boxDestinationCell))
+                    continue;
+
+                int[] updatedMatching = heuristic.updateMatching(matching, boxCell, boxDestinationCell);
+                if (updatedMatching == null)
+                    continue;
+
+                currentBoxes = currentBoxes.clone();
+                currentBoxes[boxCell >>> 6] &= ~(1L << boxCell);
+                currentBoxes[boxDestinationCell >>> 6] |= 1L << boxDestinationCell;
+                boxCells[pushesCount] = boxCell;
+                boxDestinationCells[pushesCount] = boxDestinationCell;
+                boxes[pushesCount] = currentBoxes;
+                estimations[pushesCount] = MatchingHeuristic.getEstimation(updatedMatching);
+                pushesCount++;
+                matching = updatedMatching;
+            }
+        }
+
+        /**
+         * Replays the walk updating matchings incrementally.
+         *
+         * @return
+         *      Count of mismatched estimations.
+         */
+        private int replayUpdates() {
+
+            int mismatchesCount = 0;
+            int[] matching = initialMatching;
+            for (int pushIndex = 0; pushIndex < pushesCount; pushIndex++) {
+
+                matching = heuristic.updateMatching(matching, boxCells[pushIndex], boxDestinationCells[pushIndex]);
+                if (MatchingHeuristic.getEstimation(matching) != estimations[pushIndex])
+                    mismatchesCount++;
+            }
+
+            return mismatchesCount;
+        }
+
+        /**
+         * Replays the walk creating matchings from scratch.
+         *
+         * @return
+         *      Count of mismatched estimations.
+         */
+        private int replayCreations() {
+
+            int mismatchesCount = 0;
+            for (int pushIndex = 0; pushIndex < pushesCount; pushIndex++) {
+
+                int[] matching = heuristic.createMatching(boxes[pushIndex]);
+                if (MatchingHeuristic.getEstimation(matching) != estimations[pushIndex])
+                    mismatchesCount++;
+            }
+
+            return mismatchesCount;
+        }
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args
+     *      Not used.
+     * @throws Exception
+     *      If default levels' set cannot be read.
+     */
+    public static void main(String[] args) throws Exception {
+
+        InputStream levelsSetInputStream = MatchingHeuristicBenchmark.class.getResourceAsStream(
+                "/org/ezze/games/storekeeper/resources/levels.xml");
+        LevelsSet levelsSet;
+        try {
+
+            levelsSet = new LevelsSet(new BufferedInputStream(levelsSetInputStream));
+        }
+        finally {
+
+            levelsSetInputStream.close();
+        }
+
+        System.out.println("level  boxes  pushes  incremental/s  from scratch/s  speedup");
+        Random random = new Random(WALK_SEED);
+        int mismatchesCount = 0;
+        for (int levelIndex = 0; levelIndex < levelsSet.getLevelsCount(); levelIndex++) {
+
+            Level level = levelsSet.getLevelByIndex(levelIndex);
+            if (!level.initialize())
+                continue;
+
+            SolverBoard board = SolverBoard.create(level);
+            if (board == null)
+                continue;
+
+            Walk walk = new Walk(board, random);
+            if (walk.pushesCount == 0)
+                continue;
+
+            for (int replayIndex = 0; replayIndex < WARM_UP_REPLAYS_COUNT; replayIndex++) {
+
+                mismatchesCount += walk.replayUpdates();
+                mismatchesCount += walk.replayCreations();
+            }
+
+            long updatesCount = 0;
+            long startTime = System.nanoTime();
+            long duration;
+            do {
+
+                mismatchesCount += walk.replayUpdates();
+                updatesCount += walk.pushesCount;
+                duration = System.nanoTime() - startTime;
+            }
+            while (duration < MEASURED_DURATION * 1000000L);
+
+            double updatesRate = updatesCount * 1e9 / duration;
+            long creationsCount = 0;
+            startTime = System.nanoTime();
+            do {
+
+                mismatchesCount += walk.replayCreations();
+                creationsCount += walk.pushesCount;
+                duration = System.nanoTime() - startTime;
+            }
+            while (duration < MEASURED_DURATION * 1000000L);
+
+            double creationsRate = creationsCount * 1e9 / duration;
+            System.out.println(String.format("%5d  %5d  %6d  %13.0f  %14.0f  %7.2f", levelIndex + 1,
+                    board.getBoxesCount(), walk.pushesCount, updatesRate, creationsRate, updatesRate / creationsRate));
+            level.evict();
+        }
+
+        if (mismatchesCount > 0)
+            throw new IllegalStateException(String.format("%d estimations mismatched", mismatchesCount));
+    }
+}
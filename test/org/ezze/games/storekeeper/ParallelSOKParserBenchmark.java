@@ -0,0 +1,273 @@
+package org.ezze.games.storekeeper;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures scaling of {@link ParallelSOKParser} against count of parsing threads.
+ *
+ * A SOK file of the size given by the first argument in megabytes
+ * ({@link #DEFAULT_FILE_SIZE} by default) is generated, then it's parsed
+ * by a single {@link SOKParser} and by the parallel parser running in pools
+ * of 1, 2, 4 and so on threads up to the count of available processors.
+ * All parsers must produce the same levels.
+ *
+ * Run it by "ant benchmark -Dbenchmark.class=org.ezze.games.storekeeper.ParallelSOKParserBenchmark
+ * -Dbenchmark.args=8".
+ *
+ * @author Dmitriy Pushkov
+ * @version 0.0.1
+ * @see ParallelSOKParser
+ */
+public class ParallelSOKParserBenchmark {
+
+    /**
+     * Default size of generated file in megabytes.
+     */
+    private static final int DEFAULT_FILE_SIZE = 8;
+
+    /**
+     * Count of parses warming the code up.
+     */
+    private static final int WARM_UP_PARSES_COUNT = 3;
+
+    /**
+     * Minimal duration of measured parses in milliseconds.
+     */
+    private static final long MEASURED_DURATION = 2000;
+
+    /**
+     * Rows of levels repeated by the generated file.
+     */
+    private static final String[][] LEVELS_ROWS = {
+        {
+            "    #####",
+            "    #   #",
+            "    #$  #",
+            "  ###  $##",
+            "  #  $ $ #",
+            "### # ## #   ######",
+            "#   # ## #####  ..#",
+            "# $  $          ..#",
+            "##### ### #@##  ..#",
+            "    #     #########",
+            "    #######"
+        },
+        {
+            "############",
+            "#..  #     ###",
+            "#..  # $  $  #",
+            "#..  #$####  #",
+            "#..    @ ##  #",
+            "#..  # #  $ ##",
+            "###### ##$ $ #",
+            "  # $  $ $ $ #",
+            "  #    #     #",
+            "  ############"
+        },
+        {
+            "        ########",
+            "        #     @#",
+            "        # $#$ ##",
+            "        # $  $#",
+            "        ##$ $ #",
+            "######### $ # ###",
+            "#....  ## $  $  #",
+            "##...    $  $   #",
+            "#....  ##########",
+            "########"
+        }
+    };
+
+    /**
+     * Generates a SOK file.
+     *
+     * @param file
+     *      File to write.
+     * @param size
+     *      Minimal size of the file in bytes.
+     * @throws Exception
+     *      If the file cannot be written.
+     */
+    private static void generateFile(File file, long size) throws Exception {
+
+        BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+        try {
+
+            writer.write("Generated levels' collection\n\n");
+            long writtenSize = 0;
+            for (int levelIndex = 0; writtenSize < size; levelIndex++) {
+
+                StringBuilder levelText = new StringBuilder();
+                for (String row : LEVELS_ROWS[levelIndex % LEVELS_ROWS.length])
+                    levelText.append(row).append('\n');
+
+                levelText.append("Title: Level ").append(levelIndex + 1).append('\n');
+                levelText.append("Author: Generated\n\n");
+                writer.write(levelText.toString());
+                writtenSize += levelText.length();
+            }
+        }
+        finally {
+
+            writer.close();
+        }
+    }
+
+    /**
+     * Checks whether parsed levels are the same as reference ones.
+     *
+     * @param levels
+     *      Parsed levels.
+     * @param referenceLevels
+     *      Levels parsed by a single parser.
+     * @return
+     *      {@code true} if levels' count and names are the same, {@code false} otherwise.
+     */
+    private static boolean isMatching(ArrayList<Level> levels, ArrayList<Level> referenceLevels) {
+
+        if (levels.size() != referenceLevels.size())
+            return false;
+
+        for (int levelIndex = 0; levelIndex < levels.size(); levelIndex++) {
+
+            if (!levels.get(levelIndex).getName().equals(referenceLevels.get(levelIndex).getName()))
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Parses the file by a single parser.
+     *
+     * @param file
+     *      SOK file.
+     * @return
+     *      File's levels.
+     * @throws Exception
+     *      If the file cannot be read.
+     */
+    private static ArrayList<Level> parseSequentially(File file) throws Exception {
+
+        ArrayList<Level> levels = new ArrayList<Level>();
+        InputStream sokInputStream = new FileInputStream(file);
+        try {
+
+            new SOKParser(levels).parse(sokInputStream);
+        }
+        finally {
+
+            sokInputStream.close();
+        }
+
+        return levels;
+    }
+
+    /**
+     * Parses the file by the parallel parser within a pool.
+     *
+     * @param file
+     *      SOK file.
+     * @param pool
+     *      Pool whose threads parse file's chunks.
+     * @return
+     *      File's levels.
+     * @throws Exception
+     *      If the file cannot be read.
+     */
+    private static ArrayList<Level> parseInParallel(final File file, ForkJoinPool pool) throws Exception {
+
+        // The parser forks chunks' tasks into the pool it's called from
+        return pool.submit(new Callable<ArrayList<Level>>() {
+
+            @Override
+            public ArrayList<Level> call() throws Exception {
+
+                return ParallelSOKParser.parse(file);
+            }
+        }).get();
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args
+     *      Optional size of generated file in megabytes.
+     * @throws Exception
+     *      If the file cannot be generated or parsed.
+     */
+    public static void main(String[] args) throws Exception {
+
+        int fileSize = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_FILE_SIZE;
+        File file = File.createTempFile("storekeeper", ".sok");
+        file.deleteOnExit();
+        generateFile(file, (long)fileSize << 20);
+
+        ArrayList<Level> referenceLevels = null;
+        for (int parseIndex = 0; parseIndex < WARM_UP_PARSES_COUNT; parseIndex++)
+            referenceLevels = parseSequentially(file);
+
+        int parsesCount = 0;
+        long startTime = System.nanoTime();
+        long duration;
+        do {
+
+            parseSequentially(file);
+            parsesCount++;
+            duration = System.nanoTime() - startTime;
+        }
+        while (duration < MEASURED_DURATION * 1000000L);
+
+        double sequentialTime = duration / 1e6 / parsesCount;
+        System.out.println(String.format("file: %d bytes, %d levels, %d processors", file.length(),
+                referenceLevels.size(), Runtime.getRuntime().availableProcessors()));
+        System.out.println("threads  parse ms  MB/s  speedup");
+        System.out.println(String.format("%7s  %8.1f  %4.0f  %7.2f", "single", sequentialTime,
+                file.length() / 1048576.0 / sequentialTime * 1000, 1.0));
+
+        int mismatchesCount = 0;
+        int processorsCount = Runtime.getRuntime().availableProcessors();
+        for (int threadsCount = 1; ; threadsCount = Math.min(threadsCount * 2, processorsCount)) {
+
+            ForkJoinPool pool = new ForkJoinPool(threadsCount);
+            try {
+
+                for (int parseIndex = 0; parseIndex < WARM_UP_PARSES_COUNT; parseIndex++) {
+
+                    if (!isMatching(parseInParallel(file, pool), referenceLevels))
+                        mismatchesCount++;
+                }
+
+                parsesCount = 0;
+                startTime = System.nanoTime();
+                do {
+
+                    parseInParallel(file, pool);
+                    parsesCount++;
+                    duration = System.nanoTime() - startTime;
+                }
+                while (duration < MEASURED_DURATION * 1000000L);
+            }
+            finally {
+
+                pool.shutdown();
+            }
+
+            double parallelTime = duration / 1e6 / parsesCount;
+            System.out.println(String.format("%7d  %8.1f  %4.0f  %7.2f", threadsCount, parallelTime,
+                    file.length() / 1048576.0 / parallelTime * 1000, sequentialTime / parallelTime));
+            if (threadsCount == processorsCount)
+                break;
+        }
+
+        if (mismatchesCount > 0)
+            throw new IllegalStateException(String.format("%d parses mismatched", mismatchesCount));
+    }
+}
@@ -0,0 +1,152 @@
+package org.ezze.games.storekeeper;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.List;
+import java.util.PriorityQueue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a cancelled search is resumed from its checkpoint.
+ *
+ * @author Dmitriy Pushkov
+ * @version 0.0.1
+ * @see Solver#setCheckpointFile(java.io.File, long)
+ * @see SolverCheckpoint
+ */
+public class SolverCheckpointTest {
+
+    /**
+     * Count of batches appended to the checkpoint before the search is cancelled.
+     */
+    private static final int CANCELLED_APPENDS_COUNT = 40;
+
+    /**
+     * Known optimal pushes count of the first level of the default levels' set.
+     */
+    private static final int FIRST_DEFAULT_LEVEL_PUSHES_COUNT = 97;
+
+    /**
+     * Solver cancelling itself after a number of appended batches
+     * and tracing whether its search has been restored from the checkpoint.
+     */
+    private static class TracingSolver extends Solver {
+
+        /**
+         * Count of appended batches the search is cancelled after or {@code 0} to never cancel it.
+         */
+        private final int cancelledAppendsCount;
+
+        /**
+         * Count of appended batches.
+         */
+        private int appendsCount = 0;
+
+        /**
+         * Shows whether the search has been restored from the checkpoint.
+         */
+        private boolean isRestored = false;
+
+        /**
+         * Creates the solver.
+         *
+         * @param level
+         *      Level to solve.
+         * @param checkpointFile
+         *      Checkpoint's file.
+         * @param cancelledAppendsCount
+         *      Count of appended batches the search is cancelled after or {@code 0} to never cancel it.
+         */
+        private TracingSolver(Level level, File checkpointFile, int cancelledAppendsCount) {
+
+            super(level, 1);
+            this.cancelledAppendsCount = cancelledAppendsCount;
+            setCheckpointFile(checkpointFile, 0);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected SolverCheckpoint appendToCheckpoint(SolverCheckpoint checkpoint, List<SolverNode> nodes) {
+
+            if (++appendsCount == cancelledAppendsCount)
+                cancel();
+
+            return super.appendToCheckpoint(checkpoint, nodes);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected boolean restoreCheckpoint(SolverCheckpoint checkpoint, SolverNode root, PriorityQueue<SolverNode> openNodes) {
+
+            isRestored = super.restoreCheckpoint(checkpoint, root, openNodes);
+            return isRestored;
+        }
+    }
+
+    /**
+     * Checkpoint's file.
+     */
+    private File checkpointFile;
+
+    /**
+     * Solved level.
+     */
+    private Level level;
+
+    @Before
+    public void setUp() throws Exception {
+
+        checkpointFile = File.createTempFile("storekeeper", ".checkpoint");
+        assertTrue(checkpointFile.delete());
+
+        InputStream levelsSetInputStream = SolverCheckpointTest.class.getResourceAsStream(
+                "/org/ezze/games/storekeeper/resources/levels.xml");
+        try {
+
+            level = new LevelsSet(new BufferedInputStream(levelsSetInputStream)).getLevelByIndex(0);
+        }
+        finally {
+
+            levelsSetInputStream.close();
+        }
+
+        assertTrue(level.initialize());
+    }
+
+    @After
+    public void tearDown() {
+
+        checkpointFile.delete();
+    }
+
+    @Test
+    public void testCancelledSearchIsResumed() {
+
+        TracingSolver cancelledSolver = new TracingSolver(level, checkpointFile, CANCELLED_APPENDS_COUNT);
+        SolverResult cancelledResult = cancelledSolver.solve();
+        assertEquals(SolverResult.Status.CANCELLED, cancelledResult.getStatus());
+        assertFalse(cancelledSolver.isRestored);
+        assertTrue(checkpointFile.exists());
+        assertTrue(checkpointFile.length() > 0);
+
+        TracingSolver resumedSolver = new TracingSolver(level, checkpointFile, 0);
+        SolverResult resumedResult = resumedSolver.solve();
+        assertTrue(resumedSolver.isRestored);
+        assertEquals(SolverResult.Status.SOLVED, resumedResult.getStatus());
+        assertEquals(FIRST_DEFAULT_LEVEL_PUSHES_COUNT, resumedResult.getPushesCount());
+        assertTrue(resumedResult.getExpandedStatesCount() > cancelledResult.getExpandedStatesCount());
+        assertFalse(checkpointFile.exists());
+
+        // The resumed solution starts from level's initial position
+        int movesCount = level.setMovesToRepeat(resumedResult.getMoves());
+        assertEquals(movesCount, level.repeatMoves(movesCount));
+        assertTrue(level.isCompleted());
+        assertEquals(FIRST_DEFAULT_LEVEL_PUSHES_COUNT, level.getPushesCount());
+    }
+}
@@ -0,0 +1,124 @@
+package org.ezze.games.storekeeper;
+
+import java.io.BufferedInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that solutions found by {@link Solver} replay to completed levels
+ * and are optimal by pushes.
+ *
+ * @author Dmitriy Pushkov
+ * @version 0.0.1
+ * @see Solver
+ * @see Level#setMovesToRepeat(java.util.List)
+ */
+public class SolverTest {
+
+    /**
+     * Known optimal pushes count of the first level of the default levels' set.
+     */
+    private static final int FIRST_DEFAULT_LEVEL_PUSHES_COUNT = 97;
+
+    /**
+     * Small levels with known optimal pushes counts.
+     */
+    private static final String[][] SMALL_LEVELS = {
+        { "######", "#@$ .#", "######" },
+        { "######", "#    #", "# #@ #", "# $* #", "# .* #", "#    #", "######" },
+        { "########", "#      #", "# .**$@#", "#      #", "#####  #", "    ####" }
+    };
+
+    /**
+     * Optimal pushes counts of {@link #SMALL_LEVELS}.
+     */
+    private static final int[] SMALL_LEVELS_PUSHES_COUNTS = { 2, 3, 7 };
+
+    /**
+     * Creates a level from its rows.
+     *
+     * @param rows
+     *      Level's rows.
+     * @return
+     *      Initialized level.
+     */
+    private static Level createLevel(String[] rows) {
+
+        Level level = new Level(new ArrayList<String>(Arrays.asList(rows)), new HashMap<String, Object>());
+        assertTrue(level.initialize());
+        return level;
+    }
+
+    /**
+     * Solves a level and replays the solution.
+     *
+     * @param level
+     *      Level to solve.
+     * @param solver
+     *      Solver of the level.
+     * @return
+     *      Pushes count of the replayed solution.
+     */
+    private static int solveAndReplay(Level level, Solver solver) {
+
+        SolverResult result = solver.solve();
+        assertEquals(SolverResult.Status.SOLVED, result.getStatus());
+
+        int movesCount = level.setMovesToRepeat(result.getMoves());
+        assertEquals(result.getMoves().size(), movesCount);
+        assertEquals(movesCount, level.repeatMoves(movesCount));
+        assertEquals(Level.LevelState.PLAYABLE, level.getState());
+        assertTrue(level.isCompleted());
+        assertEquals(result.getPushesCount(), level.getPushesCount());
+        return level.getPushesCount();
+    }
+
+    @Test
+    public void testSmallLevelsAreSolvedOptimally() {
+
+        for (int levelIndex = 0; levelIndex < SMALL_LEVELS.length; levelIndex++) {
+
+            Level level = createLevel(SMALL_LEVELS[levelIndex]);
+            assertEquals(SMALL_LEVELS_PUSHES_COUNTS[levelIndex], solveAndReplay(level, new Solver(level, 1)));
+
+            level = createLevel(SMALL_LEVELS[levelIndex]);
+            assertEquals(SMALL_LEVELS_PUSHES_COUNTS[levelIndex], solveAndReplay(level, new Solver(level, 2)));
+        }
+    }
+
+    @Test
+    public void testDefaultLevelIsSolvedOptimally() throws Exception {
+
+        InputStream levelsSetInputStream = SolverTest.class.getResourceAsStream(
+                "/org/ezze/games/storekeeper/resources/levels.xml");
+        LevelsSet levelsSet;
+        try {
+
+            levelsSet = new LevelsSet(new BufferedInputStream(levelsSetInputStream));
+        }
+        finally {
+
+            levelsSetInputStream.close();
+        }
+
+        Level level = levelsSet.getLevelByIndex(0);
+        assertTrue(level.initialize());
+        assertEquals(FIRST_DEFAULT_LEVEL_PUSHES_COUNT, solveAndReplay(level, new Solver(level, 2)));
+    }
+
+    @Test
+    public void testDeadLevelIsUnsolvable() {
+
+        // The box can only be pushed into the corner
+        Level level = createLevel(new String[] { "#####", "#@$ #", "#  ##", "#. #", "####" });
+        SolverResult result = new Solver(level, 1).solve();
+        assertEquals(SolverResult.Status.UNSOLVABLE, result.getStatus());
+        assertFalse(result.isSolved());
+    }
+}